@@ -0,0 +1,31 @@
+package net.perkowitz.issho.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks (or those matching a regex) with the GC profiler, so each result reports
+ * allocation rate (gc.alloc.rate.norm is bytes allocated per operation) alongside throughput.
+ * Other arguments are the usual JMH command line options.
+ *
+ * Usage: java -jar target/benchmarks.jar [regex] [jmh options]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String args[]) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLineOptions);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            builder.include("net.perkowitz.issho.benchmarks.*");
+        }
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
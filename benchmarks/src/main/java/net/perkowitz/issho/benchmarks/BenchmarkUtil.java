@@ -0,0 +1,35 @@
+package net.perkowitz.issho.benchmarks;
+
+import net.perkowitz.issho.devices.GridDisplay;
+import net.perkowitz.issho.devices.MultiDisplay;
+import net.perkowitz.issho.devices.virtual.VirtualGridDevice;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Shared setup for the benchmarks: a receiver that drops everything, a display backed by a
+ * virtual grid, and a scratch directory for module memory files.
+ */
+public class BenchmarkUtil {
+
+    public static Receiver nullReceiver() {
+        return new Receiver() {
+            public void send(MidiMessage message, long timeStamp) {}
+            public void close() {}
+        };
+    }
+
+    public static MultiDisplay virtualDisplay() {
+        return new MultiDisplay(new GridDisplay[] { new VirtualGridDevice("benchmark") });
+    }
+
+    public static String tempPrefix(String name) throws Exception {
+        File dir = Files.createTempDirectory("issho-benchmark").toFile();
+        dir.deleteOnExit();
+        return new File(dir, name).getPath();
+    }
+
+}
@@ -0,0 +1,69 @@
+package net.perkowitz.issho.benchmarks;
+
+import net.perkowitz.issho.hachi.Chord;
+import net.perkowitz.issho.hachi.ChordSnapshot;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping notes through a chord (done for every note a ChordModule plays, now through a ChordSnapshot)
+ * and recomputing a chord and its snapshot as keys are pressed and released (done by ChordReceiver
+ * for every keyboard note).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChordBenchmark {
+
+    @Param({ "NEAREST", "FLOOR", "ROUND_ROBIN" })
+    public String noteMapMode;
+
+    Chord chord;
+    ChordSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chord = new Chord();
+        chord.setNoteMapMode(Chord.NoteMapMode.valueOf(noteMapMode));
+        chord.add(48);
+        chord.add(52);
+        chord.add(55);
+        chord.add(59);
+        snapshot = chord.snapshot();
+    }
+
+    @Benchmark
+    public void mapNote(Blackhole blackhole) {
+        for (int note = 0; note < 128; note++) {
+            blackhole.consume(chord.mapNote(note));
+        }
+    }
+
+    @Benchmark
+    public void mapNoteSnapshot(Blackhole blackhole) {
+        for (int note = 0; note < 128; note++) {
+            blackhole.consume(snapshot.mapNote(note));
+        }
+    }
+
+    @Benchmark
+    public void recompute(Blackhole blackhole) {
+        chord.add(62);
+        chord.remove(62);
+        blackhole.consume(chord);
+    }
+
+    @Benchmark
+    public void recomputeSnapshot(Blackhole blackhole) {
+        chord.add(62);
+        blackhole.consume(chord.snapshot());
+        chord.remove(62);
+        blackhole.consume(chord.snapshot());
+    }
+
+}
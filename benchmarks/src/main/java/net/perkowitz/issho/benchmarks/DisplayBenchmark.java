@@ -0,0 +1,55 @@
+package net.perkowitz.issho.benchmarks;
+
+import net.perkowitz.issho.devices.GridControl;
+import net.perkowitz.issho.devices.GridControlSet;
+import net.perkowitz.issho.devices.GridPad;
+import net.perkowitz.issho.devices.launchpadpro.Color;
+import net.perkowitz.issho.devices.launchpadpro.LaunchpadPro;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-LED display path (LaunchpadPro.setPad building and sending a midi message) and the
+ * control lookup every pad press goes through.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DisplayBenchmark {
+
+    LaunchpadPro launchpadPro;
+    GridControlSet controlSet;
+    GridPad[] pads = new GridPad[64];
+    GridControl[] controls = new GridControl[64];
+    Color[] colors = { Color.BRIGHT_RED, Color.DIM_BLUE, Color.OFF, Color.BRIGHT_GREEN };
+
+    @Setup(Level.Trial)
+    public void setup() {
+        launchpadPro = new LaunchpadPro(BenchmarkUtil.nullReceiver(), null);
+        controlSet = GridControlSet.padRows(0, 3);
+        for (int i = 0; i < 64; i++) {
+            pads[i] = GridPad.at(i % 8, i / 8);
+            controls[i] = new GridControl(pads[i], null);
+        }
+    }
+
+    @Benchmark
+    public void setPadFullGrid() {
+        for (int i = 0; i < 64; i++) {
+            launchpadPro.setPad(pads[i], colors[i % colors.length]);
+        }
+    }
+
+    @Benchmark
+    public void controlSetContains(Blackhole blackhole) {
+        for (int i = 0; i < 64; i++) {
+            blackhole.consume(controlSet.contains(controls[i]));
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package net.perkowitz.issho.benchmarks;
+
+import net.perkowitz.issho.hachi.modules.seq.*;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static net.perkowitz.issho.hachi.modules.seq.SeqStep.GateMode.PLAY;
+
+/**
+ * Serializing and deserializing a full SeqMemory (all sessions and patterns) with the same
+ * ObjectMapper setup the modules use to save and load.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryBenchmark {
+
+    ObjectMapper objectMapper = new ObjectMapper();
+    SeqMemory memory;
+    byte[] json;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        memory = new SeqMemory(SeqUtil.SeqMode.BEAT);
+        for (SeqPattern pattern : memory.getCurrentSession().getPatterns()) {
+            for (SeqTrack track : pattern.getTracks()) {
+                for (int i = 0; i < SeqUtil.STEP_COUNT; i += 2) {
+                    track.getStep(i).setEnabled(true);
+                    track.getStep(i).setGateMode(PLAY);
+                }
+            }
+        }
+        json = objectMapper.writeValueAsBytes(memory);
+    }
+
+    @Benchmark
+    public byte[] save() throws Exception {
+        return objectMapper.writeValueAsBytes(memory);
+    }
+
+    @Benchmark
+    public SeqMemory load() throws Exception {
+        return objectMapper.readValue(json, SeqMemory.class);
+    }
+
+}
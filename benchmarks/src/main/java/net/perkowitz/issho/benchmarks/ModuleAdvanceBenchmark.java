@@ -0,0 +1,134 @@
+package net.perkowitz.issho.benchmarks;
+
+import net.perkowitz.issho.hachi.HachiRandom;
+import net.perkowitz.issho.hachi.modules.para.ParaMemory;
+import net.perkowitz.issho.hachi.modules.para.ParaModule;
+import net.perkowitz.issho.hachi.modules.para.ParaPattern;
+import net.perkowitz.issho.hachi.modules.para.ParaStep;
+import net.perkowitz.issho.hachi.modules.para.ParaUtil;
+import net.perkowitz.issho.hachi.modules.seq.*;
+import net.perkowitz.issho.hachi.modules.step.Stage;
+import net.perkowitz.issho.hachi.modules.step.StepMemory;
+import net.perkowitz.issho.hachi.modules.step.StepModule;
+import net.perkowitz.issho.hachi.modules.step.StepPattern;
+import net.perkowitz.issho.util.MidiLoopback;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static net.perkowitz.issho.hachi.modules.seq.SeqStep.GateMode.PLAY;
+import static net.perkowitz.issho.hachi.modules.seq.SeqStep.GateMode.TIE;
+
+/**
+ * One sequencer step (module.tick, which runs advance: pattern/chain handling, midi sends and
+ * display updates) for each of the sequencing modules, with patterns filled in so every step plays notes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModuleAdvanceBenchmark {
+
+    @State(Scope.Thread)
+    public static class SeqState {
+
+        @Param({ "BEAT", "MONO", "PARA" })
+        public String mode;
+
+        SeqModule module;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            SeqUtil.SeqMode seqMode = SeqUtil.SeqMode.valueOf(mode);
+            String prefix = BenchmarkUtil.tempPrefix("seq");
+            SeqMemory memory = new SeqMemory(seqMode);
+            for (SeqPattern pattern : memory.getCurrentSession().getPatterns()) {
+                for (SeqTrack track : pattern.getTracks()) {
+                    for (int i = 0; i < SeqUtil.STEP_COUNT; i++) {
+                        SeqStep step = track.getStep(i);
+                        step.setEnabled(true);
+                        step.setGateMode((i + track.getIndex()) % 3 == 0 ? PLAY : TIE);
+                    }
+                }
+            }
+            new ObjectMapper().writeValue(new File(prefix + "-0.json"), memory);
+
+            module = new SeqModule(new MidiLoopback("benchmark").getTransmitter(), BenchmarkUtil.nullReceiver(),
+                    SeqUtil.getPalette("red"), prefix, seqMode);
+            module.setDisplay(BenchmarkUtil.virtualDisplay());
+            module.start(true);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ParaState {
+
+        ParaModule module;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            String prefix = BenchmarkUtil.tempPrefix("para");
+            ParaMemory memory = new ParaMemory();
+            ParaPattern pattern = memory.currentPattern();
+            for (int i = 0; i < ParaPattern.STEP_COUNT; i++) {
+                ParaStep step = pattern.getStep(i);
+                step.addNote(48 + i);
+                step.addNote(52 + i);
+                step.addNote(55 + i);
+                step.setVelocity(100);
+                step.setGate(i % 2 == 0 ? ParaUtil.Gate.PLAY : ParaUtil.Gate.TIE);
+                step.setEnabled(true);
+            }
+            new ObjectMapper().writeValue(new File(prefix + "-0.json"), memory);
+
+            module = new ParaModule(new MidiLoopback("benchmark").getTransmitter(), BenchmarkUtil.nullReceiver(),
+                    ParaUtil.PALETTE_BLUE, prefix);
+            module.setDisplay(BenchmarkUtil.virtualDisplay());
+            module.start(true);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class StepState {
+
+        StepModule module;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            String prefix = BenchmarkUtil.tempPrefix("step");
+            StepMemory memory = new StepMemory();
+            Stage.Marker[] markers = { Stage.Marker.Note, Stage.Marker.OctaveUp, Stage.Marker.Repeat, Stage.Marker.Longer, Stage.Marker.Note };
+            for (int s = 0; s < StepPattern.STAGE_COUNT; s++) {
+                Stage stage = memory.currentPattern().getStage(s);
+                for (int m = 0; m < markers.length; m++) {
+                    stage.putMarker(m, markers[(m + s) % markers.length], HachiRandom.shared());
+                }
+            }
+            new ObjectMapper().writeValue(new File(prefix + "-0.json"), memory);
+
+            module = new StepModule(new MidiLoopback("benchmark").getTransmitter(), BenchmarkUtil.nullReceiver(), prefix);
+            module.setDisplay(BenchmarkUtil.virtualDisplay());
+            module.start(true);
+        }
+    }
+
+
+    @Benchmark
+    public void seqAdvance(SeqState state) {
+        state.module.tick(false);
+    }
+
+    @Benchmark
+    public void paraAdvance(ParaState state) {
+        state.module.tick(false);
+    }
+
+    @Benchmark
+    public void stepAdvance(StepState state) {
+        state.module.tick(false);
+    }
+
+}
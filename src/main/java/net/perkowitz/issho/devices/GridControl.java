@@ -1,6 +1,5 @@
 package net.perkowitz.issho.devices;
 
-import com.google.common.collect.Maps;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -16,10 +15,6 @@ public class GridControl {
     @Getter private GridButton button = null;
     @Getter private GridKnob knob = null;
 
-    // Each control remembers when it was pressed so it can report hold time on release.
-    // However, since grid controls are created and destroyed all the time, maintain a static map
-    // keyed by the control's nice name.
-    static private Map<String,Long> pressMap = Maps.newHashMap();
 
 
     /***** constructors ****************************************/
@@ -59,18 +54,23 @@ public class GridControl {
         }
     }
 
-    public void press() {
-        pressMap.put(this.toString(), System.currentTimeMillis());
+    // Each control remembers when it was pressed so it can report hold time on release.
+    // However, since grid controls are created and destroyed all the time, the press times are kept
+    // in a map keyed by the control's nice name, owned by whatever is handling the presses (so two
+    // grids, or two rigs, don't share them).
+
+    public void press(Map<String,Long> pressTimes) {
+        pressTimes.put(this.toString(), System.currentTimeMillis());
     }
 
-    public long release() {
-        long e = elapsed();
-        pressMap.remove(this.toString());
+    public long release(Map<String,Long> pressTimes) {
+        long e = elapsed(pressTimes);
+        pressTimes.remove(this.toString());
         return e;
     }
 
-    public long elapsed() {
-        Long pressTime = pressMap.get(this.toString());
+    public long elapsed(Map<String,Long> pressTimes) {
+        Long pressTime = pressTimes.get(this.toString());
         if (pressTime == null) {
             return System.currentTimeMillis();
         }
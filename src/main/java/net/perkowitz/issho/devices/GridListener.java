@@ -7,6 +7,11 @@ public interface GridListener {
 
     public void onPadPressed(GridPad pad, int velocity);
     public void onPadReleased(GridPad pad);
+    /**
+     * onPadPressure is called with aftertouch from pressure-sensitive pads. The pad is null for
+     * channel pressure, which isn't tied to one pad.
+     */
+    public void onPadPressure(GridPad pad, int value);
     public void onButtonPressed(GridButton button, int velocity);
     public void onButtonReleased(GridButton button);
     public void onKnobChanged(GridKnob knob, int delta);
@@ -7,6 +7,17 @@ import lombok.Getter;
  */
 public class GridPad {
 
+    // shared pads for the usual grid sizes, so input handling doesn't allocate
+    private static final int CACHED_SIZE = 16;
+    private static final GridPad[] cached = new GridPad[CACHED_SIZE * CACHED_SIZE];
+    static {
+        for (int y = 0; y < CACHED_SIZE; y++) {
+            for (int x = 0; x < CACHED_SIZE; x++) {
+                cached[y * CACHED_SIZE + x] = new GridPad(x, y);
+            }
+        }
+    }
+
     @Getter private final int x;
     @Getter private final int y;
 
@@ -29,7 +40,7 @@ public class GridPad {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return 31 * x + y;
     }
 
     @Override
@@ -41,6 +52,9 @@ public class GridPad {
     /***** static helpers ************************************/
 
     public static GridPad at(int x, int y) {
+        if (x >= 0 && x < CACHED_SIZE && y >= 0 && y < CACHED_SIZE) {
+            return cached[y * CACHED_SIZE + x];
+        }
         return new GridPad(x, y);
     }
 
@@ -69,6 +69,10 @@ public class Keyboard implements Receiver {
             System.out.printf("Unable to find keyboard device matching name: %s\n", names);
             return null;
         }
+        return fromMidiDevice(midiInput, targetReceiver);
+    }
+
+    public static Keyboard fromMidiDevice(MidiDevice midiInput, Receiver targetReceiver) {
 
         try {
             midiInput.open();
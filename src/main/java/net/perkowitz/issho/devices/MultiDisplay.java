@@ -6,6 +6,8 @@ import lombok.Setter;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import static net.perkowitz.issho.devices.GridButton.Side.*;
 
@@ -18,6 +20,34 @@ public class MultiDisplay implements GridDisplay {
 
     private Set<GridDisplay> displays;
     @Getter @Setter private boolean enabled = false;
+    private final AtomicInteger padCount = new AtomicInteger();   // updated from clock, input and redraw threads
+    @Setter private volatile boolean shedding = false;   // skip clock work's updates while the clock is overloaded
+    private final LongAdder shedCount = new LongAdder();
+    private volatile boolean stale = false;
+
+    // set on threads doing a pulse's work; only their updates are shed, so pad presses still light up
+    private static final ThreadLocal<boolean[]> clockWork = new ThreadLocal<boolean[]>() {
+        protected boolean[] initialValue() {
+            return new boolean[1];
+        }
+    };
+
+    // set on threads tallying their own display updates, e.g. for a Draw event
+    private static final ThreadLocal<Tally> tally = new ThreadLocal<Tally>() {
+        protected Tally initialValue() {
+            return new Tally();
+        }
+    };
+
+    /**
+     * Tally counts the pads one thread updates and the time it spends writing updates to the displays,
+     * between startTally and stopTally.
+     */
+    public static class Tally {
+        @Getter private int pads = 0;
+        @Getter private long nanos = 0;
+        private boolean on = false;
+    }
 
     public MultiDisplay(GridDisplay[] displays) {
         this.displays = Sets.newHashSet();
@@ -45,6 +75,70 @@ public class MultiDisplay implements GridDisplay {
         displays.clear();
     }
 
+    /**
+     * clearStale returns whether any updates were skipped while shedding (so it needs a redraw), and
+     * clears that.
+     */
+    public boolean clearStale() {
+        boolean wasStale = stale;
+        stale = false;
+        return wasStale;
+    }
+
+    public int getPadCount() {
+        return padCount.get();
+    }
+
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    public void resetShedCount() {
+        shedCount.reset();
+    }
+
+    /**
+     * enterClockWork marks the current thread as doing clock work until exitClockWork, so its display
+     * updates can be shed.
+     *
+     * @return whether it was already marked, to pass to exitClockWork
+     */
+    public static boolean enterClockWork() {
+        boolean[] flag = clockWork.get();
+        boolean was = flag[0];
+        flag[0] = true;
+        return was;
+    }
+
+    public static void exitClockWork(boolean was) {
+        clockWork.get()[0] = was;
+    }
+
+    /**
+     * startTally starts counting the current thread's display updates (across all MultiDisplays) until
+     * stopTally, so a draw can be measured without the work around it or other threads' updates.
+     */
+    public static Tally startTally() {
+        Tally t = tally.get();
+        t.pads = 0;
+        t.nanos = 0;
+        t.on = true;
+        return t;
+    }
+
+    public static void stopTally() {
+        tally.get().on = false;
+    }
+
+    private boolean shed() {
+        if (shedding && clockWork.get()[0]) {
+            shedCount.increment();
+            stale = true;
+            return true;
+        }
+        return false;
+    }
+
 
     /***** GridDisplay implementation ***************************/
 
@@ -53,7 +147,9 @@ public class MultiDisplay implements GridDisplay {
     }
 
     public void initialize(boolean pads, Set<GridButton.Side> buttonSides) {
-        if (enabled) {
+        if (enabled && !shed()) {
+            Tally t = tally.get();
+            long start = t.on ? System.nanoTime() : 0;
             for (GridDisplay display : displays) {
                 // modules don't control the top row of buttons, so only initialize the rest
                 if (buttonSides != null) {
@@ -61,22 +157,37 @@ public class MultiDisplay implements GridDisplay {
                 }
                 display.initialize(pads, buttonSides);
             }
+            if (t.on) {
+                t.nanos += System.nanoTime() - start;
+            }
         }
     }
 
     public void setPad(GridPad pad, GridColor color) {
-        if (enabled) {
+        if (enabled && !shed()) {
+            padCount.incrementAndGet();
+            Tally t = tally.get();
+            long start = t.on ? System.nanoTime() : 0;
             for (GridDisplay display : displays) {
                 display.setPad(pad, color);
             }
+            if (t.on) {
+                t.pads++;
+                t.nanos += System.nanoTime() - start;
+            }
         }
     }
 
     public void setButton(GridButton button, GridColor color){
-        if (enabled) {
+        if (enabled && !shed()) {
+            Tally t = tally.get();
+            long start = t.on ? System.nanoTime() : 0;
             for (GridDisplay display : displays) {
                 display.setButton(button, color);
             }
+            if (t.on) {
+                t.nanos += System.nanoTime() - start;
+            }
         }
     }
 
@@ -58,6 +58,8 @@ public class TestListener implements GridListener {
 
     public void onPadReleased(GridPad pad) {}
 
+    public void onPadPressure(GridPad pad, int value) {}
+
     public void onButtonPressed(GridButton button, int velocity) {
         gridDevice.setButton(button, buttonColor);
     }
@@ -21,6 +21,10 @@ public class Console implements GridListener, GridDisplay {
 
     }
 
+    public void onPadPressure(GridPad pad, int value) {
+        System.out.printf("[][][][] PadPressure: %s, %d\n", pad, value);
+    }
+
     public void onButtonPressed(GridButton button, int velocity) {
         System.out.printf("[][][][] ButtonPressed: %s, %d\n", button, velocity);
     }
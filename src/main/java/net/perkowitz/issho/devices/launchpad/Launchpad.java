@@ -2,18 +2,32 @@ package net.perkowitz.issho.devices.launchpad;
 
 
 import com.google.common.collect.Sets;
+import lombok.Getter;
 import lombok.Setter;
 import net.perkowitz.issho.devices.*;
 import net.perkowitz.issho.devices.launchpadpro.Color;
 
 import javax.sound.midi.*;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import static javax.sound.midi.ShortMessage.*;
 import static net.perkowitz.issho.devices.GridButton.Side.*;
 
 /**
  * Created by optic on 9/3/16.
+ *
+ * Launchpad drives the original Launchpad (and Launchpad S). By default each setPad or setButton
+ * goes straight to the device. Once startFrames() is called, they just update a frame of LED colors,
+ * and a frame thread draws whatever changed into the device's hidden buffer and then flips buffers
+ * (copying the new one back so the next frame can be drawn over it), so an update never shows
+ * half-drawn. When most of the frame changed, it's drawn with rapid LED update messages, which set
+ * two LEDs each.
  */
 public class Launchpad implements GridDevice {
 
@@ -21,9 +35,31 @@ public class Launchpad implements GridDevice {
 
     private static int CHANNEL = 0;
 
+    // LEDs in rapid update order: the grid by rows, then the right buttons, then the top buttons
+    private static final int LED_COUNT = 80;
+    private static final int RIGHT_OFFSET = 64;
+    private static final int TOP_OFFSET = 72;
+    private static final int RAPID_CHANNEL = 2;         // rapid update is note on (0x92) on channel 3
+    private static final int COLOR_MASK = 0x33;         // red and green bits, without the copy and clear flags
+    private static final int BUFFER_CC = 0;
+    private static final int LAYOUT_CC = 1;
+    private static final int BUFFER_CONTROL = 0x20;
+    private static final int BUFFER_COPY = 0x10;
+    private static final int NONE = -1;
+
     private Receiver receiver;
     @Setter private GridListener listener;
 
+    private final AtomicIntegerArray frame = new AtomicIntegerArray(LED_COUNT);
+    private final AtomicBoolean changed = new AtomicBoolean(false);
+    private final int[] shown = new int[LED_COUNT];
+    private volatile boolean buffered = false;
+    private boolean reset = true;
+    private int displayBuffer = 0;
+    private ScheduledExecutorService executor = null;
+    @Getter private volatile long framesSent = 0;
+    @Getter private volatile long messagesSent = 0;
+
     public Launchpad(Receiver receiver, GridListener listener) {
         this.receiver = receiver;
         this.listener = listener;
@@ -48,6 +84,15 @@ public class Launchpad implements GridDevice {
     }
 
     public void initialize() {
+        if (buffered) {
+            // the device may have been reset (e.g. reconnected), so set it up again and send it all now
+            synchronized (this) {
+                reset = true;
+            }
+            initialize(true, Sets.newHashSet(Top, Bottom, Left, Right));
+            flush();
+            return;
+        }
         initialize(true, Sets.newHashSet(Top, Bottom, Left, Right));
     }
 
@@ -58,6 +103,10 @@ public class Launchpad implements GridDevice {
     }
 
     public void setPad(GridPad pad, GridColor color) {
+        if (buffered) {
+            setLed(pad.getY() * 8 + pad.getX(), color);
+            return;
+        }
         note(CHANNEL, padToNote(pad), color.getIndex());
     }
 
@@ -67,10 +116,18 @@ public class Launchpad implements GridDevice {
         } else if (button.getSide() == GridButton.Side.Bottom) {
             // nope
         } else if (button.getSide() == GridButton.Side.Right) {
+            if (buffered) {
+                setLed(RIGHT_OFFSET + button.getIndex(), color);
+                return;
+            }
             // right side uses notes, as though they were a 9th column of the grid pad
             int note = (button.getIndex()) * 16 + 8;
             note(CHANNEL, note, color.getIndex());
         } else if (button.getSide() == GridButton.Side.Top) {
+            if (buffered) {
+                setLed(TOP_OFFSET + button.getIndex(), color);
+                return;
+            }
             int cc = 104 + button.getIndex();
             cc(CHANNEL, cc, color.getIndex());
         }
@@ -83,6 +140,117 @@ public class Launchpad implements GridDevice {
     }
 
 
+    /***** double buffering **************************************************************/
+
+    /**
+     * startFrames switches to double-buffered drawing, with a frame sent (if anything changed)
+     * frameRate times a second.
+     */
+    public synchronized void startFrames(double frameRate) {
+        if (executor != null) {
+            return;
+        }
+        buffered = true;
+        reset = true;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "launchpad-frames");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long periodMicros = Math.max(1, (long) (1000000 / frameRate));
+        executor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * flush draws the LEDs that changed since the last frame into the hidden buffer and shows it.
+     * It runs on the frame thread once started, and can be called directly (e.g. in tests).
+     */
+    public synchronized void flush() {
+        if (!buffered) {
+            return;
+        }
+        if (reset) {
+            // reset the device, then show buffer 0 while drawing into buffer 1
+            cc(CHANNEL, BUFFER_CC, 0);
+            displayBuffer = 0;
+            cc(CHANNEL, BUFFER_CC, bufferControl(displayBuffer, false));
+            for (int i = 0; i < LED_COUNT; i++) {
+                shown[i] = NONE;
+            }
+            reset = false;
+            changed.set(false);
+        } else if (!changed.getAndSet(false)) {
+            return;
+        }
+
+        int count = 0;
+        for (int i = 0; i < LED_COUNT; i++) {
+            if (frame.get(i) != shown[i]) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        if (count > LED_COUNT / 2 + 1) {
+            // any other message (here, the layout select) starts rapid update back at the first pad
+            cc(CHANNEL, LAYOUT_CC, 0);
+            for (int i = 0; i < LED_COUNT; i += 2) {
+                shown[i] = frame.get(i);
+                shown[i + 1] = frame.get(i + 1);
+                note(RAPID_CHANNEL, shown[i], shown[i + 1]);
+            }
+        } else {
+            for (int i = 0; i < LED_COUNT; i++) {
+                int color = frame.get(i);
+                if (color != shown[i]) {
+                    shown[i] = color;
+                    sendLed(i, color);
+                }
+            }
+        }
+
+        // show the buffer just drawn, copying it to the other one to draw the next frame over
+        displayBuffer = 1 - displayBuffer;
+        cc(CHANNEL, BUFFER_CC, bufferControl(displayBuffer, true));
+        framesSent++;
+    }
+
+    private void setLed(int index, GridColor color) {
+        frame.set(index, color.getIndex() & COLOR_MASK);
+        changed.set(true);
+    }
+
+    private void sendLed(int index, int color) {
+        if (index < RIGHT_OFFSET) {
+            note(CHANNEL, (index / 8) * 16 + index % 8, color);
+        } else if (index < TOP_OFFSET) {
+            note(CHANNEL, (index - RIGHT_OFFSET) * 16 + 8, color);
+        } else {
+            cc(CHANNEL, 104 + index - TOP_OFFSET, color);
+        }
+    }
+
+    /**
+     * bufferControl is the value for the buffer control message that shows one buffer and
+     * draws into the other.
+     */
+    private static int bufferControl(int display, boolean copy) {
+        return BUFFER_CONTROL | (copy ? BUFFER_COPY : 0) | (1 - display) << 2 | display;
+    }
+
+
     /***** midi receiver implementation **************************************************************/
 
     public void send(MidiMessage message, long timeStamp) {
@@ -165,8 +333,24 @@ public class Launchpad implements GridDevice {
         }
     }
 
+    /**
+     * close stops the frame thread after sending anything still pending.
+     */
     public void close() {
-
+        ScheduledExecutorService frames;
+        synchronized (this) {
+            frames = executor;
+            executor = null;
+        }
+        if (frames != null) {
+            frames.shutdown();
+            try {
+                frames.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            flush();
+        }
     }
 
 
@@ -178,6 +362,7 @@ public class Launchpad implements GridDevice {
             ShortMessage message = new ShortMessage();
             message.setMessage(ShortMessage.NOTE_ON, channel, noteNumber, velocity);
             receiver.send(message, -1);
+            messagesSent++;
 
         } catch (InvalidMidiDataException e) {
             System.err.println(e);
@@ -191,6 +376,7 @@ public class Launchpad implements GridDevice {
             ShortMessage message = new ShortMessage();
             message.setMessage(ShortMessage.CONTROL_CHANGE, channel, ccNumber, value);
             receiver.send(message, -1);
+            messagesSent++;
 
         } catch (InvalidMidiDataException e) {
             System.err.println(e);
@@ -4,11 +4,22 @@ import lombok.Getter;
 import lombok.Setter;
 import net.perkowitz.issho.devices.GridColor;
 
+import java.util.Map;
+
 /**
  * Created by optic on 9/4/16.
  */
 public class Color implements GridColor {
 
+    // one shared instance per palette index, so drawing never allocates colors
+    private static final int INDEX_COUNT = 128;
+    private static final Color[] indexed = new Color[INDEX_COUNT];
+    static {
+        for (int i = 0; i < INDEX_COUNT; i++) {
+            indexed[i] = new Color(i);
+        }
+    }
+
     public static Color OFF = Color.fromIndex(0);
     public static Color WHITE = Color.fromIndex(3);
     public static Color MED_GRAY = Color.fromIndex(1);
@@ -44,6 +55,7 @@ public class Color implements GridColor {
     public static int[] greens = new int[] { 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 63, 64, 65, 75, 76, 77, 86, 87, 88, 101, 102, 122, 123 };
     public static int[] blues = new int[] { 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 66, 67, 68, 78, 79, 91, 92, 103, 104, 112, 115 };
 
+    // the setter is for deserialization; instances from fromIndex are shared and mustn't be changed
     @Getter @Setter private int index;
 
     public Color() {
@@ -61,9 +73,28 @@ public class Color implements GridColor {
     /***** static methods ********************************/
 
     public static Color fromIndex(int index) {
+        if (index >= 0 && index < INDEX_COUNT) {
+            return indexed[index];
+        }
         return new Color(index);
     }
 
+    /**
+     * compile turns a module palette into a table indexed by its color ids, so the draw path
+     * looks colors up by array index instead of hashing.
+     */
+    public static Color[] compile(Map<Integer, Color> palette) {
+        int size = 0;
+        for (Integer id : palette.keySet()) {
+            size = Math.max(size, id + 1);
+        }
+        Color[] colors = new Color[size];
+        for (Map.Entry<Integer, Color> entry : palette.entrySet()) {
+            colors[entry.getKey()] = entry.getValue();
+        }
+        return colors;
+    }
+
     public static Color[] fromInts(int[] indices) {
 
         Color[] colors = new Color[indices.length];
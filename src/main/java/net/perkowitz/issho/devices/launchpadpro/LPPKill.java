@@ -92,6 +92,7 @@ public class LPPKill {
         }
 
         public void onPadReleased(GridPad pad) {}
+        public void onPadPressure(GridPad pad, int value) {}
         public void onButtonPressed(GridButton button, int velocity) {
             System.out.printf("%s - %d\n", button, velocity);
             lpp.initialize();
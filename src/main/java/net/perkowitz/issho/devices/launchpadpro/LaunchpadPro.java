@@ -132,6 +132,16 @@ public class LaunchpadPro implements GridDevice {
                             }
                         }
                         break;
+                    case POLY_PRESSURE:
+                        if (listener != null) {
+                            listener.onPadPressure(noteToPad(shortMessage.getData1()), shortMessage.getData2());
+                        }
+                        break;
+                    case CHANNEL_PRESSURE:
+                        if (listener != null) {
+                            listener.onPadPressure(null, shortMessage.getData1());
+                        }
+                        break;
                     default:
                 }
             }
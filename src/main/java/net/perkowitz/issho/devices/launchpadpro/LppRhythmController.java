@@ -226,6 +226,7 @@ public class LppRhythmController implements GridListener, RhythmController {
     }
 
 
+    public void onPadPressure(GridPad pad, int value) {}
     public void onKnobChanged(GridKnob knob, int delta) {}
     public void onKnobSet(GridKnob knob, int value) {}
 
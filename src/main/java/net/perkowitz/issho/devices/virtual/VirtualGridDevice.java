@@ -0,0 +1,274 @@
+package net.perkowitz.issho.devices.virtual;
+
+import com.google.common.collect.Sets;
+import lombok.Getter;
+import lombok.Setter;
+import net.perkowitz.issho.devices.*;
+import net.perkowitz.issho.util.PortMeter;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static javax.sound.midi.ShortMessage.*;
+import static net.perkowitz.issho.devices.GridButton.Side.*;
+
+/**
+ * VirtualGridDevice is an in-process 8x8 grid with buttons on all four sides, for running Hachi
+ * without hardware. It keeps the LED state it has been sent, counts the messages and bytes that a
+ * Launchpad-style device would have received, and can inject pad presses, either directly or
+ * from a scripted random player running at a given rate.
+ *
+ * As a Receiver it accepts the same kind of input a grid controller sends: note on/off for pads
+ * (note = y * 8 + x) and control change for buttons (cc = side * 8 + index).
+ */
+public class VirtualGridDevice implements GridDevice {
+
+    private static final int BYTES_PER_MESSAGE = 3;
+    private static final int PAD_COUNT = 8;
+    private static final int BUTTON_COUNT = 8;
+
+    @Setter private GridListener listener;
+
+    private final int[][] pads = new int[PAD_COUNT][PAD_COUNT];
+    private final int[][] buttons = new int[GridButton.Side.values().length][BUTTON_COUNT];
+    private final int[][] knobs = new int[GridKnob.Side.values().length][BUTTON_COUNT];
+
+    @Getter private final PortMeter meter = new PortMeter();
+    private final LongAdder messagesReceived = new LongAdder();
+    @Getter private final String name;
+
+    private ScheduledExecutorService scriptExecutor = null;
+
+
+    public VirtualGridDevice(String name) {
+        this.name = name;
+    }
+
+
+    /***** LED state & counters ***************/
+
+    public int getPadColor(int x, int y) {
+        return pads[x][y];
+    }
+
+    public int getButtonColor(GridButton.Side side, int index) {
+        return buttons[side.ordinal()][index];
+    }
+
+    public long getMessagesSent() {
+        return meter.getMessages();
+    }
+
+    public long getBytesSent() {
+        return meter.getBytes();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    public void resetCounters() {
+        meter.reset();
+        messagesReceived.reset();
+    }
+
+
+    /***** input injection ***************/
+
+    public void pressPad(int x, int y, int velocity) {
+        messagesReceived.increment();
+        if (listener != null) {
+            listener.onPadPressed(GridPad.at(x, y), velocity);
+        }
+    }
+
+    public void releasePad(int x, int y) {
+        messagesReceived.increment();
+        if (listener != null) {
+            listener.onPadReleased(GridPad.at(x, y));
+        }
+    }
+
+    public void pressurePad(int x, int y, int value) {
+        messagesReceived.increment();
+        if (listener != null) {
+            listener.onPadPressure(GridPad.at(x, y), value);
+        }
+    }
+
+    public void pressButton(GridButton.Side side, int index, int velocity) {
+        messagesReceived.increment();
+        if (listener != null) {
+            listener.onButtonPressed(GridButton.at(side, index), velocity);
+        }
+    }
+
+    public void releaseButton(GridButton.Side side, int index) {
+        messagesReceived.increment();
+        if (listener != null) {
+            listener.onButtonReleased(GridButton.at(side, index));
+        }
+    }
+
+    /**
+     * startScript presses (and later releases) random pads at the given rate on a background thread.
+     * Only the 8x8 pads are pressed, so the script can't switch modules or exit.
+     *
+     * @param pressesPerSecond
+     * @param holdMillis how long each pad is held before it is released
+     * @param seed for the random pad choice, so a run can be repeated
+     */
+    public synchronized void startScript(double pressesPerSecond, final long holdMillis, long seed) {
+        stopScript();
+        final Random random = new Random(seed);
+        scriptExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "virtual-grid-script-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long periodMicros = Math.max(1, (long)(1000000 / pressesPerSecond));
+        final ScheduledExecutorService executor = scriptExecutor;
+        executor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    final int x = random.nextInt(PAD_COUNT);
+                    final int y = random.nextInt(PAD_COUNT);
+                    pressPad(x, y, 1 + random.nextInt(127));
+                    executor.schedule(new Runnable() {
+                        public void run() {
+                            releasePad(x, y);
+                        }
+                    }, holdMillis, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    public synchronized void stopScript() {
+        if (scriptExecutor != null) {
+            scriptExecutor.shutdownNow();
+            scriptExecutor = null;
+        }
+    }
+
+
+    /***** GridDisplay implementation ***************/
+
+    public void initialize() {
+        initialize(true, Sets.newHashSet(Top, Bottom, Left, Right));
+    }
+
+    public void initialize(boolean pads, Set<GridButton.Side> buttonSides) {
+        for (int y = 0; y < PAD_COUNT; y++) {
+            if (pads) {
+                for (int x = 0; x < PAD_COUNT; x++) {
+                    write();
+                    this.pads[x][y] = 0;
+                }
+            }
+            if (buttonSides != null) {
+                for (GridButton.Side side : buttonSides) {
+                    write();
+                    buttons[side.ordinal()][y] = 0;
+                }
+            }
+        }
+    }
+
+    public void setPad(GridPad pad, GridColor color) {
+        write();
+        pads[pad.getX()][pad.getY()] = color.getIndex();
+    }
+
+    public void setButton(GridButton button, GridColor color) {
+        write();
+        buttons[button.getSide().ordinal()][button.getIndex()] = color.getIndex();
+    }
+
+    public void setKnob(GridKnob knob, int value) {
+        write();
+        knobs[knob.getSide().ordinal()][knob.getIndex()] = value;
+    }
+
+
+    /***** midi receiver implementation ***************/
+
+    public void send(MidiMessage message, long timeStamp) {
+        if (message instanceof ShortMessage) {
+            messagesReceived.increment();
+            if (listener != null) {
+                dispatch((ShortMessage) message, listener);
+            }
+        }
+    }
+
+    /**
+     * dispatch calls the listener for a grid event in the virtual grid's encoding: note on/off for
+     * pads (note = y * 8 + x, velocity 0 is a release) and control change for buttons
+     * (cc = side * 8 + index, value 0 is a release), with poly pressure on the pad's note and channel
+     * pressure for the whole grid. Other messages are ignored.
+     * The same encoding is used to capture grid events, so this is also how they are replayed.
+     *
+     * @param message
+     * @param listener
+     */
+    public static void dispatch(ShortMessage message, GridListener listener) {
+        int data1 = message.getData1();
+        int data2 = message.getData2();
+        switch (message.getCommand()) {
+            case NOTE_ON:
+                if (data2 == 0) {
+                    listener.onPadReleased(GridPad.at(data1 % PAD_COUNT, data1 / PAD_COUNT));
+                } else {
+                    listener.onPadPressed(GridPad.at(data1 % PAD_COUNT, data1 / PAD_COUNT), data2);
+                }
+                break;
+            case NOTE_OFF:
+                listener.onPadReleased(GridPad.at(data1 % PAD_COUNT, data1 / PAD_COUNT));
+                break;
+            case CONTROL_CHANGE:
+                GridButton button = GridButton.at(GridButton.Side.values()[(data1 / BUTTON_COUNT) % GridButton.Side.values().length], data1 % BUTTON_COUNT);
+                if (data2 == 0) {
+                    listener.onButtonReleased(button);
+                } else {
+                    listener.onButtonPressed(button, data2);
+                }
+                break;
+            case POLY_PRESSURE:
+                listener.onPadPressure(GridPad.at(data1 % PAD_COUNT, data1 / PAD_COUNT), data2);
+                break;
+            case CHANNEL_PRESSURE:
+                listener.onPadPressure(null, data1);
+                break;
+            default:
+        }
+    }
+
+    public void close() {
+        stopScript();
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualGridDevice:" + name;
+    }
+
+
+    /***** private implementation ***************/
+
+    private void write() {
+        meter.record(BYTES_PER_MESSAGE);
+    }
+
+}
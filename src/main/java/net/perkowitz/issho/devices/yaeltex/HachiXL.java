@@ -1,14 +1,12 @@
 package net.perkowitz.issho.devices.yaeltex;
 
 
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import lombok.Setter;
 import net.perkowitz.issho.devices.*;
 import net.perkowitz.issho.devices.launchpadpro.Color;
 
 import javax.sound.midi.*;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
@@ -33,34 +31,38 @@ public class HachiXL implements GridDevice {
     private static int LEFT_BUTTON_START_NOTE = 32;
     private static int RIGHT_BUTTON_START_NOTE = 40;
 
-    private static Map<GridColor, Integer> launchpadToColorIndexMap = Maps.newHashMap();
+    // launchpad pro palette index -> hachi xl color index, built once so each LED update is one array read
+    private static final int[] colorIndexTable = new int[128];
     static {
-        launchpadToColorIndexMap.put(Color.OFF, 0);
-        launchpadToColorIndexMap.put(Color.WHITE, 127);
-        launchpadToColorIndexMap.put(Color.MED_GRAY, 1);
-        launchpadToColorIndexMap.put(Color.LIGHT_GRAY, 2);
-        launchpadToColorIndexMap.put(Color.DARK_GRAY, 71);
-        launchpadToColorIndexMap.put(Color.BRIGHT_GREEN, 40);
-        launchpadToColorIndexMap.put(Color.DIM_GREEN, 44);
-        launchpadToColorIndexMap.put(Color.BRIGHT_RED, 1);
-        launchpadToColorIndexMap.put(Color.DIM_RED, 2);
-        launchpadToColorIndexMap.put(Color.BRIGHT_ORANGE, 13);
-        launchpadToColorIndexMap.put(Color.DIM_ORANGE, 14);
-        launchpadToColorIndexMap.put(Color.LIGHT_BLUE, 78);
-        launchpadToColorIndexMap.put(Color.BRIGHT_BLUE, 73);
-        launchpadToColorIndexMap.put(Color.DIM_BLUE, 74);
-        launchpadToColorIndexMap.put(Color.DARK_BLUE, 85);
-        launchpadToColorIndexMap.put(Color.BRIGHT_BLUE_GREEN, 67);
-        launchpadToColorIndexMap.put(Color.DIM_BLUE_GREEN, 69);
-        launchpadToColorIndexMap.put(Color.DIM_BLUEGRAY, 90);
-        launchpadToColorIndexMap.put(Color.BRIGHT_YELLOW, 22);
-        launchpadToColorIndexMap.put(Color.DIM_YELLOW, 24);
-        launchpadToColorIndexMap.put(Color.BRIGHT_PINK, 116);
-        launchpadToColorIndexMap.put(Color.DIM_PINK, 117);
-        launchpadToColorIndexMap.put(Color.BRIGHT_PINK_PURPLE, 106);
-        launchpadToColorIndexMap.put(Color.DIM_PINK_PURPLE, 107);
-        launchpadToColorIndexMap.put(Color.BRIGHT_PURPLE, 97);
-        launchpadToColorIndexMap.put(Color.DIM_PURPLE, 98);
+        for (int i = 0; i < colorIndexTable.length; i++) {
+            colorIndexTable[i] = i;
+        }
+        colorIndexTable[Color.OFF.getIndex()] = 0;
+        colorIndexTable[Color.WHITE.getIndex()] = 127;
+        colorIndexTable[Color.MED_GRAY.getIndex()] = 1;
+        colorIndexTable[Color.LIGHT_GRAY.getIndex()] = 2;
+        colorIndexTable[Color.DARK_GRAY.getIndex()] = 71;
+        colorIndexTable[Color.BRIGHT_GREEN.getIndex()] = 40;
+        colorIndexTable[Color.DIM_GREEN.getIndex()] = 44;
+        colorIndexTable[Color.BRIGHT_RED.getIndex()] = 1;
+        colorIndexTable[Color.DIM_RED.getIndex()] = 2;
+        colorIndexTable[Color.BRIGHT_ORANGE.getIndex()] = 13;
+        colorIndexTable[Color.DIM_ORANGE.getIndex()] = 14;
+        colorIndexTable[Color.LIGHT_BLUE.getIndex()] = 78;
+        colorIndexTable[Color.BRIGHT_BLUE.getIndex()] = 73;
+        colorIndexTable[Color.DIM_BLUE.getIndex()] = 74;
+        colorIndexTable[Color.DARK_BLUE.getIndex()] = 85;
+        colorIndexTable[Color.BRIGHT_BLUE_GREEN.getIndex()] = 67;
+        colorIndexTable[Color.DIM_BLUE_GREEN.getIndex()] = 69;
+        colorIndexTable[Color.DIM_BLUEGRAY.getIndex()] = 90;
+        colorIndexTable[Color.BRIGHT_YELLOW.getIndex()] = 22;
+        colorIndexTable[Color.DIM_YELLOW.getIndex()] = 24;
+        colorIndexTable[Color.BRIGHT_PINK.getIndex()] = 116;
+        colorIndexTable[Color.DIM_PINK.getIndex()] = 117;
+        colorIndexTable[Color.BRIGHT_PINK_PURPLE.getIndex()] = 106;
+        colorIndexTable[Color.DIM_PINK_PURPLE.getIndex()] = 107;
+        colorIndexTable[Color.BRIGHT_PURPLE.getIndex()] = 97;
+        colorIndexTable[Color.DIM_PURPLE.getIndex()] = 98;
     }
 
 
@@ -185,6 +187,16 @@ public class HachiXL implements GridDevice {
                     case CONTROL_CHANGE:
 //                        System.out.printf("MIDI CC: %d, %d, %d\n", shortMessage.getChannel(), shortMessage.getData1(), shortMessage.getData2());
                         break;
+                    case POLY_PRESSURE:
+                        if (listener != null && shortMessage.getChannel() == CHANNEL) {
+                            listener.onPadPressure(noteToPad(shortMessage.getData1()), shortMessage.getData2());
+                        }
+                        break;
+                    case CHANNEL_PRESSURE:
+                        if (listener != null && shortMessage.getChannel() == CHANNEL) {
+                            listener.onPadPressure(null, shortMessage.getData1());
+                        }
+                        break;
                     default:
                 }
             }
@@ -286,8 +298,8 @@ public class HachiXL implements GridDevice {
     }
 
     private int colorLookup(GridColor color)  {
-        Integer index = launchpadToColorIndexMap.get(color);
-        return index != null ? index : color.getIndex();
+        int index = color.getIndex();
+        return index >= 0 && index < colorIndexTable.length ? colorIndexTable[index] : index;
     }
 
 }
@@ -0,0 +1,271 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.perkowitz.issho.util.MidiCaptureReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static javax.sound.midi.ShortMessage.*;
+
+/**
+ * CaptureApp decodes and filters midi capture files written by MidiCapture.
+ *
+ * Usage: CaptureApp [file [command args..]], e.g. "CaptureApp replay1.bin diff replay2.bin"
+ * With just a file, it opens it and prompts for commands; with a command, it runs it and exits.
+ */
+public class CaptureApp {
+
+    private String filename = null;
+
+
+    public static void main(String args[]) throws Exception {
+
+        CaptureApp captureApp = new CaptureApp();
+        if (args.length > 1) {
+            captureApp.filename = args[0];
+            List<String> commandArgs = Lists.newArrayList(args);
+            commandArgs.remove(0);
+            String command = commandArgs.remove(0);
+            captureApp.processCommand(command, commandArgs);
+            System.exit(0);
+        }
+        if (args.length > 0) {
+            captureApp.processCommand("open", Lists.newArrayList(args[0]));
+        }
+        captureApp.run();
+    }
+
+
+    public void run() {
+        getInput();
+    }
+
+    private void getInput() {
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+        String input = "";
+        while (true) {
+            try {
+                System.out.print("> ");
+                input = br.readLine();
+                if (input == null) {
+                    System.exit(0);
+                }
+                List<String> args = Lists.newArrayList(input.trim().split(" +"));
+                String command = args.get(0).toLowerCase();
+                args.remove(0);
+                processCommand(command, args);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void processCommand(String command, List<String> args) {
+
+        if (command.equals("end") || command.equals("q")) {
+            System.exit(0);
+
+        } else if (command.equals("open") || command.equals("o")) {
+            if (args.size() < 1) {
+                System.out.println("Usage: open <filename>");
+            } else {
+                filename = args.get(0);
+                summary();
+            }
+
+        } else if (command.equals("print") || command.equals("p")) {
+            print(args);
+
+        } else if (command.equals("stats") || command.equals("s")) {
+            summary();
+
+        } else if (command.equals("diff") || command.equals("d")) {
+            if (args.size() < 1) {
+                System.out.println("Usage: diff <other filename>");
+            } else {
+                diff(args.get(0));
+            }
+
+        } else if (command.equals("help")) {
+            System.out.println("Commands");
+            System.out.println("- open <filename>");
+            System.out.println("- stats");
+            System.out.println("- print [port=<name>] [dir=in|out] [type=note|cc|clock|realtime|other] [channel=<n>] [from=<sec>] [to=<sec>]");
+            System.out.println("- diff <other filename>");
+            System.out.println("- q");
+
+        } else if (command.length() > 0) {
+            System.out.printf("Unrecognized command: %s\n", command);
+        }
+    }
+
+    /**
+     * summary prints the ports in the file with message counts and the span of time covered.
+     */
+    private void summary() {
+        if (filename == null) {
+            System.out.println("No file open");
+            return;
+        }
+        try (MidiCaptureReader reader = new MidiCaptureReader(filename)) {
+            Map<Integer, long[]> counts = Maps.newTreeMap();
+            long count = 0;
+            long first = 0;
+            long last = 0;
+            MidiCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (count == 0) {
+                    first = record.getNanos();
+                }
+                last = record.getNanos();
+                count++;
+                long[] portCounts = counts.get(record.getPort());
+                if (portCounts == null) {
+                    portCounts = new long[2];
+                    counts.put(record.getPort(), portCounts);
+                }
+                portCounts[record.getDirection()]++;
+            }
+            System.out.printf("%s: %d messages over %.3f s, started %tc\n",
+                    filename, count, (last - first) / 1e9, reader.getStartMillis());
+            for (Map.Entry<Integer, long[]> entry : counts.entrySet()) {
+                System.out.printf("  %-24s in=%d out=%d\n", reader.portName(entry.getKey()), entry.getValue()[0], entry.getValue()[1]);
+            }
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    private void print(List<String> args) {
+        if (filename == null) {
+            System.out.println("No file open");
+            return;
+        }
+
+        Map<String, String> filters = Maps.newHashMap();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length == 2) {
+                filters.put(keyValue[0].toLowerCase(), keyValue[1].toLowerCase());
+            }
+        }
+        double from = filters.containsKey("from") ? Double.parseDouble(filters.get("from")) : 0;
+        double to = filters.containsKey("to") ? Double.parseDouble(filters.get("to")) : Double.MAX_VALUE;
+
+        try (MidiCaptureReader reader = new MidiCaptureReader(filename)) {
+            MidiCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                double seconds = (record.getNanos() - reader.getStartNanos()) / 1e9;
+                String port = reader.portName(record.getPort());
+                if (seconds < from || seconds > to
+                        || (filters.containsKey("port") && !port.toLowerCase().contains(filters.get("port")))
+                        || (filters.containsKey("dir") && !filters.get("dir").equals(record.isInbound() ? "in" : "out"))
+                        || (filters.containsKey("type") && !filters.get("type").equals(type(record)))
+                        || (filters.containsKey("channel") && (record.getStatus() >= 0xF0
+                                || record.getChannel() != Integer.parseInt(filters.get("channel"))))) {
+                    continue;
+                }
+                if (record.getStatus() >= 0xF0) {
+                    System.out.printf("%12.6f %-20s %-3s %-8s\n", seconds, port, record.isInbound() ? "in" : "out", record.typeName());
+                } else {
+                    System.out.printf("%12.6f %-20s %-3s %-8s ch=%-2d %3d %3d\n", seconds, port, record.isInbound() ? "in" : "out",
+                            record.typeName(), record.getChannel(), record.getData1(), record.getData2());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * diff compares the outbound messages of the open file with another capture (e.g. two replays of
+     * the same session), port by port and ignoring timestamps, and prints the first difference on each port.
+     */
+    private void diff(String otherFilename) {
+        if (filename == null) {
+            System.out.println("No file open");
+            return;
+        }
+        try {
+            Map<String, List<MidiCaptureReader.Record>> ours = outbound(filename);
+            Map<String, List<MidiCaptureReader.Record>> theirs = outbound(otherFilename);
+            Set<String> ports = Sets.newTreeSet(ours.keySet());
+            ports.addAll(theirs.keySet());
+
+            int differences = 0;
+            for (String port : ports) {
+                List<MidiCaptureReader.Record> a = ours.containsKey(port) ? ours.get(port) : Lists.<MidiCaptureReader.Record>newArrayList();
+                List<MidiCaptureReader.Record> b = theirs.containsKey(port) ? theirs.get(port) : Lists.<MidiCaptureReader.Record>newArrayList();
+                int count = Math.min(a.size(), b.size());
+                int index = 0;
+                while (index < count && sameMessage(a.get(index), b.get(index))) {
+                    index++;
+                }
+                if (index == count && a.size() == b.size()) {
+                    System.out.printf("  %-24s same (%d messages)\n", port, a.size());
+                    continue;
+                }
+                differences++;
+                System.out.printf("  %-24s differs at message %d (of %d and %d): %s / %s\n", port, index, a.size(), b.size(),
+                        index < a.size() ? describe(a.get(index)) : "(end)", index < b.size() ? describe(b.get(index)) : "(end)");
+            }
+            System.out.printf("%s\n", differences == 0 ? "Outputs match" : String.format("Outputs differ on %d port(s)", differences));
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    private static Map<String, List<MidiCaptureReader.Record>> outbound(String filename) throws IOException {
+        Map<String, List<MidiCaptureReader.Record>> records = Maps.newHashMap();
+        try (MidiCaptureReader reader = new MidiCaptureReader(filename)) {
+            MidiCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.isInbound()) {
+                    continue;
+                }
+                String port = reader.portName(record.getPort());
+                List<MidiCaptureReader.Record> portRecords = records.get(port);
+                if (portRecords == null) {
+                    portRecords = Lists.newArrayList();
+                    records.put(port, portRecords);
+                }
+                portRecords.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static boolean sameMessage(MidiCaptureReader.Record a, MidiCaptureReader.Record b) {
+        return a.getStatus() == b.getStatus() && a.getData1() == b.getData1() && a.getData2() == b.getData2();
+    }
+
+    private static String describe(MidiCaptureReader.Record record) {
+        if (record.getStatus() >= 0xF0) {
+            return record.typeName();
+        }
+        return String.format("%s ch=%d %d %d", record.typeName(), record.getChannel(), record.getData1(), record.getData2());
+    }
+
+    private static String type(MidiCaptureReader.Record record) {
+        switch (record.getCommand()) {
+            case NOTE_ON:
+            case NOTE_OFF:
+                return "note";
+            case CONTROL_CHANGE:
+                return "cc";
+            case TIMING_CLOCK:
+                return "clock";
+            default:
+                return record.getStatus() >= 0xF0 ? "realtime" : "other";
+        }
+    }
+
+}
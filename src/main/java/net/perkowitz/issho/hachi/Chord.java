@@ -18,6 +18,9 @@ import static net.perkowitz.issho.hachi.Chord.TransposeMode.NO_TRANSPOSE;
 
 /**
  * Created by optic on 1/14/17.
+ *
+ * Chord is mutable, for building up a chord as notes are played; modules get an immutable
+ * ChordSnapshot of it (see snapshot()).
  */
 public class Chord {
 
@@ -34,7 +37,7 @@ public class Chord {
     @Getter private List<Integer> baseNotes;
     private List<Integer> notes;
     @Getter private int transpose = 0;
-    private Integer[] noteMap = new Integer[12];
+    private int[] noteMap = new int[12];
 
 
 
@@ -89,6 +92,17 @@ public class Chord {
         return baseNotes.size();
     }
 
+    /**
+     * snapshot returns an immutable copy of the chord as it is now, with its note mapping precomputed.
+     */
+    public ChordSnapshot snapshot() {
+        return snapshot(0);
+    }
+
+    public ChordSnapshot snapshot(long version) {
+        return new ChordSnapshot(baseNotes, noteMap, transpose, version);
+    }
+
 
     /***** private implementation **********************************/
 
@@ -178,24 +192,24 @@ public class Chord {
 
     /***** note map types **********************************/
 
-    private Integer[] nearestNoteMap() {
-        Integer[] baseNoteMap = new Integer[12];
+    private int[] nearestNoteMap() {
+        boolean[] inChord = new boolean[12];
         for (int baseNote : baseNotes) {
-            baseNoteMap[baseNote] = baseNote;
+            inChord[baseNote] = true;
         }
 
-        Integer[] newNoteMap = new Integer[12];
+        int[] newNoteMap = new int[12];
         for (int n = 0; n < 12; n++) {
             int left = n;
             int right = (n + 1) % 12;
-            while (baseNoteMap[left] == null && baseNoteMap[right] == null && right != n) {
+            while (!inChord[left] && !inChord[right] && right != n) {
                 left = (left - 1 + 12) % 12;
                 right = (right + 1) % 12;
             }
-            if (baseNoteMap[left] != null) {
-                newNoteMap[n] = baseNoteMap[left];
-            } else if (baseNoteMap[right] != null) {
-                newNoteMap[n] = baseNoteMap[right];
+            if (inChord[left]) {
+                newNoteMap[n] = left;
+            } else if (inChord[right]) {
+                newNoteMap[n] = right;
             } else {
                 newNoteMap[n] = n;
             }
@@ -204,31 +218,26 @@ public class Chord {
         return newNoteMap;
     }
 
-    private Integer[] floorNoteMap() {
-        Integer[] newNoteMap = new Integer[12];
+    private int[] floorNoteMap() {
+        boolean[] inChord = new boolean[12];
         for (int baseNote : baseNotes) {
-            newNoteMap[baseNote] = baseNote;
+            inChord[baseNote] = true;
         }
 
+        int[] newNoteMap = new int[12];
         for (int n = 0; n < 12; n++) {
-            if (newNoteMap[n] == null) {
-                int left = (n - 1 + 12) % 12;
-                while (newNoteMap[left] == null && left != n) {
-                    left = (left - 1 + 12) % 12;
-                }
-                if (newNoteMap[left] != null) {
-                    newNoteMap[n] = newNoteMap[left];
-                } else {
-                    newNoteMap[n] = n;
-                }
+            int left = n;
+            while (!inChord[left] && (left - 1 + 12) % 12 != n) {
+                left = (left - 1 + 12) % 12;
             }
+            newNoteMap[n] = inChord[left] ? left : n;
         }
 
         return newNoteMap;
     }
 
-    private Integer[] roundRobinNoteMap() {
-        Integer[] newNoteMap = new Integer[12];
+    private int[] roundRobinNoteMap() {
+        int[] newNoteMap = new int[12];
         for (int n = 0; n < 12; n++) {
             newNoteMap[n] = baseNotes.get(n % baseNotes.size());
         }
@@ -1,6 +1,8 @@
 package net.perkowitz.issho.hachi;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import lombok.Getter;
 import lombok.Setter;
 
 import javax.sound.midi.MidiMessage;
@@ -9,6 +11,7 @@ import javax.sound.midi.ShortMessage;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import static javax.sound.midi.ShortMessage.CONTROL_CHANGE;
 import static javax.sound.midi.ShortMessage.NOTE_OFF;
@@ -16,8 +19,20 @@ import static javax.sound.midi.ShortMessage.NOTE_ON;
 
 /**
  * Created by optic on 1/14/17.
+ *
+ * ChordReceiver builds the current chord from the notes played on a keyboard. Each time the chord
+ * changes it makes an immutable, versioned ChordSnapshot and publishes it, so the clock thread never
+ * sees a chord that is partway through being changed on the midi input thread.
+ *
+ * While the clock is running, Chordables get the latest chord from deliver(), which the controller
+ * calls once per clock step, so a fast arpeggio sends them at most one chord per step; the chords
+ * they never saw are counted as skipped. While it's stopped there are no steps, so each new chord is
+ * delivered right away, on the midi input thread. Control changes other than
+ * the hold clear controller are ignored before any chord work is done.
+ *
+ * Notes played are also offered, with their arrival time, to any Recordables that are recording.
  */
-public class ChordReceiver implements Receiver {
+public class ChordReceiver implements Receiver, ChordReceiverMBean {
 
     public enum SustainToggleMode {
         NORMAL, HIGH_TOGGLE
@@ -26,23 +41,68 @@ public class ChordReceiver implements Receiver {
     private static int MIDI_REALTIME_COMMAND = 0xF0;
 
     private List<Chordable> chordables;
+    private List<Recordable> recordables = Lists.newArrayList();
     private Chord chord;
+    @Getter private volatile ChordSnapshot currentChord = ChordSnapshot.EMPTY;
+    private long version = 0;
+    private long deliveredVersion = 0;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder filtered = new LongAdder();
     private Set<Integer> currentlyHeldNotes = Sets.newHashSet();
     @Setter private boolean chordHold = true;
     @Setter private int holdClearControllerNumber = 64;
+    @Setter private volatile boolean clockRunning = false;
 
 
 
     public ChordReceiver(List<Chordable> chordables) {
-        this.chordables = chordables;
+        this.chordables = Lists.newArrayList(chordables);
         this.chord = new Chord();
     }
 
+    public void addRecordable(Recordable recordable) {
+        recordables.add(recordable);
+    }
+
+    /**
+     * deliver gives the Chordables the current chord if it has changed since the last delivery.
+     * The controller calls it at each clock step, before the modules advance.
+     */
+    public synchronized void deliver() {
+        ChordSnapshot snapshot = currentChord;
+        long snapshotVersion = snapshot.getVersion();
+        if (snapshotVersion == deliveredVersion) {
+            return;
+        }
+        if (snapshotVersion > deliveredVersion + 1) {
+            skipped.add(snapshotVersion - deliveredVersion - 1);
+        }
+        deliveredVersion = snapshotVersion;
+        delivered.increment();
+        for (int i = 0; i < chordables.size(); i++) {
+            chordables.get(i).setChord(snapshot);
+        }
+    }
+
+
+    /***** private implementation **************************************************************/
 
     private void sendChord() {
 //        System.out.printf("Chord: %s\n", chord);
-        for (Chordable chordable : chordables) {
-            chordable.setChord(chord);
+        version++;
+        ChordSnapshot snapshot = chord.snapshot(version);
+        currentChord = snapshot;
+        if (!clockRunning) {
+            deliver();
+        }
+    }
+
+
+    private void record(int note, int velocity) {
+        long nanos = System.nanoTime();
+        for (int i = 0; i < recordables.size(); i++) {
+            recordables.get(i).getRecorder().offer(LiveRecorder.KEYBOARD, note, velocity, nanos);
         }
     }
 
@@ -66,6 +126,7 @@ public class ChordReceiver implements Receiver {
                             }
                             currentlyHeldNotes.remove(note);
                         } else {
+                            record(note, shortMessage.getData2());
                             // as long as you hold down notes, you can add more to the chord; when you release all, next play will start a new chord
                             if (currentlyHeldNotes.isEmpty()) {
                                 chord.clear();
@@ -87,9 +148,11 @@ public class ChordReceiver implements Receiver {
                     case CONTROL_CHANGE:
 //                        System.out.printf("ChordReceiver MIDI CC: %d, %d, %d\n", shortMessage.getChannel(), shortMessage.getData1(), shortMessage.getData2());
                         int controllerNumber = shortMessage.getData1();
-                        if (controllerNumber == holdClearControllerNumber) {
-                            chord.clear();
+                        if (controllerNumber != holdClearControllerNumber) {
+                            filtered.increment();
+                            break;
                         }
+                        chord.clear();
                         sendChord();
                         break;
                     default:
@@ -103,5 +166,28 @@ public class ChordReceiver implements Receiver {
     }
 
 
+    /***** ChordReceiverMBean implementation **************************************************************/
+
+    public long getChordVersion() {
+        return currentChord.getVersion();
+    }
+
+    public long getDeliveredChords() {
+        return delivered.sum();
+    }
+
+    public long getSkippedChords() {
+        return skipped.sum();
+    }
+
+    public long getFilteredMessages() {
+        return filtered.sum();
+    }
+
+    public String getCurrentChordNotes() {
+        return currentChord.getBaseNotes().toString();
+    }
+
+
 
 }
@@ -0,0 +1,14 @@
+package net.perkowitz.issho.hachi;
+
+/**
+ * JMX view of the ChordReceiver's chord updates.
+ */
+public interface ChordReceiverMBean {
+
+    public long getChordVersion();
+    public long getDeliveredChords();
+    public long getSkippedChords();
+    public long getFilteredMessages();
+    public String getCurrentChordNotes();
+
+}
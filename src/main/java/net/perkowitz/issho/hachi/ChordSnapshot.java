@@ -0,0 +1,87 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ChordSnapshot is an immutable copy of a Chord, made by Chord.snapshot() when the chord changes,
+ * for the Chordable modules to read from the clock thread while the ChordReceiver builds the next one.
+ * The mapping for every midi note is precomputed into a 128-entry table, so mapNote is one array read.
+ * The version increases with each chord a ChordReceiver publishes.
+ */
+public final class ChordSnapshot {
+
+    public static final ChordSnapshot EMPTY = new Chord().snapshot();
+
+    private static final int NOTE_COUNT = 128;
+
+    @Getter private final List<Integer> baseNotes;
+    @Getter private final int transpose;
+    @Getter private final long version;
+    private final int[] noteMap;
+    private final byte[] noteTable = new byte[NOTE_COUNT];
+
+
+    ChordSnapshot(List<Integer> baseNotes, int[] noteMap, int transpose, long version) {
+        this.baseNotes = Collections.unmodifiableList(Lists.newArrayList(baseNotes));
+        this.noteMap = noteMap.clone();
+        this.transpose = transpose;
+        this.version = version;
+
+        // mapped notes go up to 131, so they're stored unsigned
+        for (int note = 0; note < NOTE_COUNT; note++) {
+            noteTable[note] = (byte) mapBaseNote(note);
+        }
+    }
+
+
+    public int mapNote(int note) {
+        if (note >= 0 && note < NOTE_COUNT) {
+            return noteTable[note] & 0xFF;
+        }
+        return mapBaseNote(note);
+    }
+
+    public boolean isEmpty() {
+        return baseNotes.isEmpty();
+    }
+
+    public int size() {
+        return baseNotes.size();
+    }
+
+
+    /***** private implementation **********************************/
+
+    private int mapBaseNote(int note) {
+        int octave = note / 12;
+        int baseNote = note % 12;
+        return (octave * 12) + noteMap[baseNote];
+    }
+
+
+    /***** overrides **********************************/
+
+    @Override
+    public String toString() {
+        return "Chord:" + baseNotes.toString();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (object instanceof ChordSnapshot) {
+            ChordSnapshot chord = (ChordSnapshot)object;
+            return this.baseNotes.equals(chord.baseNotes);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+}
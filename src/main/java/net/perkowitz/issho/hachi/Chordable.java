@@ -10,6 +10,6 @@ import java.util.List;
  */
 public interface Chordable extends Module {
 
-    public void setChord(Chord chord);
+    public void setChord(ChordSnapshot chord);
 
 }
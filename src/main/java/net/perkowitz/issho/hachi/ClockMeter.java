@@ -0,0 +1,93 @@
+package net.perkowitz.issho.hachi;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.perkowitz.issho.util.Histogram;
+
+/**
+ * ClockMeter tracks the tempo the controller is set to, estimates the tempo actually arriving
+ * as midi clock from the (smoothed) interval between pulses, and holds the controller's PulseClock
+ * lateness (how long after it was due each pulse was delivered).
+ */
+public class ClockMeter implements ClockMeterMBean {
+
+    private static final double SMOOTHING = 0.05;
+    private static final int PULSES_PER_BEAT = PulseClock.MIDI_PULSES_PER_BEAT;
+
+    @Setter private volatile int tempo = 0;
+    private volatile boolean running = false;
+    private volatile double smoothedIntervalNanos = 0;
+    private volatile long pulses = 0;
+    private long lastPulseNanos = 0;
+    private final Histogram pulseInterval = new Histogram();
+    @Getter private final Histogram pulseLateness = new Histogram();
+
+
+    public void setRunning(boolean running) {
+        this.running = running;
+        lastPulseNanos = 0;
+    }
+
+    /**
+     * pulse is called for each incoming midi clock pulse, always on the same thread.
+     */
+    public void pulse() {
+        long now = System.nanoTime();
+        if (lastPulseNanos > 0) {
+            long interval = now - lastPulseNanos;
+            pulseInterval.record(interval / 1000);
+            if (smoothedIntervalNanos == 0) {
+                smoothedIntervalNanos = interval;
+            } else {
+                smoothedIntervalNanos += (interval - smoothedIntervalNanos) * SMOOTHING;
+            }
+        }
+        lastPulseNanos = now;
+        pulses++;
+    }
+
+
+    /***** ClockMeterMBean implementation ***************/
+
+    public int getTempo() {
+        return tempo;
+    }
+
+    public double getEstimatedTempo() {
+        double interval = smoothedIntervalNanos;
+        return interval == 0 ? 0 : 60e9 / (interval * PULSES_PER_BEAT);
+    }
+
+    public long getPulses() {
+        return pulses;
+    }
+
+    public long getPulseIntervalP99Micros() {
+        return pulseInterval.percentile(99);
+    }
+
+    public long getPulseIntervalMaxMicros() {
+        return pulseInterval.getMax();
+    }
+
+    public long getPulseLatenessP99Micros() {
+        return pulseLateness.percentile(99);
+    }
+
+    public long getPulseLatenessMaxMicros() {
+        return pulseLateness.getMax();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void reset() {
+        pulseInterval.reset();
+        pulseLateness.reset();
+        smoothedIntervalNanos = 0;
+        lastPulseNanos = 0;
+        pulses = 0;
+    }
+
+}
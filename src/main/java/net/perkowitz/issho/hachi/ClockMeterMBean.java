@@ -0,0 +1,18 @@
+package net.perkowitz.issho.hachi;
+
+/**
+ * JMX view of the HachiController's clock.
+ */
+public interface ClockMeterMBean {
+
+    public int getTempo();
+    public double getEstimatedTempo();
+    public long getPulses();
+    public long getPulseIntervalP99Micros();
+    public long getPulseIntervalMaxMicros();
+    public long getPulseLatenessP99Micros();
+    public long getPulseLatenessMaxMicros();
+    public boolean isRunning();
+    public void reset();
+
+}
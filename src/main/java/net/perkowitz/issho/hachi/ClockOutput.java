@@ -0,0 +1,231 @@
+package net.perkowitz.issho.hachi;
+
+import net.perkowitz.issho.util.Histogram;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.concurrent.locks.LockSupport;
+
+import static javax.sound.midi.ShortMessage.*;
+
+/**
+ * ClockOutput makes Hachi the midi clock master while its internal clock runs. Its own thread sends
+ * 24 PPQN timing clock to each port at the deadlines of the PulseClock's internal timeline, plus that
+ * port's offset, so a port with a slow interface can be sent its clock early (negative offset) and
+ * everything lands together. Start, stop and continue (with song position) go out with the transport.
+ *
+ * Schedule jitter is how late each clock was handed to its port relative to its deadline. With output
+ * threads, that's when it went into the port's writer queue, not when the device got it.
+ */
+public class ClockOutput implements ClockOutputMBean {
+
+    private static final long IDLE_PARK_NANOS = 10000000;
+    private static final long START_LEAD_NANOS = 1000000;
+    private static final int MIDI_CLOCKS_PER_POSITION = 6;   // song position counts 16ths
+
+    private final String name;
+    private final Receiver[] ports;
+    private final long[] offsets;
+    private final long[] nextClocks;
+    private final long leadNanos;
+    private final MidiMessage clock;
+    private final MidiMessage start;
+    private final MidiMessage stop;
+    private final MidiMessage resume;
+
+    private PulseClock pulseClock = null;
+    private Thread thread = null;
+    private volatile boolean running = false;
+    private volatile boolean playing = false;
+
+    private final Histogram scheduleJitter = new Histogram();
+    private volatile long clocksSent = 0;
+
+
+    /**
+     * @param name used for the output thread
+     * @param ports where to send clock
+     * @param offsetMillis per port, when to send each clock relative to its pulse
+     */
+    public ClockOutput(String name, Receiver[] ports, double[] offsetMillis) {
+        this.name = name;
+        this.ports = ports;
+        this.offsets = new long[ports.length];
+        this.nextClocks = new long[ports.length];
+        long earliest = 0;
+        for (int i = 0; i < ports.length; i++) {
+            offsets[i] = (long) (offsetMillis[i] * 1000000);
+            earliest = Math.min(earliest, offsets[i]);
+        }
+        // start the timeline late enough that the earliest port still gets start before its first clock
+        this.leadNanos = START_LEAD_NANOS - earliest;
+
+        clock = message(TIMING_CLOCK);
+        start = message(START);
+        stop = message(STOP);
+        resume = message(CONTINUE);
+    }
+
+    /**
+     * start starts the output thread, following the given clock's internal timeline.
+     */
+    public synchronized void start(PulseClock pulseClock) {
+        this.pulseClock = pulseClock;
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * getLeadNanos is how far ahead of its first pulse the internal clock should be started.
+     */
+    public long getLeadNanos() {
+        return leadNanos;
+    }
+
+    /**
+     * sendStart sends start (or song position and continue) before the internal clock starts from
+     * the given pulse.
+     */
+    public synchronized void sendStart(boolean restart, long pulse) {
+        long nextClock = (pulse + PulseClock.SUBDIVISION - 1) / PulseClock.SUBDIVISION;
+        MidiMessage position = null;
+        if (!restart) {
+            // on to the next 16th, so the first clock after continue is on the song position
+            long beats = (nextClock + MIDI_CLOCKS_PER_POSITION - 1) / MIDI_CLOCKS_PER_POSITION;
+            nextClock = beats * MIDI_CLOCKS_PER_POSITION;
+            position = message(SONG_POSITION_POINTER, (int) (beats & 0x7F), (int) ((beats >> 7) & 0x7F));
+        }
+        for (int i = 0; i < ports.length; i++) {
+            nextClocks[i] = nextClock;
+            if (restart) {
+                ports[i].send(start, -1);
+            } else {
+                ports[i].send(position, -1);
+                ports[i].send(resume, -1);
+            }
+        }
+        playing = true;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public synchronized void sendStop() {
+        if (!playing) {
+            return;
+        }
+        playing = false;
+        for (Receiver port : ports) {
+            port.send(stop, -1);
+        }
+    }
+
+
+    /***** ClockOutputMBean implementation ***************/
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public long getClocksSent() {
+        return clocksSent;
+    }
+
+    public double getScheduleJitterMeanMicros() {
+        return scheduleJitter.getMean();
+    }
+
+    public long getScheduleJitterP99Micros() {
+        return scheduleJitter.percentile(99);
+    }
+
+    public long getScheduleJitterMaxMicros() {
+        return scheduleJitter.getMax();
+    }
+
+    public void reset() {
+        scheduleJitter.reset();
+        clocksSent = 0;
+    }
+
+
+    /***** output thread ***************/
+
+    private void loop() {
+        while (running) {
+            long wait = IDLE_PARK_NANOS;
+            synchronized (this) {
+                if (playing && pulseClock != null) {
+                    // the port whose next clock is due soonest
+                    int port = -1;
+                    long due = Long.MAX_VALUE;
+                    for (int i = 0; i < ports.length; i++) {
+                        long deadline = pulseClock.deadline(nextClocks[i] * PulseClock.SUBDIVISION);
+                        if (deadline >= 0 && deadline + offsets[i] < due) {
+                            port = i;
+                            due = deadline + offsets[i];
+                        }
+                    }
+                    if (port >= 0) {
+                        long now = System.nanoTime();
+                        if (now >= due) {
+                            ports[port].send(clock, -1);
+                            scheduleJitter.record((now - due) / 1000);
+                            clocksSent++;
+                            nextClocks[port]++;
+                            continue;
+                        }
+                        wait = due - now;
+                    }
+                }
+            }
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    private static MidiMessage message(int status) {
+        try {
+            return new ShortMessage(status);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static MidiMessage message(int status, int data1, int data2) {
+        try {
+            return new ShortMessage(status, data1, data2);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package net.perkowitz.issho.hachi;
+
+/**
+ * JMX view of the midi clock output.
+ */
+public interface ClockOutputMBean {
+
+    public boolean isPlaying();
+    public long getClocksSent();
+    public double getScheduleJitterMeanMicros();
+    public long getScheduleJitterP99Micros();
+    public long getScheduleJitterMaxMicros();
+    public void reset();
+
+}
@@ -0,0 +1,181 @@
+package net.perkowitz.issho.hachi;
+
+import lombok.Setter;
+import net.perkowitz.issho.util.MidiBatch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ClockPipeline runs a Task for each of a fixed number of indexes (one per clockable) on a small pool
+ * of worker threads plus the calling thread, and returns when they've all finished; so a pulse takes
+ * about as long as the slowest clockable rather than all of them added up.
+ *
+ * The midi each task sends is collected into that index's MidiBatch, and once every task is done the
+ * calling thread sends the batches in index order. So the output is in the same order whichever
+ * threads did the work and whenever they finished, and there's still one thread writing to the ports.
+ *
+ * With one thread, run() just calls the tasks in order and midi goes out as it's sent, as before,
+ * unless notesFirst is set: then the midi is batched either way, and every task's notes are sent
+ * before anything else. Nothing is allocated per run.
+ */
+public class ClockPipeline {
+
+    private static final int BATCH_CAPACITY = 64;
+    private static final int SPINS = 1000;
+
+    public interface Task {
+        public void run(int index);
+    }
+
+    private final Task task;
+    private final int count;
+    private final MidiBatch[] batches;
+    private final Thread[] workers;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile long generation = 0;
+    private volatile Thread caller = null;
+    private volatile boolean running = true;
+    @Setter private volatile boolean notesFirst = false;
+
+
+    /**
+     * @param name prefix for the worker thread names
+     * @param threads how many threads share the work, including the one calling run()
+     * @param count how many tasks there are in each run
+     * @param task runs each task
+     */
+    public ClockPipeline(String name, int threads, int count, Task task) {
+        this.task = task;
+        this.count = count;
+        threads = Math.max(1, Math.min(threads, count));
+        batches = new MidiBatch[count];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new MidiBatch(BATCH_CAPACITY);
+        }
+        workers = new Thread[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].setPriority(Thread.MAX_PRIORITY);
+            workers[i].start();
+        }
+    }
+
+    public int getThreads() {
+        return workers.length + 1;
+    }
+
+    /**
+     * run runs every task and sends their midi, in index order.
+     *
+     * @return how many messages were held back behind the notes (with notesFirst)
+     */
+    public int run() {
+        if (workers.length == 0) {
+            boolean collect = notesFirst;
+            for (int i = 0; i < count; i++) {
+                if (collect) {
+                    MidiBatch.collect(batches[i]);
+                }
+                runTask(i);
+            }
+            if (!collect) {
+                return 0;
+            }
+            MidiBatch.collect(null);
+            return flush(true);
+        }
+
+        // remaining before nextIndex, so a worker still leaving the last run can't take a task uncounted
+        caller = Thread.currentThread();
+        remaining.set(count);
+        nextIndex.set(0);
+        generation++;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        runTasks();
+
+        // wait for the workers to finish theirs
+        int spins = 0;
+        while (remaining.get() > 0) {
+            if (spins++ < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        caller = null;
+
+        return flush(notesFirst);
+    }
+
+    public void close() {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+
+    /***** private implementation ***************/
+
+    private void work() {
+        long seen = 0;
+        while (running) {
+            if (generation == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            seen = generation;
+            runTasks();
+        }
+    }
+
+    /**
+     * runTasks takes tasks until they've all been taken, collecting each one's midi into its batch.
+     */
+    private void runTasks() {
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < count) {
+            MidiBatch.collect(batches[index]);
+            runTask(index);
+            MidiBatch.collect(null);
+            if (remaining.decrementAndGet() == 0) {
+                Thread waiting = caller;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+            }
+        }
+    }
+
+    private int flush(boolean notesFirst) {
+        int deferred = 0;
+        if (notesFirst) {
+            for (MidiBatch batch : batches) {
+                deferred += batch.flushNotes();
+            }
+        }
+        for (MidiBatch batch : batches) {
+            batch.flush();
+        }
+        return deferred;
+    }
+
+    private void runTask(int index) {
+        try {
+            task.run(index);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
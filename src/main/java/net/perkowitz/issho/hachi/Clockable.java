@@ -5,9 +5,13 @@ package net.perkowitz.issho.hachi;
  */
 public interface Clockable {
 
+    // clock() is called on every pulse of the controller's clock; pulses run 0 to PULSES_PER_BEAT - 1
+    // within each beat, and a step is a 16th note
+    public static final int PULSES_PER_BEAT = 96;
+    public static final int PULSES_PER_STEP = PULSES_PER_BEAT / 4;
+
     public void start(boolean restart);
     public void stop();
-    public void tick(boolean andReset);
     public void clock(int measure, int beat, int pulse);
 
 }
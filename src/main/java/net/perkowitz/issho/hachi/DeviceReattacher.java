@@ -0,0 +1,106 @@
+package net.perkowitz.issho.hachi;
+
+import lombok.Setter;
+import net.perkowitz.issho.devices.GridDevice;
+import net.perkowitz.issho.util.MeteredReceiver;
+import net.perkowitz.issho.util.MidiDeviceRegistry;
+import net.perkowitz.issho.util.SwitchableReceiver;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.Receiver;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * DeviceReattacher remembers how each configured midi device was wired up, and when the
+ * MidiDeviceRegistry reports that a matching device has (re)appeared, it reopens it and
+ * restores the connection: outputs are swapped into their SwitchableReceiver, inputs are
+ * pointed back at their target receiver, and grid devices are redrawn by the HachiController.
+ */
+public class DeviceReattacher implements MidiDeviceRegistry.Listener {
+
+    private final List<Binding> bindings = new CopyOnWriteArrayList<>();
+    @Setter private HachiController controller = null;
+
+
+    /**
+     * bindOutput reattaches the named output device into the switchable receiver.
+     */
+    public void bindOutput(List<String> names, SwitchableReceiver output, GridDevice gridDevice) {
+        bindings.add(new Binding(names, true, output, null, gridDevice));
+    }
+
+    /**
+     * bindInput points the named input device's transmitter at target when it reappears.
+     */
+    public void bindInput(List<String> names, Receiver target, GridDevice gridDevice) {
+        bindings.add(new Binding(names, false, null, target, gridDevice));
+    }
+
+
+    /***** MidiDeviceRegistry.Listener implementation ***************/
+
+    public void deviceAdded(MidiDeviceRegistry.Entry entry) {
+        for (Binding binding : bindings) {
+            if (!entry.matches(binding.names, binding.isOutput, !binding.isOutput)) {
+                continue;
+            }
+            MidiDevice device = entry.getDevice();
+            try {
+                device.open();
+                if (binding.isOutput) {
+                    binding.output.setReceiver(device.getReceiver());
+                } else {
+                    if (binding.target instanceof MeteredReceiver) {
+                        ((MeteredReceiver) binding.target).setSource(device);
+                    }
+                    device.getTransmitter().setReceiver(binding.target);
+                }
+                System.out.printf("Reattached midi device: %s\n", entry);
+                if (binding.gridDevice != null && controller != null) {
+                    controller.reattach(binding.gridDevice);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void deviceRemoved(MidiDeviceRegistry.Entry entry) {
+        for (Binding binding : bindings) {
+            if (!entry.matches(binding.names, binding.isOutput, !binding.isOutput)) {
+                continue;
+            }
+            System.out.printf("Lost midi device: %s\n", entry);
+            if (binding.isOutput) {
+                binding.output.setReceiver(null);
+            }
+            try {
+                entry.getDevice().close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /***** binding ***************/
+
+    private static class Binding {
+
+        private final List<String> names;
+        private final boolean isOutput;
+        private final SwitchableReceiver output;
+        private final Receiver target;
+        private final GridDevice gridDevice;
+
+        public Binding(List<String> names, boolean isOutput, SwitchableReceiver output, Receiver target, GridDevice gridDevice) {
+            this.names = names;
+            this.isOutput = isOutput;
+            this.output = output;
+            this.target = target;
+            this.gridDevice = gridDevice;
+        }
+    }
+
+}
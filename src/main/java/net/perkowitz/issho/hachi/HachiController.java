@@ -1,20 +1,35 @@
 package net.perkowitz.issho.hachi;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import lombok.Getter;
 import lombok.Setter;
 import net.perkowitz.issho.devices.*;
+import net.perkowitz.issho.hachi.events.ClockEvent;
+import net.perkowitz.issho.hachi.events.DrawEvent;
+import net.perkowitz.issho.hachi.events.HachiEvents;
+import net.perkowitz.issho.hachi.modules.MidiModule;
 import net.perkowitz.issho.hachi.modules.Module;
 import net.perkowitz.issho.hachi.modules.shihai.ShihaiModule;
+import net.perkowitz.issho.util.HistogramMeter;
+import net.perkowitz.issho.util.MidiCapture;
+import net.perkowitz.issho.util.MidiRouter;
+import net.perkowitz.issho.util.PortMeter;
 import net.perkowitz.issho.util.Terminal;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
+import java.lang.management.ManagementFactory;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static javax.sound.midi.ShortMessage.*;
 
@@ -23,46 +38,66 @@ import static javax.sound.midi.ShortMessage.*;
  */
 public class HachiController implements Clockable, Receiver, ValueSettable {
 
-    @Getter @Setter private static boolean debugMode = false;
-    @Getter @Setter private static boolean sendMidiRealtime = false;
+    @Getter @Setter private boolean debugMode = false;
+    @Getter @Setter private boolean sendMidiRealtime = false;
 
     private static int STEP_MIN = 0;
     private static int STEP_MAX = 110;
     private static int RESET_MIN = 111;
     private static int RESET_MAX = 127;
     private static int MIDI_REALTIME_COMMAND = 0xF0;
+    private static String METRICS_DOMAIN = "net.perkowitz.issho";
 
     private int triggerChannel = 9;//15;
     private int stepNote = 65;//36;
-    private int midiClockDivider = 6;
-    private int midiClockCount = 0;
-    private int clockMeasure = 0;
-    private int clockBeat = 0;
-    private int clockPulse = 0;
-    private int clockPulsesPerBeat = 24;
     private int clockBeatsPerMeasure = 4;
 
     private Module[] modules = null;
-    private GridDevice[] gridDevices;
-    private HachiDeviceManager[] hachiDeviceManagers;
+    @Getter private GridDevice[] gridDevices;
+    @Getter private HachiDeviceManager[] hachiDeviceManagers;
     private MultiDisplay[] displays;
-    private Receiver outputReceiver = null;
 
     private List<Clockable> clockables = Lists.newArrayList();
+    private HistogramMeter[] clockableMeters;
+    private MultiDisplay[] clockableDisplays;
     private List<Triggerable> triggerables = Lists.newArrayList();
     private List<Chordable> chordables = Lists.newArrayList();
     private ShihaiModule shihaiModule = null;
     @Getter private ChordReceiver chordReceiver;
-
-    private static CountDownLatch stop;
-    private static Timer timer = null;
+    @Getter private Receiver outputReceiver = null;
+    @Setter private MidiRouter midiRouter = null;
+    @Setter private HachiRandom.Rig randomRig = null;   // the rig's generators, rewound on restart when frozen
+    @Getter @Setter private HachiEvents events = null;
+    @Setter private String metricsName = null;   // set when several rigs share a JVM, to keep their MBeans apart
+
+    private CountDownLatch stop;
+    private PulseClock pulseClock = null;
+    private ClockPipeline clockPipeline = null;
+    @Setter private int clockThreads = 1;   // threads clocking the modules in parallel
+    private int pipelineMeasure, pipelineBeat, pipelinePulse;
+    private long[] clockableNanos;
+    @Getter private TickBudget tickBudget;
+    private final AtomicBoolean redrawQueued = new AtomicBoolean(false);
+    private final ExecutorService redrawExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hachi-redraw");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    @Setter private ClockOutput clockOutput = null;
     @Getter private boolean clockRunning = false;
     private boolean midiClockRunning = false;
-    private int tickCount = 0;
     @Setter private boolean midiContinueAsStart = true;
+    private long seekPulse = -1;   // from song position pointer while stopped, applied on continue
 
     private int tempo = 120;
-    private int tempoIntervalInMillis = 125 * 120 / tempo;
+
+    @Getter private ClockMeter clockMeter = new ClockMeter();
+    private Map<String, PortMeter> portMeters = Maps.newLinkedHashMap();
+    private Map<String, Object> otherMetrics = Maps.newLinkedHashMap();
+    private List<ObjectName> registeredMetrics = Lists.newArrayList();
+    private MidiCapture capture = null;
 
 
     public HachiController(Module[] modules, GridDevice[] gridDevices, CountDownLatch stop, Receiver outputReceiver) {
@@ -97,6 +132,23 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
         }
 
         chordReceiver = new ChordReceiver(chordables);
+        for (Module module : modules) {
+            if (module instanceof Recordable) {
+                chordReceiver.addRecordable((Recordable) module);
+            }
+        }
+        clockableMeters = new HistogramMeter[clockables.size()];
+        clockableDisplays = new MultiDisplay[clockables.size()];
+        for (int i = 0, c = 0; i < modules.length; i++) {
+            if (modules[i] instanceof Clockable) {
+                clockableMeters[c] = new HistogramMeter();
+                clockableDisplays[c] = displays[i];
+                c++;
+            }
+        }
+        clockableNanos = new long[clockables.size()];
+        tickBudget = new TickBudget(clockableDisplays);
+        clockMeter.setTempo(tempo);
 
         this.gridDevices = gridDevices;
         hachiDeviceManagers = new HachiDeviceManager[gridDevices.length];
@@ -128,17 +180,34 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
         }
 
         startTimer();
+        registerMetrics();
 
     }
 
     public void pressPlay() {
         clockRunning = !clockRunning;
         if (clockRunning) {
-            start(true);
+            // from the top, or continuing from a song position received while stopped
+            boolean restart = seekPulse < 0;
+            start(restart);
             for (Clockable clockable: clockables) {
-                clockable.start(true);
+                clockable.start(restart);
+            }
+            if (!restart) {
+                seekClockables(seekPulse);
+                seekPulse = -1;
+            }
+            if (clockOutput != null) {
+                clockOutput.sendStart(restart, pulseClock.getPulse());
+                pulseClock.runInternal(restart, clockOutput.getLeadNanos());
+            } else {
+                pulseClock.runInternal(restart);
             }
         } else {
+            pulseClock.halt();
+            if (clockOutput != null) {
+                clockOutput.sendStop();
+            }
             stop();
             for (Clockable clockable: clockables) {
                 clockable.stop();
@@ -155,8 +224,133 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
         return displays[index];
     }
 
+    /**
+     * reattach restores a grid device whose midi connection was lost and has been reopened.
+     *
+     * @param gridDevice
+     */
+    public void reattach(GridDevice gridDevice) {
+        for (HachiDeviceManager hachiDeviceManager : hachiDeviceManagers) {
+            if (hachiDeviceManager.getGridDevice() == gridDevice) {
+                System.out.printf("Reattaching grid device: %s\n", gridDevice);
+                hachiDeviceManager.reattach();
+            }
+        }
+    }
+
+    /**
+     * setLoadShedding turns on or off shedding display work when the clock is overloaded; late
+     * pulses are counted either way.
+     */
+    public void setLoadShedding(boolean loadShedding) {
+        tickBudget.setShedding(loadShedding);
+    }
+
+    /**
+     * addPortMeter adds the meter for a midi port or grid device, to be registered
+     * with the other metrics when the controller runs.
+     *
+     * @param name
+     * @param portMeter
+     */
+    public void addPortMeter(String name, PortMeter portMeter) {
+        portMeters.put(name, portMeter);
+    }
+
+    /**
+     * addMetrics adds any other MBean to be registered with the metrics when the controller runs.
+     *
+     * @param properties the key properties for its ObjectName, e.g. "type=Coalescer,name=knobby"
+     * @param mbean
+     */
+    public void addMetrics(String properties, Object mbean) {
+        otherMetrics.put(properties, mbean);
+    }
+
+    /**
+     * setCapture sets the capture for the controls and also has each grid record its pad and
+     * button events to it, as "gridN events".
+     */
+    public void setCapture(MidiCapture capture) {
+        this.capture = capture;
+        for (int i = 0; i < hachiDeviceManagers.length; i++) {
+            hachiDeviceManagers[i].setCapture(capture, "grid" + i + " events");
+        }
+    }
+
     /***** private implementation ***************/
 
+    /**
+     * registerMetrics exposes the clock, chord updates, per-clockable tick times, port meters and module
+     * save/load times as MBeans under net.perkowitz.issho, for watching from JConsole or VisualVM.
+     */
+    private void registerMetrics() {
+        register("type=Clock", clockMeter);
+        register("type=Chords", chordReceiver);
+        register("type=TickBudget", tickBudget);
+        if (capture != null) {
+            register("type=Capture", capture);
+        }
+        if (clockOutput != null) {
+            register("type=ClockOutput", clockOutput);
+        }
+        for (int i = 0; i < clockables.size(); i++) {
+            register("type=Clockable,name=" + ObjectName.quote(i + ":" + clockableName(clockables.get(i))), clockableMeters[i]);
+        }
+        for (Map.Entry<String, PortMeter> entry : portMeters.entrySet()) {
+            register("type=Port,name=" + ObjectName.quote(entry.getKey()), entry.getValue());
+        }
+        for (Map.Entry<String, Object> entry : otherMetrics.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+        for (int i = 0; i < modules.length; i++) {
+            if (modules[i] instanceof MidiModule && modules[i] instanceof Saveable) {
+                MidiModule module = (MidiModule) modules[i];
+                String name = ObjectName.quote(i + ":" + module.name());
+                register("type=Save,name=" + name, module.getSaveMeter());
+                register("type=Load,name=" + name, module.getLoadMeter());
+            }
+            if (modules[i] instanceof MidiModule && ((MidiModule) modules[i]).getPressureCoalescer() != null) {
+                MidiModule module = (MidiModule) modules[i];
+                register("type=Coalescer,name=" + ObjectName.quote(i + ":" + module.name()), module.getPressureCoalescer());
+            }
+        }
+    }
+
+    private String clockableName(Clockable clockable) {
+        if (clockable instanceof Module) {
+            return ((Module) clockable).name();
+        }
+        return clockable.getClass().getSimpleName();
+    }
+
+    private void register(String properties, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String rig = metricsName == null ? "" : "rig=" + ObjectName.quote(metricsName) + ",";
+            ObjectName name = new ObjectName(METRICS_DOMAIN + ":" + rig + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+            registeredMetrics.add(name);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void unregisterMetrics() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredMetrics) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        registeredMetrics.clear();
+    }
+
     private void shutdown() {
         for (Module module : modules) {
             module.shutdown();
@@ -167,7 +361,20 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
         for (GridDevice gridDevice : gridDevices) {
             gridDevice.initialize();
         }
-        timer.cancel();
+        pulseClock.stop();
+        clockPipeline.close();
+        redrawExecutor.shutdown();
+        if (clockOutput != null) {
+            clockOutput.sendStop();
+            clockOutput.close();
+        }
+        unregisterMetrics();
+        if (midiRouter != null) {
+            midiRouter.drain();
+        }
+        if (capture != null) {
+            capture.stop();
+        }
         stop.countDown();
     }
 
@@ -179,29 +386,142 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
 
     public void startTimer() {
 
-        if (timer != null) {
-            timer.cancel();
+        if (pulseClock != null) {
+            pulseClock.stop();
+        }
+        if (clockPipeline == null) {
+            clockPipeline = new ClockPipeline(metricsName == null ? "hachi-clockables" : "hachi-clockables-" + metricsName,
+                    clockThreads, clockables.size(), new ClockPipeline.Task() {
+                public void run(int index) {
+                    clockClockable(index);
+                }
+            });
         }
 
-        timer = new Timer();
+        pulseClock = new PulseClock(new PulseClock.Listener() {
+            public void pulse(long pulse) {
+                onPulse(pulse);
+            }
+        }, metricsName == null ? "hachi-clock" : "hachi-clock-" + metricsName, tempo, clockMeter.getPulseLateness());
+        pulseClock.start();
+        if (clockOutput != null) {
+            clockOutput.start(pulseClock);
+        }
+    }
+
+    /**
+     * clockClockable clocks one clockable at the current pulse; the clock pipeline calls it for each.
+     */
+    private void clockClockable(int i) {
+        MultiDisplay.Tally tally = HachiEvents.isEnabled(events) ? MultiDisplay.startTally() : null;
+        long start = System.nanoTime();
+        boolean clockWork = MultiDisplay.enterClockWork();
+        try {
+            clockables.get(i).clock(pipelineMeasure, pipelineBeat, pipelinePulse);
+        } finally {
+            MultiDisplay.exitClockWork(clockWork);
+            if (tally != null) {
+                MultiDisplay.stopTally();
+            }
+        }
+        clockableMeters[i].recordSince(start);
+        clockableNanos[i] = System.nanoTime() - start;
+        if (tally != null) {
+            DrawEvent.record(clockableName(clockables.get(i)), tally.getPads(), tally.getNanos());
+        }
+    }
 
-        timer.scheduleAtFixedRate(new TimerTask() {
+    /**
+     * seek moves the clock to the given pulse; the clockables are moved right away if the clock is
+     * running (holding the clock so no pulse is delivered in between), otherwise when it continues
+     * (since starting them resets their position). Devices following the clock output are moved too.
+     */
+    private void seek(final long pulse) {
+        pulseClock.betweenPulses(new Runnable() {
             public void run() {
-                if (clockRunning) {
-                    tick(tickCount % 16 == 0);
-                    tickCount++;
+                pulseClock.seek(pulse);
+                if (midiClockRunning) {
+                    seekClockables(pulse);
+                    if (clockOutput != null && clockOutput.isPlaying()) {
+                        // song position is only followed while stopped
+                        clockOutput.sendStop();
+                        clockOutput.sendStart(false, pulseClock.getPulse());
+                    }
+                } else {
+                    seekPulse = pulse;
                 }
+            }
+        });
+    }
 
-                if (shihaiModule != null && shihaiModule.tempo() != tempo) {
-                    tempo = shihaiModule.tempo();
-                    tempoIntervalInMillis = 125 * 120 / tempo;
-                    timer.cancel();
-                    timer = null;
-                    startTimer();
-                }
+    private void seekClockables(long pulse) {
+        long songStep = (pulse + PULSES_PER_STEP - 1) / PULSES_PER_STEP;
+        int stepsPerMeasure = clockBeatsPerMeasure * PULSES_PER_BEAT / PULSES_PER_STEP;
+        int measure = (int) (songStep / stepsPerMeasure);
+        int step = (int) (songStep % stepsPerMeasure);
+        for (Clockable clockable : clockables) {
+            if (clockable instanceof Seekable) {
+                ((Seekable) clockable).seek(measure, step, songStep);
+            }
+        }
+    }
+
+    /**
+     * onPulse turns a pulse of the timeline into measure, beat and pulse for the clockables.
+     */
+    private void onPulse(long pulse) {
+        if (shihaiModule != null && shihaiModule.tempo() != tempo) {
+            tempo = shihaiModule.tempo();
+            clockMeter.setTempo(tempo);
+            pulseClock.setTempo(tempo);
+        }
 
+        long due = pulseClock.deadline(pulse);
+        long start = due >= 0 ? due : System.nanoTime();
+        long beats = pulse / PULSES_PER_BEAT;
+        clock((int) (beats / clockBeatsPerMeasure), (int) (beats % clockBeatsPerMeasure), (int) (pulse % PULSES_PER_BEAT));
+        if (midiClockRunning) {
+            checkBudget(start);
+        }
+    }
+
+    /**
+     * checkBudget has the tick budget check the pulse just done against the next pulse's deadline,
+     * and applies any change in what's being shed.
+     */
+    private void checkBudget(long startNanos) {
+        long period = pulseClock.getPeriod();
+        if (period <= 0) {
+            return;
+        }
+        int slowest = 0;
+        for (int i = 1; i < clockableNanos.length; i++) {
+            if (clockableNanos[i] > clockableNanos[slowest]) {
+                slowest = i;
+            }
+        }
+        String slowestName = clockables.size() > 0 ? clockableName(clockables.get(slowest)) : null;
+        if (tickBudget.pulseDone(startNanos, period, slowestName)) {
+            applyShed();
+        }
+    }
+
+    private void applyShed() {
+        if (clockPipeline == null) {
+            return;
+        }
+        clockPipeline.setNotesFirst(tickBudget.isShedding(TickBudget.Shed.CCS));
+        if (!tickBudget.isShedding(TickBudget.Shed.LEDS) && tickBudget.stale()) {
+            // not on the clock thread, which has just caught up
+            if (!redrawExecutor.isShutdown() && redrawQueued.compareAndSet(false, true)) {
+                redrawExecutor.execute(new Runnable() {
+                    public void run() {
+                        redrawQueued.set(false);
+                        redraw();
+                    }
+                });
             }
-        }, tempoIntervalInMillis, tempoIntervalInMillis);
+        }
     }
 
     public void processCommand(String command) {
@@ -223,9 +543,12 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
 
     public void start(boolean restart) {
         midiClockRunning = true;
-        if (restart) {
-            tickCount = 0;
+        clockMeter.setRunning(true);
+        if (restart && randomRig != null) {
+            randomRig.restart();
         }
+        chordReceiver.setClockRunning(true);
+        chordReceiver.deliver();
         for (Clockable clockable : clockables) {
             clockable.start(restart);
         }
@@ -233,29 +556,39 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
 
     public void stop() {
         midiClockRunning = false;
+        clockMeter.setRunning(false);
+        // chords are delivered as they're played until the clock starts again
+        chordReceiver.setClockRunning(false);
+        chordReceiver.deliver();
+        tickBudget.recover();
+        applyShed();
         for (Clockable clockable : clockables) {
             clockable.stop();
         }
     }
 
-    public void tick(boolean andReset) {
+    public void clock(int measure, int beat, int pulse) {
         if (midiClockRunning) {
-            for (Clockable clockable : clockables) {
-                clockable.tick(andReset);
+            ClockEvent clockEvent = ClockEvent.start(events);
+            if (pulse % PULSES_PER_STEP == 0) {
+                chordReceiver.deliver();
             }
-            for (HachiDeviceManager hachiDeviceManager : hachiDeviceManagers) {
-                hachiDeviceManager.textClock("");
+            pipelineMeasure = measure;
+            pipelineBeat = beat;
+            pipelinePulse = pulse;
+            int deferred = clockPipeline.run();
+            if (deferred > 0) {
+                tickBudget.deferred(deferred);
             }
-        }
-    }
-
-    public void clock(int measure, int beat, int pulse) {
-        if (midiClockRunning) {
-            for (Clockable clockable : clockables) {
-                clockable.clock(measure, beat, pulse);
+            if (pulse == 0 && tickBudget.isShedding(TickBudget.Shed.TEXT)) {
+                tickBudget.textShed();
+            } else if (pulse == 0) {
+                for (HachiDeviceManager hachiDeviceManager : hachiDeviceManagers) {
+                    hachiDeviceManager.textClock(String.format("%03d:%02d:%02d", measure, measure % 8, beat));
+                }
             }
-            for (HachiDeviceManager hachiDeviceManager : hachiDeviceManagers) {
-                hachiDeviceManager.textClock(String.format("%03d:%02d:%02d", measure, measure % 8, beat));
+            if (clockEvent != null) {
+                clockEvent.end(measure, beat, pulse, clockables.size());
             }
         }
 
@@ -295,48 +628,33 @@ public class HachiController implements Clockable, Receiver, ValueSettable {
                 switch (status) {
                     case START:
 //                        System.out.println("START");
-                        midiClockCount = 0;
-                        clockMeasure = clockBeat = clockPulse = 0;
+                        seekPulse = -1;
+                        pulseClock.follow(true);
                         this.start(true);
                         break;
                     case STOP:
 //                        System.out.println("STOP");
+                        pulseClock.halt();
                         this.stop();
                         break;
                     case CONTINUE:
 //                        System.out.println("CONTINUE");
-                        midiClockCount = 0;
-                        clockMeasure = clockBeat = clockPulse = 0;
-                        this.start(midiContinueAsStart);
+                        boolean restart = midiContinueAsStart && seekPulse < 0;
+                        pulseClock.follow(restart);
+                        this.start(restart);
+                        if (seekPulse >= 0) {
+                            seekClockables(seekPulse);
+                            seekPulse = -1;
+                        }
+                        break;
+                    case SONG_POSITION_POINTER:
+                        // position is in 16th notes
+                        long position = shortMessage.getData1() | (shortMessage.getData2() << 7);
+                        seek(position * PULSES_PER_STEP);
                         break;
                     case TIMING_CLOCK:
-//                        System.out.println("TICK");
-//                        System.out.printf("  Tick: %d, %d\n", midiClockCount, tickCount);
-                        if (midiClockCount % midiClockDivider == 0) {
-                            boolean andReset = (tickCount % 16 == 0);
-//                            this.tick(andReset);
-//                            System.out.printf("  Sending tick, reset=%s\n", andReset);
-                            tickCount++;
-                        }
-
-                        this.clock(clockMeasure, clockBeat, clockPulse);
-//                        if (clockPulse == 0) {
-//                            System.out.printf("  Clock: %04d:%02d:%02d\n", clockMeasure, clockBeat, clockPulse);
-//                        }
-                        clockPulse++;
-                        if (clockPulse % clockPulsesPerBeat == 0 && clockPulse > 0) {
-                            clockPulse = 0;
-                            clockBeat++;
-//                            System.out.println("  Incrementing clockBeat");
-                        }
-                        if (clockBeat % clockBeatsPerMeasure == 0 && clockBeat > 0) {
-                            clockBeat = 0;
-                            clockMeasure++;
-//                            System.out.println("  Incrementing clockMeasure");
-                        }
-
-
-                        midiClockCount++;
+                        clockMeter.pulse();
+                        pulseClock.midiClock(System.nanoTime());
                         break;
                     default:
 //                        System.out.printf("REALTIME: %d\n", status);
@@ -1,11 +1,19 @@
 package net.perkowitz.issho.hachi;
 
 import lombok.Getter;
+import lombok.Setter;
 import net.perkowitz.issho.devices.*;
+import net.perkowitz.issho.hachi.events.SelectModuleEvent;
 import net.perkowitz.issho.hachi.modules.Module;
 import net.perkowitz.issho.hachi.modules.TextDisplay;
+import net.perkowitz.issho.util.MidiCapture;
+import net.perkowitz.issho.util.PortMeter;
 import net.perkowitz.issho.util.Terminal;
 
+import javax.sound.midi.ShortMessage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static net.perkowitz.issho.hachi.HachiUtil.*;
 
 /**
@@ -19,8 +27,12 @@ public class HachiDeviceManager implements GridListener {
     private GridListener[] moduleListeners = null;
     private GridListener activeListener = null;
     private GridDisplay display;
-    private GridDevice gridDevice;
+    @Getter private GridDevice gridDevice;
     private HachiController hachiController;
+    private MidiCapture capture = null;
+    private int capturePort = 0;
+    private Map<String, Long> pressTimes = new ConcurrentHashMap<>();
+    @Setter private PortMeter inputMeter = null;
 
 
     public HachiDeviceManager(GridDevice gridDevice, Module[] modules, HachiController hachiController) {
@@ -55,19 +67,48 @@ public class HachiDeviceManager implements GridListener {
                 }
             }
 
+            SelectModuleEvent event = SelectModuleEvent.start(hachiController.getEvents());
             display = hachiController.getDisplay(index);
+            MultiDisplay.Tally tally = event != null ? MultiDisplay.startTally() : null;
             activeModuleIndex = index;
             activeModule = modules[activeModuleIndex];
             activeListener = moduleListeners[index];
-            activeModule.redraw();
-            redraw();
+            try {
+                activeModule.redraw();
+                redraw();
+            } finally {
+                if (tally != null) {
+                    MultiDisplay.stopTally();
+                }
+            }
+            if (event != null) {
+                event.end(gridDevice.toString(), index, activeModule.name(), tally.getPads());
+            }
         }
     }
 
+    /**
+     * setCapture records this device's pad and button events to the capture under the given port name,
+     * encoded as VirtualGridDevice.dispatch expects so a session can be replayed.
+     */
+    public void setCapture(MidiCapture capture, String portName) {
+        this.capturePort = capture.port(portName);
+        this.capture = capture;
+    }
+
     public void shutdown() {
         display.initialize();
     }
 
+    /**
+     * reattach re-initializes the grid device (e.g. after it was unplugged and came back)
+     * and redraws the active module onto it.
+     */
+    public void reattach() {
+        gridDevice.initialize();
+        selectModule(activeModuleIndex);
+    }
+
     public void redraw() {
 
         // modules
@@ -86,7 +127,7 @@ public class HachiDeviceManager implements GridListener {
             display.setButton(PLAY_BUTTON, COLOR_UNSET);
         }
 
-        if (HachiController.isDebugMode()) {
+        if (hachiController.isDebugMode()) {
             display.setButton(EXIT_BUTTON, COLOR_UNSET);
         }
 
@@ -113,24 +154,80 @@ public class HachiDeviceManager implements GridListener {
 
     /***** GridListener implementation ***************/
 
+    // grid input arrives on the devices' threads, so modules draw random values from their input streams (see HachiRandom),
+    // and notes they record are compensated for this grid's input latency (see LiveRecorder)
+
     public void onPadPressed(GridPad pad, int velocity) {
+        capturePad(pad, Math.max(1, velocity));
 //        System.out.printf("Hachi padPressed: %s, %d\n", pad, velocity);
         if (activeListener != null) {
-            activeListener.onPadPressed(pad, velocity);
+            boolean input = HachiRandom.enterInput();
+            PortMeter meter = LiveRecorder.enterPads(inputMeter);
+            try {
+                activeListener.onPadPressed(pad, velocity);
+            } finally {
+                HachiRandom.exitInput(input);
+                LiveRecorder.exitPads(meter);
+            }
         }
     }
 
     public void onPadReleased(GridPad pad) {
+        capturePad(pad, 0);
 //        System.out.printf("Hachi padRelease: %s\n", pad);
         if (activeListener != null) {
-            activeListener.onPadReleased(pad);
+            boolean input = HachiRandom.enterInput();
+            PortMeter meter = LiveRecorder.enterPads(inputMeter);
+            try {
+                activeListener.onPadReleased(pad);
+            } finally {
+                HachiRandom.exitInput(input);
+                LiveRecorder.exitPads(meter);
+            }
+        }
+    }
+
+    public void onPadPressure(GridPad pad, int value) {
+        capturePressure(pad, value);
+        if (activeListener != null) {
+            boolean input = HachiRandom.enterInput();
+            PortMeter meter = LiveRecorder.enterPads(inputMeter);
+            try {
+                activeListener.onPadPressure(pad, value);
+            } finally {
+                HachiRandom.exitInput(input);
+                LiveRecorder.exitPads(meter);
+            }
         }
     }
 
     public void onButtonPressed(GridButton button, int velocity) {
+        boolean input = HachiRandom.enterInput();
+        PortMeter meter = LiveRecorder.enterPads(inputMeter);
+        try {
+            buttonPressed(button, velocity);
+        } finally {
+            HachiRandom.exitInput(input);
+            LiveRecorder.exitPads(meter);
+        }
+    }
+
+    public void onButtonReleased(GridButton button) {
+        boolean input = HachiRandom.enterInput();
+        PortMeter meter = LiveRecorder.enterPads(inputMeter);
+        try {
+            buttonReleased(button);
+        } finally {
+            HachiRandom.exitInput(input);
+            LiveRecorder.exitPads(meter);
+        }
+    }
+
+    private void buttonPressed(GridButton button, int velocity) {
+        captureButton(button, Math.max(1, velocity));
 //        System.out.printf("Hachi buttonPressed: %s, %d\n", button, velocity);
         GridControl control = new GridControl(button, button.getIndex());
-        control.press();
+        control.press(pressTimes);
         if (button.getSide() == HachiUtil.MODULE_BUTTON_SIDE && button.getIndex() < modules.length) {
             // top row used for module switching
             selectModule(button.getIndex());
@@ -150,15 +247,16 @@ public class HachiDeviceManager implements GridListener {
         }
     }
 
-    public void onButtonReleased(GridButton button) {
+    private void buttonReleased(GridButton button) {
+        captureButton(button, 0);
 //        System.out.printf("Hachi buttonReleased: %s\n", button);
         GridControl control = new GridControl(button, button.getIndex());
-        Long elapsed = control.release();
+        Long elapsed = control.release(pressTimes);
         if (button.getSide() == HachiUtil.MODULE_BUTTON_SIDE) {
             // top row used for module switching
         } else if (button.equals(PLAY_BUTTON)) {
         } else if (button.equals(EXIT_BUTTON)) {
-            if (elapsed > EXIT_PRESS_IN_MILLIS || HachiController.isDebugMode()) {
+            if (elapsed > EXIT_PRESS_IN_MILLIS || hachiController.isDebugMode()) {
                 hachiController.pressExit();
             }
         } else {
@@ -173,4 +271,28 @@ public class HachiDeviceManager implements GridListener {
     public void onKnobSet(GridKnob knob, int value) {}
 
 
+    /***** capture ***************/
+
+    private void capturePad(GridPad pad, int velocity) {
+        if (capture != null) {
+            capture.record(capturePort, MidiCapture.IN, ShortMessage.NOTE_ON, pad.getY() * 8 + pad.getX(), velocity);
+        }
+    }
+
+    private void capturePressure(GridPad pad, int value) {
+        if (capture != null) {
+            if (pad == null) {
+                capture.record(capturePort, MidiCapture.IN, ShortMessage.CHANNEL_PRESSURE, value, 0);
+            } else {
+                capture.record(capturePort, MidiCapture.IN, ShortMessage.POLY_PRESSURE, pad.getY() * 8 + pad.getX(), value);
+            }
+        }
+    }
+
+    private void captureButton(GridButton button, int velocity) {
+        if (capture != null) {
+            capture.record(capturePort, MidiCapture.IN, ShortMessage.CONTROL_CHANGE, button.getSide().ordinal() * 8 + button.getIndex(), velocity);
+        }
+    }
+
 }
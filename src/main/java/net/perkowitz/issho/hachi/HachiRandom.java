@@ -0,0 +1,227 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.WeakHashMap;
+
+/**
+ * HachiRandom is the source of randomness for the modules (velocity variability, jumps, fills,
+ * random markers and so on). Each module gets its own generator from create(), seeded from its
+ * rig's "randomSeed" setting (or the time) and the module's place in the settings, so:
+ *   - a generator is only used by its own module's threads, and there's no shared atomic seed to
+ *     contend on the way there is with Math.random() or a shared java.util.Random
+ *   - with a fixed seed and the same modules, every run makes the same random choices, even though
+ *     the modules are created concurrently
+ *
+ * Each generator has two streams: one for the clock thread and one for threads handling grid input
+ * (between enterInput and exitInput). So a pad press never uses a generator at the same time as the
+ * clock thread, and doesn't shift the clock's sequence of choices.
+ *
+ * In frozen mode ("randomFrozen": true) every generator in the rig is rewound to its starting seed
+ * whenever the rig's clock starts from the top, so each performance repeats the same "random" variations.
+ *
+ * A HachiRandom is a java.util.Random so it can be passed to things like Collections.shuffle, but its
+ * state isn't atomic: each one is meant for a single module, not for sharing between modules.
+ */
+public class HachiRandom extends Random {
+
+    // seeds generators created outside of a rig's modules (tests, tools)
+    private static final SplittableRandom unscoped = new SplittableRandom();
+
+    // the rig, settings index and generators created so far, while a module is being created on this thread
+    private static final ThreadLocal<Scope> moduleScope = new ThreadLocal<>();
+    private static final ThreadLocal<boolean[]> onInput = new ThreadLocal<boolean[]>() {
+        protected boolean[] initialValue() {
+            return new boolean[1];
+        }
+    };
+
+    private final long initialSeed;
+    private SplittableRandom random;
+    private SplittableRandom inputRandom;
+
+
+    /***** service ***************/
+
+    /**
+     * beginModule makes the generators created on this thread, until endModule, belong to the given
+     * rig's module at the given index in the settings. Their seeds come from the rig's root seed and
+     * that index, not from the order modules happen to be created in.
+     */
+    public static void beginModule(Rig rig, int index) {
+        moduleScope.set(new Scope(rig, index));
+    }
+
+    public static void endModule() {
+        moduleScope.remove();
+    }
+
+    /**
+     * create returns a new generator for one module. Outside of beginModule/endModule the generator
+     * is seeded from the time and belongs to no rig.
+     */
+    public static HachiRandom create() {
+        Scope scope = moduleScope.get();
+        if (scope != null) {
+            return scope.rig.create(scope.index, scope.count++);
+        }
+        synchronized (unscoped) {
+            return new HachiRandom(unscoped.nextLong());
+        }
+    }
+
+    /**
+     * enterInput marks the current thread as handling grid input until exitInput, so generators draw
+     * from their input stream.
+     *
+     * @return whether it was already marked, to pass to exitInput
+     */
+    public static boolean enterInput() {
+        boolean[] flag = onInput.get();
+        boolean was = flag[0];
+        flag[0] = true;
+        return was;
+    }
+
+    public static void exitInput(boolean was) {
+        onInput.get()[0] = was;
+    }
+
+
+    /***** rig ***************/
+
+    /**
+     * Rig is the random state of one HachiRuntime: the root seed its modules' generators are split
+     * from, whether they're frozen, and the generators themselves, so that several runtimes in one JVM
+     * each keep their own seed and only rewind their own generators.
+     */
+    public static class Rig {
+
+        private final long rootSeed;
+        @Getter private final boolean frozen;
+        // held weakly, so the generators of modules that are gone don't pile up
+        private final Set<HachiRandom> generators = Collections.newSetFromMap(new WeakHashMap<HachiRandom, Boolean>());
+
+        /**
+         * @param seed the root seed, or null to seed from the time
+         * @param frozen whether to rewind the rig's generators when its clock starts
+         */
+        public Rig(Long seed, boolean frozen) {
+            this.rootSeed = seed == null ? new SplittableRandom().nextLong() : seed;
+            this.frozen = frozen;
+        }
+
+        private synchronized HachiRandom create(int index, int count) {
+            HachiRandom generator = new HachiRandom(new SplittableRandom(rootSeed ^ ((long) index << 32 | count)).nextLong());
+            generators.add(generator);
+            return generator;
+        }
+
+        /**
+         * restart rewinds the rig's generators if randomness is frozen; the controller calls it when
+         * the clock starts from the top.
+         */
+        public void restart() {
+            if (frozen) {
+                List<HachiRandom> rewinding;
+                synchronized (this) {
+                    rewinding = Lists.newArrayList(generators);
+                }
+                for (HachiRandom generator : rewinding) {
+                    generator.rewind();
+                }
+            }
+        }
+
+    }
+
+    private static class Scope {
+        private final Rig rig;
+        private final int index;
+        private int count = 0;
+
+        private Scope(Rig rig, int index) {
+            this.rig = rig;
+            this.index = index;
+        }
+    }
+
+
+    /***** generator ***************/
+
+    public HachiRandom(long seed) {
+        this.initialSeed = seed;
+        rewind();
+    }
+
+    /**
+     * rewind puts the generator back to its starting seed.
+     */
+    public synchronized void rewind() {
+        random = new SplittableRandom(initialSeed);
+        inputRandom = new SplittableRandom(initialSeed).split();
+    }
+
+    @Override
+    protected int next(int bits) {
+        return nextInt() >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+        if (onInput.get()[0]) {
+            // more than one grid's input thread may draw at once, so the input stream is locked
+            synchronized (this) {
+                return inputRandom.nextInt();
+            }
+        }
+        return random.nextInt();
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (onInput.get()[0]) {
+            synchronized (this) {
+                return inputRandom.nextInt(bound);
+            }
+        }
+        return random.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+        if (onInput.get()[0]) {
+            synchronized (this) {
+                return inputRandom.nextLong();
+            }
+        }
+        return random.nextLong();
+    }
+
+    @Override
+    public double nextDouble() {
+        if (onInput.get()[0]) {
+            synchronized (this) {
+                return inputRandom.nextDouble();
+            }
+        }
+        return random.nextDouble();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        if (onInput.get()[0]) {
+            synchronized (this) {
+                return inputRandom.nextBoolean();
+            }
+        }
+        return random.nextBoolean();
+    }
+
+}
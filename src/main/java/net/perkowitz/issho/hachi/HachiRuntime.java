@@ -0,0 +1,1078 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.perkowitz.issho.devices.GridDevice;
+import net.perkowitz.issho.devices.Keyboard;
+import net.perkowitz.issho.devices.launchpad.Launchpad;
+import net.perkowitz.issho.devices.launchpadpro.Color;
+import net.perkowitz.issho.devices.launchpadpro.LaunchpadPro;
+import net.perkowitz.issho.devices.launchpadpro.LppRhythmController;
+import net.perkowitz.issho.devices.launchpadpro.LppRhythmDisplay;
+import net.perkowitz.issho.devices.virtual.VirtualGridDevice;
+import net.perkowitz.issho.hachi.events.HachiEvents;
+import net.perkowitz.issho.hachi.modules.Module;
+import net.perkowitz.issho.hachi.modules.*;
+import net.perkowitz.issho.hachi.modules.deprecated.beatbox.BeatModule;
+import net.perkowitz.issho.hachi.modules.deprecated.beatbox.BeatUtil;
+import net.perkowitz.issho.hachi.modules.deprecated.minibeat.MinibeatModule;
+import net.perkowitz.issho.hachi.modules.deprecated.minibeat.MinibeatUtil;
+import net.perkowitz.issho.hachi.modules.deprecated.mono.MonoModule;
+import net.perkowitz.issho.hachi.modules.deprecated.mono.MonoUtil;
+import net.perkowitz.issho.hachi.modules.deprecated.rhythm.RhythmController;
+import net.perkowitz.issho.hachi.modules.deprecated.rhythm.RhythmDisplay;
+import net.perkowitz.issho.hachi.modules.deprecated.rhythm.RhythmModule;
+import net.perkowitz.issho.hachi.modules.para.ParaModule;
+import net.perkowitz.issho.hachi.modules.para.ParaUtil;
+import net.perkowitz.issho.hachi.modules.seq.SeqModule;
+import net.perkowitz.issho.hachi.modules.seq.SeqUtil;
+import net.perkowitz.issho.hachi.modules.shihai.ShihaiModule;
+import net.perkowitz.issho.hachi.modules.step.StepModule;
+import net.perkowitz.issho.util.CaptureReceiver;
+import net.perkowitz.issho.util.HistogramMeter;
+import net.perkowitz.issho.util.MeteredReceiver;
+import net.perkowitz.issho.util.MidiCapture;
+import net.perkowitz.issho.util.MidiCoalescer;
+import net.perkowitz.issho.util.MidiDeviceRegistry;
+import net.perkowitz.issho.util.MidiLoopback;
+import net.perkowitz.issho.util.MidiRouter;
+import net.perkowitz.issho.util.MidiUtil;
+import net.perkowitz.issho.util.NoteMeter;
+import net.perkowitz.issho.util.PortMeter;
+import net.perkowitz.issho.util.PortWriter;
+import net.perkowitz.issho.util.SwitchableReceiver;
+
+import javax.management.ObjectName;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Transmitter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static net.perkowitz.issho.devices.launchpadpro.Color.BRIGHT_ORANGE;
+import static net.perkowitz.issho.hachi.modules.seq.SeqUtil.SeqMode.BEAT;
+import static net.perkowitz.issho.hachi.modules.seq.SeqUtil.SeqMode.MONO;
+
+/**
+ * HachiRuntime is one Hachi rig: its settings, devices, modules and HachiController, with the
+ * controller's own clock and event threads. Its state is all per instance, so several runtimes can
+ * run in one JVM, each on its own threads. They share the MidiDeviceRegistry (and any loopbacks), and
+ * a midi output used by more than one runtime is opened once and shared (see sharedOutput).
+ *
+ * Created by optic on 9/19/16.
+ */
+public class HachiRuntime {
+
+    private static String CONTROLLER_NAME_PROPERTY = "controller.name";
+    private static String CONTROLLER_TYPE_PROPERTY = "controller.type";
+    private static String MIDI_NAME_PROPERTY = "midi.name";
+
+    private Properties properties;
+    private final Map settings;
+    private final String name;
+    private final HachiRandom.Rig randomRig;
+    private final HachiEvents events;
+
+    private MidiDevice controllerInput;
+    private MidiDevice controllerOutput;
+    private Transmitter controllerTransmitter;
+    private Receiver controllerReceiver;
+
+    private MidiDevice midiInput;
+    private MidiDevice midiOutput;
+    private Transmitter midiTransmitter;
+    private Receiver midiReceiver;
+    private MidiRouter midiRouter;
+
+    private MidiDevice knobInput;
+    private MidiDevice knobOutput;
+
+    private Keyboard keyboard = null;
+
+    private HachiController controller;
+    private final CountDownLatch stop = new CountDownLatch(1);
+
+    private static int DEFAULT_DEVICE_WATCH_INTERVAL_MILLIS = 2000;
+    private static double DEFAULT_CC_RATE = 0;
+    private static double DEFAULT_PRESSURE_RATE = 100;
+    private static int DEFAULT_PRESSURE_CONTROLLER = 1;
+
+    // makes a module of one class from its settings; see moduleFactories()
+    private interface ModuleFactory {
+        public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver);
+    }
+    private final Map<String, ModuleFactory> moduleFactories = moduleFactories();
+    private static double DEFAULT_LAUNCHPAD_FRAME_RATE = 30;
+    private DeviceReattacher deviceReattacher = new DeviceReattacher();
+    private Map<String, PortMeter> portMeters = Maps.newLinkedHashMap();
+    private Map<Module, HistogramMeter> createMeters = Maps.newHashMap();   // how long each module took to create
+    private MidiCapture capture;
+
+    // midi output ports opened by any runtime in this JVM, by device names
+    private static final Map<String, Receiver> sharedOutputs = Maps.newHashMap();
+
+
+    /**
+     * @param settings the rig's settings
+     * @param name used to tell runtimes apart in the metrics, or null if it's the only one
+     */
+    public HachiRuntime(Map settings, String name) {
+        this.settings = settings;
+        this.name = name;
+        Number randomSeed = (Number)settings.get("randomSeed");
+        Boolean randomFrozen = (Boolean)settings.get("randomFrozen");
+        randomRig = new HachiRandom.Rig(randomSeed == null ? null : randomSeed.longValue(), randomFrozen != null && randomFrozen);
+        events = new HachiEvents(settings);
+    }
+
+    /**
+     * run starts the controller, creating it first if needed.
+     */
+    public void run() throws Exception {
+        if (controller == null) {
+            createController();
+        }
+        System.out.printf("Running controller%s...\n", name == null ? "" : " " + name);
+        controller.run();
+    }
+
+    /**
+     * await waits until the controller exits.
+     */
+    public void await() throws InterruptedException {
+        stop.await();
+    }
+
+    public HachiController getController() {
+        return controller;
+    }
+
+
+    /**
+     * createController finds (or creates) the devices in the settings, creates the modules and
+     * wires them into a new HachiController, which is ready to run.
+     *
+     * @return the HachiController
+     */
+    public HachiController createController() throws Exception {
+
+        Map<Object,Object> deviceConfigs = (Map<Object,Object>)settings.get("devices");
+        events.start();
+        createCapture();
+
+        System.out.println("Loading device info..");
+        MidiDeviceRegistry registry = MidiDeviceRegistry.getInstance();
+        createLoopbacks();
+
+        List<GridDevice> gridDevices = getControllers();
+        if (gridDevices.size() > 0) {
+            gridDevices.get(0).initialize();
+            Graphics.setPads(gridDevices.get(0), Graphics.hachi, BRIGHT_ORANGE);
+        }
+
+        getMidiInputs();
+        getMidiOutputs();
+
+        // mirroring on another device
+//        GridDevice mainDevice = getGridDevice();
+////        GridDevice mirrorDevice = getMirrorGridDevice();
+////        GridDevice gridDevice = new MultiDevice(Lists.<GridDevice>newArrayList(mainDevice, mirrorDevice));
+//        GridDevice gridDevice = mainDevice;
+
+        System.out.println("Creating modules...");
+        Module[] modules;
+        if (settings.get("modules") != null) {
+            modules = createModules();
+        } else {
+            HachiRandom.beginModule(randomRig, 0);
+            HachiEvents.beginModule(events);
+            try {
+                modules = defaultModules();
+            } finally {
+                HachiRandom.endModule();
+                HachiEvents.endModule();
+            }
+        }
+
+
+        GridDevice[] gridDevicesArray = new GridDevice[gridDevices.size()];
+        for (int i = 0; i < gridDevices.size(); i++) {
+            gridDevicesArray[i] = gridDevices.get(i);
+        }
+
+        // create the HachiController
+        controller = new HachiController(modules, gridDevicesArray, stop, midiReceiver);
+        controller.setMidiRouter(midiRouter);
+        controller.setMetricsName(name);
+        controller.setRandomRig(randomRig);
+        controller.setEvents(events);
+        for (Map.Entry<String, Receiver> port : midiRouter.getPorts().entrySet()) {
+            if (port.getValue() instanceof PortWriter) {
+                controller.addMetrics("type=Writer,name=" + ObjectName.quote(port.getKey()), port.getValue());
+            }
+        }
+        for (int i = 0; i < modules.length; i++) {
+            HistogramMeter createMeter = getCreateMeter(modules[i]);
+            if (createMeter != null) {
+                controller.addMetrics("type=Create,name=" + ObjectName.quote(i + ":" + modules[i].name()), createMeter);
+            }
+        }
+        Boolean midiContinueAsStart = (Boolean)settings.get("midiContinueAsStart");
+        if (midiContinueAsStart != null) {
+            controller.setMidiContinueAsStart(midiContinueAsStart);
+        }
+        Boolean sendMidiRealtime = (Boolean)settings.get("sendMidiRealtime");
+        if (sendMidiRealtime != null) {
+            controller.setSendMidiRealtime(sendMidiRealtime);
+        }
+        Boolean debugMode = (Boolean)settings.get("debugMode");
+        if (debugMode != null) {
+            controller.setDebugMode(debugMode);
+        }
+        Integer clockThreads = (Integer)settings.get("clockThreads");
+        if (clockThreads != null && clockThreads > 0) {
+            controller.setClockThreads(clockThreads);
+        }
+        Boolean loadShedding = (Boolean)settings.get("loadShedding");
+        if (loadShedding != null) {
+            controller.setLoadShedding(loadShedding);
+        }
+        controller.setClockOutput(createClockOutput());
+
+        // if specified, create a knobby device and make the value control settings
+        Knobby knobby = createKnobby();
+
+        // make the HachiController receive external midi
+        MeteredReceiver controllerInput = input(controller, "midi in", midiInput);
+        midiInput.getTransmitter().setReceiver(controllerInput);
+
+        if (deviceConfigs != null) {
+            if (deviceConfigs.get("midiInput") != null) {
+                List<String> names = (List<String>)((Map<Object,Object>)deviceConfigs.get("midiInput")).get("names");
+                if (names != null) {
+                    deviceReattacher.bindInput(names, controllerInput, null);
+                }
+            }
+
+            if (deviceConfigs.get("keyboard") != null) {
+                List<String> names = (List<String>)((Map<Object,Object>)deviceConfigs.get("keyboard")).get("names");
+                System.out.printf("Looking for keyboard: %s...\n", names);
+                MidiDevice keyboardInput = MidiUtil.findMidiDevice(names.toArray(new String[0]), false, true);
+                if (keyboardInput == null) {
+                    System.out.printf("Unable to find keyboard device matching name: %s\n", names);
+                } else {
+                    // metered with the device as its source, so live recording can allow for its latency
+                    keyboard = Keyboard.fromMidiDevice(keyboardInput, input(controller.getChordReceiver(), "keyboard", keyboardInput));
+                }
+                if (keyboard != null) {
+                    deviceReattacher.bindInput(names, keyboard, null);
+                }
+
+                Integer holdClearControllerNumber = (Integer)((Map<Object,Object>)deviceConfigs.get("keyboard")).get("holdClearControllerNumber");
+                if (holdClearControllerNumber != null) {
+                    controller.getChordReceiver().setHoldClearControllerNumber(holdClearControllerNumber);
+                }
+
+                Boolean chordHoldEnabled = (Boolean)((Map<Object,Object>)deviceConfigs.get("keyboard")).get("chordHoldEnabled");
+                if (chordHoldEnabled != null) {
+                    controller.getChordReceiver().setChordHold(chordHoldEnabled);
+                }
+            }
+        }
+
+        // live recording compensates for the latency measured on the input of the grid a pad was pressed
+        // on (virtual grids have none), and the keyboard's
+        HachiDeviceManager[] deviceManagers = controller.getHachiDeviceManagers();
+        for (int i = 0; i < deviceManagers.length; i++) {
+            deviceManagers[i].setInputMeter(portMeters.get("grid" + i + " in"));
+        }
+        for (Module module : modules) {
+            if (module instanceof Recordable) {
+                ((Recordable) module).getRecorder().setKeyboardMeter(portMeters.get("keyboard"));
+            }
+        }
+
+        // metrics and capture controls, registered when the controller runs
+        for (Map.Entry<String, PortMeter> entry : portMeters.entrySet()) {
+            controller.addPortMeter(entry.getKey(), entry.getValue());
+        }
+        controller.setCapture(capture);
+
+        // watch for devices being unplugged and reconnected
+        deviceReattacher.setController(controller);
+        registry.addListener(deviceReattacher);
+        Integer deviceWatchInterval = (Integer)settings.get("deviceWatchInterval");
+        if (deviceWatchInterval == null) {
+            deviceWatchInterval = DEFAULT_DEVICE_WATCH_INTERVAL_MILLIS;
+        }
+        if (deviceWatchInterval > 0) {
+            registry.startWatching(deviceWatchInterval);
+        }
+
+        return controller;
+    }
+
+    private RhythmModule rhythm(LaunchpadPro launchpadPro, List<Color> palette, String filePrefix) {
+
+        RhythmController rhythmController = new LppRhythmController();
+        RhythmDisplay rhythmDisplay = new LppRhythmDisplay(launchpadPro, palette);
+        RhythmModule rhythm = new RhythmModule(rhythmController, rhythmDisplay, midiTransmitter, midiReceiver, filePrefix);
+
+        return rhythm;
+    }
+
+    /**
+     * getControllers reads the controller descriptions from the config and finds the corresponding
+     * connected devices. A controller (such as a Launchpad) provides input and output to Hachi.
+     * @return List of GridDevice objects
+     */
+    private List<GridDevice> getControllers() {
+
+        Map<Object,Object> deviceConfigs = (Map<Object,Object>)settings.get("devices");
+        List<Object> controllerConfigs = (List<Object>)deviceConfigs.get("controllers");
+
+        if (controllerConfigs == null || controllerConfigs.size() == 0) {
+            System.err.println("Unable to find config settings for controller devices.");
+        }
+
+        List<GridDevice> gridDevices = Lists.newArrayList();
+
+        for (Object controllerConfig : controllerConfigs) {
+            Map<Object, Object> config = (Map<Object,Object>)controllerConfig;
+            List<String> names = (List<String>)config.get("names");
+            String type = (String)config.get("type");
+            if (type != null && type.equals("virtual")) {
+                gridDevices.add(createVirtualGridDevice(config, gridDevices.size()));
+                continue;
+            }
+            MidiDevice input = MidiUtil.findMidiDevice(names.toArray(new String[0]), false, true);
+            MidiDevice output = MidiUtil.findMidiDevice(names.toArray(new String[0]), true, false);
+            if (input == null || output == null) {
+                System.err.printf("Unable to find controller device matching name: %s\n", names);
+            } else {
+                try {
+                    input.open();
+                    output.open();
+
+                    SwitchableReceiver outputReceiver = new SwitchableReceiver(output.getReceiver());
+                    String meterName = "grid" + gridDevices.size();
+                    Receiver meteredOutput = output(outputReceiver, meterName + " out");
+                    GridDevice gridDevice = null;
+                    if (type == null) {
+                        gridDevice = new LaunchpadPro(meteredOutput, null);
+                    } else if (type.equals("launchpad")) {
+                        Launchpad launchpad = new Launchpad(meteredOutput, null);
+                        // double-buffered frames per second; 0 sends each LED as it's set
+                        Number frameRate = (Number)config.get("frameRate");
+                        if (frameRate == null) {
+                            frameRate = DEFAULT_LAUNCHPAD_FRAME_RATE;
+                        }
+                        if (frameRate.doubleValue() > 0) {
+                            launchpad.startFrames(frameRate.doubleValue());
+                        }
+                        gridDevice = launchpad;
+                    } else {
+                        gridDevice = new LaunchpadPro(meteredOutput, null);
+                    }
+                    MeteredReceiver gridInput = input(gridDevice, meterName + " in", input);
+                    input.getTransmitter().setReceiver(gridInput);
+                    deviceReattacher.bindInput(names, gridInput, null);
+                    deviceReattacher.bindOutput(names, outputReceiver, gridDevice);
+
+                    gridDevices.add(gridDevice);
+
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+            }
+        }
+
+        return gridDevices;
+    }
+
+    /**
+     * createVirtualGridDevice makes an in-process grid device for running without hardware,
+     * optionally with a script that presses random pads at a given rate.
+     */
+    private VirtualGridDevice createVirtualGridDevice(Map<Object, Object> config, int index) {
+        VirtualGridDevice gridDevice = new VirtualGridDevice("grid" + index);
+        portMeters.put("grid" + index + " out", gridDevice.getMeter());
+        Number scriptRate = (Number)config.get("scriptRate");
+        if (scriptRate != null && scriptRate.doubleValue() > 0) {
+            Integer scriptHoldMillis = (Integer)config.get("scriptHoldMillis");
+            Number scriptSeed = (Number)config.get("scriptSeed");
+            gridDevice.startScript(scriptRate.doubleValue(),
+                    scriptHoldMillis == null ? 100 : scriptHoldMillis,
+                    scriptSeed == null ? System.nanoTime() : scriptSeed.longValue());
+        }
+        return gridDevice;
+    }
+
+    private PortMeter meter(String name, PortMeter portMeter) {
+        portMeters.put(name, portMeter);
+        return portMeter;
+    }
+
+    /**
+     * input wraps the receiver for a named input port so its messages are metered and captured.
+     */
+    private MeteredReceiver input(Receiver receiver, String name, MidiDevice source) {
+        MeteredReceiver meteredReceiver = new MeteredReceiver(new CaptureReceiver(receiver, capture, name, MidiCapture.IN), meter(name, new PortMeter()));
+        meteredReceiver.setSource(source);
+        return meteredReceiver;
+    }
+
+    /**
+     * output wraps the receiver for a named output port so its messages are metered and captured.
+     */
+    private MeteredReceiver output(Receiver receiver, String name) {
+        return new MeteredReceiver(new CaptureReceiver(receiver, capture, name, MidiCapture.OUT), meter(name, new PortMeter()));
+    }
+
+    /**
+     * instrumentOutput is output for a port that plays notes, so its meter also counts held notes.
+     */
+    private MeteredReceiver instrumentOutput(Receiver receiver, String name) {
+        return new MeteredReceiver(new CaptureReceiver(receiver, capture, name, MidiCapture.OUT), meter(name, new NoteMeter()));
+    }
+
+    /**
+     * createCapture sets up midi capture from the "capture" settings; capture starts right away
+     * if a file is given, and can be started and stopped at any time over JMX.
+     */
+    private void createCapture() {
+        Map<Object,Object> captureConfig = (Map<Object,Object>)settings.get("capture");
+        if (captureConfig == null) {
+            capture = new MidiCapture();
+            return;
+        }
+        Integer ringSize = (Integer)captureConfig.get("ringSize");
+        capture = ringSize == null ? new MidiCapture() : new MidiCapture(ringSize);
+        String file = (String)captureConfig.get("file");
+        if (file != null) {
+            capture.start(file);
+        }
+    }
+
+    /**
+     * createClockOutput sets up midi clock output from the "clockOutput" settings: "ports" names the
+     * midi output ports to send clock to, and "offsets" optionally gives a port's offset in milliseconds
+     * (negative to send early).
+     */
+    private ClockOutput createClockOutput() {
+        Map<Object,Object> clockConfig = (Map<Object,Object>)settings.get("clockOutput");
+        if (clockConfig == null || clockConfig.get("ports") == null) {
+            return null;
+        }
+        List<String> portNames = (List<String>)clockConfig.get("ports");
+        Map<Object,Object> offsetConfig = (Map<Object,Object>)clockConfig.get("offsets");
+        List<Receiver> ports = Lists.newArrayList();
+        List<Double> offsets = Lists.newArrayList();
+        for (String portName : portNames) {
+            Receiver port = midiRouter.getPorts().get(portName);
+            if (port == null) {
+                System.out.printf("Clock output port not found: %s\n", portName);
+                continue;
+            }
+            Number offset = offsetConfig == null ? null : (Number)offsetConfig.get(portName);
+            ports.add(port);
+            offsets.add(offset == null ? 0 : offset.doubleValue());
+        }
+        if (ports.size() == 0) {
+            return null;
+        }
+
+        double[] offsetMillis = new double[offsets.size()];
+        for (int i = 0; i < offsetMillis.length; i++) {
+            offsetMillis[i] = offsets.get(i);
+        }
+        System.out.printf("Sending midi clock to %s\n", portNames);
+        return new ClockOutput(name == null ? "midi-clock-out" : "midi-clock-out-" + name,
+                ports.toArray(new Receiver[ports.size()]), offsetMillis);
+    }
+
+    /**
+     * createLoopbacks creates a MidiLoopback for each name in the "loopbacks" device setting and registers
+     * both of its ends, so they can be used by name as midi inputs and outputs (by any runtime).
+     */
+    private void createLoopbacks() {
+        Map<Object,Object> deviceConfigs = (Map<Object,Object>)settings.get("devices");
+        List<String> loopbackNames = (List<String>)deviceConfigs.get("loopbacks");
+        if (loopbackNames != null) {
+            for (String name : loopbackNames) {
+                if (MidiDeviceRegistry.getInstance().find(new String[] { name }, true, false) != null) {
+                    // already created by another runtime
+                    continue;
+                }
+                MidiLoopback loopback = new MidiLoopback(name);
+                MidiDeviceRegistry.getInstance().register(loopback.getInputDevice());
+                MidiDeviceRegistry.getInstance().register(loopback.getOutputDevice());
+            }
+        }
+    }
+
+    /**
+     * getMidiOutputs reads MIDI device descriptions from the config and finds the
+     * corresponding connected devices, adding each as a named port of the midi router.
+     * @return List of GridDevice objects
+     */
+    void getMidiOutputs() {
+
+        Map<Object,Object> deviceConfigs = (Map<Object,Object>)settings.get("devices");
+        List<Object> controllerConfigs = (List<Object>)deviceConfigs.get("midiOutputs");
+
+        if (controllerConfigs == null || controllerConfigs.size() == 0) {
+            System.err.println("Unable to find config settings for controller devices.");
+        }
+
+        Boolean outputThreads = (Boolean)settings.get("outputThreads");
+        midiRouter = new MidiRouter(outputThreads == null || outputThreads);
+        for (Object controllerConfig : controllerConfigs) {
+            Map<Object, Object> config = (Map<Object,Object>)controllerConfig;
+            List<String> names = (List<String>)config.get("names");
+            String portName = (String)config.get("name");
+            if (portName == null) {
+                portName = String.join(" ", names);
+            }
+            try {
+                Receiver port = sharedOutput(names, portName);
+                if (port == null) {
+                    System.err.printf("Unable to find MIDI output device matching name: %s\n", names);
+                } else {
+                    midiRouter.addSharedPort(portName, port);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        midiReceiver = midiRouter.route(null);
+    }
+
+    /**
+     * sharedOutput returns the router port for a midi output device, opening it if no runtime in this
+     * JVM has yet. Runtimes sending to the same device share the port (and its writer thread, which
+     * keeps running until the last of them shuts down), and only the runtime that opened it meters and
+     * captures it and watches for it being reconnected.
+     */
+    private Receiver sharedOutput(List<String> names, String portName) throws Exception {
+        String key = String.join("|", names);
+        synchronized (sharedOutputs) {
+            Receiver port = sharedOutputs.get(key);
+            if (port == null) {
+                MidiDevice output = MidiUtil.findMidiDevice(names.toArray(new String[0]), true, false);
+                if (output == null) {
+                    return null;
+                }
+                output.open();
+                SwitchableReceiver outputReceiver = new SwitchableReceiver(output.getReceiver());
+                deviceReattacher.bindOutput(names, outputReceiver, null);
+                port = midiRouter.addPort(portName, instrumentOutput(outputReceiver, "midi out " + portName));
+                sharedOutputs.put(key, port);
+            }
+            return port;
+        }
+    }
+
+    private void getMidiInputs() {
+
+        // get the device configs from the settings
+        Map<Object,Object> deviceConfigs = (Map<Object,Object>)settings.get("devices");
+        List<String> names = null;
+
+        // find the midi input device
+        Map<Object,Object> midiConfig = (Map<Object,Object>)deviceConfigs.get("midiInput");
+        if (midiConfig != null) {
+            names = (List<String>)midiConfig.get("names");
+            midiInput = MidiUtil.findMidiDevice(names.toArray(new String[0]), false, true);
+        } else {
+            System.err.println("Unable to find config settings for midiInput device.");
+        }
+        if (midiInput == null) {
+            System.err.printf("Unable to find midi-in device matching name: %s\n", names);
+            MidiUtil.printMidiDevices();
+            System.exit(1);
+        }
+
+        try {
+            midiInput.open();
+            midiTransmitter = midiInput.getTransmitter();
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+    }
+
+    private GridDevice getMirrorGridDevice() {
+
+        // get the device configs from the settings
+        Map<Object,Object> deviceConfigs = (Map<Object,Object>)settings.get("devices");
+        List<String> names = null;
+
+        MidiDevice controllerInput = null;
+        MidiDevice controllerOutput = null;
+
+        // find the controller device
+        System.out.println("Finding controller device..");
+        Map<Object,Object> controllerConfig = (Map<Object,Object>)deviceConfigs.get("controllerMirror");
+        if (controllerConfig != null) {
+            names = (List<String>)controllerConfig.get("names");
+            controllerInput = MidiUtil.findMidiDevice(names.toArray(new String[0]), false, true);
+            controllerOutput = MidiUtil.findMidiDevice(names.toArray(new String[0]), true, false);
+        } else {
+            System.err.println("Unable to find config settings for controllerMirror device.");
+        }
+        if (controllerInput == null || controllerOutput == null) {
+            System.err.printf("Unable to find device matching name: %s\n", names);
+            System.exit(1);
+        }
+
+        try {
+            controllerInput.open();
+            controllerOutput.open();
+
+            // assumes controller and midi device are same type
+            String type = (String)controllerConfig.get("type");
+            GridDevice gridDevice = null;
+            if (type.equals("launchpad")) {
+                gridDevice = new Launchpad(controllerOutput.getReceiver(), null);
+            } else {
+                gridDevice = new LaunchpadPro(controllerOutput.getReceiver(), null);
+            }
+            controllerInput.getTransmitter().setReceiver(gridDevice);
+            return gridDevice;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * createModules instantiates the configured modules. Since most modules load their memory files
+     * in their constructors, they are created concurrently on a small pool; the resulting array keeps
+     * the order of the settings, which determines the module buttons. Each module's random generator
+     * is seeded by its place in the settings, so a fixed randomSeed gives the same modules whatever
+     * order the pool creates them in.
+     *
+     * @return array of modules, in settings order
+     */
+    Module[] createModules() {
+
+        final List<Map<Object,Object>> moduleSettingsList = (List<Map<Object,Object>>) settings.get("modules");
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(1, moduleSettingsList.size()));
+        Integer moduleLoadThreads = (Integer)settings.get("moduleLoadThreads");
+        if (moduleLoadThreads != null && moduleLoadThreads > 0) {
+            threads = moduleLoadThreads;
+        }
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Module>> futures = Lists.newArrayList();
+        List<HistogramMeter> createMeterList = Lists.newArrayList();
+        int createdCount = 0;
+        for (int i = 0; i < moduleSettingsList.size(); i++) {
+            final Map<Object,Object> moduleSettings = moduleSettingsList.get(i);
+            final int moduleIndex = i;
+            final int moduleNumber = i + 1;
+            // default file prefixes are numbered by the modules actually created before this one
+            final int prefixNumber = createdCount + 1;
+            final ModuleFactory factory = moduleFactories.get(moduleSettings.get("class"));
+            if (factory != null) {
+                createdCount++;
+            }
+            final HistogramMeter createMeter = new HistogramMeter();
+            createMeterList.add(createMeter);
+            futures.add(executor.submit(new Callable<Module>() {
+                public Module call() {
+                    long moduleStartTime = System.nanoTime();
+                    Module module;
+                    HachiRandom.beginModule(randomRig, moduleIndex);
+                    HachiEvents.beginModule(events);
+                    try {
+                        module = createModule(moduleSettings, factory, prefixNumber);
+                    } finally {
+                        HachiRandom.endModule();
+                        HachiEvents.endModule();
+                    }
+                    if (module != null) {
+                        createMeter.recordSince(moduleStartTime);
+                        System.out.printf("Created module %d: %s (%d ms)\n", moduleNumber, module.name(), (System.nanoTime() - moduleStartTime) / 1000000);
+                    }
+                    return module;
+                }
+            }));
+        }
+
+        ShihaiModule shihaiModule = null;
+        MidiModule lastMidiModule = null;
+        List<Module> moduleList = Lists.newArrayList();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                Module module = futures.get(i).get();
+                if (module != null) {
+                    moduleList.add(module);
+                    createMeters.put(module, createMeterList.get(i));
+                    if (module instanceof ShihaiModule) {
+                        shihaiModule = (ShihaiModule) module;
+                    }
+                    if (module instanceof MidiModule) {
+                        lastMidiModule = (MidiModule) module;
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        executor.shutdown();
+        System.out.printf("Created %d modules in %d ms\n", moduleList.size(), System.currentTimeMillis() - startTime);
+
+        // modules all attach themselves to the shared midi input; keep the same one attached as when they were created in order
+        if (lastMidiModule != null) {
+            midiTransmitter.setReceiver(lastMidiModule);
+        }
+
+        Module[] modules = moduleList.toArray(new Module[0]);
+        if (shihaiModule != null) {
+            shihaiModule.setModules(modules);
+        }
+
+        return modules;
+    }
+
+    /**
+     * getCreateMeter returns how long a module from createModules took to create (including loading
+     * its memory), or null for modules it didn't create.
+     */
+    HistogramMeter getCreateMeter(Module module) {
+        return createMeters.get(module);
+    }
+
+    private Module createModule(Map<Object,Object> moduleSettings, ModuleFactory factory, int prefixNumber) {
+
+        if (factory == null) {
+            return null;
+        }
+        String className = (String)moduleSettings.get("class");
+        String filePrefix = (String)moduleSettings.get("filePrefix");
+        if (filePrefix == null) {
+            filePrefix = className.toLowerCase() + prefixNumber;
+        }
+
+        // the module's output goes to the ports in its routing settings
+        Receiver midiReceiver = midiRouter.route(moduleSettings);
+
+        // instantiate module
+        Module module = factory.create(moduleSettings, filePrefix, midiReceiver);
+
+        // gate length in clock pulses, for the sequencers that use it (SeqModule, ParaModule, StepModule)
+        if (module instanceof MidiModule && moduleSettings.get("gatePulses") != null) {
+            ((MidiModule) module).setGatePulses((Integer) moduleSettings.get("gatePulses"));
+        }
+
+        // pad pressure out as a CC or aftertouch, thinned to pressureRate messages a second
+        if (module instanceof MidiModule && moduleSettings.get("pressure") != null) {
+            MidiModule.PressureOutput output = MidiModule.PressureOutput.valueOf(((String) moduleSettings.get("pressure")).toUpperCase());
+            Integer pressureController = (Integer) moduleSettings.get("pressureController");
+            Number pressureRate = (Number) moduleSettings.get("pressureRate");
+            ((MidiModule) module).setPressure(output, pressureController == null ? DEFAULT_PRESSURE_CONTROLLER : pressureController,
+                    pressureRate == null ? DEFAULT_PRESSURE_RATE : pressureRate.doubleValue());
+        }
+
+        // input latency (ms) to allow for when recording live, and whether to keep how late each note was
+        if (module instanceof Recordable && moduleSettings.get("recordLatency") != null) {
+            ((Recordable) module).getRecorder().setLatencyMillis(((Number) moduleSettings.get("recordLatency")).doubleValue());
+        }
+        if (module instanceof Recordable && moduleSettings.get("recordMicrotiming") != null) {
+            ((Recordable) module).getRecorder().setMicrotiming((Boolean) moduleSettings.get("recordMicrotiming"));
+        }
+
+        return module;
+    }
+
+    /**
+     * moduleFactories makes the table of module classes createModule can make, by the "class"
+     * setting. Others (like RhythmModule) are skipped.
+     */
+    private Map<String, ModuleFactory> moduleFactories() {
+
+        Map<String, ModuleFactory> factories = Maps.newHashMap();
+
+        factories.put("MonoModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                String paletteName = (String)moduleSettings.get("palette");
+                List<Color> palette = MonoUtil.PALETTE_FUCHSIA;
+                if (paletteName != null && paletteName.toUpperCase().equals("ORANGE")) {
+                    palette = MonoUtil.PALETTE_ORANGE;
+                }
+                return new MonoModule(midiTransmitter, midiReceiver, palette, filePrefix);
+            }
+        });
+
+        factories.put("ParaModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                String paletteName = (String)moduleSettings.get("palette");
+                Map<Integer, Color> palette = ParaUtil.PALETTE_YELLOW;
+                if (paletteName != null && paletteName.toUpperCase().equals("ORANGE")) {
+                    palette = ParaUtil.PALETTE_ORANGE;
+                } else if (paletteName != null && paletteName.toUpperCase().equals("BLUE")) {
+                    palette = ParaUtil.PALETTE_BLUE;
+                } else if (paletteName != null && paletteName.toUpperCase().equals("PINK")) {
+                    palette = ParaUtil.PALETTE_PINK;
+                }
+                ParaModule paraModule = new ParaModule(midiTransmitter, midiReceiver, palette, filePrefix);
+                if (moduleSettings.get("monophonic") != null) {
+                    Boolean monophonic = (Boolean)moduleSettings.get("monophonic");
+                    if (monophonic != null) {
+                        paraModule.setMonophonic(monophonic);
+                    }
+                }
+                if (moduleSettings.get("controllers") != null) {
+                    List<Integer> controllers = (List<Integer>)moduleSettings.get("controllers");
+                    Integer[] controllersArray = new Integer[4];
+                    paraModule.setControllerNumbers(controllers.toArray(controllersArray));  // jumping thru hoops to get a list as an array
+                }
+                if (moduleSettings.get("sessionPrograms") != null) {
+                    List<Integer> sessionPrograms= (List<Integer>)moduleSettings.get("sessionPrograms");
+                    paraModule.setSessionPrograms(sessionPrograms);
+                }
+                return paraModule;
+            }
+        });
+
+        factories.put("StepModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                return new StepModule(midiTransmitter, midiReceiver, filePrefix);
+            }
+        });
+
+        factories.put("BeatModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                String paletteName = (String)moduleSettings.get("palette");
+                Map<Integer, Color> palette = BeatUtil.PALETTE_PINK;
+                if (paletteName != null && paletteName.toUpperCase().equals("PINK")) {
+                    palette = BeatUtil.PALETTE_PINK;
+                } else if (paletteName != null && paletteName.toUpperCase().equals("BLUE")) {
+                    palette = BeatUtil.PALETTE_BLUE;
+                } else if (paletteName != null && paletteName.toUpperCase().equals("GREEN")) {
+                    palette = BeatUtil.PALETTE_GREEN;
+                }
+                BeatModule beatModule = new BeatModule(midiTransmitter, midiReceiver, palette, filePrefix);
+                if (moduleSettings.get("midiNoteOffset") != null) {
+                    Integer offset = (Integer)moduleSettings.get("midiNoteOffset");
+                    if (offset != null) {
+                        beatModule.setMidiNoteOffset(offset);
+                    }
+                }
+                if (moduleSettings.get("tiesEnabled") != null) {
+                    Boolean tiesEnabled = (Boolean)moduleSettings.get("tiesEnabled");
+                    if (tiesEnabled != null) {
+                        beatModule.setTiesEnabled(tiesEnabled);
+                    }
+                }
+                if (moduleSettings.get("sessionPrograms") != null) {
+                    List<Integer> sessionPrograms= (List<Integer>)moduleSettings.get("sessionPrograms");
+                    beatModule.setSessionPrograms(sessionPrograms);
+                }
+                return beatModule;
+            }
+        });
+
+        factories.put("SeqModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                String paletteName = (String)moduleSettings.get("palette");
+                Map<Integer, Color> palette = SeqUtil.getPalette(paletteName.toLowerCase());
+                SeqUtil.SeqMode mode = BEAT;
+                if (moduleSettings.get("mode") != null) {
+                    String m = ((String)moduleSettings.get("mode")).toLowerCase();
+                    if (m.equals("mono")) {
+                        mode = MONO;
+                    } else {
+                        mode = BEAT;
+                    }
+                }
+                SeqModule seqModule = new SeqModule(midiTransmitter, midiReceiver, palette, filePrefix, mode);
+                if (moduleSettings.get("midiNoteOffset") != null) {
+                    Integer offset = (Integer)moduleSettings.get("midiNoteOffset");
+                    if (offset != null) {
+                        seqModule.setMidiNoteOffset(offset);
+                    }
+                }
+                if (moduleSettings.get("tiesEnabled") != null) {
+                    Boolean tiesEnabled = (Boolean)moduleSettings.get("tiesEnabled");
+                    if (tiesEnabled != null) {
+                        seqModule.setTiesEnabled(tiesEnabled);
+                    }
+                }
+                if (moduleSettings.get("sessionPrograms") != null) {
+                    List<Integer> sessionPrograms= (List<Integer>)moduleSettings.get("sessionPrograms");
+                    seqModule.setSessionPrograms(sessionPrograms);
+                }
+                if (moduleSettings.get("controllerNumbers") != null) {
+                    List<Integer> controllerNumbers = (List<Integer>) moduleSettings.get("controllerNumbers");
+                    seqModule.setControllerNumbers(controllerNumbers);
+                }
+                return seqModule;
+            }
+        });
+
+        factories.put("MinibeatModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                String paletteName = (String)moduleSettings.get("palette");
+                Map<Integer, Color> palette = MinibeatUtil.PALETTE_GREEN;
+                if (paletteName != null && paletteName.toUpperCase().equals("BLUE")) {
+                    palette = MinibeatUtil.PALETTE_BLUE;
+                }
+                MinibeatModule minibeatModule = new MinibeatModule(midiTransmitter, midiReceiver, palette, filePrefix);
+                if (moduleSettings.get("midiNoteOffset") != null) {
+                    Integer offset = (Integer)moduleSettings.get("midiNoteOffset");
+                    if (offset != null) {
+                        minibeatModule.setMidiNoteOffset(offset);
+                    }
+                }
+                return minibeatModule;
+            }
+        });
+
+        factories.put("ShihaiModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                ShihaiModule shihaiModule = new ShihaiModule(midiTransmitter, midiReceiver);
+                List<Integer> panicExclude = (List<Integer>)moduleSettings.get("panicExclude");
+                if (panicExclude != null) {
+                    shihaiModule.setPanicExclude(panicExclude);
+                }
+                Boolean enableJump = (Boolean)moduleSettings.get("enableJump");
+                if (enableJump != null) {
+                    shihaiModule.setEnableJump(enableJump);
+                }
+                Boolean enableReset = (Boolean)moduleSettings.get("enableReset");
+                if (enableReset != null) {
+                    shihaiModule.setEnableReset(enableReset);
+                }
+                return shihaiModule;
+            }
+        });
+
+        factories.put("DrawingModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                return new DrawingModule(filePrefix);
+            }
+        });
+
+        factories.put("LogoModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                return new LogoModule(Graphics.hachi, BRIGHT_ORANGE);
+            }
+        });
+
+        factories.put("PaletteModule", new ModuleFactory() {
+            public Module create(Map<Object,Object> moduleSettings, String filePrefix, Receiver midiReceiver) {
+                return new PaletteModule(false);
+            }
+        });
+
+        // RhythmModule (and ExampleModule) are no longer made from settings; see rhythm()
+
+        return factories;
+    }
+
+    private Module[] defaultModules() {
+
+        Module[] modules = new Module[6];
+        modules[0] = new LogoModule(Graphics.hachi, BRIGHT_ORANGE);
+        modules[1] = new PaletteModule(false);
+//        modules[2] = new ClockModule();
+        modules[2] = new DrawingModule("drawing");
+//        modules[3] = rhythm(lpp, LppRhythmUtil.PALETTE_BLUE, "rhythm");
+        modules[3] = new MonoModule(midiTransmitter, midiReceiver, MonoUtil.PALETTE_FUCHSIA, "mono1");
+        modules[4] = new MonoModule(midiTransmitter, midiReceiver, MonoUtil.PALETTE_ORANGE, "mono2");
+//        modules[4] = new KeyboardModule(midiTransmitter, midiReceiver, 10, 36);
+
+        return modules;
+    }
+
+    private Knobby createKnobby() {
+
+        // get the device configs from the settings
+        Map<Object,Object> deviceConfigs = (Map<Object,Object>)settings.get("devices");
+
+        // find the knobby device
+        System.out.println("Finding knobby device..");
+        Map<Object,Object> config = (Map<Object,Object>)deviceConfigs.get("knobby");
+        if (config != null) {
+            List<String> names = (List<String>)config.get("names");
+            knobInput = MidiUtil.findMidiDevice(names.toArray(new String[0]), false, true);
+            knobOutput = MidiUtil.findMidiDevice(names.toArray(new String[0]), true, false);
+            if (knobInput == null || knobOutput == null) {
+                System.out.printf("Unable to find knobby device matching name: %s\n", names);
+                return null;
+            }
+
+            try {
+                knobInput.open();
+                knobOutput.open();
+                Knobby knobby = new Knobby(knobInput.getTransmitter(), midiRouter.route(config));
+                deviceReattacher.bindInput(names, knobby, null);
+                if (config.get("valueControlChannel") != null && config.get("valueControlController") != null) {
+                    knobby.setValueControl((Integer)config.get("valueControlChannel"), (Integer)config.get("valueControlController"), controller);
+                }
+                Number ccRate = (Number)config.get("ccRate");
+                Number ccSmoothing = (Number)config.get("ccSmoothing");
+                MidiCoalescer coalescer = knobby.setCoalescing(ccRate == null ? DEFAULT_CC_RATE : ccRate.doubleValue(),
+                        ccSmoothing == null ? 0 : ccSmoothing.doubleValue());
+                if (coalescer != null) {
+                    controller.addMetrics("type=Coalescer,name=knobby", coalescer);
+                }
+                return knobby;
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        return null;
+    }
+
+    private static class CommandLine implements Runnable {
+
+        private HachiController listener;
+
+        public CommandLine(HachiController listener) {
+            this.listener = listener;
+        }
+
+        public void run() {
+            BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+            String input = "";
+            System.out.print("> ");
+            while (true) {
+                try {
+                    input = br.readLine();
+                    listener.processCommand(input);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+    }
+
+
+
+}
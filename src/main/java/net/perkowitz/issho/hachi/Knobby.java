@@ -1,5 +1,7 @@
 package net.perkowitz.issho.hachi;
 
+import net.perkowitz.issho.util.MidiCoalescer;
+
 import javax.sound.midi.*;
 
 import static javax.sound.midi.ShortMessage.*;
@@ -19,6 +21,7 @@ public class Knobby implements Receiver {
     private int valueControlChannel = 15;
     private int valueControlController = 16;
     private ValueSettable valueSettable = null;
+    private MidiCoalescer coalescer = null;
 
 
     public Knobby(Transmitter inputTransmitter, Receiver outputReceiver) {
@@ -47,6 +50,25 @@ public class Knobby implements Receiver {
         this.valueSettable = valueSettable;
     }
 
+    /**
+     * setCoalescing thins the controllers passed through to the output to at most maxRate messages per
+     * second per controller, always ending on the last value (see MidiCoalescer). A rate of 0 (the
+     * default) turns it off. Only controllers are passed through, so only they are coalesced.
+     *
+     * @return the coalescer, or null if off
+     */
+    public MidiCoalescer setCoalescing(double maxRate, double smoothing) {
+        if (coalescer != null) {
+            coalescer.close();
+            coalescer = null;
+        }
+        if (maxRate > 0) {
+            coalescer = new MidiCoalescer(outputReceiver, "knobby", maxRate, smoothing);
+            coalescer.start();
+        }
+        return coalescer;
+    }
+
     /***** midi receiver implementation **************************************************************/
 
     public void send(MidiMessage message, long timeStamp) {
@@ -85,7 +107,7 @@ public class Knobby implements Receiver {
 //                        System.out.printf("MIDI CC: %d, %d, %d\n", shortMessage.getChannel(), shortMessage.getData1(), shortMessage.getData2());
                         if (valueSettable != null && shortMessage.getChannel() == valueControlChannel && shortMessage.getData1() == valueControlController) {
                             valueSettable.setValue(shortMessage.getData2());
-                        } else {
+                        } else if (coalescer == null || !coalescer.offer(shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2())) {
                             outputReceiver.send(message, timeStamp);
                         }
                         break;
@@ -96,7 +118,9 @@ public class Knobby implements Receiver {
     }
 
     public void close() {
-
+        if (coalescer != null) {
+            coalescer.close();
+        }
     }
 
 
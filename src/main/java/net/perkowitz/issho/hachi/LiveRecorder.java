@@ -0,0 +1,212 @@
+package net.perkowitz.issho.hachi;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.perkowitz.issho.util.InputRing;
+import net.perkowitz.issho.util.PortMeter;
+
+/**
+ * LiveRecorder records notes played on the grid or a keyboard into a sequencer's steps while it plays.
+ * Input threads offer each note with its arrival time to an InputRing and return; the module's clock
+ * thread drains the ring on each pulse and places every note on the step nearest to when it was
+ * actually played, so recording never holds up the clock or waits on it.
+ *
+ * A note's time is its arrival less the input latency: the configured latency plus the mean latency
+ * measured on the port it came in on, if there's a meter for it. For pads that's the meter of the grid
+ * being handled on the offering thread (see enterPads); for the keyboard, the keyboard's. It's placed against the pulses the module
+ * has seen since its last step, at the average pulse period, so swing and tempo changes are followed
+ * to within a pulse. With microtiming on, a note played after its step keeps how late it was, in pulses.
+ */
+public class LiveRecorder {
+
+    public static final int PADS = 0;
+    public static final int KEYBOARD = 1;
+
+    private static final int RING_CAPACITY = 256;
+    private static final int PERIOD_SMOOTHING = 8;
+
+    // the input meter of the grid being handled on this thread
+    private static final ThreadLocal<PortMeter> padMeter = new ThreadLocal<>();
+
+    public interface Target {
+        /**
+         * @param source PADS or KEYBOARD
+         * @param note the pad index or note number as offered
+         * @param step the step to record into
+         * @param microtiming pulses after the step the note was played
+         */
+        public void record(int source, int note, int velocity, int step, int microtiming);
+    }
+
+    @Getter private volatile boolean recording = false;
+    @Setter private volatile long latencyNanos = 0;
+    @Setter private volatile boolean microtiming = true;
+    @Setter private volatile PortMeter keyboardMeter = null;
+
+    private final int stepCount;
+    private final InputRing ring = new InputRing(RING_CAPACITY);
+    private volatile boolean resetPending = false;
+
+    // clock thread only
+    private long lastPulseNanos = -1;
+    private double pulseNanos = 0;
+    private int pulsesSinceStep = 0;
+    private int stepIndex = -1;
+    private Target target = null;
+    private final InputRing.Handler handler = new InputRing.Handler() {
+        public void event(long nanos, int source, int data1, int data2) {
+            place(nanos, source, data1, data2);
+        }
+    };
+    private final InputRing.Handler discard = new InputRing.Handler() {
+        public void event(long nanos, int source, int data1, int data2) {
+        }
+    };
+
+
+    /**
+     * @param stepCount how many steps the module's patterns have
+     */
+    public LiveRecorder(int stepCount) {
+        this.stepCount = stepCount;
+    }
+
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    public boolean toggleRecording() {
+        recording = !recording;
+        return recording;
+    }
+
+    public void setLatencyMillis(double millis) {
+        latencyNanos = (long) (millis * 1000000);
+    }
+
+    public long getDropped() {
+        return ring.getDropped();
+    }
+
+
+    /***** input threads ***************/
+
+    /**
+     * enterPads makes notes offered from PADS on this thread, until exitPads, use the given grid
+     * input meter's latency.
+     *
+     * @return the meter in effect before, to pass to exitPads
+     */
+    public static PortMeter enterPads(PortMeter meter) {
+        PortMeter was = padMeter.get();
+        padMeter.set(meter);
+        return was;
+    }
+
+    public static void exitPads(PortMeter was) {
+        padMeter.set(was);
+    }
+
+    /**
+     * offer queues a note played now, if recording.
+     */
+    public boolean offer(int source, int note, int velocity) {
+        return offer(source, note, velocity, System.nanoTime());
+    }
+
+    public boolean offer(int source, int note, int velocity, long nanos) {
+        if (!recording) {
+            return false;
+        }
+        PortMeter meter = source == KEYBOARD ? keyboardMeter : padMeter.get();
+        if (meter != null) {
+            nanos -= (long) (Math.max(0, meter.getLatencyMeanMicros()) * 1000);
+        }
+        return ring.offer(nanos, source, note, velocity);
+    }
+
+
+    /***** clock thread ***************/
+
+    /**
+     * pulse marks a clock pulse; the module calls it at the start of each clock().
+     */
+    public void pulse() {
+        pulse(System.nanoTime());
+    }
+
+    public void pulse(long nanos) {
+        applyReset();
+        if (lastPulseNanos >= 0) {
+            double period = nanos - lastPulseNanos;
+            pulseNanos = pulseNanos == 0 ? period : pulseNanos + (period - pulseNanos) / PERIOD_SMOOTHING;
+        }
+        lastPulseNanos = nanos;
+        pulsesSinceStep++;
+    }
+
+    /**
+     * step marks the pulse the given step played on; the module calls it as it plays each step.
+     */
+    public void step(int index) {
+        applyReset();
+        stepIndex = index;
+        pulsesSinceStep = 0;
+    }
+
+    /**
+     * drain records the queued notes into the target. Notes that arrive when the module isn't
+     * playing a step are dropped.
+     */
+    public int drain(Target target) {
+        applyReset();
+        if (stepIndex < 0) {
+            return ring.drain(discard);
+        }
+        this.target = target;
+        int count = ring.drain(handler);
+        this.target = null;
+        return count;
+    }
+
+    /**
+     * reset forgets the clock timing and drops anything queued, e.g. when the module stops. It can be
+     * called from any thread; the clock thread does it before it next uses the recorder, since it's
+     * the only one that drains the ring.
+     */
+    public void reset() {
+        resetPending = true;
+    }
+
+
+    /***** private implementation ***************/
+
+    private void applyReset() {
+        if (resetPending) {
+            resetPending = false;
+            ring.drain(discard);
+            lastPulseNanos = -1;
+            pulseNanos = 0;
+            pulsesSinceStep = 0;
+            stepIndex = -1;
+        }
+    }
+
+    private void place(long nanos, int source, int note, int velocity) {
+        long latency = latencyNanos;
+
+        // how many pulses after the last step the note was played
+        double pulses = pulsesSinceStep;
+        if (pulseNanos > 0) {
+            pulses += (nanos - latency - lastPulseNanos) / pulseNanos;
+        }
+        long steps = Math.round(pulses / Clockable.PULSES_PER_STEP);
+        int late = 0;
+        if (microtiming) {
+            late = (int) Math.max(0, Math.round(pulses - steps * Clockable.PULSES_PER_STEP));
+        }
+        int step = (int) Math.floorMod(stepIndex + steps, (long) stepCount);
+        target.record(source, note, velocity, step, late);
+    }
+
+}
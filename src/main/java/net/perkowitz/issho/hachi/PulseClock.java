@@ -0,0 +1,317 @@
+package net.perkowitz.issho.hachi;
+
+import net.perkowitz.issho.util.Histogram;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PulseClock keeps Hachi's pulse timeline at Clockable.PULSES_PER_BEAT and hands each pulse to its
+ * Listener, in order, one at a time.
+ *
+ * Running on its own (internal clock), pulse n is due at a fixed deadline, origin + n * period, so
+ * lateness on one pulse doesn't push back the ones after it. Following midi clock (24 per beat), each
+ * incoming clock delivers its pulse right away, and the pulses in between are interpolated from the
+ * recent clock interval; if the next clock arrives before they've all gone out, they're delivered
+ * first, so no pulse is ever skipped or delivered out of order.
+ *
+ * Pulses are claimed under the clock's lock but delivered after releasing it (holding a separate
+ * delivery lock, so they still go out one at a time), so starting, stopping or seeking from another
+ * thread never waits for a pulse's work to finish.
+ *
+ * Each pulse's lateness (how long after it was due it reached the listener) is recorded in the
+ * lateness histogram, in microseconds. A pulse is due at its deadline on the internal or interpolated
+ * timeline, or, for one that lands on a midi clock, when that clock arrived.
+ */
+public class PulseClock {
+
+    public static final int MIDI_PULSES_PER_BEAT = 24;
+    public static final int SUBDIVISION = Clockable.PULSES_PER_BEAT / MIDI_PULSES_PER_BEAT;
+
+    private static final long IDLE_PARK_NANOS = 10000000;
+
+    public interface Listener {
+        public void pulse(long pulse);
+    }
+
+    private enum Mode { STOPPED, INTERNAL, FOLLOWING }
+
+    private final Listener listener;
+    private final String name;
+    private final Object delivery = new Object();
+    private final Histogram lateness;
+    private Thread thread = null;
+    private volatile boolean running = false;
+
+    // all guarded by this
+    private Mode mode = Mode.STOPPED;
+    private long nextPulse = 0;
+    private long origin = 0;
+    private long internalPeriod;
+    private long followPeriod = 0;
+    private long followLimit = -1;
+    private long lastMidiPulse = -1;
+    private long lastMidiNanos = 0;
+
+    // the internal timeline as of the last start or tempo change, for reading without the lock
+    private volatile Timeline timeline = null;
+
+
+    /**
+     * @param listener gets every pulse
+     * @param name used for the clock thread
+     * @param tempo internal tempo in bpm
+     */
+    public PulseClock(Listener listener, String name, int tempo) {
+        this(listener, name, tempo, new Histogram());
+    }
+
+    /**
+     * @param lateness records each pulse's lateness, in microseconds
+     */
+    public PulseClock(Listener listener, String name, int tempo, Histogram lateness) {
+        this.listener = listener;
+        this.name = name;
+        this.internalPeriod = periodFor(tempo);
+        this.lateness = lateness;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            mode = Mode.STOPPED;
+            timeline = null;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * runInternal runs the timeline at the internal tempo, from the first pulse if restart, with the
+     * next pulse due now.
+     */
+    public void runInternal(boolean restart) {
+        runInternal(restart, 0);
+    }
+
+    /**
+     * runInternal with a lead time has the next pulse due that many nanoseconds from now.
+     */
+    public synchronized void runInternal(boolean restart, long leadNanos) {
+        if (restart) {
+            nextPulse = 0;
+        }
+        mode = Mode.INTERNAL;
+        origin = System.nanoTime() + leadNanos - nextPulse * internalPeriod;
+        timeline = new Timeline(origin, internalPeriod);
+        wake();
+    }
+
+    /**
+     * follow makes the timeline follow incoming midi clock; called on midi start or continue.
+     */
+    public synchronized void follow(boolean restart) {
+        if (restart) {
+            nextPulse = 0;
+        }
+        mode = Mode.FOLLOWING;
+        timeline = null;
+        followLimit = nextPulse - 1;
+        lastMidiPulse = -1;
+        lastMidiNanos = 0;
+    }
+
+    /**
+     * seek moves the timeline to the given pulse, to be delivered next.
+     */
+    public synchronized void seek(long pulse) {
+        if (mode == Mode.INTERNAL) {
+            origin += (nextPulse - pulse) * internalPeriod;
+            timeline = new Timeline(origin, internalPeriod);
+        } else if (mode == Mode.FOLLOWING) {
+            followLimit = pulse - 1;
+            lastMidiPulse = -1;
+        }
+        nextPulse = pulse;
+    }
+
+    public synchronized void halt() {
+        mode = Mode.STOPPED;
+        timeline = null;
+    }
+
+    /**
+     * setTempo changes the internal tempo, keeping the next pulse's deadline where it is.
+     */
+    public synchronized void setTempo(int tempo) {
+        long period = periodFor(tempo);
+        if (mode == Mode.INTERNAL) {
+            long due = origin + nextPulse * internalPeriod;
+            origin = due - nextPulse * period;
+            timeline = new Timeline(origin, period);
+        }
+        internalPeriod = period;
+    }
+
+    /**
+     * midiClock handles an incoming midi timing clock received at the given time.
+     */
+    public void midiClock(long nanos) {
+        synchronized (delivery) {
+            long from;
+            long pulse;
+            long catchUpOrigin;
+            long catchUpPeriod;
+            synchronized (this) {
+                if (mode != Mode.FOLLOWING) {
+                    return;
+                }
+
+                // deliver any interpolated pulses that haven't gone out yet, then this one
+                pulse = lastMidiPulse + SUBDIVISION;
+                if (lastMidiPulse < 0) {
+                    pulse = (nextPulse + SUBDIVISION - 1) / SUBDIVISION * SUBDIVISION;
+                }
+                from = nextPulse;
+                catchUpOrigin = origin;
+                catchUpPeriod = lastMidiPulse < 0 ? 0 : followPeriod;
+                nextPulse = Math.max(nextPulse, pulse + 1);
+                lastMidiPulse = pulse;
+
+                if (lastMidiNanos > 0) {
+                    long period = (nanos - lastMidiNanos) / SUBDIVISION;
+                    followPeriod = followPeriod == 0 ? period : (3 * followPeriod + period) / 4;
+                }
+                lastMidiNanos = nanos;
+                if (followPeriod > 0) {
+                    origin = nanos - pulse * followPeriod;
+                    followLimit = pulse + SUBDIVISION - 1;
+                    wake();
+                }
+            }
+            deliver(from, pulse, catchUpOrigin, catchUpPeriod, nanos);
+        }
+    }
+
+    /**
+     * betweenPulses runs a task while no pulse is being delivered, e.g. to move the listener's
+     * position along with seek().
+     */
+    public void betweenPulses(Runnable task) {
+        synchronized (delivery) {
+            task.run();
+        }
+    }
+
+    /**
+     * getPeriod returns the time between pulses at the current tempo, internal or followed (0 if not
+     * known yet).
+     */
+    public synchronized long getPeriod() {
+        return mode == Mode.FOLLOWING ? followPeriod : internalPeriod;
+    }
+
+    public synchronized long getPulse() {
+        return nextPulse;
+    }
+
+    /**
+     * deadline returns when a pulse is due on the internal timeline, or -1 if the internal clock
+     * isn't running. It doesn't wait for the clock thread.
+     */
+    public long deadline(long pulse) {
+        Timeline t = timeline;
+        return t == null ? -1 : t.origin + pulse * t.period;
+    }
+
+    public Histogram getLateness() {
+        return lateness;
+    }
+
+
+    /***** private implementation ***************/
+
+    private void loop() {
+        while (running) {
+            long wait = IDLE_PARK_NANOS;
+            synchronized (delivery) {
+                long pulse = -1;
+                long due = 0;
+                synchronized (this) {
+                    if (mode == Mode.INTERNAL || (mode == Mode.FOLLOWING && nextPulse <= followLimit)) {
+                        long period = mode == Mode.INTERNAL ? internalPeriod : followPeriod;
+                        due = origin + nextPulse * period;
+                        wait = due - System.nanoTime();
+                        if (wait <= 0) {
+                            pulse = nextPulse++;
+                        }
+                    }
+                }
+                if (pulse >= 0) {
+                    deliver(pulse, pulse, 0, 0, due);
+                    continue;
+                }
+            }
+            LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    // called holding the delivery lock but not the clock's; the last pulse was due at lastDue, any
+    // before it on the timeline (origin, period) they were interpolated on
+    private void deliver(long from, long to, long origin, long period, long lastDue) {
+        for (long p = from; p <= to; p++) {
+            long due = p == to || period <= 0 ? lastDue : origin + p * period;
+            lateness.record((System.nanoTime() - due) / 1000);
+            try {
+                listener.pulse(p);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void wake() {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static class Timeline {
+
+        private final long origin;
+        private final long period;
+
+        public Timeline(long origin, long period) {
+            this.origin = origin;
+            this.period = period;
+        }
+    }
+
+    private static long periodFor(int tempo) {
+        return 60000000000L / ((long) Math.max(1, tempo) * Clockable.PULSES_PER_BEAT);
+    }
+
+}
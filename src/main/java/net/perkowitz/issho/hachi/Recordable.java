@@ -0,0 +1,11 @@
+package net.perkowitz.issho.hachi;
+
+/**
+ * A Recordable module can record notes played live into its steps (see LiveRecorder). The
+ * controller sends it the notes played on the keyboard, along with those played on its own pads.
+ */
+public interface Recordable {
+
+    public LiveRecorder getRecorder();
+
+}
@@ -0,0 +1,180 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import net.perkowitz.issho.devices.GridDevice;
+import net.perkowitz.issho.devices.virtual.VirtualGridDevice;
+import net.perkowitz.issho.util.MidiCaptureReader;
+import net.perkowitz.issho.util.SettingsUtil;
+
+import javax.sound.midi.ShortMessage;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replay plays the input side of a midi capture back into a HachiController, to reproduce a session
+ * from the field or to run it as a regression benchmark. It boots the controller from a settings file
+ * (which should use virtual devices, a fixed "randomSeed" and a "capture" file for the output), then
+ * sends each inbound message from the capture to where it originally went:
+ *   - "midi in" (clock, transport, etc) to the controller
+ *   - "keyboard" to the chord receiver
+ *   - "gridN events" (pad and button presses) to the Nth grid's listener
+ * all on one thread in timestamp order, so two replays with the same seed produce the same output.
+ * The outputs can then be compared with "CaptureApp <file> diff <other file>".
+ *
+ * Usage: Replay <settings file> <capture file> [speed]
+ * where speed 1 is real time, 100 is 100x real time, and 0 (the default) is as fast as possible.
+ */
+public class Replay {
+
+    private static long SPIN_NANOS = 200000;
+    private static Pattern GRID_EVENTS = Pattern.compile("grid(\\d+) events");
+
+    private final HachiController controller;
+    private final double speed;
+
+
+    public static void main(String args[]) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("Usage: Replay <settings file> <capture file> [speed]");
+            System.exit(1);
+        }
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+
+        System.out.printf("Getting replay settings from %s...\n", args[0]);
+        Map settings = SettingsUtil.getSettings(args[0]);
+        HachiController controller = Hachi.createController(settings);
+        // shedding depends on timing, so it would make replays differ
+        controller.setLoadShedding(false);
+        Replay replay = new Replay(controller, speed);
+        replay.run(args[1]);
+        System.exit(0);
+    }
+
+
+    public Replay(HachiController controller, double speed) {
+        this.controller = controller;
+        this.speed = speed;
+    }
+
+    /**
+     * run replays the inbound messages from the capture file and then shuts the controller down,
+     * which flushes its own capture.
+     */
+    public void run(String filename) throws Exception {
+
+        List<Target> targets = Lists.newArrayList();
+        List<MidiCaptureReader.Record> records = Lists.newArrayList();
+        try (MidiCaptureReader reader = new MidiCaptureReader(filename)) {
+            MidiCaptureReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.isInbound()) {
+                    records.add(record);
+                }
+            }
+            for (MidiCaptureReader.Record r : records) {
+                while (targets.size() <= r.getPort()) {
+                    targets.add(null);
+                }
+                if (targets.get(r.getPort()) == null) {
+                    targets.set(r.getPort(), target(reader.portName(r.getPort())));
+                }
+            }
+        }
+
+        // messages are written in the order they were claimed, which can be slightly out of time order
+        Collections.sort(records, new Comparator<MidiCaptureReader.Record>() {
+            public int compare(MidiCaptureReader.Record a, MidiCaptureReader.Record b) {
+                return Long.compare(a.getNanos(), b.getNanos());
+            }
+        });
+
+        controller.run();
+        for (GridDevice gridDevice : controller.getGridDevices()) {
+            if (gridDevice instanceof VirtualGridDevice) {
+                ((VirtualGridDevice) gridDevice).stopScript();
+            }
+        }
+
+        System.out.printf("Replaying %d messages from %s at %s...\n", records.size(), filename,
+                speed > 0 ? String.format("%.1fx", speed) : "full speed");
+        long startNanos = System.nanoTime();
+        long firstNanos = records.size() > 0 ? records.get(0).getNanos() : 0;
+        long replayed = 0;
+        for (MidiCaptureReader.Record record : records) {
+            Target target = targets.get(record.getPort());
+            ShortMessage message = record.toShortMessage();
+            if (target == null || message == null) {
+                continue;
+            }
+            if (speed > 0) {
+                waitUntil(startNanos + (long) ((record.getNanos() - firstNanos) / speed));
+            }
+            target.send(message);
+            replayed++;
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        double seconds = Math.max(1, elapsedNanos) / 1e9;
+        double sessionSeconds = records.size() > 0 ? (records.get(records.size() - 1).getNanos() - firstNanos) / 1e9 : 0;
+        System.out.printf("Replayed %d messages (%.1f s of session) in %.3f s: %.0f messages/s, %.1fx real time\n",
+                replayed, sessionSeconds, seconds, replayed / seconds, sessionSeconds / seconds);
+
+        controller.pressExit();
+    }
+
+
+    /***** private implementation ***************/
+
+    private interface Target {
+        void send(ShortMessage message);
+    }
+
+    private Target target(String portName) {
+        if (portName.equals("midi in")) {
+            return new Target() {
+                public void send(ShortMessage message) {
+                    controller.send(message, -1);
+                }
+            };
+        } else if (portName.equals("keyboard")) {
+            return new Target() {
+                public void send(ShortMessage message) {
+                    controller.getChordReceiver().send(message, -1);
+                }
+            };
+        }
+
+        Matcher matcher = GRID_EVENTS.matcher(portName);
+        if (matcher.matches()) {
+            int index = Integer.parseInt(matcher.group(1));
+            if (index < controller.getHachiDeviceManagers().length) {
+                final HachiDeviceManager deviceManager = controller.getHachiDeviceManagers()[index];
+                return new Target() {
+                    public void send(ShortMessage message) {
+                        VirtualGridDevice.dispatch(message, deviceManager);
+                    }
+                };
+            }
+        }
+
+        System.out.printf("Not replaying port %s\n", portName);
+        return null;
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package net.perkowitz.issho.hachi;
+
+/**
+ * A Seekable Clockable can go straight to a song position (from midi song position pointer), so that
+ * the next clock plays from there as if it had been running since the start of the song.
+ */
+public interface Seekable {
+
+    /**
+     * @param measure the measure of the position
+     * @param step the step (16th note) within the measure
+     * @param songStep the position in steps from the start of the song
+     */
+    public void seek(int measure, int step, long songStep);
+
+}
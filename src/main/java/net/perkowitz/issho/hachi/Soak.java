@@ -0,0 +1,265 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import net.perkowitz.issho.devices.GridDevice;
+import net.perkowitz.issho.devices.virtual.VirtualGridDevice;
+import net.perkowitz.issho.util.Histogram;
+import net.perkowitz.issho.util.MidiDeviceRegistry;
+import net.perkowitz.issho.util.SettingsUtil;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Soak is a headless long-running load test. It boots a HachiController from a settings file that
+ * uses virtual devices (see hachi-virtual.json), drives it with 24 PPQN midi clock at one or more
+ * tempos while the virtual grids press random pads, and reports:
+ *   - pulse lateness: how long after it was due the controller's PulseClock delivered each pulse to
+ *     the modules (its own measure; see ClockMeter), whether interpolated or on a midi clock
+ *   - tick time: how long the controller took to handle each midi clock
+ *   - output latency: time from the start of the latest pulse to each midi message going out
+ *   - GC pauses and post-GC heap size
+ *
+ * It exits with status 1 if the p99.9 pulse lateness exceeds the threshold.
+ *
+ * Options go in a "soak" section of the settings:
+ *   "soak": { "bpms": [120, 200, 300], "minutesPerBpm": 20, "padRate": 20,
+ *             "latenessThresholdMicros": 2000, "reportSeconds": 60 }
+ */
+public class Soak {
+
+    private static long SPIN_NANOS = 200000;
+
+    private final HachiController controller;
+    private final List<Integer> bpms;
+    private final double minutesPerBpm;
+    private final double padRate;
+    private final long latenessThresholdMicros;
+    private final int reportSeconds;
+
+    private final Histogram lateness;
+    private final Histogram tickTime = new Histogram();
+    private final Histogram outputLatency = new Histogram();
+    private final Histogram gcPause = new Histogram();
+    private Receiver clockReceiver;
+    private volatile long pulseStartNanos = 0;
+    private volatile long firstHeapAfterGc = -1;
+    private volatile long lastHeapAfterGc = 0;
+    private volatile long maxHeapAfterGc = 0;
+
+
+    public static void main(String args[]) throws Exception {
+
+        String settingsFile = "src/main/resources/hachi-virtual.json";
+        if (args.length > 0) {
+            settingsFile = args[0];
+        }
+
+        System.out.printf("Getting soak settings from %s...\n", settingsFile);
+        Map settings = SettingsUtil.getSettings(settingsFile);
+        Map<Object,Object> soakSettings = (Map<Object,Object>)settings.get("soak");
+        if (soakSettings == null) {
+            soakSettings = Maps.newHashMap();
+        }
+
+        HachiController controller = Hachi.createController(settings);
+        Soak soak = new Soak(controller, soakSettings);
+        soak.attachInput((Map<Object,Object>)settings.get("devices"));
+        soak.attachOutput((Map<Object,Object>)settings.get("devices"));
+        boolean passed = soak.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+
+    public Soak(HachiController controller, Map<Object,Object> soakSettings) {
+        this.controller = controller;
+        this.clockReceiver = controller;
+        this.lateness = controller.getClockMeter().getPulseLateness();
+
+        List<Integer> bpmList = (List<Integer>)soakSettings.get("bpms");
+        bpms = bpmList != null ? bpmList : Lists.newArrayList(120, 200, 300);
+        minutesPerBpm = number(soakSettings.get("minutesPerBpm"), 20);
+        padRate = number(soakSettings.get("padRate"), 20);
+        latenessThresholdMicros = (long)number(soakSettings.get("latenessThresholdMicros"), 2000);
+        reportSeconds = (int)number(soakSettings.get("reportSeconds"), 60);
+    }
+
+    /**
+     * attachInput sends the clock into the midi input loopback (if it is one) rather than straight to
+     * the controller, so it goes through the same metering and capture as external clock would.
+     */
+    public void attachInput(Map<Object,Object> deviceConfigs) {
+        Map<Object,Object> inputConfig = (Map<Object,Object>)deviceConfigs.get("midiInput");
+        if (inputConfig == null) {
+            return;
+        }
+        List<String> names = (List<String>)inputConfig.get("names");
+        MidiDeviceRegistry.Entry entry = MidiDeviceRegistry.getInstance().findEntry(names.toArray(new String[0]), true, false);
+        if (entry == null) {
+            return;
+        }
+        try {
+            entry.getDevice().open();
+            clockReceiver = entry.getDevice().getReceiver();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * attachOutput listens on the far end of the first midi output (which should be a loopback)
+     * to measure how long after the start of a clock pulse its messages go out.
+     */
+    public void attachOutput(Map<Object,Object> deviceConfigs) {
+        List<Object> outputConfigs = (List<Object>)deviceConfigs.get("midiOutputs");
+        if (outputConfigs == null || outputConfigs.size() == 0) {
+            return;
+        }
+        List<String> names = (List<String>)((Map<Object,Object>)outputConfigs.get(0)).get("names");
+        MidiDeviceRegistry.Entry entry = MidiDeviceRegistry.getInstance().findEntry(names.toArray(new String[0]), false, true);
+        if (entry == null) {
+            System.out.printf("No loopback found for output %s; output latency will not be measured\n", names);
+            return;
+        }
+        try {
+            entry.getDevice().open();
+            entry.getDevice().getTransmitter().setReceiver(new Receiver() {
+                public void send(MidiMessage message, long timeStamp) {
+                    // outputs are sent from the port's writer thread, so this includes the handoff
+                    outputLatency.record((System.nanoTime() - pulseStartNanos) / 1000);
+                }
+                public void close() {}
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * run plays each tempo in turn for minutesPerBpm and prints the results.
+     *
+     * @return true if pulse lateness stayed within the threshold
+     */
+    public boolean run() throws Exception {
+
+        watchGc();
+        controller.run();
+        for (GridDevice gridDevice : controller.getGridDevices()) {
+            if (gridDevice instanceof VirtualGridDevice && padRate > 0) {
+                ((VirtualGridDevice) gridDevice).startScript(padRate, 100, 1);
+            }
+        }
+
+        ShortMessage clock = new ShortMessage(ShortMessage.TIMING_CLOCK);
+        lateness.reset();
+        pulseStartNanos = System.nanoTime();
+        clockReceiver.send(new ShortMessage(ShortMessage.START), -1);
+
+        long startNanos = System.nanoTime();
+        long nextReportNanos = startNanos + reportSeconds * 1000000000L;
+        long deadline = System.nanoTime();
+        for (int bpm : bpms) {
+            long intervalNanos = 60000000000L / (bpm * 24L);
+            long endNanos = System.nanoTime() + (long)(minutesPerBpm * 60000000000L);
+            System.out.printf("Soak: running at %d bpm for %.1f minutes\n", bpm, minutesPerBpm);
+
+            while (deadline < endNanos) {
+                deadline += intervalNanos;
+                waitUntil(deadline);
+
+                long now = System.nanoTime();
+                pulseStartNanos = now;
+                clockReceiver.send(clock, -1);
+                tickTime.record((System.nanoTime() - now) / 1000);
+
+                if (now >= nextReportNanos) {
+                    report(String.format("%d bpm, %d s", bpm, (now - startNanos) / 1000000000L));
+                    nextReportNanos += reportSeconds * 1000000000L;
+                }
+            }
+        }
+
+        clockReceiver.send(new ShortMessage(ShortMessage.STOP), -1);
+        for (GridDevice gridDevice : controller.getGridDevices()) {
+            if (gridDevice instanceof VirtualGridDevice) {
+                ((VirtualGridDevice) gridDevice).stopScript();
+            }
+        }
+
+        report("final");
+        long p999 = lateness.percentile(99.9);
+        boolean passed = p999 <= latenessThresholdMicros;
+        System.out.printf("Soak %s: p99.9 pulse lateness %d us (threshold %d us)\n", passed ? "PASSED" : "FAILED", p999, latenessThresholdMicros);
+        return passed;
+    }
+
+
+    /***** private implementation ***************/
+
+    private void report(String label) {
+        System.out.printf("--- soak report (%s) ---\n", label);
+        System.out.printf("  pulse lateness: %s\n", lateness.summary("us"));
+        System.out.printf("  tick time:      %s\n", tickTime.summary("us"));
+        System.out.printf("  output latency: %s\n", outputLatency.summary("us"));
+        System.out.printf("  gc pauses:      %s\n", gcPause.summary("us"));
+        System.out.printf("  heap after gc:  first=%d KB last=%d KB max=%d KB\n",
+                Math.max(0, firstHeapAfterGc) / 1024, lastHeapAfterGc / 1024, maxHeapAfterGc / 1024);
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void watchGc() {
+        NotificationListener listener = new NotificationListener() {
+            public void handleNotification(Notification notification, Object handback) {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                gcPause.record(info.getGcInfo().getDuration() * 1000);
+                long used = 0;
+                for (MemoryUsage usage : info.getGcInfo().getMemoryUsageAfterGc().values()) {
+                    used += usage.getUsed();
+                }
+                if (firstHeapAfterGc < 0) {
+                    firstHeapAfterGc = used;
+                }
+                lastHeapAfterGc = used;
+                maxHeapAfterGc = Math.max(maxHeapAfterGc, used);
+            }
+        };
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean instanceof NotificationEmitter) {
+                ((NotificationEmitter) bean).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    private static double number(Object value, double defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return defaultValue;
+    }
+
+}
@@ -0,0 +1,173 @@
+package net.perkowitz.issho.hachi;
+
+import lombok.Setter;
+import net.perkowitz.issho.devices.MultiDisplay;
+import net.perkowitz.issho.util.Histogram;
+
+/**
+ * TickBudget checks each pulse's work against its deadline: a pulse is late if it finishes after the
+ * next pulse was due. Each late pulse sheds one more kind of non-essential work, in this order:
+ *   LEDS: the modules' pad and button updates made while clocking them (they're redrawn once things
+ *         recover); updates from pad presses still go out
+ *   TEXT: the text display's clock
+ *   CCS:  module output other than notes waits until every module's notes have gone out
+ * and a beat's worth of pulses on time brings back one level. Notes are never shed.
+ *
+ * Called from the clock thread; the counters are read over JMX.
+ */
+public class TickBudget implements TickBudgetMBean {
+
+    public enum Shed { NONE, LEDS, TEXT, CCS }
+
+    private static final int RECOVERY_PULSES = Clockable.PULSES_PER_BEAT;
+
+    private final MultiDisplay[] displays;
+    @Setter private volatile boolean shedding = true;   // when false, late pulses are only counted
+    private volatile Shed shed = Shed.NONE;
+    private int onTimePulses = 0;
+
+    private volatile long pulses = 0;
+    private volatile long latePulses = 0;
+    private volatile long shedTextUpdates = 0;
+    private volatile long deferredMessages = 0;
+    private volatile String lastLateClockable = null;
+    private final Histogram lateness = new Histogram();
+
+
+    /**
+     * @param displays the clockables' displays, which stop drawing while LEDs are shed
+     */
+    public TickBudget(MultiDisplay[] displays) {
+        this.displays = displays;
+    }
+
+    public Shed getShed() {
+        return shed;
+    }
+
+    public boolean isShedding(Shed level) {
+        return shed.compareTo(level) >= 0;
+    }
+
+    /**
+     * pulseDone records a pulse's work and moves the shed level if needed.
+     *
+     * @param startNanos when the pulse was due (or arrived, if there was no deadline)
+     * @param periodNanos time until the next pulse is due
+     * @param slowest the clockable that took longest on this pulse
+     * @return true if the level changed
+     */
+    public boolean pulseDone(long startNanos, long periodNanos, String slowest) {
+        pulses++;
+        long late = System.nanoTime() - startNanos - periodNanos;
+        if (late > 0) {
+            latePulses++;
+            lateness.record(late / 1000);
+            lastLateClockable = slowest;
+            onTimePulses = 0;
+            if (shedding && shed != Shed.CCS) {
+                setShed(Shed.values()[shed.ordinal() + 1]);
+                return true;
+            }
+        } else if (shed != Shed.NONE && ++onTimePulses >= RECOVERY_PULSES) {
+            onTimePulses = 0;
+            setShed(Shed.values()[shed.ordinal() - 1]);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * recover stops shedding right away (e.g. when the clock stops).
+     */
+    public void recover() {
+        onTimePulses = 0;
+        setShed(Shed.NONE);
+    }
+
+    /**
+     * stale returns whether any display skipped updates while shedding, and clears the flags.
+     */
+    public boolean stale() {
+        boolean stale = false;
+        for (MultiDisplay display : displays) {
+            stale |= display.clearStale();
+        }
+        return stale;
+    }
+
+    public void textShed() {
+        shedTextUpdates++;
+    }
+
+    public void deferred(int count) {
+        deferredMessages += count;
+    }
+
+    private void setShed(Shed level) {
+        shed = level;
+        for (MultiDisplay display : displays) {
+            display.setShedding(level.compareTo(Shed.LEDS) >= 0);
+        }
+    }
+
+
+    /***** TickBudgetMBean implementation ***************/
+
+    public String getShedLevel() {
+        return shed.toString();
+    }
+
+    public long getPulses() {
+        return pulses;
+    }
+
+    public long getLatePulses() {
+        return latePulses;
+    }
+
+    public double getLatenessMeanMicros() {
+        return lateness.getMean();
+    }
+
+    public long getLatenessP99Micros() {
+        return lateness.percentile(99);
+    }
+
+    public long getLatenessMaxMicros() {
+        return lateness.getMax();
+    }
+
+    public String getLastLateClockable() {
+        return lastLateClockable;
+    }
+
+    public long getShedPadUpdates() {
+        long count = 0;
+        for (MultiDisplay display : displays) {
+            count += display.getShedCount();
+        }
+        return count;
+    }
+
+    public long getShedTextUpdates() {
+        return shedTextUpdates;
+    }
+
+    public long getDeferredMessages() {
+        return deferredMessages;
+    }
+
+    public void reset() {
+        pulses = 0;
+        latePulses = 0;
+        shedTextUpdates = 0;
+        deferredMessages = 0;
+        lastLateClockable = null;
+        lateness.reset();
+        for (MultiDisplay display : displays) {
+            display.resetShedCount();
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package net.perkowitz.issho.hachi;
+
+/**
+ * JMX view of the tick budget. Lateness is in microseconds.
+ */
+public interface TickBudgetMBean {
+
+    public String getShedLevel();
+    public long getPulses();
+    public long getLatePulses();
+    public double getLatenessMeanMicros();
+    public long getLatenessP99Micros();
+    public long getLatenessMaxMicros();
+    public String getLastLateClockable();
+    public long getShedPadUpdates();
+    public long getShedTextUpdates();
+    public long getDeferredMessages();
+    public void reset();
+
+}
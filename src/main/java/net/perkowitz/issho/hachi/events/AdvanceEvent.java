@@ -0,0 +1,33 @@
+package net.perkowitz.issho.hachi.events;
+
+import jdk.jfr.*;
+
+@Name("net.perkowitz.issho.Advance")
+@Label("Module Advance")
+@Category({"Hachi", "Modules"})
+@Description("A module advancing to its next step")
+@StackTrace(false)
+public class AdvanceEvent extends Event {
+
+    @Label("Module") String module;
+    @Label("Step") @Description("The module's step (or stage) position after advancing") int step;
+    @Label("Messages Sent") int messageCount;
+
+
+    public static AdvanceEvent start(HachiEvents events) {
+        if (!HachiEvents.isEnabled(events)) {
+            return null;
+        }
+        AdvanceEvent event = new AdvanceEvent();
+        event.begin();
+        return event;
+    }
+
+    public void end(String module, int step, int messageCount) {
+        this.module = module;
+        this.step = step;
+        this.messageCount = messageCount;
+        commit();
+    }
+
+}
@@ -0,0 +1,35 @@
+package net.perkowitz.issho.hachi.events;
+
+import jdk.jfr.*;
+
+@Name("net.perkowitz.issho.Clock")
+@Label("Clock")
+@Category({"Hachi", "Clock"})
+@Description("HachiController sending a clock pulse to its clocked modules")
+@StackTrace(false)
+public class ClockEvent extends Event {
+
+    @Label("Measure") int measure;
+    @Label("Beat") int beat;
+    @Label("Pulse") int pulse;
+    @Label("Clockables") int clockables;
+
+
+    public static ClockEvent start(HachiEvents events) {
+        if (!HachiEvents.isEnabled(events)) {
+            return null;
+        }
+        ClockEvent event = new ClockEvent();
+        event.begin();
+        return event;
+    }
+
+    public void end(int measure, int beat, int pulse, int clockables) {
+        this.measure = measure;
+        this.beat = beat;
+        this.pulse = pulse;
+        this.clockables = clockables;
+        commit();
+    }
+
+}
@@ -0,0 +1,31 @@
+package net.perkowitz.issho.hachi.events;
+
+import jdk.jfr.*;
+
+@Name("net.perkowitz.issho.Draw")
+@Label("Draw")
+@Category({"Hachi", "Display"})
+@Description("The pad updates a module made during a clock pulse, and the time spent writing them to the displays")
+@StackTrace(false)
+public class DrawEvent extends Event {
+
+    @Label("Module") String module;
+    @Label("Pads") int padCount;
+    @Label("Draw Time") @Timespan(Timespan.NANOSECONDS) long drawTime;
+
+
+    /**
+     * record commits the draw only if any pads were drawn. The module's other work isn't part of the
+     * draw, so this is an instant event carrying the draw time rather than spanning the pulse.
+     */
+    public static void record(String module, int padCount, long drawNanos) {
+        if (padCount > 0) {
+            DrawEvent event = new DrawEvent();
+            event.module = module;
+            event.padCount = padCount;
+            event.drawTime = drawNanos;
+            event.commit();
+        }
+    }
+
+}
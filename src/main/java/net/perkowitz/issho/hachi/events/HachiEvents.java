@@ -0,0 +1,107 @@
+package net.perkowitz.issho.hachi.events;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.Getter;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * HachiEvents turns Hachi's JDK Flight Recorder events on and off. When disabled (the default), the
+ * event classes don't even create event objects, so the instrumented paths cost one check.
+ *
+ * Each HachiRuntime has its own HachiEvents from its settings, handed to its controller and (via
+ * beginModule) its modules, so one rig's events can be on while another's are off. A recording belongs
+ * to the JVM, though, so there's only one: the first runtime that asks for it starts it.
+ *
+ * Settings:
+ *   "flightRecorderEvents": true        emit the events (to any recording, e.g. one started with jcmd)
+ *   "flightRecording": "hachi.jfr"      also start a continuous recording, dumped to this file on exit
+ *   "flightRecordingMinutes": 10        how much of the continuous recording to keep
+ */
+public class HachiEvents {
+
+    private static int DEFAULT_RECORDING_MINUTES = 10;
+
+    private static Recording recording = null;
+
+    // the events of the rig whose module is being created on this thread
+    private static final ThreadLocal<HachiEvents> moduleScope = new ThreadLocal<>();
+
+    @Getter private final boolean enabled;
+    private final String recordingFile;
+    private final int recordingMinutes;
+
+
+    public HachiEvents(Map settings) {
+        Boolean events = (Boolean)settings.get("flightRecorderEvents");
+        enabled = events != null && events;
+        recordingFile = enabled ? (String)settings.get("flightRecording") : null;
+        Integer minutes = (Integer)settings.get("flightRecordingMinutes");
+        recordingMinutes = minutes == null ? DEFAULT_RECORDING_MINUTES : minutes;
+    }
+
+    /**
+     * start starts the recording, if the settings ask for one.
+     */
+    public void start() {
+        if (recordingFile != null) {
+            startRecording(recordingFile, recordingMinutes);
+        }
+    }
+
+    public static boolean isEnabled(HachiEvents events) {
+        return events != null && events.enabled;
+    }
+
+    /**
+     * beginModule gives the modules created on this thread, until endModule, the given rig's events.
+     */
+    public static void beginModule(HachiEvents events) {
+        moduleScope.set(events);
+    }
+
+    public static void endModule() {
+        moduleScope.remove();
+    }
+
+    /**
+     * forModule returns the events of the rig whose module is being created on this thread, or null
+     * (no events) outside of beginModule/endModule.
+     */
+    public static HachiEvents forModule() {
+        return moduleScope.get();
+    }
+
+    /**
+     * startRecording starts a continuous, low-overhead recording (the JDK's "default" settings plus
+     * Hachi's events) that keeps the last few minutes and is written to file when the JVM exits.
+     *
+     * @param file
+     * @param minutes
+     */
+    public static synchronized void startRecording(String file, int minutes) {
+        if (recording != null) {
+            if (!Paths.get(file).equals(recording.getDestination())) {
+                System.out.printf("Already flight recording to %s; not recording to %s\n", recording.getDestination(), file);
+            }
+            return;
+        }
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("hachi");
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofMinutes(minutes));
+            recording.setDestination(Paths.get(file));
+            recording.setDumpOnExit(true);
+            recording.start();
+            System.out.printf("Flight recording to %s (last %d minutes)\n", file, minutes);
+        } catch (Exception e) {
+            e.printStackTrace();
+            recording = null;
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package net.perkowitz.issho.hachi.events;
+
+import jdk.jfr.*;
+
+@Name("net.perkowitz.issho.Memory")
+@Label("Save/Load")
+@Category({"Hachi", "Modules"})
+@Description("A module saving or loading its memory file")
+@StackTrace(false)
+public class MemoryEvent extends Event {
+
+    @Label("Module") String module;
+    @Label("Operation") String operation;
+    @Label("File Index") int index;
+
+
+    public static MemoryEvent start(HachiEvents events) {
+        if (!HachiEvents.isEnabled(events)) {
+            return null;
+        }
+        MemoryEvent event = new MemoryEvent();
+        event.begin();
+        return event;
+    }
+
+    public void end(String module, String operation, int index) {
+        this.module = module;
+        this.operation = operation;
+        this.index = index;
+        commit();
+    }
+
+}
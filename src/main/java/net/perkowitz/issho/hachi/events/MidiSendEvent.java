@@ -0,0 +1,37 @@
+package net.perkowitz.issho.hachi.events;
+
+import jdk.jfr.*;
+
+@Name("net.perkowitz.issho.MidiSend")
+@Label("Midi Send")
+@Category({"Hachi", "Midi"})
+@Description("A module sending a midi message to its output")
+@StackTrace(false)
+public class MidiSendEvent extends Event {
+
+    @Label("Module") String module;
+    @Label("Command") int command;
+    @Label("Channel") int channel;
+    @Label("Data 1") int data1;
+    @Label("Data 2") int data2;
+
+
+    public static MidiSendEvent start(HachiEvents events) {
+        if (!HachiEvents.isEnabled(events)) {
+            return null;
+        }
+        MidiSendEvent event = new MidiSendEvent();
+        event.begin();
+        return event;
+    }
+
+    public void end(String module, int command, int channel, int data1, int data2) {
+        this.module = module;
+        this.command = command;
+        this.channel = channel;
+        this.data1 = data1;
+        this.data2 = data2;
+        commit();
+    }
+
+}
@@ -0,0 +1,35 @@
+package net.perkowitz.issho.hachi.events;
+
+import jdk.jfr.*;
+
+@Name("net.perkowitz.issho.SelectModule")
+@Label("Select Module")
+@Category({"Hachi", "Display"})
+@Description("A grid device switching to a module and redrawing it")
+@StackTrace(false)
+public class SelectModuleEvent extends Event {
+
+    @Label("Device") String device;
+    @Label("Module Index") int moduleIndex;
+    @Label("Module") String module;
+    @Label("Pads") int padCount;
+
+
+    public static SelectModuleEvent start(HachiEvents events) {
+        if (!HachiEvents.isEnabled(events)) {
+            return null;
+        }
+        SelectModuleEvent event = new SelectModuleEvent();
+        event.begin();
+        return event;
+    }
+
+    public void end(String device, int moduleIndex, String module, int padCount) {
+        this.device = device;
+        this.moduleIndex = moduleIndex;
+        this.module = module;
+        this.padCount = padCount;
+        commit();
+    }
+
+}
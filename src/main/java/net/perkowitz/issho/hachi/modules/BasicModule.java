@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.Setter;
 import net.perkowitz.issho.devices.*;
 import net.perkowitz.issho.devices.launchpadpro.Color;
+import net.perkowitz.issho.hachi.HachiRandom;
+import net.perkowitz.issho.hachi.events.HachiEvents;
 import net.perkowitz.issho.util.DisplayUtil;
 
 /**
@@ -12,6 +14,8 @@ import net.perkowitz.issho.util.DisplayUtil;
 public class BasicModule implements Module, GridListener {
 
     @Getter @Setter protected GridDisplay display;
+    @Getter protected HachiRandom random = HachiRandom.create();
+    @Getter protected HachiEvents events = HachiEvents.forModule();
 
 
     /***** Module interface ****************************************/
@@ -57,6 +61,10 @@ public class BasicModule implements Module, GridListener {
 
     }
 
+    public void onPadPressure(GridPad pad, int value) {
+
+    }
+
     public void onButtonPressed(GridButton button, int velocity) {
 
     }
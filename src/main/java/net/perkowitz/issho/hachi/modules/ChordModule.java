@@ -3,7 +3,7 @@ package net.perkowitz.issho.hachi.modules;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import net.perkowitz.issho.hachi.Chord;
+import net.perkowitz.issho.hachi.ChordSnapshot;
 import net.perkowitz.issho.hachi.Chordable;
 
 import javax.sound.midi.*;
@@ -18,7 +18,7 @@ import java.util.Set;
  */
 public class ChordModule extends MidiModule implements Chordable {
 
-    protected Chord chord = null;
+    protected volatile ChordSnapshot chord = ChordSnapshot.EMPTY;
 
     // remember what notes we actually played for input note numbers, so we can stop them later
     // maps to a list rather than a set because some synths (e.g. Sub 37) track multiple ons/offs for same note
@@ -32,7 +32,7 @@ public class ChordModule extends MidiModule implements Chordable {
 
     /***** chordable implementation ********************************/
 
-    public void setChord(Chord chord) {
+    public void setChord(ChordSnapshot chord) {
         this.chord = chord;
     }
 
@@ -43,7 +43,7 @@ public class ChordModule extends MidiModule implements Chordable {
      */
 
     @Override
-    protected void sendMidiNote(int channel, int noteNumber, int velocity) {
+    protected void sendMidiNote(int channel, int noteNumber, int velocity, int gatePulses) {
 
         if (isMuted && velocity > 0) return;
 //        System.out.printf("ChordModule Note: ch=%d, note=%d, vel=%d\n", channel, noteNumber, velocity);
@@ -56,14 +56,15 @@ public class ChordModule extends MidiModule implements Chordable {
             }
             for (Integer mappedNote : mappedNotes) {
 //                System.out.printf("- mapped note off for %d to %d\n", noteNumber, mappedNote);
-                send(channel, mappedNote, velocity);
+                send(channel, mappedNote, velocity, 0);
             }
             playedNotesMap.put(noteNumber, Lists.<Integer>newArrayList());
 
         } else {
             // note on -- once we compute any mapping, add those mappings to the playedNotesMap
             int mappedNote = noteNumber;
-            if (chord != null && !chord.isEmpty()) {
+            ChordSnapshot chord = this.chord;
+            if (!chord.isEmpty()) {
                 mappedNote = chord.mapNote(noteNumber);
 //                System.out.printf("- mapped %d to %d\n", noteNumber, mappedNote);
             }
@@ -73,21 +74,26 @@ public class ChordModule extends MidiModule implements Chordable {
             } else {
                 playedNotesMap.get(noteNumber).add(mappedNote);
             }
-            send(channel, mappedNote, velocity);
+            send(channel, mappedNote, velocity, gatePulses);
 
         }
 
 
     }
 
-    protected void send(int channel, int noteNumber, int velocity) {
-        try {
-            ShortMessage noteMessage = new ShortMessage();
-            noteMessage.setMessage(ShortMessage.NOTE_ON, channel, noteNumber, velocity);
-            outputReceiver.send(noteMessage, -1);
-        } catch (InvalidMidiDataException e) {
-            System.err.println(e);
+    /**
+     * mappedNote is the note last sent for a note number that's playing, after any chord mapping.
+     */
+    protected int mappedNote(int noteNumber) {
+        List<Integer> mappedNotes = playedNotesMap.get(noteNumber);
+        if (mappedNotes == null || mappedNotes.isEmpty()) {
+            return noteNumber;
         }
+        return mappedNotes.get(mappedNotes.size() - 1);
+    }
+
+    protected void send(int channel, int noteNumber, int velocity, int gatePulses) {
+        sendNoteMessage(channel, noteNumber, velocity, gatePulses);
     }
 
 }
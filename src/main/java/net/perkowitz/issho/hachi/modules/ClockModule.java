@@ -49,9 +49,9 @@ public class ClockModule extends BasicModule implements Clockable {
         pads.add(pad);
         display.setPad(pad, stepColor);
 
-        pad = GridPad.at((int)(Math.random() * 8), (int)(Math.random() * 8));
+        pad = GridPad.at((int)(random.nextDouble() * 8), (int)(random.nextDouble() * 8));
         pads.add(pad);
-        display.setPad(pad, Color.fromIndex((int)(Math.random() * 64)));
+        display.setPad(pad, Color.fromIndex((int)(random.nextDouble() * 64)));
 
     }
 
@@ -86,7 +86,7 @@ public class ClockModule extends BasicModule implements Clockable {
 
     public void clock(int measure, int beat, int pulse) {
         // imitate old "tick" system of sending a tick per 16th note, and a reset on each measure
-        if (pulse % 6 == 0) {
+        if (pulse % PULSES_PER_STEP == 0) {
             tick(beat == 0 && pulse == 0);
         }
     }
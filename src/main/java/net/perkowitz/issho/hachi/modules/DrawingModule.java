@@ -9,6 +9,7 @@ import net.perkowitz.issho.devices.GridColor;
 import net.perkowitz.issho.devices.GridPad;
 import net.perkowitz.issho.devices.launchpadpro.Color;
 import net.perkowitz.issho.hachi.Clockable;
+import net.perkowitz.issho.hachi.Seekable;
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.annotate.JsonDeserialize;
@@ -24,7 +25,7 @@ import static net.perkowitz.issho.hachi.modules.DrawingModule.Mode.PLAY;
 /**
  * Created by optic on 9/12/16.
  */
-public class DrawingModule extends BasicModule implements Clockable {
+public class DrawingModule extends BasicModule implements Clockable, Seekable {
 
     public enum Mode {
         PLAY, EDIT
@@ -198,12 +199,19 @@ public class DrawingModule extends BasicModule implements Clockable {
 
     public void clock(int measure, int beat, int pulse) {
         // imitate old "tick" system of sending a tick per 16th note, and a reset on each measure
-        if (pulse % 6 == 0) {
+        if (pulse % PULSES_PER_STEP == 0) {
             tick(beat == 0 && pulse == 0);
         }
     }
 
 
+    /***** Seekable implementation ****************************************/
+
+    public void seek(int measure, int step, long songStep) {
+        tickCount = (int) songStep;
+    }
+
+
     /***** private implementation ****************************************/
 
     private void selectColor(GridColor color) {
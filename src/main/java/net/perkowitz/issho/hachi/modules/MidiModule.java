@@ -1,5 +1,16 @@
 package net.perkowitz.issho.hachi.modules;
 
+import lombok.Getter;
+import lombok.Setter;
+import net.perkowitz.issho.hachi.Clockable;
+import net.perkowitz.issho.hachi.PulseClock;
+import net.perkowitz.issho.hachi.events.AdvanceEvent;
+import net.perkowitz.issho.hachi.events.MidiSendEvent;
+import net.perkowitz.issho.util.HistogramMeter;
+import net.perkowitz.issho.util.MidiBatch;
+import net.perkowitz.issho.util.MidiCoalescer;
+import net.perkowitz.issho.util.TimingWheel;
+
 import javax.sound.midi.*;
 
 import static javax.sound.midi.ShortMessage.*;
@@ -19,10 +30,34 @@ public class MidiModule extends BasicModule implements Receiver {
     public static int MIDI_RESET_ALL_CONTROLLERS = 121;
     public static int MIDI_REALTIME_COMMAND = 0xF0;
 
+    public enum PressureOutput { OFF, CC, POLY }
+
+    private static final int GATE_WHEEL_SLOTS = 256;
+    private static final int GATE_WHEEL_CAPACITY = 1024;
+
     protected Transmitter inputTransmitter;
     protected Receiver outputReceiver;
     protected boolean isMuted;
     protected int velocityVariability = 10;
+    @Getter protected HistogramMeter saveMeter = new HistogramMeter();
+    @Getter protected HistogramMeter loadMeter = new HistogramMeter();
+    protected int messageCount = 0;
+    private int advanceMessageCount = 0;
+
+    // note offs (and anything else) scheduled in clock pulses; see sendMidiNote(channel, note, velocity, gatePulses)
+    @Setter protected int gatePulses = 0;
+    private final TimingWheel gateWheel = new TimingWheel(GATE_WHEEL_SLOTS, GATE_WHEEL_CAPACITY, new TimingWheel.Handler() {
+        public void fire(int status, int data1, int data2) {
+            gateFired(status, data1, data2);
+        }
+    });
+    private final int[] gateHandles = new int[16 * 128];
+    private final boolean[] gateClosed = new boolean[16 * 128];
+
+    // pad pressure, thinned to a maximum rate on its own thread; see setPressure()
+    private PressureOutput pressureOutput = PressureOutput.OFF;
+    private int pressureController = 1;
+    @Getter private volatile MidiCoalescer pressureCoalescer = null;
 
 
     public MidiModule(Transmitter inputTransmitter, Receiver outputReceiver) {
@@ -32,6 +67,10 @@ public class MidiModule extends BasicModule implements Receiver {
 
         // where to send the sequencer's midi output
         this.outputReceiver = outputReceiver;
+
+        for (int i = 0; i < gateHandles.length; i++) {
+            gateHandles[i] = TimingWheel.NONE;
+        }
     }
 
 
@@ -42,7 +81,9 @@ public class MidiModule extends BasicModule implements Receiver {
      */
 
     public void close() {
-
+        if (pressureCoalescer != null) {
+            pressureCoalescer.close();
+        }
     }
 
     public void mute(boolean muted) {
@@ -55,6 +96,17 @@ public class MidiModule extends BasicModule implements Receiver {
     }
 
     protected void sendMidiNote(int channel, int noteNumber, int velocity) {
+        sendMidiNote(channel, noteNumber, velocity, 0);
+    }
+
+    /**
+     * sendMidiNote with a gate length sends the note on now and its note off gatePulses clock pulses
+     * later, instead of waiting for the module to turn it off. Subclasses that map notes override this
+     * one (the three-argument version calls it with no gate) and pass the gate along, so the note off
+     * is scheduled for the note actually sent; a later explicit note off for a note its gate already
+     * ended is dropped. A gate of 0 just sends the note.
+     */
+    protected void sendMidiNote(int channel, int noteNumber, int velocity, int gatePulses) {
 
 //        System.out.printf("sendMidiNote: %s, %d, %d, %d\n", this.toString(), channel, noteNumber, velocity);
 
@@ -62,14 +114,87 @@ public class MidiModule extends BasicModule implements Receiver {
 
         int v = velocity;
         if (velocityVariability > 0 && velocity != 0) {
-            v = velocity + (int)(Math.random() * 2 * velocityVariability) - velocityVariability;
+            v = velocity + (int)(random.nextDouble() * 2 * velocityVariability) - velocityVariability;
             v = Math.min(127, Math.max(0, v));
         }
 
+        sendNoteMessage(channel, noteNumber, v, gatePulses);
+    }
+
+    /**
+     * scheduleMidiMessage sends a channel message some clock pulses from now (for ratchets, delayed
+     * CCs, etc).
+     *
+     * @return false if too much is already scheduled
+     */
+    protected boolean scheduleMidiMessage(int delayPulses, int command, int channel, int data1, int data2) {
+        synchronized (gateWheel) {
+            return gateWheel.schedule(delayPulses, command | channel, data1, data2) != TimingWheel.NONE;
+        }
+    }
+
+    /**
+     * advanceGates moves the module's scheduled messages forward by some clock pulses, sending
+     * whatever comes due. Modules call it on each clock pulse.
+     */
+    protected void advanceGates(int pulses) {
+        synchronized (gateWheel) {
+            for (int i = 0; i < pulses; i++) {
+                gateWheel.advance();
+            }
+        }
+    }
+
+    /**
+     * releaseGates sends everything still scheduled, e.g. when the clock stops.
+     */
+    protected void releaseGates() {
+        synchronized (gateWheel) {
+            gateWheel.fireAll();
+        }
+    }
+
+    /**
+     * isStepPulse says whether a clock pulse starts a 16th-note step, with the off-beat steps moved
+     * by swingOffset, which is in midi clock pulses (24ths of a beat).
+     */
+    protected static boolean isStepPulse(int pulse, int swingOffset) {
+        int swing = swingOffset * PulseClock.SUBDIVISION;
+        int step = Clockable.PULSES_PER_STEP;
+        return pulse == 0 || pulse == step + swing || pulse == 2 * step || pulse == 3 * step + swing;
+    }
+
+    protected void sendNoteMessage(int channel, int noteNumber, int velocity) {
+        sendNoteMessage(channel, noteNumber, velocity, 0);
+    }
+
+    /**
+     * sendNoteMessage sends a note as is (no velocity variation or muting), scheduling its note off
+     * gatePulses from now if that's more than 0, and keeping track of any note off scheduled for it.
+     */
+    protected void sendNoteMessage(int channel, int noteNumber, int velocity, int gatePulses) {
+        int key = (channel & 0x0F) << 7 | (noteNumber & 0x7F);
+        synchronized (gateWheel) {
+            boolean pending = gateWheel.cancel(gateHandles[key]);
+            gateHandles[key] = TimingWheel.NONE;
+            if (velocity == 0) {
+                if (!pending && gateClosed[key]) {
+                    // its gate already sent the note off
+                    gateClosed[key] = false;
+                    return;
+                }
+            } else {
+                gateClosed[key] = false;
+                if (gatePulses > 0) {
+                    gateHandles[key] = gateWheel.schedule(gatePulses, NOTE_ON | (channel & 0x0F), noteNumber, 0);
+                }
+            }
+        }
+
         try {
             ShortMessage noteMessage = new ShortMessage();
-            noteMessage.setMessage(ShortMessage.NOTE_ON, channel, noteNumber, v);
-            outputReceiver.send(noteMessage, -1);
+            noteMessage.setMessage(ShortMessage.NOTE_ON, channel, noteNumber, velocity);
+            sendMessage(noteMessage);
 
         } catch (InvalidMidiDataException e) {
             System.err.println(e);
@@ -84,20 +209,68 @@ public class MidiModule extends BasicModule implements Receiver {
         try {
             ShortMessage message = new ShortMessage();
             message.setMessage(ShortMessage.CONTROL_CHANGE, channel, ccNumber, value);
-            outputReceiver.send(message, -1);
+            sendMessage(message);
 
         } catch (InvalidMidiDataException e) {
             System.err.println(e);
         }
     }
 
+    /**
+     * setPressure turns on pressure output: pad pressure goes out on the module's channel as one CC
+     * (whichever pad it comes from), or as poly aftertouch on the pad's note (channel pressure when
+     * it isn't from one pad), at most maxRate messages a second per note or controller, ending on the
+     * last value (see MidiCoalescer).
+     *
+     * @return the coalescer, or null if off
+     */
+    public MidiCoalescer setPressure(PressureOutput output, int controller, double maxRate) {
+        if (pressureCoalescer != null) {
+            pressureCoalescer.close();
+            pressureCoalescer = null;
+        }
+        pressureOutput = output;
+        pressureController = controller;
+        if (output != PressureOutput.OFF && maxRate > 0) {
+            pressureCoalescer = new MidiCoalescer(outputReceiver, "pressure-" + name(), maxRate, 0);
+            pressureCoalescer.start();
+        }
+        return pressureCoalescer;
+    }
+
+    /**
+     * sendPressure sends pad pressure for a note (or -1 if it's not for one note) as set by
+     * setPressure. It only records the latest value, without allocating, and the coalescer's thread
+     * sends it, so a stream of pressure never holds up the input or clock threads.
+     */
+    protected void sendPressure(int channel, int noteNumber, int value) {
+        MidiCoalescer coalescer = pressureCoalescer;
+        if (coalescer == null || isMuted) return;
+
+        switch (pressureOutput) {
+            case CC:
+                if (!coalescer.offer(CONTROL_CHANGE | (channel & 0x0F), pressureController & 0x7F, value & 0x7F)) {
+                    // a controller that's never coalesced (e.g. data entry)
+                    sendMidiCC(channel, pressureController, value);
+                }
+                break;
+            case POLY:
+                if (noteNumber >= 0) {
+                    coalescer.offer(POLY_PRESSURE | (channel & 0x0F), noteNumber & 0x7F, value & 0x7F);
+                } else {
+                    coalescer.offer(CHANNEL_PRESSURE | (channel & 0x0F), value & 0x7F, 0);
+                }
+                break;
+        }
+    }
+
     protected void sendMidiProgramChange(int channel, int value) {
 //        System.out.printf("Prog: %d, %d\n", channel, value);
 
         try {
             ShortMessage message = new ShortMessage();
             message.setMessage(ShortMessage.PROGRAM_CHANGE, channel, value, 0);
-            outputReceiver.send(message, -1);
+            sendMessage(message);
 
         } catch (InvalidMidiDataException e) {
             System.err.println(e);
@@ -121,7 +294,7 @@ public class MidiModule extends BasicModule implements Receiver {
             int data2 = (value & 0x3F80) >> 7;  // upper 7 bits (out of 14, not out of 16)
             ShortMessage message = new ShortMessage();
             message.setMessage(ShortMessage.PITCH_BEND, channel, data1, data2);  // for midi pitch bend, LSB precedes MSB
-            outputReceiver.send(message, -1);
+            sendMessage(message);
 
         } catch (InvalidMidiDataException e) {
             System.err.println(e);
@@ -132,6 +305,59 @@ public class MidiModule extends BasicModule implements Receiver {
         sendMidiPitchBend(channel, MIDI_PITCH_BEND_ZERO);
     }
 
+    private void sendMessage(ShortMessage message) {
+        MidiSendEvent event = MidiSendEvent.start(events);
+        sendOutput(message);
+        messageCount++;
+        if (event != null) {
+            event.end(name(), message.getCommand(), message.getChannel(), message.getData1(), message.getData2());
+        }
+    }
+
+    /**
+     * sendOutput sends a message to the module's output, or adds it to the batch the current thread
+     * is collecting into (when the clock pipeline is running modules in parallel).
+     */
+    protected void sendOutput(MidiMessage message) {
+        MidiBatch batch = MidiBatch.current();
+        if (batch != null) {
+            batch.add(outputReceiver, message, -1);
+        } else {
+            outputReceiver.send(message, -1);
+        }
+    }
+
+    private void gateFired(int status, int data1, int data2) {
+        if ((status & 0xF0) == NOTE_ON && data2 == 0) {
+            int key = (status & 0x0F) << 7 | data1;
+            gateHandles[key] = TimingWheel.NONE;
+            gateClosed[key] = true;
+        }
+        try {
+            ShortMessage message = new ShortMessage();
+            message.setMessage(status, data1, data2);
+            sendMessage(message);
+        } catch (InvalidMidiDataException e) {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * beginAdvance and endAdvance bracket a module's step advance, for the flight recorder.
+     *
+     * @return the event, or null if events are disabled
+     */
+    protected AdvanceEvent beginAdvance() {
+        advanceMessageCount = messageCount;
+        return AdvanceEvent.start(events);
+    }
+
+    protected void endAdvance(AdvanceEvent event, int step) {
+        if (event != null) {
+            event.end(name(), step, messageCount - advanceMessageCount);
+        }
+    }
+
     public void send(MidiMessage message, long timeStamp) {
 //        System.out.printf("MSG (%d, %d): ", message.getLength(), message.getStatus());
 //        for (byte b : message.getMessage()) {
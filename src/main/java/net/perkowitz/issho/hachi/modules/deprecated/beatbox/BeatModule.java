@@ -145,7 +145,7 @@ public class BeatModule extends MidiModule implements Module, Clockable, GridLis
 
         // if a fill is playing that shuffles the steps, this will figure out which step is actually playing
         int actualStep = playingPattern.getStep(0, nextStepIndex).getIndex();
-        boolean drawMeasure = currentPulse < 12;
+        boolean drawMeasure = currentPulse < PULSES_PER_BEAT / 2;
         beatDisplay.drawStepsClock(actualStep, currentMeasure, drawMeasure);
 
 
@@ -693,7 +693,7 @@ public class BeatModule extends MidiModule implements Module, Clockable, GridLis
         currentMeasure = measure;
         currentBeat = beat;
         currentPulse = pulse;
-        if ((pulse == 0 || pulse == 6 + memory.getCurrentSession().getSwingOffset() || pulse == 12 || pulse == 18 + memory.getCurrentSession().getSwingOffset()) && playing) {
+        if (isStepPulse(pulse, memory.getCurrentSession().getSwingOffset()) && playing) {
             advance(beat == 0 && pulse == 0);
         }
     }
@@ -451,7 +451,7 @@ public class MinibeatModule extends MidiModule implements Module, Clockable, Gri
 
     public void clock(int measure, int beat, int pulse) {
         // imitate old "tick" system of sending a tick per 16th note, and a reset on each measure
-        if (pulse % 6 == 0) {
+        if (pulse % PULSES_PER_STEP == 0) {
             tick(beat == 0 && pulse == 0);
         }
     }
@@ -469,7 +469,7 @@ public class MinibeatModule extends MidiModule implements Module, Clockable, Gri
             int offsetNoteNumber = midiNoteOffset + noteNumber;
             ShortMessage noteMessage = new ShortMessage();
             noteMessage.setMessage(ShortMessage.NOTE_ON, channel, offsetNoteNumber, velocity);
-            outputReceiver.send(noteMessage, -1);
+            sendOutput(noteMessage);
 
         } catch (InvalidMidiDataException e) {
             System.err.println(e);
@@ -552,7 +552,7 @@ public class MonoModule extends ChordModule implements Module, Clockable, GridLi
 
     public void clock(int measure, int beat, int pulse) {
         // imitate old "tick" system of sending a tick per 16th note, and a reset on each measure
-        if (pulse % 6 == 0) {
+        if (pulse % PULSES_PER_STEP == 0) {
             tick(beat == 0 && pulse == 0);
         }
     }
@@ -659,7 +659,7 @@ public class RhythmModule implements Module, RhythmInterface, Clockable, Session
 
     public void clock(int measure, int beat, int pulse) {
         // imitate old "tick" system of sending a tick per 16th note, and a reset on each measure
-        if (pulse % 6 == 0) {
+        if (pulse % PULSES_PER_STEP == 0) {
             tick(beat == 0 && pulse == 0);
         }
     }
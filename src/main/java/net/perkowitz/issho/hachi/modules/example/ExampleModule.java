@@ -139,7 +139,7 @@ public class ExampleModule extends MidiModule implements Module, Clockable, Grid
      * 
      * @param chord
      */
-    public void setChord(Chord chord) {
+    public void setChord(ChordSnapshot chord) {
 
     }
 
@@ -321,7 +321,7 @@ public class ExampleModule extends MidiModule implements Module, Clockable, Grid
 
     public void clock(int measure, int beat, int pulse) {
         // imitate old "tick" system of sending a tick per 16th note, and a reset on each measure
-        if (pulse % 6 == 0) {
+        if (pulse % PULSES_PER_STEP == 0) {
             tick(beat == 0 && pulse == 0);
         }
     }
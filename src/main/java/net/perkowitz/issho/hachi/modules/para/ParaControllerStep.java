@@ -3,6 +3,8 @@ package net.perkowitz.issho.hachi.modules.para;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Random;
+
 /**
  * Created by optic on 9/29/17.
  */
@@ -29,8 +31,8 @@ public class ParaControllerStep {
         this.high = high;
     }
 
-    public int getValue() {
-        return (int)(Math.random() * (high - low)) + low;
+    public int getValue(Random random) {
+        return (int)(random.nextDouble() * (high - low)) + low;
     }
 
 
@@ -23,17 +23,24 @@ import static net.perkowitz.issho.hachi.modules.para.ParaUtil.StepSelectMode.TOG
 public class ParaDisplay {
 
     @Setter private GridDisplay display;
-    @Getter @Setter private Map<Integer, Color> palette = ParaUtil.PALETTE_YELLOW;
+    @Getter private Map<Integer, Color> palette = ParaUtil.PALETTE_YELLOW;
+    private Color[] colors = Color.compile(palette);
     @Getter @Setter private boolean settingsMode = false;
     @Getter @Setter private int currentFileIndex = 0;
     @Setter private int currentKeyboardOctave = 5;
     @Setter private boolean stepEditing = false;
+    @Setter private boolean recording = false;
 
 
     public ParaDisplay(GridDisplay display) {
         this.display = display;
     }
 
+    public void setPalette(Map<Integer, Color> palette) {
+        this.palette = palette;
+        this.colors = Color.compile(palette);
+    }
+
     public void redraw(ParaMemory memory) {
         if (settingsMode) return;
         drawPatterns(memory);
@@ -56,19 +63,19 @@ public class ParaDisplay {
     public void drawPatternEditControls(boolean copyActive, boolean selectActive) {
         if (settingsMode) return;
         if (copyActive) {
-            patternCopyControl.draw(display, palette.get(COLOR_PATTERN_EDIT_SELECTED));
+            patternCopyControl.draw(display, colors[COLOR_PATTERN_EDIT_SELECTED]);
         } else {
-            patternCopyControl.draw(display, palette.get(COLOR_PATTERN_EDIT));
+            patternCopyControl.draw(display, colors[COLOR_PATTERN_EDIT]);
         }
 //        if (clearActive) {
-//            patternClearControl.draw(display, palette.get(COLOR_PATTERN_EDIT_SELECTED));
+//            patternClearControl.draw(display, colors[COLOR_PATTERN_EDIT_SELECTED]);
 //        } else {
-//            patternClearControl.draw(display, palette.get(COLOR_PATTERN_EDIT));
+//            patternClearControl.draw(display, colors[COLOR_PATTERN_EDIT]);
 //        }
         if (selectActive) {
-            patternEditControl.draw(display, palette.get(COLOR_PATTERN_EDIT_SELECTED));
+            patternEditControl.draw(display, colors[COLOR_PATTERN_EDIT_SELECTED]);
         } else {
-            patternEditControl.draw(display, palette.get(COLOR_PATTERN_EDIT));
+            patternEditControl.draw(display, colors[COLOR_PATTERN_EDIT]);
         }
     }
 
@@ -77,15 +84,15 @@ public class ParaDisplay {
         if (settingsMode) return;
         int index = pattern.getIndex();
         GridControl control = patternControls.get(index);
-        Color color = palette.get(COLOR_PATTERN);
+        Color color = colors[COLOR_PATTERN];
         if (memory.getCurrentPatternIndex() == index) {
-            color = palette.get(COLOR_PATTERN_PLAYING);
+            color = colors[COLOR_PATTERN_PLAYING];
         } else if (index == memory.getSelectedPatternIndex()) {
-            color = palette.get(COLOR_PATTERN_SELECTED);
+            color = colors[COLOR_PATTERN_SELECTED];
         } else if (index == memory.getPatternChainNextIndex()) {
-            color = palette.get(COLOR_PATTERN_CHAINED);
+            color = colors[COLOR_PATTERN_CHAINED];
         } else if (index >= memory.getPatternChainMin() && index <= memory.getPatternChainMax()) {
-            color = palette.get(COLOR_PATTERN_CHAINED);
+            color = colors[COLOR_PATTERN_CHAINED];
         }
 
         control.draw(display, color);
@@ -99,18 +106,18 @@ public class ParaDisplay {
             case TOGGLE:
             case SELECT:
                 for (GridControl control : keyboardControls.getControls()) {
-                    Color color = palette.get(COLOR_KEYBOARD_WHITE_KEY);
+                    Color color = colors[COLOR_KEYBOARD_WHITE_KEY];
                     if (control.getPad().getY() == KEYBOARD_UPPER_BLACK || control.getPad().getY() == KEYBOARD_LOWER_BLACK) {
-                        color = palette.get(COLOR_KEYBOARD_BLACK_KEY);
+                        color = colors[COLOR_KEYBOARD_BLACK_KEY];
                     }
                     control.draw(display, color);
                 }
 
                 keyboardGapControls.draw(display, Color.OFF);
-                octaveDownControl.draw(display, palette.get(COLOR_KEYBOARD_OCTAVE_DOWN));
-                octaveUpControl.draw(display, palette.get(COLOR_KEYBOARD_OCTAVE_UP));
-                transposeDownControl.draw(display, palette.get(COLOR_KEYBOARD_TRANSPOSE_DOWN));
-                transposeUpControl.draw(display, palette.get(COLOR_KEYBOARD_TRANSPOSE_DOWN));
+                octaveDownControl.draw(display, colors[COLOR_KEYBOARD_OCTAVE_DOWN]);
+                octaveUpControl.draw(display, colors[COLOR_KEYBOARD_OCTAVE_UP]);
+                transposeDownControl.draw(display, colors[COLOR_KEYBOARD_TRANSPOSE_DOWN]);
+                transposeUpControl.draw(display, colors[COLOR_KEYBOARD_TRANSPOSE_DOWN]);
                 break;
 
             case CONTROL:
@@ -132,14 +139,14 @@ public class ParaDisplay {
         switch (stepSelectMode) {
             case TOGGLE:
             case SELECT:
-                Color color = palette.get(COLOR_KEYBOARD_HIGHLIGHT);
-                Color octaveDownColor = palette.get(COLOR_KEYBOARD_OCTAVE_DOWN);
-                Color octaveUpColor = palette.get(COLOR_KEYBOARD_OCTAVE_UP);
+                Color color = colors[COLOR_KEYBOARD_HIGHLIGHT];
+                Color octaveDownColor = colors[COLOR_KEYBOARD_OCTAVE_DOWN];
+                Color octaveUpColor = colors[COLOR_KEYBOARD_OCTAVE_UP];
                 if (stepEditing) {
-                    color = palette.get(COLOR_KEYBOARD_SELECTED);
+                    color = colors[COLOR_KEYBOARD_SELECTED];
                 }
                 if (undraw) {
-                    color = palette.get(COLOR_KEYBOARD_WHITE_KEY);
+                    color = colors[COLOR_KEYBOARD_WHITE_KEY];
                 }
 
                 int noteRangeLower = currentKeyboardOctave * 12;
@@ -195,20 +202,20 @@ public class ParaDisplay {
         // draw step itself
         int x = step.getIndex() % 8;
         int y = step.getIndex() / 8 + ParaUtil.STEP_MIN_ROW;
-        Color stepColor = palette.get(ParaUtil.COLOR_STEP_OFF);
+        Color stepColor = colors[ParaUtil.COLOR_STEP_OFF];
 
         switch (memory.getStepSelectMode()) {
             case TOGGLE:
             case SELECT:
                 if (highlight) {
-                    stepColor = palette.get(ParaUtil.COLOR_STEP_HIGHLIGHT);
+                    stepColor = colors[ParaUtil.COLOR_STEP_HIGHLIGHT];
                 } else if (step.isEnabled()) {
                     switch (step.getGate()) {
                         case PLAY:
-                            stepColor = palette.get(ParaUtil.COLOR_STEP_PLAY);
+                            stepColor = colors[ParaUtil.COLOR_STEP_PLAY];
                             break;
                         case TIE:
-                            stepColor = palette.get(ParaUtil.COLOR_STEP_TIE);
+                            stepColor = colors[ParaUtil.COLOR_STEP_TIE];
                             break;
                     }
                 }
@@ -216,7 +223,7 @@ public class ParaDisplay {
 
             case CONTROL:
                 if (step.getControllerEnabled(memory.getSelectedController())) {
-                    stepColor = palette.get(ParaUtil.COLOR_STEP_CONTROL_ENABLED);
+                    stepColor = colors[ParaUtil.COLOR_STEP_CONTROL_ENABLED];
                 }
                 break;
 
@@ -235,35 +242,38 @@ public class ParaDisplay {
         for (int i = 0; i < states.length; i++) {
             GridControl control = stepSelectModeControls.get(i);
             StepSelectMode state = states[i];
-            Color color = palette.get(COLOR_MODE_INACTIVE);
+            Color color = colors[COLOR_MODE_INACTIVE];
             if (state == stepSelectMode) {
-                color = palette.get(ParaUtil.COLOR_MODE_ACTIVE);
+                color = colors[ParaUtil.COLOR_MODE_ACTIVE];
             }
             control.draw(display, color);
         }
 
         // draw the play/tie setting buttons; draw the play button play-color and the tie button tie-color
-        stepGateControls.get(0).draw(display, palette.get(COLOR_STEP_PLAY));
-        stepGateControls.get(1).draw(display, palette.get(COLOR_STEP_TIE));
+        stepGateControls.get(0).draw(display, colors[COLOR_STEP_PLAY]);
+        stepGateControls.get(1).draw(display, colors[COLOR_STEP_TIE]);
+
+        // live recording on or off
+        recordControl.draw(display, colors[recording ? COLOR_MODE_ACTIVE : COLOR_MODE_INACTIVE]);
 
         // and there's some other stuff
-//        stepSelectModeControls.get(ParaUtil.STEP_CONTROL_SHIFT_LEFT_INDEX).draw(display, palette.get(COLOR_MODE_INACTIVE));
-//        stepSelectModeControls.get(ParaUtil.STEP_CONTROL_SHIFT_RIGHT_INDEX).draw(display, palette.get(COLOR_MODE_INACTIVE));
+//        stepSelectModeControls.get(ParaUtil.STEP_CONTROL_SHIFT_LEFT_INDEX).draw(display, colors[COLOR_MODE_INACTIVE]);
+//        stepSelectModeControls.get(ParaUtil.STEP_CONTROL_SHIFT_RIGHT_INDEX).draw(display, colors[COLOR_MODE_INACTIVE]);
 
     }
 
     public void drawControllerSelect(ParaMemory memory) {
         for (GridControl control : controllerSelectControls.getControls()) {
-            Color color = palette.get(COLOR_MODE_INACTIVE);
+            Color color = colors[COLOR_MODE_INACTIVE];
             if (control.getIndex() == memory.getSelectedController()) {
-                color = palette.get(COLOR_STEP_CONTROL_ENABLED);
+                color = colors[COLOR_STEP_CONTROL_ENABLED];
             }
             control.draw(display, color);
         }
         for (GridControl control : controllerActiveControls.getControls()) {
-            Color color = palette.get(COLOR_MODE_INACTIVE);
+            Color color = colors[COLOR_MODE_INACTIVE];
             if (memory.getControllerActive(control.getIndex())) {
-                color = palette.get(COLOR_STEP_CONTROL_ENABLED);
+                color = colors[COLOR_STEP_CONTROL_ENABLED];
             }
             control.draw(display, color);
         }
@@ -274,10 +284,10 @@ public class ParaDisplay {
         Color color = Color.OFF;
         switch (valueState) {
             case VELOCITY:
-                color = palette.get(COLOR_STEP_PLAY);
+                color = colors[COLOR_STEP_PLAY];
                 break;
             case CONTROL:
-                color = palette.get(COLOR_STEP_CONTROL_ENABLED);
+                color = colors[COLOR_STEP_CONTROL_ENABLED];
                 break;
         }
 
@@ -293,18 +303,18 @@ public class ParaDisplay {
 
     public void drawControllers(ParaMemory memory) {
         if (memory.getStepSelectMode() == CONTROL) {
-            controllerSelectControls.draw(display, palette.get(COLOR_MODE_INACTIVE));
-            controllerActiveControls.draw(display, palette.get(COLOR_MODE_INACTIVE));
+            controllerSelectControls.draw(display, colors[COLOR_MODE_INACTIVE]);
+            controllerActiveControls.draw(display, colors[COLOR_MODE_INACTIVE]);
         }
     }
 
     public void drawFunctions(boolean isMuted) {
         for (GridControl control : functionControls.getControls()) {
-            Color color = palette.get(COLOR_MODE_INACTIVE);
+            Color color = colors[COLOR_MODE_INACTIVE];
             if (control.getIndex() == FUNCTION_SETTINGS_INDEX && settingsMode) {
-                color = palette.get(COLOR_MODE_ACTIVE);
+                color = colors[COLOR_MODE_ACTIVE];
             } else if (control.getIndex() == FUNCTION_MUTE_INDEX && isMuted) {
-                color = palette.get(COLOR_MODE_ACTIVE);
+                color = colors[COLOR_MODE_ACTIVE];
             }
             control.draw(display, color);
         }
@@ -120,6 +120,19 @@ public class ParaMemory implements MemoryObject {
 
     }
 
+    /**
+     * seekChain sets the chain to the given number of patterns in, wrapping around. If that pattern
+     * has already started it's made current, otherwise just the next to play.
+     */
+    public void seekChain(int patterns, boolean started) {
+        int index = patternChainMin + Math.floorMod(patterns, patternChainMax - patternChainMin + 1);
+        if (started) {
+            currentPatternIndex = index;
+            index = index >= patternChainMax ? patternChainMin : index + 1;
+        }
+        patternChainNextIndex = index;
+    }
+
     public void resetChain() {
         playingPatternIndex = patternChainMax;
         patternChainNextIndex = patternChainMin;
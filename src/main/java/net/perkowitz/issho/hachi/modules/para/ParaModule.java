@@ -1,15 +1,21 @@
 package net.perkowitz.issho.hachi.modules.para;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import lombok.Setter;
 import net.perkowitz.issho.devices.*;
 import net.perkowitz.issho.devices.launchpadpro.Color;
 import net.perkowitz.issho.hachi.Clockable;
+import net.perkowitz.issho.hachi.LiveRecorder;
+import net.perkowitz.issho.hachi.Recordable;
 import net.perkowitz.issho.hachi.Saveable;
+import net.perkowitz.issho.hachi.Seekable;
 import net.perkowitz.issho.hachi.Sessionizeable;
 import net.perkowitz.issho.hachi.ValueSettable;
+import net.perkowitz.issho.hachi.events.AdvanceEvent;
+import net.perkowitz.issho.hachi.events.MemoryEvent;
 import net.perkowitz.issho.hachi.modules.*;
 import net.perkowitz.issho.hachi.modules.Module;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -29,7 +35,7 @@ import static net.perkowitz.issho.hachi.modules.para.ParaUtil.StepSelectMode.TOG
 /**
  * Created by optic on 10/24/16.
  */
-public class ParaModule extends ChordModule implements Module, Clockable, GridListener, Sessionizeable, Saveable, Muteable, ValueSettable {
+public class ParaModule extends ChordModule implements Module, Clockable, GridListener, Sessionizeable, Saveable, Muteable, Seekable, ValueSettable, Recordable {
 
     ObjectMapper objectMapper = new ObjectMapper();
 
@@ -38,9 +44,20 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
     private SettingsSubmodule settingsModule;
 
     private Set<Integer> onNotes = Sets.newHashSet();
+    private ParaStep heldStep = null;        // a step held back by its microtiming
+    private int heldPulses = 0;
 
     private ParaStep lastStep = null;
 
+    // notes played live (keyboard pads or keyboard) are recorded into the playing pattern on the clock thread
+    private final LiveRecorder recorder = new LiveRecorder(ParaPattern.STEP_COUNT);
+    private final LiveRecorder.Target recordTarget = new LiveRecorder.Target() {
+        public void record(int source, int note, int velocity, int step, int microtiming) {
+            recordNote(note, velocity, step, microtiming);
+        }
+    };
+    private Map<Integer, Integer> liveNotes = Maps.newHashMap();     // notes sounding by keyboard pad while recording (input thread only)
+
     private int nextStepIndex = 0;
     private Set<Integer> patternsPressed = Sets.newHashSet();
     private int patternsReleasedCount = 0;
@@ -130,13 +147,14 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
         // advance to the next step and play notes
         ParaStep step = memory.currentPattern().getStep(nextStepIndex);
         ParaStep editStep = memory.selectedPattern().getStep(nextStepIndex);
+        recorder.step(nextStepIndex);
 
         // send controllers before sending notes
         // if controller is enabled for step, send controller value (even if step is a TIE or no notes programmed)
         for (int index = 0; index < ParaMemory.CONTROLLER_COUNT; index++) {
             if (memory.getControllerActive(index) && index < controllerNumbers.length &&
                     controllerNumbers[index] != null && step.getControllerEnabled(index)) {
-                sendMidiCC(memory.getMidiChannel(), controllerNumbers[index], step.getControllerValue(index));
+                sendMidiCC(memory.getMidiChannel(), controllerNumbers[index], step.getControllerValue(index, random));
             }
         }
 
@@ -147,11 +165,12 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
             drawKeyboardNotes = true;
         } else if (step.isEnabled() && step.getGate() == PLAY) {
             // if it's PLAY stop any previous notes so we can play new ones
-            notesOff();
             drawKeyboardNotes = true;
-            for (int note : step.getNotes()) {
-                sendMidiNote(memory.getMidiChannel(), transpose + note, step.getVelocity());
-                onNotes.add(note);
+            if (step.getMicrotiming() > 0) {
+                heldStep = step;
+                heldPulses = step.getMicrotiming();
+            } else {
+                playStep(step);
             }
         } else if (step.isEnabled() && step.getGate() == TIE) {
             // for a TIE we just keep doing what we've been doing
@@ -185,6 +204,26 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
         nextStepIndex = (nextStepIndex + 1) % ParaPattern.STEP_COUNT;
     }
 
+    private void playStep(ParaStep step) {
+        notesOff();
+        for (int note : step.getNotes()) {
+            sendMidiNote(memory.getMidiChannel(), transpose + note, step.getVelocity(), gatePulses);
+            onNotes.add(note);
+        }
+    }
+
+    /**
+     * playHeldStep counts down a step held back by its microtiming and plays it when it's due, or
+     * right away (at the start of the next step).
+     */
+    private void playHeldStep(boolean now) {
+        if (heldStep != null && (now || --heldPulses <= 0)) {
+            ParaStep step = heldStep;
+            heldStep = null;
+            playStep(step);
+        }
+    }
+
     private void notesOff() {
         for (Integer note : onNotes) {
             sendMidiNote(memory.getMidiChannel(), transpose + note, 0);
@@ -249,6 +288,7 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void shutdown() {
+        releaseGates();
         notesOff();
     }
 
@@ -327,6 +367,23 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
         onControlReleased(new GridControl(pad, null));
     }
 
+    /**
+     * pressure on a keyboard pad that's sounding its note (while recording) goes out for that note;
+     * channel pressure goes out while any of them is held.
+     */
+    public void onPadPressure(GridPad pad, int value) {
+        if (liveNotes.isEmpty()) return;
+        if (pad == null) {
+            sendPressure(memory.getMidiChannel(), -1, value);
+        } else {
+            GridControl control = ParaUtil.keyboardControls.get(pad);
+            Integer note = control == null ? null : liveNotes.get(control.getIndex());
+            if (note != null) {
+                sendPressure(memory.getMidiChannel(), mappedNote(note), value);
+            }
+        }
+    }
+
     public void onButtonPressed(GridButton button, int velocity) {
         onControlPressed(new GridControl(button, null), velocity);
     }
@@ -411,12 +468,25 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
                     int controller = memory.getSelectedController();
                     step.toggleControllerEnabled(controller);
                     paraDisplay.drawStep(memory, step, false);
-                    count = step.getControllerValue(controller) / 16 + 1;
+                    count = step.getControllerValue(controller, random) / 16 + 1;
                     memory.setValueState(ValueState.CONTROL);
                     paraDisplay.drawValue(count, ValueState.CONTROL);
                     break;
             }
 
+        } else if (recordControl.equals(control)) {
+            paraDisplay.setRecording(recorder.toggleRecording());
+            paraDisplay.drawStepEditControls(memory.getStepSelectMode());
+
+        } else if (ParaUtil.keyboardControls.contains(control) && recorder.isRecording() &&
+                (memory.getStepSelectMode() == TOGGLE || memory.getStepSelectMode() == SELECT)) {
+            // while recording, the keyboard plays and records instead of editing the selected step
+            Integer index = ParaUtil.keyboardControls.getIndex(control);
+            int note = currentKeyboardOctave * 12 + index;
+            recorder.offer(LiveRecorder.PADS, note, velocity);
+            sendMidiNote(memory.getMidiChannel(), transpose + note, velocity);
+            liveNotes.put(index, transpose + note);
+
         } else if (ParaUtil.keyboardControls.contains(control) &&
                 (memory.getStepSelectMode() == TOGGLE || memory.getStepSelectMode() == SELECT)) {
             // find the control's index, get the current step
@@ -563,6 +633,12 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
                 }
             }
 
+        } else if (ParaUtil.keyboardControls.contains(control) && !liveNotes.isEmpty()) {
+            Integer note = liveNotes.remove(ParaUtil.keyboardControls.getIndex(control));
+            if (note != null) {
+                sendMidiNote(memory.getMidiChannel(), note, 0);
+            }
+
         } else if (ParaUtil.stepControls.contains(control)) {
             Integer index = ParaUtil.stepControls.getIndex(control);
             ParaStep step = memory.selectedPattern().getStep(index);
@@ -698,17 +774,57 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void stop() {
+        heldStep = null;
+        recorder.reset();
+        releaseGates();
         notesOff();
     }
 
-    public void tick(boolean andReset) {
-        advance(andReset);
-    }
-
     public void clock(int measure, int beat, int pulse) {
-        if (pulse == 0 || pulse == 6 + swingOffset || pulse == 12 || pulse == 18 + swingOffset) {
+        recorder.pulse();
+        advanceGates(1);
+        playHeldStep(isStepPulse(pulse, swingOffset));
+        if (isStepPulse(pulse, swingOffset)) {
+            AdvanceEvent event = beginAdvance();
             advance(beat == 0 && pulse == 0);
+            endAdvance(event, nextStepIndex);
+        }
+        if (recorder.drain(recordTarget) > 0) {
+            paraDisplay.drawSteps(memory, memory.selectedPattern().getSteps());
+        }
+    }
+
+
+    /***** Seekable implementation ****************************************/
+
+    public void seek(int measure, int step, long songStep) {
+        heldStep = null;
+        nextStepIndex = step % ParaPattern.STEP_COUNT;
+        memory.seekChain(measure + step / ParaPattern.STEP_COUNT, nextStepIndex != 0);
+    }
+
+
+    /***** Recordable implementation ****************************************/
+
+    public LiveRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * a live note is added to its step in the playing pattern (or replaces its notes when
+     * monophonic); a step that wasn't playing starts over with just the recorded notes
+     */
+    private void recordNote(int note, int velocity, int stepIndex, int microtiming) {
+        ParaStep step = memory.currentPattern().getStep(stepIndex);
+        if (monophonic || !step.isEnabled()) {
+            step.setNote(note);
+        } else {
+            step.addNote(note);
         }
+        step.setEnabled(true);
+        step.setGate(PLAY);
+        step.setVelocity(velocity);
+        step.setMicrotiming(microtiming);
     }
 
 
@@ -723,7 +839,13 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void save(int index) {
+        long start = System.nanoTime();
+        MemoryEvent event = MemoryEvent.start(events);
         saveMemory(index, memory);
+        saveMeter.recordSince(start);
+        if (event != null) {
+            event.end(name(), "save", index);
+        }
     }
 
     public void saveMemory(int index, ParaMemory saveMemory) {
@@ -741,7 +863,13 @@ public class ParaModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void load(int index) {
+        long start = System.nanoTime();
+        MemoryEvent event = MemoryEvent.start(events);
         memory = loadMemory(index);
+        loadMeter.recordSince(start);
+        if (event != null) {
+            event.end(name(), "load", index);
+        }
         settingsModule.setMidiChannel(memory.getMidiChannel());
     }
 
@@ -7,6 +7,7 @@ import lombok.Setter;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import static net.perkowitz.issho.hachi.modules.para.ParaUtil.Gate.PLAY;
@@ -22,6 +23,7 @@ public class ParaStep {
     private static int DEFAULT_VELOCITY = 100;
     private static int DEFAULT_CONTROL = 100;
     private static ParaUtil.Gate DEFAULT_GATE = PLAY;
+    public static int MAX_MICROTIMING = 23;
 
     @Getter @Setter private int index;
 
@@ -31,6 +33,7 @@ public class ParaStep {
     @Getter @Setter private ParaUtil.Gate gate;
     @Getter @Setter private boolean enabled = true;
     @Getter @Setter private boolean selected = false;
+    @Getter private int microtiming = 0;    // pulses to play the notes after the step starts
     @Getter private ParaControllerStep[] controllerSteps = new ParaControllerStep[ParaMemory.CONTROLLER_COUNT];
 
 
@@ -48,6 +51,10 @@ public class ParaStep {
         }
     }
 
+    public void setMicrotiming(int microtiming) {
+        this.microtiming = Math.max(0, Math.min(MAX_MICROTIMING, microtiming));
+    }
+
     public void addNote(Integer note) {
         notes.add(note);
     }
@@ -95,9 +102,9 @@ public class ParaStep {
         notes.clear();
     }
 
-    public int getControllerValue(int index) {
+    public int getControllerValue(int index, Random random) {
         if (index >=0 && index < controllerSteps.length && controllerSteps[index] != null) {
-            return controllerSteps[index].getValue();
+            return controllerSteps[index].getValue(random);
         } else {
             return 0;
         }
@@ -174,6 +181,7 @@ public class ParaStep {
         newStep.gate = step.gate;
         newStep.enabled = step.enabled;
         newStep.selected = step.selected;
+        newStep.microtiming = step.microtiming;
 
         ParaControllerStep[] newControllerSteps = new ParaControllerStep[step.controllerSteps.length];
         for (int i = 0; i < step.controllerSteps.length; i++) {
@@ -120,6 +120,7 @@ public class ParaUtil {
     public static GridControlSet controllerSelectControls = GridControlSet.pads(ParaUtil.KEYBOARD_LOWER_WHITE, ParaUtil.KEYBOARD_LOWER_WHITE, 0, ParaMemory.CONTROLLER_COUNT - 1);
     public static GridControlSet controllerActiveControls = GridControlSet.pads(ParaUtil.KEYBOARD_LOWER_BLACK, ParaUtil.KEYBOARD_LOWER_BLACK, 0, ParaMemory.CONTROLLER_COUNT - 1);
 
+    public static GridControl recordControl = new GridControl(GridButton.at(GridButton.Side.Bottom, 7), 0);
     public static GridControl patternCopyControl = new GridControl(GridButton.at(GridButton.Side.Left, 2), 0);
     public static GridControl patternEditControl = new GridControl(GridButton.at(GridButton.Side.Left, 3), 0);
     public static GridControl octaveDownControl = new GridControl(GridPad.at(7, KEYBOARD_LOWER_WHITE), 0);
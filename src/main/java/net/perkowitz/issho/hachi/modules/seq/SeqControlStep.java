@@ -3,6 +3,8 @@ package net.perkowitz.issho.hachi.modules.seq;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Random;
+
 /**
  * Created by optic on 2/25/17.
  */
@@ -36,10 +38,10 @@ public class SeqControlStep {
     }
 
     // Value returns the step value adjusted by blurring, if enabled.
-    public int Value() {
+    public int Value(Random random) {
         int v = value;
         if (blurred) {
-            v += (int)Math.floor(Math.random() * 2 * BLUR_RANGE) - BLUR_RANGE;
+            v += (int)Math.floor(random.nextDouble() * 2 * BLUR_RANGE) - BLUR_RANGE;
         }
         return Math.max(0, Math.min(127, v));
     }
@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by optic on 2/25/17.
@@ -43,9 +44,9 @@ public class SeqControlTrack {
         return String.format("SeqCtrlTrack:%02d", index);
     }
 
-    public void randomize() {
+    public void randomize(Random random) {
         for (SeqControlStep step : steps) {
-            int v = (int)Math.floor(Math.random() * 128);
+            int v = (int)Math.floor(random.nextDouble() * 128);
             step.setValue(v);
         }
     }
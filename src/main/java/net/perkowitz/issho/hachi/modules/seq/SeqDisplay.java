@@ -27,13 +27,15 @@ public class SeqDisplay {
     }
 
     @Setter private GridDisplay display;
-    @Getter @Setter private Map<Integer, Color> palette = SeqUtil.getPalette("pink");
+    @Getter private Map<Integer, Color> palette = SeqUtil.getPalette("pink");
+    private Color[] colors = Color.compile(palette);
     @Getter @Setter private int currentFileIndex = 0;
     @Setter private boolean settingsView = false;
     @Setter private boolean isMuted = false;
     @Setter private Integer nextChainStart = null;
     @Setter private Integer nextChainEnd = null;
     @Setter private SeqMode mode = BEAT;
+    @Setter private boolean recording = false;
     @Setter private EditMode editMode = GATE;
     @Setter private SeqStep playingStep = null;
     @Setter private int currentOctave = 0;
@@ -43,6 +45,11 @@ public class SeqDisplay {
         this.display = display;
     }
 
+    public void setPalette(Map<Integer, Color> palette) {
+        this.palette = palette;
+        this.colors = Color.compile(palette);
+    }
+
 
     /**
      * redraw should know how to draw everything
@@ -83,15 +90,15 @@ public class SeqDisplay {
 
         for (int index = 0; index < SeqUtil.PATTERN_COUNT; index++) {
             GridControl playingControl = SeqUtil.patternPlayControls.get(index);
-            Color color = palette.get(SeqUtil.COLOR_PATTERN);
+            Color color = colors[SeqUtil.COLOR_PATTERN];
             if (playingIndex == index) {
-                color = palette.get(SeqUtil.COLOR_PATTERN_PLAYING);
+                color = colors[SeqUtil.COLOR_PATTERN_PLAYING];
             } else if (selectedIndex == index) {
-                color = palette.get(SeqUtil.COLOR_PATTERN_SELECTED);
+                color = colors[SeqUtil.COLOR_PATTERN_SELECTED];
             } else if (nextChainStart != null && nextChainEnd != null && index >= nextChainStart && index <= nextChainEnd) {
-                color = palette.get(SeqUtil.COLOR_PATTERN_NEXT);
+                color = colors[SeqUtil.COLOR_PATTERN_NEXT];
             } else if (memory.patternIsChained(index)) {
-                color = palette.get(SeqUtil.COLOR_PATTERN_CHAINED);
+                color = colors[SeqUtil.COLOR_PATTERN_CHAINED];
             }
             playingControl.draw(display, color);
 
@@ -118,15 +125,15 @@ public class SeqDisplay {
                 }
                 break;
             case CONTROL:
-                Color color = palette.get(COLOR_TRACK_SELECTION);
-                trackSelectControls.draw(display, palette.get(COLOR_HIGHLIGHT_DIM));
+                Color color = colors[COLOR_TRACK_SELECTION];
+                trackSelectControls.draw(display, colors[COLOR_HIGHLIGHT_DIM]);
                 // TODO iterate over tracks to do isPlaying
                 int i = memory.getSelectedControlTrackIndex();
-                trackSelectControls.get(i).draw(display, palette.get(COLOR_TRACK_SELECTED));
+                trackSelectControls.get(i).draw(display, colors[COLOR_TRACK_SELECTED]);
                 break;
             case PITCH:
                 trackSelectControls.draw(display, Color.OFF);
-                trackSelectControls.get(0).draw(display, palette.get(COLOR_HIGHLIGHT));
+                trackSelectControls.get(0).draw(display, colors[COLOR_HIGHLIGHT]);
                 break;
             case JUMP:
                 trackSelectControls.draw(display, Color.OFF);
@@ -145,11 +152,11 @@ public class SeqDisplay {
         if (mode == BEAT) {
             if (editMode == GATE) {
                 GridControl selectControl = SeqUtil.trackSelectControls.get(index);
-                Color color = palette.get(SeqUtil.COLOR_TRACK_SELECTION);
+                Color color = colors[SeqUtil.COLOR_TRACK_SELECTION];
                 if (track.isPlaying()) {
-                    color = palette.get(SeqUtil.COLOR_TRACK_PLAYING);
+                    color = colors[SeqUtil.COLOR_TRACK_PLAYING];
                 } else if (index == memory.getSelectedTrackIndex()) {
-                    color = palette.get(SeqUtil.COLOR_TRACK_SELECTED);
+                    color = colors[SeqUtil.COLOR_TRACK_SELECTED];
                 }
                 selectControl.draw(display, color);
             }
@@ -166,15 +173,15 @@ public class SeqDisplay {
                 return;
             }
             boolean enabled = memory.getCurrentSession().trackIsEnabled(index);
-            Color color = palette.get(SeqUtil.COLOR_TRACK);
+            Color color = colors[SeqUtil.COLOR_TRACK];
             if (track.isPlaying() && enabled) {
-                color = palette.get(SeqUtil.COLOR_TRACK_PLAYING);
+                color = colors[SeqUtil.COLOR_TRACK_PLAYING];
             } else if (track.isPlaying() && !enabled) {
-                color = palette.get(SeqUtil.COLOR_TRACK_PLAYING_MUTED);
+                color = colors[SeqUtil.COLOR_TRACK_PLAYING_MUTED];
             } else if (!track.isPlaying() && enabled) {
-                color = palette.get(SeqUtil.COLOR_TRACK);
+                color = colors[SeqUtil.COLOR_TRACK];
             } else if (!track.isPlaying() && !enabled) {
-                color = palette.get(SeqUtil.COLOR_TRACK_MUTED);
+                color = colors[SeqUtil.COLOR_TRACK_MUTED];
             }
             GridControl muteControl = SeqUtil.trackMuteControls.get(index);
             muteControl.draw(display, color);
@@ -184,9 +191,9 @@ public class SeqDisplay {
                 return;
             }
             boolean enabled = memory.getCurrentSession().controlTrackIsEnabled(index);
-            Color color = palette.get(COLOR_TRACK_MUTED);
+            Color color = colors[COLOR_TRACK_MUTED];
             if (enabled) {
-                color = palette.get(COLOR_TRACK);
+                color = colors[COLOR_TRACK];
             }
             GridControl muteControl = SeqUtil.trackMuteControls.get(index);
             muteControl.draw(display, color);
@@ -212,36 +219,36 @@ public class SeqDisplay {
 
         for (int index = 0; index < SeqUtil.STEP_COUNT; index++) {
             GridControl control = SeqUtil.stepControls.get(index);
-            Color color = palette.get(COLOR_STEP_REST);
+            Color color = colors[COLOR_STEP_REST];
             boolean selected = (memory.getSelectedStepIndex() == index);
             if (editMode == GATE || editMode == STEP) {
                 if (pattern.getJump(index)) {
-                    color = palette.get(COLOR_RANDOM);
+                    color = colors[COLOR_RANDOM];
                 } else {
                     switch (track.getStep(index).getGateMode()) {
                         case PLAY:
-                            color = palette.get(COLOR_STEP_PLAY);
+                            color = colors[COLOR_STEP_PLAY];
                             if (selected) {
-                                color = palette.get(COLOR_HIGHLIGHT);
+                                color = colors[COLOR_HIGHLIGHT];
                             }
                             break;
                         case TIE:
-                            color = palette.get(COLOR_STEP_TIE);
+                            color = colors[COLOR_STEP_TIE];
                             if (selected) {
-                                color = palette.get(COLOR_HIGHLIGHT_MID);
+                                color = colors[COLOR_HIGHLIGHT_MID];
                             }
                             break;
                         case REST:
-                            color = palette.get(COLOR_STEP_REST);
+                            color = colors[COLOR_STEP_REST];
                             if (selected) {
-                                color = palette.get(COLOR_HIGHLIGHT_DIM);
+                                color = colors[COLOR_HIGHLIGHT_DIM];
                             }
                             break;
                     }
                 }
             } else if (editMode == EditMode.PITCH) {
                 if (memory.getSelectedPattern().getPitchStep(index).isEnabled()) {
-                    color = palette.get(SeqUtil.COLOR_STEP_PLAY);
+                    color = colors[SeqUtil.COLOR_STEP_PLAY];
                 }
             }
             control.draw(display, color);
@@ -262,16 +269,16 @@ public class SeqDisplay {
                 GridPad pad = control.getPad();
                 if (playingStep != null && control.getIndex() == playingStep.getSemitone()) {        // TODO figure out why it's not showing playing step on TIEs
                     // if the key is being played
-                    color = palette.get(COLOR_PATTERN);
+                    color = colors[COLOR_PATTERN];
                 } else if (control.getIndex() == step.getSemitone()) {
                     // if the key is set for the current selected step
-                    color = palette.get(COLOR_HIGHLIGHT);
+                    color = colors[COLOR_HIGHLIGHT];
                 } else if (pad != null && pad.getY() == KEYBOARD_BLACK_ROW) {
                     // it's a black key
-                    color = palette.get(COLOR_KEY_BLACK);
+                    color = colors[COLOR_KEY_BLACK];
                 } else if (pad != null && pad.getY() == KEYBOARD_WHITE_ROW) {
                     // it's a white key
-                    color = palette.get(COLOR_KEY_WHITE);
+                    color = colors[COLOR_KEY_WHITE];
                 }
                 control.draw(display, color);
             }
@@ -291,18 +298,18 @@ public class SeqDisplay {
 
         if (mode == MONO && (editMode == GATE || editMode == STEP)) {
             SeqStep step = memory.getSelectedTrack().getStep(memory.getSelectedStepIndex());
-            octaveControls.draw(display, palette.get(COLOR_PATTERN));
+            octaveControls.draw(display, colors[COLOR_PATTERN]);
             if (editMode == STEP) {
-                octaveControls.get(currentOctave).draw(display, palette.get(COLOR_PATTERN_SELECTED));
+                octaveControls.get(currentOctave).draw(display, colors[COLOR_PATTERN_SELECTED]);
             } else {
-                Color color = palette.get(COLOR_PATTERN_SELECTED);
+                Color color = colors[COLOR_PATTERN_SELECTED];
                 if (step.isOctaveBlurred()) {
-                    color = palette.get(COLOR_RANDOM);
+                    color = colors[COLOR_RANDOM];
                 }
                 octaveControls.get(step.getOctave()).draw(display, color);
             }
             if (playingStep != null) {
-                octaveControls.get(playingStep.getOctave()).draw(display, palette.get(COLOR_PATTERN_PLAYING));
+                octaveControls.get(playingStep.getOctave()).draw(display, colors[COLOR_PATTERN_PLAYING]);
             }
         }
     }
@@ -315,12 +322,12 @@ public class SeqDisplay {
         SeqControlTrack track = memory.getPlayingPattern().getControlTrack(trackIndex);
         for (int index = 0; index < CONTROL_TRACK_COUNT; index++) {
             GridControl control = SeqUtil.stepControls.get(index);
-            Color color = palette.get(COLOR_STEP_REST);
+            Color color = colors[COLOR_STEP_REST];
             SeqControlStep step = track.getStep(index);
             if (step.isEnabled()) {
-                color = palette.get(COLOR_STEP_PLAY);
+                color = colors[COLOR_STEP_PLAY];
                 if (step.isBlurred()) {
-                    color = palette.get(COLOR_RANDOM);
+                    color = colors[COLOR_RANDOM];
                 }
             }
             control.draw(display, color);
@@ -335,12 +342,12 @@ public class SeqDisplay {
             stepControls.draw(display, Color.OFF);
             if (playingStepIndex != null && playingStepIndex >= 0 && playingStepIndex < SeqUtil.STEP_COUNT) {
                 GridControl control = stepControls.get(playingStepIndex);
-                control.draw(display, palette.get(COLOR_HIGHLIGHT));
+                control.draw(display, colors[COLOR_HIGHLIGHT]);
             }
             if (drawMeasure) {
 //                trackSelectControls.draw(display, Color.OFF);
                 GridControl control = trackSelectControls.get(measure % 8 + 8);
-                control.draw(display, palette.get(COLOR_HIGHLIGHT));
+                control.draw(display, colors[COLOR_HIGHLIGHT]);
             } else {
                 trackSelectControls.draw(display, Color.OFF);
             }
@@ -357,22 +364,22 @@ public class SeqDisplay {
     }
 
     public void drawControl(GridControl control, boolean isOn) {
-        Color color = palette.get(isOn ? COLOR_ON : COLOR_OFF);;
+        Color color = colors[isOn ? COLOR_ON : COLOR_OFF];;
         if (settingsControl.equals(control) || muteControl.equals(control)) {
-            color = palette.get(isOn ? COLOR_LEFT_DEFAULT_ON : COLOR_LEFT_DEFAULT_OFF);
+            color = colors[isOn ? COLOR_LEFT_DEFAULT_ON : COLOR_LEFT_DEFAULT_OFF];
         } else if (randomControl.equals(control)) {
-            color = palette.get(isOn ? COLOR_RANDOM : COLOR_RANDOM_DIM);
+            color = colors[isOn ? COLOR_RANDOM : COLOR_RANDOM_DIM];
         } else if (copyControl.equals(control) || patternSelectControl.equals(control)) {
-            color = palette.get(isOn ? COLOR_LEFT_PATTERNS_ON : COLOR_LEFT_PATTERNS_OFF);
+            color = colors[isOn ? COLOR_LEFT_PATTERNS_ON : COLOR_LEFT_PATTERNS_OFF];
         } else if (saveControl.equals(control)) {
-            color = palette.get(isOn ? COLOR_LEFT_SAVE_ON : COLOR_LEFT_SAVE_OFF);
+            color = colors[isOn ? COLOR_LEFT_SAVE_ON : COLOR_LEFT_SAVE_OFF];
         }
         control.draw(display, color);
     }
 
     public void drawControlHighlight(GridControl control, boolean isOn) {
         if (isOn) {
-            control.draw(display, palette.get(COLOR_HIGHLIGHT));
+            control.draw(display, colors[COLOR_HIGHLIGHT]);
         } else {
             control.draw(display, Color.OFF);
         }
@@ -382,9 +389,9 @@ public class SeqDisplay {
 
         // draw the regular edit controls
         for (GridControl control : editModeControls.getControls()) {
-            Color color = palette.get(COLOR_OFF);
+            Color color = colors[COLOR_OFF];
             if (control.getIndex() == editMode.ordinal()) {
-                color = palette.get(COLOR_ON);
+                color = colors[COLOR_ON];
             }
             control.draw(display, color);
         }
@@ -392,27 +399,37 @@ public class SeqDisplay {
         // step view is in mono mode only
         Color color = Color.OFF;
         if (mode == MONO) {
-            color = palette.get(COLOR_OFF);
+            color = colors[COLOR_OFF];
             if (editMode == STEP) {
-                color = palette.get(COLOR_ON);
+                color = colors[COLOR_ON];
             }
         }
         stepControl.draw(display, color);
 
         // jump mode is elsewhere and uses highlight colors
-        color = palette.get(COLOR_OFF);
+        color = colors[COLOR_OFF];
         if (editMode == JUMP) {
-            color = palette.get(COLOR_HIGHLIGHT);
+            color = colors[COLOR_HIGHLIGHT];
         }
         jumpControl.draw(display, color);
 
+        // live recording is in beat mode only
+        color = Color.OFF;
+        if (mode == BEAT) {
+            color = colors[COLOR_OFF];
+            if (recording) {
+                color = colors[COLOR_HIGHLIGHT];
+            }
+        }
+        recordControl.draw(display, color);
+
         drawFillControl(false);
     }
 
     public void drawFillControl(boolean isOn) {
-        Color color = palette.get(COLOR_OFF);
+        Color color = colors[COLOR_OFF];
         if (isOn) {
-            color = palette.get(COLOR_HIGHLIGHT);
+            color = colors[COLOR_HIGHLIGHT];
         }
         fillControl.draw(display, color);
     }
@@ -426,13 +443,13 @@ public class SeqDisplay {
         for (int index = 0; index < 8; index++) {
             GridControl control = SeqUtil.valueControls.get(index);
             if ((7 - index) <= valueAsEight) {
-                Color color = palette.get(SeqUtil.COLOR_VALUE_ON);
+                Color color = colors[SeqUtil.COLOR_VALUE_ON];
                 if (valueMode == ValueMode.HIGHLIGHT) {
-                    color = palette.get(SeqUtil.COLOR_HIGHLIGHT);
+                    color = colors[SeqUtil.COLOR_HIGHLIGHT];
                 }
                 control.draw(display, color);
             } else {
-                control.draw(display, palette.get(SeqUtil.COLOR_VALUE_OFF));
+                control.draw(display, colors[SeqUtil.COLOR_VALUE_OFF]);
             }
         }
     }
@@ -450,14 +467,14 @@ public class SeqDisplay {
 
         valueControls.draw(display, Color.OFF);
         GridControl baseControl = valueControls.get(7 - base);
-        Color color = palette.get(COLOR_VALUE_ON);
+        Color color = colors[COLOR_VALUE_ON];
         if (isBlurred) {
-            color = palette.get(COLOR_RANDOM);
+            color = colors[COLOR_RANDOM];
         }
         baseControl.draw(display, color);
         if (accent != base && accent >= 0 && accent < 8) {
             GridControl accentControl = valueControls.get(7 - accent);
-            accentControl.draw(display, palette.get(COLOR_VALUE_ACCENT));
+            accentControl.draw(display, colors[COLOR_VALUE_ACCENT]);
         }
 
     }
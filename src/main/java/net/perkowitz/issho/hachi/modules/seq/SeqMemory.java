@@ -127,6 +127,15 @@ public class SeqMemory implements MemoryObject {
 
     /***** play logic *************************************/
 
+    /**
+     * seekChain sets the playing pattern to the given number of patterns into the chain, wrapping
+     * around; a negative count goes back from the start.
+     */
+    public void seekChain(int patterns) {
+        int length = getChainEndIndex() - getChainStartIndex() + 1;
+        playingPatternIndex = getChainStartIndex() + Math.floorMod(patterns, length);
+    }
+
     public void advancePattern() {
         playingPatternIndex++;
         if (playingPatternIndex > getChainEndIndex()) {
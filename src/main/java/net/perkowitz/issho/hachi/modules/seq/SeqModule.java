@@ -8,9 +8,15 @@ import lombok.Setter;
 import net.perkowitz.issho.devices.*;
 import net.perkowitz.issho.devices.launchpadpro.Color;
 import net.perkowitz.issho.hachi.Clockable;
+import net.perkowitz.issho.hachi.LiveRecorder;
 import net.perkowitz.issho.hachi.Multitrack;
+import net.perkowitz.issho.hachi.Recordable;
 import net.perkowitz.issho.hachi.Saveable;
+import net.perkowitz.issho.hachi.Seekable;
 import net.perkowitz.issho.hachi.Sessionizeable;
+import net.perkowitz.issho.hachi.ValueSettable;
+import net.perkowitz.issho.hachi.events.AdvanceEvent;
+import net.perkowitz.issho.hachi.events.MemoryEvent;
 import net.perkowitz.issho.hachi.modules.*;
 import net.perkowitz.issho.hachi.modules.Module;
 import net.perkowitz.issho.util.MidiUtil;
@@ -22,6 +28,7 @@ import java.io.File;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.perkowitz.issho.hachi.modules.seq.SeqStep.GateMode.*;
 import static net.perkowitz.issho.hachi.modules.seq.SeqUtil.*;
@@ -33,7 +40,7 @@ import static net.perkowitz.issho.hachi.modules.seq.SeqUtil.SeqMode.MONO;
 /**
  * Created by optic on 10/24/16.
  */
-public class SeqModule extends MidiModule implements Module, Clockable, GridListener, Sessionizeable, Saveable, Muteable, Multitrack, Jumpable {
+public class SeqModule extends MidiModule implements Module, Clockable, GridListener, Sessionizeable, Saveable, Muteable, Multitrack, Jumpable, Seekable, ValueSettable, Recordable {
 
     ObjectMapper objectMapper = new ObjectMapper();
 
@@ -75,6 +82,26 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
     private List<Integer> onNotes = Lists.newArrayList(); // TODO: list or Set?
     @Setter private List<Integer> sessionPrograms = Lists.newArrayList();
     private Integer valuePressed = null;
+    private Map<String, Long> pressTimes = new ConcurrentHashMap<>();
+    private boolean stepHeld = false;
+
+    // notes held back by their step's microtiming, by track index; heldTracks[i] is null when none
+    private SeqTrack[] heldTracks = new SeqTrack[SeqUtil.BEAT_TRACK_COUNT];
+    private int[] heldPulses = new int[SeqUtil.BEAT_TRACK_COUNT];
+    private int[] heldNotes = new int[SeqUtil.BEAT_TRACK_COUNT];
+    private int[] heldVelocities = new int[SeqUtil.BEAT_TRACK_COUNT];
+    private int[] heldGates = new int[SeqUtil.BEAT_TRACK_COUNT];
+
+    // notes played live (track pads or keyboard) are recorded into the playing pattern on the clock thread
+    private final LiveRecorder recorder = new LiveRecorder(SeqUtil.STEP_COUNT);
+    private final LiveRecorder.Target recordTarget = new LiveRecorder.Target() {
+        public void record(int source, int note, int velocity, int step, int microtiming) {
+            recordNote(source, note, velocity, step, microtiming);
+        }
+    };
+
+    // the note each track pad is sounding (-1 if none), for pad pressure (input thread only)
+    private final int[] pressureNotes = new int[SeqUtil.BEAT_TRACK_COUNT];
 
 
     /***** Constructor ****************************************/
@@ -88,6 +115,9 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
         this.filePrefix = filePrefix;
         this.settingsModule = new SettingsSubmodule(true, true, true, true);
         this.tiesEnabled = (mode != BEAT);
+        for (int i = 0; i < pressureNotes.length; i++) {
+            pressureNotes[i] = -1;
+        }
         load(0);
     }
 
@@ -178,12 +208,14 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
 
         // if the current step has a jump set, figure it out now
         if (playingPattern.getJump(nextStepIndex)) {
-            nextStepIndex = (int)Math.floor(Math.random() * nextStepIndex);
+            nextStepIndex = (int)Math.floor(random.nextDouble() * nextStepIndex);
         }
 
+        recorder.step(nextStepIndex);
+
         // if a fill is playing that shuffles the steps, this will figure out which step is actually playing
         int actualStepIndex = playingPattern.getStep(0, nextStepIndex).getIndex();
-        boolean drawMeasure = currentPulse < 12;
+        boolean drawMeasure = currentPulse < PULSES_PER_BEAT / 2;
         seqDisplay.drawStepsClock(actualStepIndex, currentMeasure, drawMeasure);
 
 
@@ -199,7 +231,7 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
                 if (i < controllerNumbers.size()) {
                     Integer controlNumber = controllerNumbers.get(i);
                     if (controlNumber != null && controlStep.isEnabled()) {
-                        sendMidiCC(memory.getMidiChannel(), controlNumber, controlStep.Value());
+                        sendMidiCC(memory.getMidiChannel(), controlNumber, controlStep.Value(random));
                         controlTrack.setPlaying(true);
                     }
                 }
@@ -216,28 +248,28 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
             SeqStep step = playingPattern.getStep(track.getIndex(), actualStepIndex);
             if (step.getGateMode() == PLAY) {
                 // if it's a PLAY step, stop any previous notes and then play (if track enabled)
-                if (track.getNoteNumber() != null) {
-                    noteOff(track.getNoteNumber());
-                } else {
-                    notesOff();
-                }
                 playingTrack.setPlaying(true);
                 seqDisplay.setPlayingStep(step);
                 if (memory.getCurrentSession().trackIsEnabled(track.getIndex())) {
                     // TODO embed this in a track function that will use the track note or step note as needed
                     Integer note = track.getNoteNumber();
                     if (note == null) {
-                        note = step.getNote();
+                        note = step.getNote(random);
                     }
-                    sendMidiNote(memory.getMidiChannel(), note, step.Velocity());
+                    int velocity = step.Velocity(random);
+                    int gate = step.getGatePulses() > 0 ? step.getGatePulses() : gatePulses;
+                    if (step.getMicrotiming() > 0) {
+                        holdNote(track, note, velocity, gate, step.getMicrotiming());
+                    } else {
+                        trackOff(track);
+                        sendMidiNote(memory.getMidiChannel(), note, velocity, gate);
+                    }
+                } else {
+                    trackOff(track);
                 }
             } else if (step.getGateMode() == REST) {
                 // if it's a REST step, stop any previous notes
-                if (track.getNoteNumber() != null) {
-                    noteOff(track.getNoteNumber());
-                } else {
-                    notesOff();
-                }
+                trackOff(track);
             } else if (step.getGateMode() == TIE) {
                 // if it's a TIE, you just let it keep going
                 doResetPlayingStep = false;
@@ -308,6 +340,7 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
      * anything the module should do when Hachi is turned off (e.g. turn off any lingering midi notes)
      */
     public void shutdown() {
+        releaseGates();
         notesOff();
     }
 
@@ -345,6 +378,77 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
     }
 
 
+    /***** Seekable implementation **************************/
+
+    /**
+     * the chain moves on a pattern every measure, so the position is just the measure into the
+     * chain and the step into the pattern (random jumps can't be retraced).
+     */
+    public void seek(int measure, int step, long songStep) {
+        for (int i = 0; i < heldTracks.length; i++) {
+            heldTracks[i] = null;
+        }
+        nextStepIndex = step % STEP_COUNT;
+        int patterns = measure + step / STEP_COUNT;
+        // at the start of a pattern, leave the one before playing so advance moves on to it
+        memory.seekChain(nextStepIndex == 0 ? patterns - 1 : patterns);
+    }
+
+
+    /***** ValueSettable implementation ***********************************/
+
+    /**
+     * the knob sets the gate length of the selected step (all the way down holds the note
+     * until the next step), or its microtiming while the step is held
+     */
+    public void setValue(int value) {
+        SeqStep step = memory.getSelectedTrack().getStep(selectedStep);
+        if (stepHeld) {
+            step.setMicrotiming(value * SeqStep.MAX_MICROTIMING / 127);
+        } else {
+            step.setGatePulses(value * SeqStep.MAX_GATE_PULSES / 127);
+        }
+    }
+
+
+    /***** Recordable implementation ***********************************/
+
+    public LiveRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * a live note goes into its track's step in the playing pattern: the track whose pad was
+     * played, or whose note number matches the keyboard note
+     */
+    private void recordNote(int source, int note, int velocity, int stepIndex, int microtiming) {
+        SeqPattern pattern = memory.getPlayingPattern();
+        SeqTrack track = null;
+        if (source == LiveRecorder.PADS) {
+            track = pattern.getTrack(note);
+        } else {
+            for (SeqTrack t : pattern.getTracks()) {
+                if (t.getNoteNumber() != null && t.getNoteNumber() == note) {
+                    track = t;
+                    break;
+                }
+            }
+        }
+        if (track == null) {
+            return;
+        }
+        SeqStep step = track.getStep(stepIndex);
+        step.setEnabled(true);
+        step.setGateMode(PLAY);
+        step.setVelocity(velocity);
+        step.setMicrotiming(microtiming);
+    }
+
+    private boolean isRecordingPads() {
+        return mode == BEAT && recorder.isRecording() && editMode != CONTROL;
+    }
+
+
     /***** Multitrack implementation ************************************/
 
     public int trackCount() {
@@ -426,7 +530,7 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
 
     public void fillOn(Integer fillIndex) {
         // TODO: choose random when fillIndex is null or out of range, otherwise choose specific fill
-        patternFill = SeqPatternFill.chooseRandom(memory.getPlayingPattern());
+        patternFill = SeqPatternFill.chooseRandom(memory.getPlayingPattern(), random);
     }
 
     public void fillOff() {
@@ -447,6 +551,26 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
         onControlReleased(new GridControl(pad, null));
     }
 
+    /**
+     * pressure on a track pad that's sounding its note (in jump mode or while recording) goes out
+     * for that note; channel pressure goes out while any of them is held.
+     */
+    public void onPadPressure(GridPad pad, int value) {
+        if (pad == null) {
+            for (int note : pressureNotes) {
+                if (note >= 0) {
+                    sendPressure(memory.getMidiChannel(), -1, value);
+                    return;
+                }
+            }
+        } else {
+            GridControl control = trackSelectControls.get(pad);
+            if (control != null && pressureNotes[control.getIndex()] >= 0) {
+                sendPressure(memory.getMidiChannel(), pressureNotes[control.getIndex()], value);
+            }
+        }
+    }
+
     public void onButtonPressed(GridButton button, int velocity) {
         onControlPressed(new GridControl(button, null), velocity);
     }
@@ -464,7 +588,7 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
      */
     private void onControlPressed(GridControl control, int velocity) {
 
-        control.press();
+        control.press(pressTimes);
 //        System.out.printf("Element pressed: %s, %d\n", control, control.getIndex());
 
         // these controls apply in main view or settings view
@@ -561,6 +685,15 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
         } else if (mode == MONO && (editMode == GATE || editMode == STEP) && trackSelectControls.contains(control)) {
             // if it's in the trackSelectControls but not in the keyboard, do nothing
 
+        } else if (isRecordingPads() && trackSelectControls.contains(control)) {
+            // track pads play their track and record it while recording
+            int index = trackSelectControls.getIndex(control);
+            recorder.offer(LiveRecorder.PADS, index, velocity);
+            SeqTrack track = memory.getSelectedPattern().getTrack(index);
+            sendMidiNote(memory.getMidiChannel(), track.getNoteNumber(), velocity);
+            pressureNotes[index] = midiNoteOffset + track.getNoteNumber();
+            seqDisplay.drawControlHighlight(control, true);
+
         } else if (randomizing && trackSelectControls.contains(control)) {
             int index = trackSelectControls.getIndex(control);
             switch (editMode) {
@@ -568,14 +701,14 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
                     memory.selectTrack(index);
                     SeqTrack track = memory.getSelectedTrack();
                     seqDisplay.drawTracks(memory);
-                    track.randomize();
+                    track.randomize(random);
                     seqDisplay.drawSteps(memory);
                     break;
                 case CONTROL:
                     memory.selectControlTrack(index);
                     SeqControlTrack controlTrack = memory.getSelectedControlTrack();
                     seqDisplay.drawTracks(memory);
-                    controlTrack.randomize();
+                    controlTrack.randomize(random);
                     seqDisplay.drawSteps(memory);
                     break;
                 case PITCH:
@@ -607,6 +740,7 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
                     // track buttons play a sound in jump mode
                     SeqTrack track = memory.getSelectedPattern().getTrack(index);
                     sendMidiNote(memory.getMidiChannel(), track.getNoteNumber(), velocity);
+                    pressureNotes[index] = midiNoteOffset + track.getNoteNumber();
                     seqDisplay.drawControlHighlight(control, true);
                     break;
             }
@@ -654,6 +788,7 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
                 case GATE:
                 case STEP:
                     // selects step for editing
+                    stepHeld = true;
                     selectedStep = index;  // TODO replace this with references to memory.getSelectedStep()
                     memory.selectStep(index);
                     SeqStep step = memory.getSelectedTrack().getStep(index);
@@ -741,6 +876,10 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
             seqDisplay.setEditMode(editMode);
             seqDisplay.redraw(memory);
 
+        } else if (mode == BEAT && recordControl.equals(control)) {
+            seqDisplay.setRecording(recorder.toggleRecording());
+            seqDisplay.drawEditMode();
+
         } else if (jumpControl.equals(control)) {
             editMode = EditMode.JUMP;
             seqDisplay.setEditMode(editMode);
@@ -814,7 +953,7 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
      */
     private void onControlReleased(GridControl control) {
 
-        Long elapsed = control.release();
+        Long elapsed = control.release(pressTimes);
 
         if (control.equals(saveControl)) {
             seqDisplay.drawControl(control, false);
@@ -882,19 +1021,21 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
 
         } else if (trackSelectControls.contains(control)) {
             int index = trackSelectControls.getIndex(control);
-            switch (editMode) {
-                case JUMP:
-                    SeqTrack track = memory.getSelectedPattern().getTrack(index);
-                    sendMidiNote(memory.getMidiChannel(), track.getNoteNumber(), 0);
+            pressureNotes[index] = -1;
+            if (editMode == JUMP || isRecordingPads()) {
+                SeqTrack track = memory.getSelectedPattern().getTrack(index);
+                sendMidiNote(memory.getMidiChannel(), track.getNoteNumber(), 0);
+                if (editMode == JUMP) {
                     seqDisplay.drawControlHighlight(control, false);
-                    break;
-                case PITCH:
-                    break;
+                } else {
+                    seqDisplay.drawTracks(memory);
+                }
             }
 
         } else if (stepControls.contains(control)) {
             int index = stepControls.getIndex(control);
             SeqStep step = memory.getSelectedTrack().getStep(index);
+            stepHeld = false;
             switch (editMode) {
                 case GATE:
                     // step was selected and displayed on press; on release decide whether to toggle step and redraw
@@ -1036,21 +1177,29 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
 
     public void stop() {
         playing = false;
-        notesOff();
-    }
-
-    public void tick(boolean andReset) {
-        if (playing) {
-            advance(andReset);
+        recorder.reset();
+        for (int i = 0; i < heldTracks.length; i++) {
+            heldTracks[i] = null;
         }
+        releaseGates();
+        notesOff();
     }
 
     public void clock(int measure, int beat, int pulse) {
         currentMeasure = measure;
         currentSeq = beat;
         currentPulse = pulse;
-        if ((pulse == 0 || pulse == 6 + memory.getCurrentSession().getSwingOffset() || pulse == 12 || pulse == 18 + memory.getCurrentSession().getSwingOffset()) && playing) {
+        recorder.pulse();
+        advanceGates(1);
+        boolean stepPulse = isStepPulse(pulse, memory.getCurrentSession().getSwingOffset()) && playing;
+        playHeldNotes(stepPulse);
+        if (stepPulse) {
+            AdvanceEvent event = beginAdvance();
             advance(beat == 0 && pulse == 0);
+            endAdvance(event, nextStepIndex);
+        }
+        if (recorder.drain(recordTarget) > 0) {
+            seqDisplay.drawSteps(memory);
         }
     }
 
@@ -1059,12 +1208,12 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
      * midi output implementation
      *
      */
-    protected void sendMidiNote(int channel, int noteNumber, int velocity) {
+    protected void sendMidiNote(int channel, int noteNumber, int velocity, int gatePulses) {
         if (velocity != 0) {
             onNotes.add(noteNumber);
         }
         int offsetNoteNumber = midiNoteOffset + noteNumber;
-        super.sendMidiNote(channel, offsetNoteNumber, velocity);
+        super.sendMidiNote(channel, offsetNoteNumber, velocity, gatePulses);
     }
 
     private void notesOff() {
@@ -1082,6 +1231,37 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
         }
     }
 
+    private void trackOff(SeqTrack track) {
+        if (track.getNoteNumber() != null) {
+            noteOff(track.getNoteNumber());
+        } else {
+            notesOff();
+        }
+    }
+
+    private void holdNote(SeqTrack track, int note, int velocity, int gate, int pulses) {
+        int i = track.getIndex();
+        heldTracks[i] = track;
+        heldNotes[i] = note;
+        heldVelocities[i] = velocity;
+        heldGates[i] = gate;
+        heldPulses[i] = pulses;
+    }
+
+    /**
+     * playHeldNotes counts down the held notes and plays the ones that are due, or all of them
+     * (at the start of the next step).
+     */
+    private void playHeldNotes(boolean all) {
+        for (int i = 0; i < heldTracks.length; i++) {
+            if (heldTracks[i] != null && (all || --heldPulses[i] <= 0)) {
+                trackOff(heldTracks[i]);
+                sendMidiNote(memory.getMidiChannel(), heldNotes[i], heldVelocities[i], heldGates[i]);
+                heldTracks[i] = null;
+            }
+        }
+    }
+
 
 
     /***** Saveable implementation ***************************************
@@ -1100,7 +1280,13 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
     }
 
     public void save(int index) {
+        long start = System.nanoTime();
+        MemoryEvent event = MemoryEvent.start(events);
         saveMemory(index, memory);
+        saveMeter.recordSince(start);
+        if (event != null) {
+            event.end(name(), "save", index);
+        }
     }
 
     public void saveMemory(int index, SeqMemory saveMemory) {
@@ -1118,7 +1304,13 @@ public class SeqModule extends MidiModule implements Module, Clockable, GridList
     }
 
     public void load(int index) {
+        long start = System.nanoTime();
+        MemoryEvent event = MemoryEvent.start(events);
         memory = loadMemory(index);
+        loadMeter.recordSince(start);
+        if (event != null) {
+            event.end(name(), "load", index);
+        }
         settingsModule.setMidiChannel(memory.getMidiChannel());
     }
 
@@ -1,6 +1,7 @@
 package net.perkowitz.issho.hachi.modules.seq;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by optic on 2/25/17.
@@ -70,15 +71,15 @@ public class SeqPatternFill extends SeqPattern {
         return newPattern;
     }
 
-    public static SeqPatternFill chooseRandom(SeqPattern basePattern) {
-        int r = (int)(Math.random() * mapPool.length);
+    public static SeqPatternFill chooseRandom(SeqPattern basePattern, Random random) {
+        int r = (int)(random.nextDouble() * mapPool.length);
         return new SeqPatternFill(basePattern, mapPool[r]);
     }
 
-    public static SeqPatternFill random(SeqPattern basePattern) {
+    public static SeqPatternFill random(SeqPattern basePattern, Random random) {
         Integer[] stepMap = new Integer[SeqUtil.STEP_COUNT];
         for (int i = 0; i < SeqUtil.STEP_COUNT; i++) {
-            int r = (int)(Math.random() * (SeqUtil.STEP_COUNT + 1));  // add 1 to have an empty step option
+            int r = (int)(random.nextDouble() * (SeqUtil.STEP_COUNT + 1));  // add 1 to have an empty step option
             stepMap[i] = r;
         }
         return new SeqPatternFill(basePattern, stepMap);
@@ -2,7 +2,8 @@ package net.perkowitz.issho.hachi.modules.seq;
 
 import lombok.Getter;
 import lombok.Setter;
-import org.codehaus.jackson.annotate.JsonIgnore;
+
+import java.util.Random;
 
 import static net.perkowitz.issho.hachi.modules.seq.SeqStep.GateMode.*;
 
@@ -21,6 +22,8 @@ public class SeqStep {
     private static int MAX_VELOCITY = 127;
     private static int OCTAVE_BLUR_RANGE = 1;
     private static int VELOCITY_BLUR_RANGE = 32;
+    public static int MAX_GATE_PULSES = 96;
+    public static int MAX_MICROTIMING = 23;
 
     @Getter private int index;
     @Getter private int semitone;
@@ -30,6 +33,8 @@ public class SeqStep {
     @Getter @Setter boolean velocityBlurred = false;
     @Getter @Setter private boolean enabled = false;
     @Getter @Setter private GateMode gateMode = GateMode.REST;
+    @Getter private int gatePulses = 0;     // 0 holds the note until the next step that plays or rests
+    @Getter private int microtiming = 0;    // pulses to play the note after the step starts
 
     public SeqStep() {}
 
@@ -71,19 +76,19 @@ public class SeqStep {
     }
 
     // Octave returns the step octave adjusted by blurring.
-    public int Octave() {
+    public int Octave(Random random) {
         int o = octave;
         if (octaveBlurred) {
-            o += (int)Math.floor(Math.random() * (2 * OCTAVE_BLUR_RANGE +1)) - OCTAVE_BLUR_RANGE;
+            o += (int)Math.floor(random.nextDouble() * (2 * OCTAVE_BLUR_RANGE +1)) - OCTAVE_BLUR_RANGE;
         }
         return Math.max(0, Math.min(MAX_OCTAVE, o));
     }
 
     // Velocity returns the step velocity adjusted by blurring.
-    public int Velocity() {
+    public int Velocity(Random random) {
         int v = velocity;
         if (velocityBlurred) {
-            v += (int)Math.floor(Math.random() * (2 * VELOCITY_BLUR_RANGE +1)) - VELOCITY_BLUR_RANGE;
+            v += (int)Math.floor(random.nextDouble() * (2 * VELOCITY_BLUR_RANGE +1)) - VELOCITY_BLUR_RANGE;
         }
         return Math.max(0, Math.min(127, v));
     }
@@ -108,6 +113,14 @@ public class SeqStep {
         }
     }
 
+    public void setGatePulses(int gatePulses) {
+        this.gatePulses = Math.max(0, Math.min(MAX_GATE_PULSES, gatePulses));
+    }
+
+    public void setMicrotiming(int microtiming) {
+        this.microtiming = Math.max(0, Math.min(MAX_MICROTIMING, microtiming));
+    }
+
     public void set(GateMode gateMode, int semitone, int octave, int velocity) {
         this.gateMode = gateMode;
         this.semitone = semitone;
@@ -135,9 +148,8 @@ public class SeqStep {
         return String.format("SeqStep:%02d", index);
     }
 
-    @JsonIgnore
-    public int getNote() {
-        return Octave() * 12 + semitone;
+    public int getNote(Random random) {
+        return Octave(random) * 12 + semitone;
     }
 
     /***** static methods **************************/
@@ -149,6 +161,8 @@ public class SeqStep {
         newStep.velocity = step.velocity;
         newStep.enabled = step.enabled;
         newStep.gateMode = step.gateMode;
+        newStep.gatePulses = step.gatePulses;
+        newStep.microtiming = step.microtiming;
         return newStep;
     }
 
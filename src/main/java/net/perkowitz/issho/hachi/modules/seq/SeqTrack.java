@@ -7,6 +7,7 @@ import net.perkowitz.issho.hachi.MemoryObject;
 import net.perkowitz.issho.hachi.MemoryUtil;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by optic on 2/25/17.
@@ -40,9 +41,9 @@ public class SeqTrack implements MemoryObject {
         return String.format("SeqTrack:%02d", index);
     }
 
-    public void randomize() {
+    public void randomize(Random random) {
         for (SeqStep step : steps) {
-            int v = (int)Math.floor(Math.random() * 128);
+            int v = (int)Math.floor(random.nextDouble() * 128);
             step.setVelocity(v);
         }
     }
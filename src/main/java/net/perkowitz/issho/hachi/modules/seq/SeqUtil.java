@@ -55,7 +55,7 @@ public class SeqUtil {
     public static String[] BUTTON_LABELS_BEAT = new String[]{
             "Play", "Exit", "Copy", "Slct", "Rand", "Save", "Sett", "Mute",
             "-", "-", "-", "Valu", "-", "-", "-", "-",
-            "Gate", "Ctrl", "Ptch", "", "", "", "Jump", "Fill"
+            "Gate", "Ctrl", "Ptch", "", "Rec", "", "Jump", "Fill"
     };
     public static String[] BUTTON_LABELS_MONO = new String[]{
             "Play", "Exit", "Copy", "Slct", "Rand", "Save", "Sett", "Mute",
@@ -116,6 +116,7 @@ public class SeqUtil {
     // edit mode controls
     public static GridControlSet editModeControls = GridControlSet.buttonSide(Bottom, 0, 2);
     public static GridControl stepControl = new GridControl(GridButton.at(Bottom, 3), null);
+    public static GridControl recordControl = new GridControl(GridButton.at(Bottom, 4), null);
     public static GridControl jumpControl = new GridControl(GridButton.at(Bottom, 6), null);
     public static GridControl fillControl = new GridControl(GridButton.at(Bottom, 7), null);
 
@@ -16,7 +16,6 @@ import static net.perkowitz.issho.hachi.modules.step.Stage.Marker.*;
  */
 public class Stage implements MemoryObject {
 
-    private static final java.util.Random RANDOM = new Random();
 
     public enum Marker {
         None, Note, Sharp, Flat, OctaveUp, OctaveDown, VolumeUp, VolumeDown, Longer, Repeat, Skip, Slide, Tie, Random
@@ -34,12 +33,12 @@ public class Stage implements MemoryObject {
 
     public Stage() {}
 
-    public Stage(Integer index) {
+    public Stage(Integer index, Random random) {
         this.index = index;
         for (int i = 0; i < MAX_MARKERS; i++) {
             markers[i] = None;
         }
-        steps = Step.fromMarkers(markers);
+        steps = Step.fromMarkers(markers, random);
     }
 
 
@@ -47,18 +46,18 @@ public class Stage implements MemoryObject {
         return markers[index];
     }
 
-    public void putMarker(int index, Marker marker) {
+    public void putMarker(int index, Marker marker, Random random) {
         if (marker == Random && markers[index] != Random) {
             randomCount++;
         } else if (marker != Random && markers[index] == Random) {
             randomCount--;
         }
         markers[index] = marker;
-        computeSteps();
+        computeSteps(random);
     }
 
-    public void computeSteps() {
-        steps = Step.fromMarkers(markers);
+    public void computeSteps(Random random) {
+        steps = Step.fromMarkers(markers, random);
     }
 
     public List<Integer> findMarker(Marker marker) {
@@ -158,7 +157,8 @@ public class Stage implements MemoryObject {
     /***** static methods *******************************/
 
     public static Stage copy(Stage stage) {
-        Stage newStage = new Stage(stage.getIndex());
+        Stage newStage = new Stage();
+        newStage.index = stage.getIndex();
         for (int i = 0; i < MAX_MARKERS; i++) {
             newStage.markers[i] = stage.getMarker(i);
         }
@@ -167,7 +167,7 @@ public class Stage implements MemoryObject {
         return newStage;
     }
 
-    public static Marker randomMarker() {
-        return randomMarkers[RANDOM.nextInt(randomMarkers.length)];
+    public static Marker randomMarker(Random random) {
+        return randomMarkers[random.nextInt(randomMarkers.length)];
     }
 }
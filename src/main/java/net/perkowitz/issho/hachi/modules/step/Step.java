@@ -6,6 +6,7 @@ import lombok.Setter;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static net.perkowitz.issho.hachi.modules.step.Step.Mode.*;
 import static net.perkowitz.issho.hachi.modules.step.Step.MultiNoteMode.*;
@@ -65,7 +66,7 @@ public class Step {
 
     /***** static factory ********************************/
 
-    public static List<Step> fromMarkers(Stage.Marker[] markers) {
+    public static List<Step> fromMarkers(Stage.Marker[] markers, Random random) {
 
         List<Step> steps = Lists.newArrayList();
 
@@ -83,7 +84,7 @@ public class Step {
         for (int i = 0; i < markers.length; i++) {
             Stage.Marker m = markers[i];
             if (m == Stage.Marker.Random) {
-                m = Stage.randomMarker();
+                m = Stage.randomMarker(random);
             }
             switch (m) {
                 case Note:
@@ -139,7 +140,7 @@ public class Step {
                     Collections.reverse(noteIndices);
                     break;
                 case ORDER_RANDOM:
-                    Collections.shuffle(baseNotes);
+                    Collections.shuffle(baseNotes, random);
                     // noteIndices = shrug emoji
                     break;
                 case CHOOSE_LOW:
@@ -151,7 +152,7 @@ public class Step {
                     chosenIndex = noteIndices.get(baseNotes.size() - 1);
                     break;
                 case CHOOSE_RANDOM:
-                    int r = (int) (Math.random() * baseNotes.size());
+                    int r = (int) (random.nextDouble() * baseNotes.size());
                     chosenNote = baseNotes.get(r);
                     chosenIndex = noteIndices.get(r);
                     break;
@@ -18,7 +18,8 @@ import static net.perkowitz.issho.hachi.modules.step.StepUtil.*;
 public class StepDisplay {
 
     @Setter private GridDisplay display;
-    @Getter @Setter private Map<Integer, Color> palette = StepUtil.PALETTE;
+    @Getter private Map<Integer, Color> palette = StepUtil.PALETTE;
+    private Color[] colors = Color.compile(palette);
     @Getter @Setter private Map<Stage.Marker, Color> markerPalette = StepUtil.MARKER_COLORS;
     @Getter @Setter private int currentFileIndex = 0;
 
@@ -33,6 +34,11 @@ public class StepDisplay {
         this.display = display;
     }
 
+    public void setPalette(Map<Integer, Color> palette) {
+        this.palette = palette;
+        this.colors = Color.compile(palette);
+    }
+
     
     public void redraw(StepMemory memory) {
         drawMarkers();
@@ -100,14 +106,14 @@ public class StepDisplay {
     public void drawPatterns(StepMemory memory) {
         patternControls.draw(display, Color.OFF);
         int index = memory.getCurrentPatternIndex() % patternControls.size();
-        patternControls.get(index).draw(display, palette.get(COLOR_ON));
+        patternControls.get(index).draw(display, colors[COLOR_ON]);
     }
 
     public void drawControl(GridControl control, boolean isOn) {
         if (isOn) {
-            control.draw(display, palette.get(COLOR_ON));
+            control.draw(display, colors[COLOR_ON]);
         } else {
-            control.draw(display, palette.get(COLOR_OFF));
+            control.draw(display, colors[COLOR_OFF]);
         }
     }
 
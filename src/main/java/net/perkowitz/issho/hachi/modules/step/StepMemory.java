@@ -6,6 +6,7 @@ import lombok.Setter;
 import net.perkowitz.issho.hachi.MemoryObject;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by optic on 10/24/16.
@@ -25,8 +26,12 @@ public class StepMemory implements MemoryObject {
 
 
     public StepMemory() {
+        this(new Random());
+    }
+
+    public StepMemory(Random random) {
         for (int i = 0; i < SESSION_COUNT; i++) {
-            sessions[i] = new StepSession(i);
+            sessions[i] = new StepSession(i, random);
         }
     }
 
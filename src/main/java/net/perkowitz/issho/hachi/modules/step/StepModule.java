@@ -6,7 +6,10 @@ import com.google.common.io.Files;
 import net.perkowitz.issho.devices.*;
 import net.perkowitz.issho.hachi.Clockable;
 import net.perkowitz.issho.hachi.Saveable;
+import net.perkowitz.issho.hachi.Seekable;
 import net.perkowitz.issho.hachi.Sessionizeable;
+import net.perkowitz.issho.hachi.events.AdvanceEvent;
+import net.perkowitz.issho.hachi.events.MemoryEvent;
 import net.perkowitz.issho.hachi.modules.*;
 import net.perkowitz.issho.hachi.modules.Module;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -24,11 +27,11 @@ import static net.perkowitz.issho.hachi.modules.step.StepUtil.*;
 /**
  * Created by optic on 10/24/16.
  */
-public class StepModule extends ChordModule implements Module, Clockable, GridListener, Sessionizeable, Saveable, Muteable, Jumpable {
+public class StepModule extends ChordModule implements Module, Clockable, GridListener, Sessionizeable, Saveable, Muteable, Jumpable, Seekable {
 
     ObjectMapper objectMapper = new ObjectMapper();
 
-    private StepMemory memory = new StepMemory();
+    private StepMemory memory = new StepMemory(random);
     private StepDisplay stepDisplay;
     private SettingsSubmodule settingsModule;
     private boolean settingsView = false;
@@ -143,7 +146,7 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
                 notesOff();
                 int note = step.getNote();
                 onNotes.add(note);
-                sendMidiNote(memory.getMidiChannel(), note, step.getVelocity());
+                sendMidiNote(memory.getMidiChannel(), note, step.getVelocity(), gatePulses);
                 break;
             case Tie:
                 break;
@@ -172,13 +175,13 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
             // this will just loop until c gets too big if all stages are SKIP
 //            stagesToRedraw.add(currentStageIndex);
             if (randomOrder) {
-                currentStageIndex = (int)(Math.random() * StepPattern.STAGE_COUNT);
+                currentStageIndex = (int)(random.nextDouble() * StepPattern.STAGE_COUNT);
             } else {
                 currentStageIndex++;
             }
             currentStageIndex = currentStageIndex % StepPattern.STAGE_COUNT;
             if (currentStage().getRandomCount() > 0) {
-                currentStage().computeSteps();
+                currentStage().computeSteps(random);
             }
             currentSteps = currentStage().getSteps();
             currentStageStepIndex = 0;
@@ -217,6 +220,7 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void shutdown() {
+        releaseGates();
         notesOff();
     }
 
@@ -243,6 +247,28 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
     }
 
 
+    /***** Seekable implementation **************************/
+
+    /**
+     * each measure starts over at the first stage, so the position is found by counting the step
+     * into the measure through the stages' steps (in order, even if the stages are played randomly).
+     */
+    public void seek(int measure, int step, long songStep) {
+        int total = 0;
+        for (int i = 0; i < StepPattern.STAGE_COUNT; i++) {
+            total += memory.currentPattern().getStage(i).getSteps().size();
+        }
+        int remaining = total == 0 ? 0 : step % total;
+        currentStageIndex = 0;
+        while (remaining > 0 && remaining >= currentStage().getSteps().size()) {
+            remaining -= currentStage().getSteps().size();
+            currentStageIndex++;
+        }
+        currentStageStepIndex = remaining;
+        currentSteps = currentStage().getSteps();
+    }
+
+
     /***** Sessionizeable implementation *************************************/
 
     public void selectSession(int index) {
@@ -370,10 +396,10 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
             Stage stage = memory.currentPattern().getStage(pad.getX());
             int index = 7 - pad.getY();
             if (currentMarker == stage.getMarker(index)) {
-                stage.putMarker(index, Stage.Marker.None);
+                stage.putMarker(index, Stage.Marker.None, random);
                 control.draw(display, StepUtil.MARKER_COLORS.get(Stage.Marker.None));
             } else {
-                stage.putMarker(index, currentMarker);
+                stage.putMarker(index, currentMarker, random);
                 control.draw(display, StepUtil.MARKER_COLORS.get(currentMarker));
             }
 
@@ -470,7 +496,7 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
             case CLEAR_SESSION:
                 Integer sessionIndex = settingsModule.getClearSessionIndex();
                 if (sessionIndex != null) {
-                    memory.getSessions()[sessionIndex] = new StepSession(sessionIndex);
+                    memory.getSessions()[sessionIndex] = new StepSession(sessionIndex, random);
                     System.out.printf("Completed clear session %d\n", sessionIndex);
                 }
                 break;
@@ -494,17 +520,17 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void stop() {
+        releaseGates();
         notesOff();
         sendAllNotesOff(memory.getMidiChannel());
     }
 
-    public void tick(boolean andReset) {
-        advance(andReset);
-    }
-
     public void clock(int measure, int beat, int pulse) {
-        if (pulse == 0 || pulse == 6 + swingOffset || pulse == 12 || pulse == 18 + swingOffset) {
+        advanceGates(1);
+        if (isStepPulse(pulse, swingOffset)) {
+            AdvanceEvent event = beginAdvance();
             advance(beat == 0 && pulse == 0);
+            endAdvance(event, currentStageIndex);
         }
     }
 
@@ -519,7 +545,13 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void save(int index) {
+        long start = System.nanoTime();
+        MemoryEvent event = MemoryEvent.start(events);
         saveMemory(index, memory);
+        saveMeter.recordSince(start);
+        if (event != null) {
+            event.end(name(), "save", index);
+        }
     }
 
     public void saveMemory(int index, StepMemory saveMemory) {
@@ -537,7 +569,13 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
     }
 
     public void load(int index) {
+        long start = System.nanoTime();
+        MemoryEvent event = MemoryEvent.start(events);
         memory = loadMemory(index);
+        loadMeter.recordSince(start);
+        if (event != null) {
+            event.end(name(), "load", index);
+        }
         settingsModule.setMidiChannel(memory.getMidiChannel());
     }
 
@@ -552,7 +590,7 @@ public class StepModule extends ChordModule implements Module, Clockable, GridLi
             e.printStackTrace();
         }
 
-        return new StepMemory();
+        return new StepMemory(random);
     }
 
     private String filename(int index) {
@@ -7,6 +7,7 @@ import net.perkowitz.issho.hachi.MemoryObject;
 import net.perkowitz.issho.hachi.MemoryUtil;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by optic on 10/24/16.
@@ -21,10 +22,10 @@ public class StepPattern implements MemoryObject {
 
     public StepPattern() {}
 
-    public StepPattern(int index) {
+    public StepPattern(int index, Random random) {
         this.index = index;
         for (int i = 0; i < STAGE_COUNT; i++) {
-            stages[i] = new Stage(i);
+            stages[i] = new Stage(i, random);
         }
     }
 
@@ -38,8 +39,7 @@ public class StepPattern implements MemoryObject {
         Stage[] shiftedStages = new Stage[STAGE_COUNT];
         for (int i = 0; i < stages.length; i++) {
             int shifted = (i + shiftAmount + STAGE_COUNT) % STAGE_COUNT;
-            Stage stage = new Stage(shifted);
-            stage = Stage.copy(stages[i]);
+            Stage stage = Stage.copy(stages[i]);
             stage.setIndex(shifted);
             shiftedStages[shifted] = stage;
         }
@@ -95,7 +95,8 @@ public class StepPattern implements MemoryObject {
     /***** static methods **************************/
 
     public static StepPattern copy(StepPattern pattern, int newIndex) {
-        StepPattern newPattern = new StepPattern(newIndex);
+        StepPattern newPattern = new StepPattern();
+        newPattern.index = newIndex;
         for (int i = 0; i < STAGE_COUNT; i++) {
             newPattern.stages[i] = Stage.copy(pattern.stages[i]);
         }
@@ -7,6 +7,7 @@ import net.perkowitz.issho.hachi.MemoryObject;
 import net.perkowitz.issho.hachi.MemoryUtil;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by optic on 10/24/16.
@@ -22,10 +23,10 @@ public class StepSession implements MemoryObject {
 
     public StepSession() {}
 
-    public StepSession(int index) {
+    public StepSession(int index, Random random) {
         this.index = index;
         for (int i = 0; i < PATTERN_COUNT; i++) {
-            patterns[i] = new StepPattern(i);
+            patterns[i] = new StepPattern(i, random);
         }
     }
 
@@ -83,7 +84,8 @@ public class StepSession implements MemoryObject {
     /***** static methods ********************************/
 
     public static StepSession copy(StepSession session, int newIndex) {
-        StepSession newSession = new StepSession(newIndex);
+        StepSession newSession = new StepSession();
+        newSession.index = newIndex;
         for (int i = 0; i < PATTERN_COUNT; i++) {
             newSession.patterns[i] = StepPattern.copy(session.patterns[i], i);
         }
@@ -0,0 +1,35 @@
+package net.perkowitz.issho.util;
+
+import lombok.Getter;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+
+/**
+ * CaptureReceiver records each message in a MidiCapture under a port name, then passes it on.
+ */
+public class CaptureReceiver implements Receiver {
+
+    @Getter private final Receiver receiver;
+    private final MidiCapture capture;
+    private final int port;
+    private final int direction;
+
+
+    public CaptureReceiver(Receiver receiver, MidiCapture capture, String portName, int direction) {
+        this.receiver = receiver;
+        this.capture = capture;
+        this.port = capture.port(portName);
+        this.direction = direction;
+    }
+
+    public void send(MidiMessage message, long timeStamp) {
+        capture.record(port, direction, message);
+        receiver.send(message, timeStamp);
+    }
+
+    public void close() {
+        receiver.close();
+    }
+
+}
@@ -0,0 +1,59 @@
+package net.perkowitz.issho.util;
+
+/**
+ * HistogramMeter times something (a tick, a save) into a Histogram and exposes the
+ * percentiles as an MBean. Timing is allocation-free, so it can be used on the clock path:
+ *
+ *     long start = System.nanoTime();
+ *     ...
+ *     meter.recordSince(start);
+ */
+public class HistogramMeter implements HistogramMeterMBean {
+
+    private final Histogram histogram = new Histogram();
+
+
+    public void record(long micros) {
+        histogram.record(micros);
+    }
+
+    public void recordSince(long startNanos) {
+        histogram.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+
+    /***** HistogramMeterMBean implementation ***************/
+
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    public double getMeanMicros() {
+        return histogram.getMean();
+    }
+
+    public long getP50Micros() {
+        return histogram.percentile(50);
+    }
+
+    public long getP99Micros() {
+        return histogram.percentile(99);
+    }
+
+    public long getP999Micros() {
+        return histogram.percentile(99.9);
+    }
+
+    public long getMaxMicros() {
+        return histogram.getMax();
+    }
+
+    public void reset() {
+        histogram.reset();
+    }
+
+}
@@ -0,0 +1,16 @@
+package net.perkowitz.issho.util;
+
+/**
+ * JMX view of a HistogramMeter. All durations are in microseconds.
+ */
+public interface HistogramMeterMBean {
+
+    public long getCount();
+    public double getMeanMicros();
+    public long getP50Micros();
+    public long getP99Micros();
+    public long getP999Micros();
+    public long getMaxMicros();
+    public void reset();
+
+}
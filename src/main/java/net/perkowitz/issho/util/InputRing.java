@@ -0,0 +1,95 @@
+package net.perkowitz.issho.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InputRing hands small timestamped input events (a source and two data bytes) from any number of
+ * input threads to one consumer, usually the clock thread. Like MidiCapture, senders claim a slot,
+ * fill it and publish it without locking or allocating; if the consumer is a full ring behind, new
+ * events are dropped (and counted) rather than blocking the sender.
+ */
+public class InputRing {
+
+    public interface Handler {
+        public void event(long nanos, int source, int data1, int data2);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final long[] times;
+    private final int[] events;
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong(0);
+    private volatile long tail = 0;
+
+    private final LongAdder dropped = new LongAdder();
+
+
+    /**
+     * @param capacity number of events the ring holds; rounded up to a power of two
+     */
+    public InputRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.events = new int[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * offer adds an event to the ring. It doesn't allocate, lock or block.
+     *
+     * @return false if the ring was full and the event was dropped
+     */
+    public boolean offer(long nanos, int source, int data1, int data2) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        times[slot] = nanos;
+        events[slot] = (source & 0xFF) << 16 | (data1 & 0xFF) << 8 | (data2 & 0xFF);
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * drain passes every published event to the handler, oldest first. Only one thread may drain.
+     *
+     * @return how many events were drained
+     */
+    public int drain(Handler handler) {
+        long next = tail;
+        long end = head.get();
+        int count = 0;
+        while (next < end) {
+            int slot = (int) (next & mask);
+            if (published.get(slot) != next) {
+                // claimed but not yet written by its sender
+                break;
+            }
+            int event = events[slot];
+            handler.event(times[slot], event >> 16, (event >> 8) & 0xFF, event & 0xFF);
+            next++;
+            count++;
+        }
+        tail = next;
+        return count;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+}
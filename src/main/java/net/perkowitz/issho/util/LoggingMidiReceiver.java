@@ -10,7 +10,11 @@ import static javax.sound.midi.ShortMessage.*;
 
 /**
  * Created by optic on 8/27/17.
+ *
+ * @deprecated prints synchronously on the sending thread, which changes the timing it's observing;
+ * use MidiCapture (with CaptureReceiver) and CaptureApp instead.
  */
+@Deprecated
 public class LoggingMidiReceiver implements Receiver {
 
     public enum LogType {
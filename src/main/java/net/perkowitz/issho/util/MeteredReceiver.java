@@ -0,0 +1,41 @@
+package net.perkowitz.issho.util;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+
+/**
+ * MeteredReceiver passes messages on to another receiver, recording them in a PortMeter.
+ * If a source device is set (for an input), messages with a timestamp also record the latency
+ * from the device's timestamp to the handler, using the device's own microsecond clock.
+ */
+public class MeteredReceiver implements Receiver {
+
+    @Getter private final Receiver receiver;
+    @Getter private final PortMeter meter;
+    @Setter private MidiDevice source = null;
+
+
+    public MeteredReceiver(Receiver receiver, PortMeter meter) {
+        this.receiver = receiver;
+        this.meter = meter;
+    }
+
+    public void send(MidiMessage message, long timeStamp) {
+        meter.record(message);
+        long start = System.nanoTime();
+        if (source != null && timeStamp >= 0) {
+            meter.recordLatency(source.getMicrosecondPosition() - timeStamp);
+        }
+        receiver.send(message, timeStamp);
+        meter.recordHandlerTime((System.nanoTime() - start) / 1000);
+    }
+
+    public void close() {
+        receiver.close();
+    }
+
+}
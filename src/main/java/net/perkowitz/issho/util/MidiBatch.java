@@ -0,0 +1,117 @@
+package net.perkowitz.issho.util;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * MidiBatch collects midi messages, each with the Receiver it's for, so they can be sent later in the
+ * order they were added. A thread that's collecting sets its batch with collect(); code that sends
+ * midi checks current() and adds to the batch instead of sending when there is one.
+ *
+ * The arrays only grow (doubling) when a batch outgrows them, so a batch that has settled into its
+ * size allocates nothing. Not thread-safe: a batch is filled by one thread at a time and flushed
+ * after it's done.
+ */
+public class MidiBatch {
+
+    private static final ThreadLocal<MidiBatch> current = new ThreadLocal<>();
+
+    private Receiver[] receivers;
+    private MidiMessage[] messages;
+    private long[] timeStamps;
+    private int size = 0;
+
+
+    public MidiBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        receivers = new Receiver[capacity];
+        messages = new MidiMessage[capacity];
+        timeStamps = new long[capacity];
+    }
+
+    /**
+     * current returns the batch the calling thread is collecting into, or null.
+     */
+    public static MidiBatch current() {
+        return current.get();
+    }
+
+    /**
+     * collect makes the calling thread collect into the given batch, or stop collecting if null.
+     */
+    public static void collect(MidiBatch batch) {
+        current.set(batch);
+    }
+
+    public void add(Receiver receiver, MidiMessage message, long timeStamp) {
+        if (size == messages.length) {
+            grow();
+        }
+        receivers[size] = receiver;
+        messages[size] = message;
+        timeStamps[size] = timeStamp;
+        size++;
+    }
+
+    /**
+     * flushNotes sends just the note ons and offs in the batch, in order, leaving the rest for flush().
+     *
+     * @return how many messages were left
+     */
+    public int flushNotes() {
+        int left = 0;
+        for (int i = 0; i < size; i++) {
+            if (messages[i] == null) {
+                continue;
+            }
+            int command = messages[i].getStatus() & 0xF0;
+            if (command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF) {
+                send(i);
+            } else {
+                left++;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * flush sends everything in the batch, in order, and empties it.
+     */
+    public void flush() {
+        for (int i = 0; i < size; i++) {
+            if (messages[i] != null) {
+                send(i);
+            }
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void send(int i) {
+        try {
+            receivers[i].send(messages[i], timeStamps[i]);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        receivers[i] = null;
+        messages[i] = null;
+    }
+
+    private void grow() {
+        int capacity = messages.length * 2;
+        Receiver[] newReceivers = new Receiver[capacity];
+        MidiMessage[] newMessages = new MidiMessage[capacity];
+        long[] newTimeStamps = new long[capacity];
+        System.arraycopy(receivers, 0, newReceivers, 0, size);
+        System.arraycopy(messages, 0, newMessages, 0, size);
+        System.arraycopy(timeStamps, 0, newTimeStamps, 0, size);
+        receivers = newReceivers;
+        messages = newMessages;
+        timeStamps = newTimeStamps;
+    }
+
+}
@@ -0,0 +1,307 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Lists;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MidiCapture records every message through the ports it's attached to (see CaptureReceiver) with a
+ * nanosecond timestamp, cheaply enough to leave on for a whole show. Senders copy each message into a
+ * preallocated off-heap ring and return; a background thread drains the ring to a compact binary file.
+ * If the drain falls a full ring behind, new messages are dropped (and counted) rather than blocking.
+ *
+ * The file (read it with MidiCaptureReader or CaptureApp) is a header followed by records:
+ *   header:  "HMC1", start time (epoch millis), start time (nanoTime)
+ *   'P' port:    port id (short), name length (short), name (utf-8)
+ *   'M' message: nanoTime (long), port id (short), direction (byte), length (byte), status, data1, data2
+ */
+public class MidiCapture implements MidiCaptureMBean {
+
+    public static final byte[] MAGIC = "HMC1".getBytes(StandardCharsets.US_ASCII);
+    public static final byte PORT_RECORD = 'P';
+    public static final byte MESSAGE_RECORD = 'M';
+    public static final int IN = 0;
+    public static final int OUT = 1;
+
+    private static final int SLOT_SIZE = 16;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final long DRAIN_PARK_NANOS = 5000000;
+
+    private final int capacity;
+    private final int mask;
+    private final ByteBuffer ring;
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong(0);
+    private volatile long tail = 0;
+
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final List<String> ports = Lists.newArrayList();
+
+    private volatile boolean capturing = false;
+    private String filename = null;
+    private Thread drainer = null;
+
+
+    public MidiCapture() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of messages the ring holds; rounded up to a power of two
+     */
+    public MidiCapture(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.ring = ByteBuffer.allocateDirect(size * SLOT_SIZE);
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * port returns the id for a named port, registering it if it's new.
+     *
+     * @param name
+     * @return port id to pass to record
+     */
+    public int port(String name) {
+        synchronized (ports) {
+            int id = ports.indexOf(name);
+            if (id < 0) {
+                ports.add(name);
+                id = ports.size() - 1;
+            }
+            return id;
+        }
+    }
+
+    /**
+     * record copies a message into the ring. It doesn't allocate, lock or block, and does nothing
+     * when capture is off.
+     *
+     * @param port
+     * @param direction IN or OUT
+     * @param message
+     */
+    public void record(int port, int direction, MidiMessage message) {
+        if (!capturing) {
+            return;
+        }
+        int length = message.getLength();
+        if (message instanceof ShortMessage) {
+            // getMessage() copies the bytes, so use the accessors instead
+            ShortMessage shortMessage = (ShortMessage) message;
+            write(port, direction, length, (byte) shortMessage.getStatus(), (byte) shortMessage.getData1(), (byte) shortMessage.getData2());
+        } else {
+            byte[] bytes = message.getMessage();
+            write(port, direction, length, length > 0 ? bytes[0] : 0, length > 1 ? bytes[1] : 0, length > 2 ? bytes[2] : 0);
+        }
+    }
+
+    /**
+     * record copies a three-byte message given as status and data, for events that aren't
+     * MidiMessages (e.g. grid presses).
+     */
+    public void record(int port, int direction, int status, int data1, int data2) {
+        if (!capturing) {
+            return;
+        }
+        write(port, direction, 3, (byte) status, (byte) data1, (byte) data2);
+    }
+
+
+    /***** MidiCaptureMBean implementation ***************/
+
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    public synchronized String getFilename() {
+        return filename;
+    }
+
+    public long getCaptured() {
+        return captured.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * start begins capturing to a new file, stopping any capture in progress.
+     *
+     * @param filename
+     */
+    public synchronized void start(String filename) {
+        stop();
+        final FileChannel channel;
+        try {
+            channel = new FileOutputStream(filename).getChannel();
+        } catch (IOException e) {
+            System.err.println(e);
+            return;
+        }
+
+        this.filename = filename;
+        tail = head.get();
+        capturing = true;
+        drainer = new Thread(new Runnable() {
+            public void run() {
+                drain(channel);
+            }
+        }, "midi-capture");
+        drainer.setDaemon(true);
+        drainer.start();
+        System.out.printf("Capturing midi to %s\n", filename);
+    }
+
+    /**
+     * stop ends capture, writing out anything left in the ring and closing the file.
+     */
+    public synchronized void stop() {
+        if (drainer == null) {
+            return;
+        }
+        capturing = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainer = null;
+        System.out.printf("Stopped midi capture to %s (%d captured, %d dropped)\n", filename, getCaptured(), getDropped());
+    }
+
+
+    /***** private implementation ***************/
+
+    private void write(int port, int direction, int length, byte status, byte data1, byte data2) {
+        long nanos = System.nanoTime();
+
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= capacity) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        int offset = slot * SLOT_SIZE;
+        ring.putLong(offset, nanos);
+        ring.putShort(offset + 8, (short) port);
+        ring.put(offset + 10, (byte) direction);
+        ring.put(offset + 11, (byte) Math.min(length, 127));
+        ring.put(offset + 12, status);
+        ring.put(offset + 13, data1);
+        ring.put(offset + 14, data2);
+        published.lazySet(slot, sequence);
+        captured.increment();
+    }
+
+
+    /***** drain thread ***************/
+
+    private void drain(FileChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        int portsWritten = 0;
+        try {
+            buffer.put(MAGIC);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putLong(System.nanoTime());
+
+            while (true) {
+                boolean stopping = !capturing;
+                portsWritten = writePorts(channel, buffer, portsWritten);
+
+                long next = tail;
+                long end = head.get();
+                while (next < end) {
+                    int slot = (int) (next & mask);
+                    if (published.get(slot) != next) {
+                        // claimed but not yet written by its sender
+                        break;
+                    }
+                    if (buffer.remaining() < SLOT_SIZE) {
+                        flush(channel, buffer);
+                    }
+                    int offset = slot * SLOT_SIZE;
+                    buffer.put(MESSAGE_RECORD);
+                    buffer.putLong(ring.getLong(offset));
+                    buffer.putShort(ring.getShort(offset + 8));
+                    buffer.put(ring.get(offset + 10));
+                    buffer.put(ring.get(offset + 11));
+                    buffer.put(ring.get(offset + 12));
+                    buffer.put(ring.get(offset + 13));
+                    buffer.put(ring.get(offset + 14));
+                    next++;
+                }
+                tail = next;
+                flush(channel, buffer);
+
+                if (stopping && tail == head.get()) {
+                    break;
+                }
+                LockSupport.parkNanos(DRAIN_PARK_NANOS);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            capturing = false;
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private int writePorts(FileChannel channel, ByteBuffer buffer, int portsWritten) throws IOException {
+        List<String> names;
+        synchronized (ports) {
+            if (ports.size() == portsWritten) {
+                return portsWritten;
+            }
+            names = Lists.newArrayList(ports.subList(portsWritten, ports.size()));
+        }
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 5 + bytes.length) {
+                flush(channel, buffer);
+            }
+            buffer.put(PORT_RECORD);
+            buffer.putShort((short) portsWritten);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+            portsWritten++;
+        }
+        return portsWritten;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+}
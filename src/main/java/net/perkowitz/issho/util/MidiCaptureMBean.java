@@ -0,0 +1,15 @@
+package net.perkowitz.issho.util;
+
+/**
+ * JMX controls for a MidiCapture, so capture can be switched on and off while running.
+ */
+public interface MidiCaptureMBean {
+
+    public boolean isCapturing();
+    public String getFilename();
+    public long getCaptured();
+    public long getDropped();
+    public void start(String filename);
+    public void stop();
+
+}
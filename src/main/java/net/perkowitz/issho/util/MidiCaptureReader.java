@@ -0,0 +1,158 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Maps;
+import lombok.Getter;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static javax.sound.midi.ShortMessage.*;
+
+/**
+ * MidiCaptureReader reads the messages back out of a file written by MidiCapture.
+ */
+public class MidiCaptureReader implements Closeable {
+
+    @Getter private long startMillis;
+    @Getter private long startNanos;
+    @Getter private Map<Integer, String> ports = Maps.newHashMap();
+
+    private DataInputStream input;
+
+
+    public MidiCaptureReader(String filename) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+        byte[] magic = new byte[MidiCapture.MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(magic, MidiCapture.MAGIC)) {
+            throw new IOException("Not a midi capture file: " + filename);
+        }
+        startMillis = input.readLong();
+        startNanos = input.readLong();
+    }
+
+    /**
+     * next returns the next message in the file, or null at the end.
+     */
+    public Record next() throws IOException {
+        while (true) {
+            int type = input.read();
+            if (type < 0) {
+                return null;
+            }
+            try {
+                if (type == MidiCapture.PORT_RECORD) {
+                    int id = input.readShort();
+                    byte[] name = new byte[input.readShort()];
+                    input.readFully(name);
+                    ports.put(id, new String(name, StandardCharsets.UTF_8));
+
+                } else if (type == MidiCapture.MESSAGE_RECORD) {
+                    Record record = new Record();
+                    record.nanos = input.readLong();
+                    record.port = input.readShort();
+                    record.direction = input.readByte();
+                    record.length = input.readByte();
+                    record.status = input.readByte() & 0xFF;
+                    record.data1 = input.readByte() & 0xFF;
+                    record.data2 = input.readByte() & 0xFF;
+                    return record;
+
+                } else {
+                    throw new IOException("Bad record type: " + type);
+                }
+            } catch (EOFException e) {
+                // last record was cut off (e.g. file copied while capturing)
+                return null;
+            }
+        }
+    }
+
+    public String portName(int port) {
+        String name = ports.get(port);
+        return name == null ? Integer.toString(port) : name;
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+
+
+    /***** records ***************/
+
+    public static class Record {
+
+        @Getter private long nanos;
+        @Getter private int port;
+        @Getter private int direction;
+        @Getter private int length;
+        @Getter private int status;
+        @Getter private int data1;
+        @Getter private int data2;
+
+        public boolean isInbound() {
+            return direction == MidiCapture.IN;
+        }
+
+        public int getCommand() {
+            return status >= 0xF0 ? status : status & 0xF0;
+        }
+
+        public int getChannel() {
+            return status & 0x0F;
+        }
+
+        /**
+         * toShortMessage rebuilds the message, or returns null if it wasn't a short message.
+         */
+        public ShortMessage toShortMessage() {
+            if (length > 3 || status == SysexMessage.SYSTEM_EXCLUSIVE) {
+                return null;
+            }
+            try {
+                ShortMessage message = new ShortMessage();
+                if (length == 1) {
+                    message.setMessage(status);
+                } else {
+                    message.setMessage(status, data1, data2);
+                }
+                return message;
+            } catch (InvalidMidiDataException e) {
+                return null;
+            }
+        }
+
+        public String typeName() {
+            switch (getCommand()) {
+                case NOTE_ON:
+                    return data2 == 0 ? "NOTE OFF" : "NOTE ON";
+                case NOTE_OFF:
+                    return "NOTE OFF";
+                case CONTROL_CHANGE:
+                    return "CC";
+                case PROGRAM_CHANGE:
+                    return "PROGRAM";
+                case PITCH_BEND:
+                    return "BEND";
+                case TIMING_CLOCK:
+                    return "CLOCK";
+                case START:
+                    return "START";
+                case STOP:
+                    return "STOP";
+                case CONTINUE:
+                    return "CONTINUE";
+                case SONG_POSITION_POINTER:
+                    return "SPP";
+                default:
+                    return String.format("0x%02X", status);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+package net.perkowitz.issho.util;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static javax.sound.midi.ShortMessage.*;
+
+/**
+ * MidiCoalescer thins out continuous controller streams (knob CCs, aftertouch, pitch bend) on their
+ * way to an output. Incoming values only overwrite a slot per (channel, controller) -- or per
+ * (channel, note) for poly pressure, per channel for channel pressure and pitch bend -- and a flusher
+ * thread sends whatever slots changed once per output slot of 1/maxRate seconds. So each controller
+ * goes out at most maxRate times a second, intermediate values are dropped, and the last value
+ * received is always sent.
+ *
+ * With smoothing above 0, each flush only moves part of the way from the last value sent toward the
+ * latest one (at least one step), so big jumps are spread over a few slots but still end on the
+ * final value.
+ *
+ * As a Receiver, other messages and CCs whose order matters (data entry, NRPN/RPN, channel mode)
+ * are passed straight through. offer() doesn't allocate, so it can be called from midi input and
+ * clock threads.
+ */
+public class MidiCoalescer implements Receiver, MidiCoalescerMBean {
+
+    private static final int SLOTS = 128 * 128;
+    private static final int WORDS = SLOTS / 64;
+    private static final int NONE = -1;
+
+    private final Receiver outputReceiver;
+    private final String name;
+    private final double maxRate;
+    private final double smoothing;
+
+    private final AtomicIntegerArray values = new AtomicIntegerArray(SLOTS);
+    private final AtomicLongArray dirty = new AtomicLongArray(WORDS);
+    private final int[] lastSent = new int[SLOTS];
+    private ScheduledExecutorService executor = null;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong passed = new AtomicLong();
+
+
+    /**
+     * @param outputReceiver where the thinned messages go
+     * @param name used for the flusher thread
+     * @param maxRate maximum messages per second for each controller
+     * @param smoothing 0 to send the latest value each slot, up to 1 for more gradual moves
+     */
+    public MidiCoalescer(Receiver outputReceiver, String name, double maxRate, double smoothing) {
+        this.outputReceiver = outputReceiver;
+        this.name = name;
+        this.maxRate = maxRate;
+        this.smoothing = Math.max(0, Math.min(0.95, smoothing));
+        for (int i = 0; i < SLOTS; i++) {
+            lastSent[i] = NONE;
+        }
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "coalescer-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long periodMicros = Math.max(1, (long) (1000000 / maxRate));
+        executor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * offer records the latest value for a controller message.
+     *
+     * @return false if the message isn't one that gets coalesced, and should be sent as is
+     */
+    public boolean offer(int status, int data1, int data2) {
+
+        int command = status & 0xF0;
+        int key;
+        int value;
+        if (command == CONTROL_CHANGE && !passThrough(data1) || command == POLY_PRESSURE) {
+            key = ((status - 0x80) << 7) | data1;
+            value = data2;
+        } else if (command == CHANNEL_PRESSURE) {
+            key = (status - 0x80) << 7;
+            value = data1;
+        } else if (command == PITCH_BEND) {
+            key = (status - 0x80) << 7;
+            value = data1 | (data2 << 7);
+        } else {
+            return false;
+        }
+
+        received.incrementAndGet();
+        values.set(key, value);
+        if (!markDirty(key)) {
+            coalesced.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * flush sends one message for each controller that changed since the last flush. It runs on the
+     * flusher thread once started, and can be called directly (e.g. in tests).
+     */
+    public void flush() {
+        for (int word = 0; word < WORDS; word++) {
+            if (dirty.get(word) == 0) {
+                continue;
+            }
+            long bits = dirty.getAndSet(word, 0);
+            while (bits != 0) {
+                int key = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                int target = values.get(key);
+                int value = smooth(lastSent[key], target);
+                emit(key, value);
+                lastSent[key] = value;
+                if (value != target) {
+                    markDirty(key);
+                }
+            }
+        }
+    }
+
+
+    /***** MidiCoalescerMBean implementation ***************/
+
+    public double getMaxRate() {
+        return maxRate;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getPassedThrough() {
+        return passed.get();
+    }
+
+
+    /***** Receiver implementation ***************/
+
+    public void send(MidiMessage message, long timeStamp) {
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            if (offer(shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2())) {
+                return;
+            }
+        }
+        passed.incrementAndGet();
+        outputReceiver.send(message, timeStamp);
+    }
+
+    /**
+     * close stops the flusher after sending anything still pending.
+     */
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            executor = null;
+        }
+        flush();
+    }
+
+
+    /***** private implementation ***************/
+
+    /**
+     * markDirty flags the slot for the next flush.
+     *
+     * @return false if it was already flagged, i.e. an unsent value was overwritten
+     */
+    private boolean markDirty(int key) {
+        int word = key >>> 6;
+        long bit = 1L << (key & 63);
+        long bits;
+        do {
+            bits = dirty.get(word);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+        } while (!dirty.compareAndSet(word, bits, bits | bit));
+        return true;
+    }
+
+    private int smooth(int last, int target) {
+        if (smoothing == 0 || last == NONE || last == target) {
+            return target;
+        }
+        int step = (int) Math.round((target - last) * (1 - smoothing));
+        if (step == 0) {
+            step = target > last ? 1 : -1;
+        }
+        return last + step;
+    }
+
+    private void emit(int key, int value) {
+        int status = (key >>> 7) + 0x80;
+        int command = status & 0xF0;
+        try {
+            ShortMessage message;
+            if (command == CHANNEL_PRESSURE) {
+                message = new ShortMessage(status, value, 0);
+            } else if (command == PITCH_BEND) {
+                message = new ShortMessage(status, value & 0x7F, value >> 7);
+            } else {
+                message = new ShortMessage(status, key & 0x7F, value);
+            }
+            outputReceiver.send(message, -1);
+            sent.incrementAndGet();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * passThrough is true for the controllers that only make sense in sequence: data entry (6, 38),
+     * increment/decrement and NRPN/RPN selection (96-101) and channel mode messages (120-127).
+     */
+    private static boolean passThrough(int controller) {
+        return controller == 6 || controller == 38 || (controller >= 96 && controller <= 101) || controller >= 120;
+    }
+
+}
@@ -0,0 +1,16 @@
+package net.perkowitz.issho.util;
+
+/**
+ * JMX view of a MidiCoalescer: how many controller messages came in, how many were dropped in
+ * favor of a later value, and how many went out.
+ */
+public interface MidiCoalescerMBean {
+
+    public double getMaxRate();
+    public double getSmoothing();
+    public long getReceived();
+    public long getCoalesced();
+    public long getSent();
+    public long getPassedThrough();
+
+}
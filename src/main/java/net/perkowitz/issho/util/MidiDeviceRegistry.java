@@ -0,0 +1,303 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import lombok.Getter;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * MidiDeviceRegistry enumerates the system's MIDI devices once and indexes them by
+ * normalized (lowercased) name and direction, so repeated lookups don't rescan (and reopen) every
+ * device. Devices that look the same (e.g. two of the same controller) are all kept, the later ones
+ * with a numbered key, and a lookup finds the first.
+ * An optional background thread re-enumerates periodically and notifies listeners when
+ * devices disappear or (re)appear, so callers can reattach after a USB glitch.
+ */
+public class MidiDeviceRegistry {
+
+    private static MidiDeviceRegistry instance = null;
+
+    private volatile List<Entry> entries = Collections.emptyList();
+    private final List<Entry> virtualEntries = new CopyOnWriteArrayList<>();
+    private final Map<String, Entry> lookupCache = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Thread watcher = null;
+    private volatile boolean watching = false;
+
+
+    public static synchronized MidiDeviceRegistry getInstance() {
+        if (instance == null) {
+            instance = new MidiDeviceRegistry();
+            instance.refresh();
+        }
+        return instance;
+    }
+
+
+    /***** lookup ***************/
+
+    /**
+     * find returns the first device whose name or description contains all of the given names
+     * (case-insensitive) and whose receive/transmit capabilities match exactly.
+     *
+     * @param deviceNames
+     * @param receive
+     * @param transmit
+     * @return the MidiDevice, or null if none is currently present
+     */
+    public MidiDevice find(String[] deviceNames, boolean receive, boolean transmit) {
+        Entry entry = findEntry(deviceNames, receive, transmit);
+        return entry == null ? null : entry.getDevice();
+    }
+
+    public Entry findEntry(String[] deviceNames, boolean receive, boolean transmit) {
+
+        String[] normalized = new String[deviceNames.length];
+        for (int i = 0; i < deviceNames.length; i++) {
+            normalized[i] = normalize(deviceNames[i]);
+        }
+        String cacheKey = String.join("|", normalized) + direction(receive, transmit);
+
+        Entry entry = lookupCache.get(cacheKey);
+        if (entry != null) {
+            return entry;
+        }
+
+        for (Entry e : entries) {
+            if (e.matches(normalized, receive, transmit)) {
+                lookupCache.put(cacheKey, e);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * register adds an in-process device (such as a MidiLoopback end) that isn't known to MidiSystem,
+     * so it can be found by name like any other device. Registered devices are kept across refreshes.
+     *
+     * @param device
+     */
+    public synchronized void register(MidiDevice device) {
+        boolean canReceive = device.getMaxReceivers() != 0;
+        boolean canTransmit = device.getMaxTransmitters() != 0;
+        MidiDevice.Info info = device.getDeviceInfo();
+        String key = "virtual|" + info.getName() + "|" + info.getDescription() + direction(canReceive, canTransmit);
+        Entry entry = new Entry(key, info, device, canReceive, canTransmit);
+        virtualEntries.add(entry);
+
+        List<Entry> current = Lists.newArrayList(virtualEntries);
+        for (Entry e : entries) {
+            if (!virtualEntries.contains(e)) {
+                current.add(e);
+            }
+        }
+        entries = Collections.unmodifiableList(current);
+        lookupCache.clear();
+
+        for (Listener listener : listeners) {
+            listener.deviceAdded(entry);
+        }
+    }
+
+
+    /***** refresh & hot-plug ***************/
+
+    /**
+     * refresh re-enumerates the system devices, keeping existing entries (and their open
+     * MidiDevice objects) for devices that are still present, and notifies listeners of changes.
+     */
+    public synchronized void refresh() {
+
+        MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+
+        Map<String, Entry> previous = Maps.newHashMap();
+        for (Entry entry : entries) {
+            previous.put(entry.getKey(), entry);
+        }
+        Set<String> currentKeys = Sets.newHashSet();
+        for (Entry entry : virtualEntries) {
+            currentKeys.add(entry.getKey());
+        }
+
+        List<Entry> current = Lists.newArrayList(virtualEntries);
+        List<Entry> added = Lists.newArrayList();
+        for (MidiDevice.Info info : infos) {
+            try {
+                MidiDevice device = MidiSystem.getMidiDevice(info);
+                boolean canReceive = device.getMaxReceivers() != 0;
+                boolean canTransmit = device.getMaxTransmitters() != 0;
+                String baseKey = info.getName() + "|" + info.getDescription() + "|" + info.getVendor() + direction(canReceive, canTransmit);
+                String key = uniqueKey(baseKey, currentKeys);
+                Entry entry = previous.get(key);
+                if (entry == null) {
+                    if (!key.equals(baseKey)) {
+                        System.out.printf("MIDI device %s has the same name as another; keeping both\n", info.getName());
+                    }
+                    entry = new Entry(key, info, device, canReceive, canTransmit);
+                    added.add(entry);
+                }
+                current.add(entry);
+            } catch (MidiUnavailableException e) {
+                System.out.printf("MIDI not available: %s\n", e);
+            }
+        }
+
+        List<Entry> removed = Lists.newArrayList();
+        for (Entry entry : entries) {
+            if (!currentKeys.contains(entry.getKey())) {
+                removed.add(entry);
+            }
+        }
+
+        entries = Collections.unmodifiableList(current);
+        if (added.size() > 0 || removed.size() > 0) {
+            lookupCache.clear();
+        }
+
+        for (Entry entry : removed) {
+            for (Listener listener : listeners) {
+                listener.deviceRemoved(entry);
+            }
+        }
+        for (Entry entry : added) {
+            for (Listener listener : listeners) {
+                listener.deviceAdded(entry);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * startWatching refreshes the registry every intervalMillis on a daemon thread.
+     *
+     * @param intervalMillis
+     */
+    public synchronized void startWatching(final long intervalMillis) {
+        if (watcher != null) {
+            return;
+        }
+        watching = true;
+        watcher = new Thread(new Runnable() {
+            public void run() {
+                while (watching) {
+                    try {
+                        Thread.sleep(intervalMillis);
+                        refresh();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "midi-device-registry");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public synchronized void stopWatching() {
+        watching = false;
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+
+    /***** private implementation ***************/
+
+    private static String normalize(String name) {
+        return name.toLowerCase();
+    }
+
+    /**
+     * uniqueKey adds a device's key to the keys seen so far, numbering it if it's already there.
+     */
+    static String uniqueKey(String baseKey, Set<String> keys) {
+        String key = baseKey;
+        for (int n = 2; !keys.add(key); n++) {
+            key = baseKey + "#" + n;
+        }
+        return key;
+    }
+
+    private static String direction(boolean receive, boolean transmit) {
+        return (receive ? ":r" : ":-") + (transmit ? "t" : "-");
+    }
+
+
+    /***** entries & listeners ***************/
+
+    public static class Entry {
+
+        @Getter private final String key;
+        @Getter private final MidiDevice.Info info;
+        @Getter private final MidiDevice device;
+        @Getter private final boolean canReceive;
+        @Getter private final boolean canTransmit;
+        private final String normalizedName;
+        private final String normalizedDescription;
+
+        public Entry(String key, MidiDevice.Info info, MidiDevice device, boolean canReceive, boolean canTransmit) {
+            this.key = key;
+            this.info = info;
+            this.device = device;
+            this.canReceive = canReceive;
+            this.canTransmit = canTransmit;
+            this.normalizedName = normalize(info.getName());
+            this.normalizedDescription = normalize(info.getDescription());
+        }
+
+        public boolean matches(String[] normalizedNames, boolean receive, boolean transmit) {
+            if (receive != canReceive || transmit != canTransmit) {
+                return false;
+            }
+            for (String name : normalizedNames) {
+                if (!normalizedName.contains(name) && !normalizedDescription.contains(name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean matches(List<String> names, boolean receive, boolean transmit) {
+            String[] normalized = new String[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                normalized[i] = normalize(names.get(i));
+            }
+            return matches(normalized, receive, transmit);
+        }
+
+        public String toString() {
+            return String.format("%s (%s)%s", info.getName(), info.getDescription(), direction(canReceive, canTransmit));
+        }
+    }
+
+    public interface Listener {
+        void deviceAdded(Entry entry);
+        void deviceRemoved(Entry entry);
+    }
+
+}
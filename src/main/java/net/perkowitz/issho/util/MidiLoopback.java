@@ -0,0 +1,166 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Lists;
+import lombok.Getter;
+
+import javax.sound.midi.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MidiLoopback is an in-process virtual midi cable, like an IAC or ALSA virtual port. Messages sent to
+ * the receiving end (getOutputDevice, which a program writes to) come out of every transmitter of the
+ * transmitting end (getInputDevice, which a program reads from), on the sending thread.
+ *
+ * Both ends are MidiDevices with the loopback's name, so they can be registered with the
+ * MidiDeviceRegistry and found by name from the settings like hardware ports.
+ */
+public class MidiLoopback {
+
+    @Getter private final String name;
+    @Getter private final LoopbackDevice inputDevice;
+    @Getter private final LoopbackDevice outputDevice;
+
+    private final List<LoopbackTransmitter> transmitters = new CopyOnWriteArrayList<>();
+    private final LongAdder messageCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+
+
+    public MidiLoopback(String name) {
+        this.name = name;
+        this.inputDevice = new LoopbackDevice(false);
+        this.outputDevice = new LoopbackDevice(true);
+    }
+
+    /**
+     * getReceiver returns a receiver that sends into the loopback.
+     */
+    public Receiver getReceiver() {
+        return outputDevice.getReceiver();
+    }
+
+    /**
+     * getTransmitter returns a new transmitter that delivers everything sent into the loopback.
+     */
+    public Transmitter getTransmitter() {
+        return inputDevice.getTransmitter();
+    }
+
+    public long getMessageCount() {
+        return messageCount.sum();
+    }
+
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    public void resetCounters() {
+        messageCount.reset();
+        byteCount.reset();
+    }
+
+
+    /***** private implementation ***************/
+
+    private void deliver(MidiMessage message, long timeStamp) {
+        messageCount.increment();
+        byteCount.add(message.getLength());
+        for (LoopbackTransmitter transmitter : transmitters) {
+            Receiver receiver = transmitter.receiver;
+            if (receiver != null) {
+                receiver.send(message, timeStamp);
+            }
+        }
+    }
+
+
+    /***** loopback ends ***************/
+
+    public class LoopbackDevice implements MidiDevice {
+
+        private final boolean receives;
+        private final MidiDevice.Info info;
+        private volatile boolean open = false;
+
+        private LoopbackDevice(boolean receives) {
+            this.receives = receives;
+            this.info = new MidiDevice.Info(name, "issho", "loopback " + name, "1.0") {};
+        }
+
+        public MidiDevice.Info getDeviceInfo() {
+            return info;
+        }
+
+        public void open() {
+            open = true;
+        }
+
+        public void close() {
+            open = false;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public long getMicrosecondPosition() {
+            return System.nanoTime() / 1000;
+        }
+
+        public int getMaxReceivers() {
+            return receives ? -1 : 0;
+        }
+
+        public int getMaxTransmitters() {
+            return receives ? 0 : -1;
+        }
+
+        public Receiver getReceiver() {
+            if (!receives) {
+                throw new IllegalStateException("Loopback input end has no receivers");
+            }
+            return new Receiver() {
+                public void send(MidiMessage message, long timeStamp) {
+                    deliver(message, timeStamp);
+                }
+                public void close() {}
+            };
+        }
+
+        public List<Receiver> getReceivers() {
+            return Lists.newArrayList();
+        }
+
+        public Transmitter getTransmitter() {
+            if (receives) {
+                throw new IllegalStateException("Loopback output end has no transmitters");
+            }
+            LoopbackTransmitter transmitter = new LoopbackTransmitter();
+            transmitters.add(transmitter);
+            return transmitter;
+        }
+
+        public List<Transmitter> getTransmitters() {
+            return Lists.<Transmitter>newArrayList(transmitters);
+        }
+    }
+
+    private class LoopbackTransmitter implements Transmitter {
+
+        private volatile Receiver receiver = null;
+
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        public Receiver getReceiver() {
+            return receiver;
+        }
+
+        public void close() {
+            transmitters.remove(this);
+        }
+    }
+
+}
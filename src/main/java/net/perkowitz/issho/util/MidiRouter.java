@@ -0,0 +1,170 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import lombok.Getter;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MidiRouter is the routing matrix between the modules and the named midi output ports. Each module
+ * (or anything else that sends midi) gets its own Receiver from route(), built from its settings:
+ *   "outputs": [ "synth1", "synth2" ]            ports for all of its channels
+ *   "channelOutputs": { "9": [ "drums" ] }       ports for particular channels (0-15)
+ * Channels that aren't routed, and senders with no routing settings, go to every port, as before.
+ *
+ * Routes are precomputed into per-channel arrays of ports, so sending is an array lookup and a loop
+ * over just the ports that want the message. With threaded ports, each port is a PortWriter with its
+ * own writer thread, so the ports drain in parallel.
+ */
+public class MidiRouter {
+
+    private static final int CHANNELS = 16;
+
+    private final boolean threaded;
+    @Getter private final Map<String, Receiver> ports = Maps.newLinkedHashMap();
+    private boolean drained = false;
+
+
+    /**
+     * @param threaded whether each port gets its own writer thread
+     */
+    public MidiRouter(boolean threaded) {
+        this.threaded = threaded;
+    }
+
+    /**
+     * addPort adds a named output port.
+     *
+     * @return the port, which is a PortWriter for the receiver if threaded
+     */
+    public Receiver addPort(String name, Receiver receiver) {
+        Receiver port = receiver;
+        if (threaded) {
+            PortWriter writer = new PortWriter(receiver, name);
+            writer.retain();
+            port = writer;
+        }
+        ports.put(name, port);
+        return port;
+    }
+
+    /**
+     * addSharedPort adds a port returned by addPort on this or another router, for routers that send
+     * to the same device. A shared writer keeps running until every router using it has drained.
+     */
+    public void addSharedPort(String name, Receiver port) {
+        if (port instanceof PortWriter && !ports.containsValue(port)) {
+            ((PortWriter) port).retain();
+        }
+        ports.put(name, port);
+    }
+
+    /**
+     * route returns a Receiver that sends to the ports named in the config's "outputs" and
+     * "channelOutputs", or to all ports if config is null or names none.
+     */
+    public Receiver route(Map<Object,Object> config) {
+
+        Receiver[] all = ports.values().toArray(new Receiver[0]);
+        Receiver[] defaults = all;
+        if (config != null && config.get("outputs") != null) {
+            defaults = find((List<String>) config.get("outputs"), all);
+        }
+
+        Receiver[][] channels = new Receiver[CHANNELS][];
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            channels[channel] = defaults;
+        }
+        if (config != null && config.get("channelOutputs") != null) {
+            Map<Object,Object> channelOutputs = (Map<Object,Object>) config.get("channelOutputs");
+            for (Map.Entry<Object,Object> entry : channelOutputs.entrySet()) {
+                int channel = Integer.parseInt(entry.getKey().toString());
+                if (channel >= 0 && channel < CHANNELS) {
+                    channels[channel] = find((List<String>) entry.getValue(), defaults);
+                }
+            }
+        }
+
+        // system messages go to every port this sender uses
+        List<Receiver> used = Lists.newArrayList();
+        for (Receiver[] receivers : channels) {
+            for (Receiver receiver : receivers) {
+                if (!used.contains(receiver)) {
+                    used.add(receiver);
+                }
+            }
+        }
+
+        return new Route(channels, used.toArray(new Receiver[0]));
+    }
+
+    /**
+     * drain releases this router's port writers; each one stops, after sending everything queued, when
+     * no other router is still using it.
+     */
+    public synchronized void drain() {
+        if (drained) {
+            return;
+        }
+        drained = true;
+        for (Receiver receiver : Sets.newLinkedHashSet(ports.values())) {
+            if (receiver instanceof PortWriter) {
+                ((PortWriter) receiver).release();
+            }
+        }
+    }
+
+
+    /***** private implementation ***************/
+
+    private Receiver[] find(Collection<String> names, Receiver[] fallback) {
+        List<Receiver> receivers = Lists.newArrayList();
+        for (String name : names) {
+            Receiver receiver = ports.get(name);
+            if (receiver == null) {
+                System.out.printf("No midi output named %s; outputs are %s\n", name, ports.keySet());
+            } else if (!receivers.contains(receiver)) {
+                receivers.add(receiver);
+            }
+        }
+        if (receivers.size() == 0) {
+            return fallback;
+        }
+        return receivers.toArray(new Receiver[0]);
+    }
+
+    private static class Route implements Receiver {
+
+        private final Receiver[][] channels;
+        private final Receiver[] system;
+
+        public Route(Receiver[][] channels, Receiver[] system) {
+            this.channels = channels;
+            this.system = system;
+        }
+
+        public void send(MidiMessage message, long timeStamp) {
+            Receiver[] receivers = system;
+            if (message instanceof ShortMessage) {
+                int status = ((ShortMessage) message).getStatus();
+                if (status < 0xF0) {
+                    receivers = channels[status & 0x0F];
+                }
+            }
+            for (int i = 0; i < receivers.length; i++) {
+                receivers[i].send(message, timeStamp);
+            }
+        }
+
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package net.perkowitz.issho.util;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static javax.sound.midi.ShortMessage.*;
+
+/**
+ * NoteMeter is a PortMeter for an instrument output that also tracks which notes are currently held
+ * (note on without a matching note off), so a stuck or runaway port shows up as a climbing held-note
+ * count. Grid devices use notes for their LEDs, so their ports use a plain PortMeter.
+ */
+public class NoteMeter extends PortMeter implements NoteMeterMBean {
+
+    private static final int ALL_SOUND_OFF_CC = 120;
+    private static final int ALL_NOTES_OFF_CC = 123;
+
+    private final AtomicLongArray heldNotes = new AtomicLongArray(16 * 128 / 64);
+
+
+    @Override
+    public void record(MidiMessage message) {
+        super.record(message);
+
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            int command = shortMessage.getCommand();
+            if (command == NOTE_ON && shortMessage.getData2() > 0) {
+                setHeld(shortMessage.getChannel(), shortMessage.getData1(), true);
+            } else if (command == NOTE_ON || command == NOTE_OFF) {
+                setHeld(shortMessage.getChannel(), shortMessage.getData1(), false);
+            } else if (command == CONTROL_CHANGE
+                    && (shortMessage.getData1() == ALL_SOUND_OFF_CC || shortMessage.getData1() == ALL_NOTES_OFF_CC)) {
+                heldNotes.set(shortMessage.getChannel() * 2, 0);
+                heldNotes.set(shortMessage.getChannel() * 2 + 1, 0);
+            }
+        }
+    }
+
+
+    /***** NoteMeterMBean implementation ***************/
+
+    public int getHeldNotes() {
+        int count = 0;
+        for (int i = 0; i < heldNotes.length(); i++) {
+            count += Long.bitCount(heldNotes.get(i));
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        for (int i = 0; i < heldNotes.length(); i++) {
+            heldNotes.set(i, 0);
+        }
+    }
+
+
+    /***** private implementation ***************/
+
+    private void setHeld(int channel, int note, boolean held) {
+        int bit = channel * 128 + note;
+        int index = bit >>> 6;
+        long mask = 1L << (bit & 63);
+        long current;
+        do {
+            current = heldNotes.get(index);
+        } while (!heldNotes.compareAndSet(index, current, held ? current | mask : current & ~mask));
+    }
+
+}
@@ -0,0 +1,10 @@
+package net.perkowitz.issho.util;
+
+/**
+ * JMX view of a NoteMeter: a PortMeter plus the notes currently held on an instrument output.
+ */
+public interface NoteMeterMBean extends PortMeterMBean {
+
+    public int getHeldNotes();
+
+}
@@ -0,0 +1,119 @@
+package net.perkowitz.issho.util;
+
+import javax.sound.midi.MidiMessage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PortMeter counts the messages and bytes going through one direction of a midi port (or grid device).
+ * For inputs it also keeps the latency from the message's device timestamp to its handler, and how
+ * long the handler took. Instrument outputs use a NoteMeter, which also tracks held notes.
+ *
+ * Recording uses striped counters and fixed-bucket histograms, so it doesn't allocate.
+ */
+public class PortMeter implements PortMeterMBean {
+
+    private static final long SAMPLE_NANOS = 1000000000L;
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final Histogram latency = new Histogram();
+    private final Histogram handlerTime = new Histogram();
+
+    private long sampleNanos = System.nanoTime();
+    private long sampleMessages = 0;
+    private long sampleBytes = 0;
+    private double messagesPerSecond = 0;
+    private double bytesPerSecond = 0;
+
+
+    public void record(MidiMessage message) {
+        messages.increment();
+        bytes.add(message.getLength());
+    }
+
+    /**
+     * record counts a message that isn't available as a MidiMessage (e.g. one sent by a virtual device).
+     */
+    public void record(int length) {
+        messages.increment();
+        bytes.add(length);
+    }
+
+    public void recordLatency(long micros) {
+        latency.record(micros);
+    }
+
+    public void recordHandlerTime(long micros) {
+        handlerTime.record(micros);
+    }
+
+
+    /***** PortMeterMBean implementation ***************/
+
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public synchronized double getMessagesPerSecond() {
+        sample();
+        return messagesPerSecond;
+    }
+
+    public synchronized double getBytesPerSecond() {
+        sample();
+        return bytesPerSecond;
+    }
+
+    public double getLatencyMeanMicros() {
+        return latency.getMean();
+    }
+
+    public long getLatencyP99Micros() {
+        return latency.percentile(99);
+    }
+
+    public long getLatencyMaxMicros() {
+        return latency.getMax();
+    }
+
+    public long getHandlerP99Micros() {
+        return handlerTime.percentile(99);
+    }
+
+    public long getHandlerMaxMicros() {
+        return handlerTime.getMax();
+    }
+
+    public synchronized void reset() {
+        messages.reset();
+        bytes.reset();
+        latency.reset();
+        handlerTime.reset();
+        sampleNanos = System.nanoTime();
+        sampleMessages = sampleBytes = 0;
+        messagesPerSecond = bytesPerSecond = 0;
+    }
+
+
+    /***** private implementation ***************/
+
+    private void sample() {
+        long now = System.nanoTime();
+        long elapsed = now - sampleNanos;
+        if (elapsed < SAMPLE_NANOS) {
+            return;
+        }
+        long currentMessages = messages.sum();
+        long currentBytes = bytes.sum();
+        messagesPerSecond = (currentMessages - sampleMessages) * 1e9 / elapsed;
+        bytesPerSecond = (currentBytes - sampleBytes) * 1e9 / elapsed;
+        sampleNanos = now;
+        sampleMessages = currentMessages;
+        sampleBytes = currentBytes;
+    }
+
+}
@@ -0,0 +1,19 @@
+package net.perkowitz.issho.util;
+
+/**
+ * JMX view of a PortMeter. Rates are averaged over the last sample window (about a second).
+ */
+public interface PortMeterMBean {
+
+    public long getMessages();
+    public long getBytes();
+    public double getMessagesPerSecond();
+    public double getBytesPerSecond();
+    public double getLatencyMeanMicros();
+    public long getLatencyP99Micros();
+    public long getLatencyMaxMicros();
+    public long getHandlerP99Micros();
+    public long getHandlerMaxMicros();
+    public void reset();
+
+}
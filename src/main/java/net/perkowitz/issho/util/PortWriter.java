@@ -0,0 +1,224 @@
+package net.perkowitz.issho.util;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PortWriter gives a midi output port its own writer thread. Senders put each message in a
+ * preallocated ring and return; the writer sends them to the port in order. So a slow interface only
+ * holds up its own messages, and several ports can drain at the same time instead of one after another
+ * on the clock thread.
+ *
+ * If the writer falls a full ring behind, the sender waits (and is counted) until a slot frees
+ * rather than dropping the message or sending it around the ring, since a lost note off is worse than
+ * a late one and a note off sent ahead of its note on is as bad as a lost one.
+ *
+ * Routers that send to the same device share its writer: each one retains it, and the writer stops
+ * when the last of them releases it.
+ */
+public class PortWriter implements Receiver, PortWriterMBean {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final long IDLE_PARK_NANOS = 10000000;
+    private static final long FULL_PARK_NANOS = 50000;
+
+    private final Receiver receiver;
+    private final String name;
+    private final int capacity;
+    private final int mask;
+    private final MidiMessage[] messages;
+    private final long[] timeStamps;
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong(0);
+    private volatile long tail = 0;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private volatile long maxQueued = 0;
+
+    private volatile boolean running = false;
+    private volatile boolean waiting = false;
+    private Thread writer = null;
+    private int users = 0;
+
+
+    public PortWriter(Receiver receiver, String name) {
+        this(receiver, name, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param receiver the port
+     * @param name used for the writer thread
+     * @param capacity number of messages the ring holds; rounded up to a power of two
+     */
+    public PortWriter(Receiver receiver, String name, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.receiver = receiver;
+        this.name = name;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.messages = new MidiMessage[size];
+        this.timeStamps = new long[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        running = true;
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "midi-writer-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * retain adds a user of the port, starting the writer if it isn't running.
+     */
+    public synchronized void retain() {
+        users++;
+        start();
+    }
+
+    /**
+     * release removes a user of the port; when it was the last, the writer stops once it has sent
+     * everything queued.
+     */
+    public synchronized void release() {
+        if (users > 0 && --users == 0) {
+            stop();
+        }
+    }
+
+    /**
+     * stop waits for the writer to send everything queued, then ends it.
+     */
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+
+    /***** PortWriterMBean implementation ***************/
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getOverflowed() {
+        return overflowed.sum();
+    }
+
+    public long getQueued() {
+        return head.get() - tail;
+    }
+
+    public long getMaxQueued() {
+        return maxQueued;
+    }
+
+
+    /***** Receiver implementation ***************/
+
+    public void send(MidiMessage message, long timeStamp) {
+
+        if (!running) {
+            receiver.send(message, timeStamp);
+            return;
+        }
+
+        long sequence;
+        boolean full = false;
+        while (true) {
+            sequence = head.get();
+            if (sequence - tail >= capacity) {
+                if (!full) {
+                    full = true;
+                    overflowed.increment();
+                    LockSupport.unpark(writer);
+                }
+                if (!running) {
+                    // stopped while waiting; the writer sends everything queued before it ends
+                    receiver.send(message, timeStamp);
+                    return;
+                }
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            } else if (head.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int slot = (int) (sequence & mask);
+        messages[slot] = message;
+        timeStamps[slot] = timeStamp;
+        published.set(slot, sequence);
+        if (waiting) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public void close() {
+        stop();
+        receiver.close();
+    }
+
+
+    /***** writer thread ***************/
+
+    private void write() {
+        long next = tail;
+        while (true) {
+            boolean stopping = !running;
+
+            int slot = (int) (next & mask);
+            while (published.get(slot) == next) {
+                MidiMessage message = messages[slot];
+                long timeStamp = timeStamps[slot];
+                messages[slot] = null;
+                tail = ++next;
+                try {
+                    receiver.send(message, timeStamp);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                written.increment();
+                slot = (int) (next & mask);
+            }
+
+            long queued = head.get() - next;
+            if (queued > maxQueued) {
+                maxQueued = queued;
+            }
+            if (stopping && queued == 0) {
+                break;
+            }
+
+            waiting = true;
+            if (published.get(slot) != next && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            waiting = false;
+        }
+    }
+
+}
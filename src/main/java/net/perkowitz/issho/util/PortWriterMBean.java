@@ -0,0 +1,13 @@
+package net.perkowitz.issho.util;
+
+/**
+ * JMX view of a PortWriter's queue.
+ */
+public interface PortWriterMBean {
+
+    public long getWritten();
+    public long getOverflowed();
+    public long getQueued();
+    public long getMaxQueued();
+
+}
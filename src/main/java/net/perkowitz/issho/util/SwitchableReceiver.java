@@ -0,0 +1,53 @@
+package net.perkowitz.issho.util;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+
+/**
+ * SwitchableReceiver forwards to a delegate Receiver that can be swapped out at runtime,
+ * so a device output can be reattached after it disappears without rewiring everything that sends to it.
+ * While detached (delegate is null), messages are dropped.
+ */
+public class SwitchableReceiver implements Receiver {
+
+    private volatile Receiver receiver;
+
+    public SwitchableReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    public Receiver getReceiver() {
+        return receiver;
+    }
+
+    public boolean isAttached() {
+        return receiver != null;
+    }
+
+    @Override
+    public void send(MidiMessage message, long timeStamp) {
+        Receiver r = receiver;
+        if (r != null) {
+            try {
+                r.send(message, timeStamp);
+            } catch (IllegalStateException e) {
+                // device was closed underneath us; drop until it is reattached
+                if (receiver == r) {
+                    receiver = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        Receiver r = receiver;
+        if (r != null) {
+            r.close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package net.perkowitz.issho.util;
+
+/**
+ * TimingWheel is a hashed timing wheel for midi messages that should go out some number of ticks
+ * from now (note offs for gate lengths, ratchets, delayed CCs). The owner calls advance() once per
+ * tick (e.g. each clock pulse) and the Handler gets every message that has come due.
+ *
+ * Scheduling and cancelling are O(1): each entry hangs in a doubly-linked list on the slot for its
+ * tick, with a count of the trips around the wheel it still has to wait. Entries come from a
+ * preallocated pool, so nothing is allocated after construction; schedule() returns NONE when the
+ * pool is used up.
+ *
+ * Not thread-safe; callers that share one between threads synchronize on it.
+ */
+public class TimingWheel {
+
+    public static final int NONE = -1;
+
+    private static final int INDEX_BITS = 16;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = 0x7FFF;
+
+    /**
+     * Handler gets each message as it comes due. It may schedule more, but not cancel.
+     */
+    public interface Handler {
+        public void fire(int status, int data1, int data2);
+    }
+
+    private final Handler handler;
+    private final int slotMask;
+    private final int[] heads;
+
+    // the entry pool, one array per field
+    private final int[] next;
+    private final int[] prev;
+    private final int[] slots;
+    private final int[] rounds;
+    private final int[] messages;
+    private final int[] generations;
+    private int free;
+    private int size = 0;
+
+    private long now = 0;
+
+
+    /**
+     * @param slotCount number of ticks in one turn of the wheel; rounded up to a power of two
+     * @param capacity most entries that can be scheduled at once (at most 65536)
+     * @param handler gets the messages as they come due
+     */
+    public TimingWheel(int slotCount, int capacity, Handler handler) {
+        int count = Integer.highestOneBit(Math.max(2, slotCount - 1)) << 1;
+        capacity = Math.min(capacity, INDEX_MASK + 1);
+        this.handler = handler;
+        this.slotMask = count - 1;
+        this.heads = new int[count];
+        for (int i = 0; i < count; i++) {
+            heads[i] = NONE;
+        }
+
+        next = new int[capacity];
+        prev = new int[capacity];
+        slots = new int[capacity];
+        rounds = new int[capacity];
+        messages = new int[capacity];
+        generations = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NONE;
+            slots[i] = NONE;
+        }
+        free = 0;
+    }
+
+    /**
+     * schedule queues a message to fire after the given number of ticks (at least one).
+     *
+     * @return a handle for cancel(), or NONE if the wheel is full
+     */
+    public int schedule(int delay, int status, int data1, int data2) {
+        if (free == NONE) {
+            return NONE;
+        }
+        delay = Math.max(1, delay);
+
+        int index = free;
+        free = next[index];
+
+        int slot = (int) ((now + delay) & slotMask);
+        slots[index] = slot;
+        rounds[index] = (delay - 1) / heads.length;
+        messages[index] = (status & 0xFF) << 16 | (data1 & 0x7F) << 8 | (data2 & 0x7F);
+        link(index, slot);
+        size++;
+
+        return generations[index] << INDEX_BITS | index;
+    }
+
+    /**
+     * cancel removes a scheduled message.
+     *
+     * @return false if it already fired or was cancelled
+     */
+    public boolean cancel(int handle) {
+        if (handle == NONE) {
+            return false;
+        }
+        int index = handle & INDEX_MASK;
+        if (index >= slots.length || slots[index] == NONE || generations[index] != handle >>> INDEX_BITS) {
+            return false;
+        }
+        unlink(index);
+        release(index);
+        return true;
+    }
+
+    /**
+     * advance moves the wheel one tick and fires whatever is due.
+     */
+    public void advance() {
+        now++;
+        int slot = (int) (now & slotMask);
+        int index = heads[slot];
+        while (index != NONE) {
+            // the handler may schedule more, which go on the front of a list, so get the next one first
+            int following = next[index];
+            if (rounds[index] == 0) {
+                int message = messages[index];
+                unlink(index);
+                release(index);
+                handler.fire(message >>> 16, (message >>> 8) & 0x7F, message & 0x7F);
+            } else {
+                rounds[index]--;
+            }
+            index = following;
+        }
+    }
+
+    /**
+     * fireAll fires everything still scheduled, in the order it would have come due.
+     */
+    public void fireAll() {
+        while (size > 0) {
+            advance();
+        }
+    }
+
+    /**
+     * clear drops everything scheduled without firing it.
+     */
+    public void clear() {
+        for (int slot = 0; slot < heads.length; slot++) {
+            while (heads[slot] != NONE) {
+                int index = heads[slot];
+                unlink(index);
+                release(index);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTick() {
+        return now;
+    }
+
+
+    /***** private implementation ***************/
+
+    private void link(int index, int slot) {
+        int head = heads[slot];
+        prev[index] = NONE;
+        next[index] = head;
+        if (head != NONE) {
+            prev[head] = index;
+        }
+        heads[slot] = index;
+    }
+
+    private void unlink(int index) {
+        int slot = slots[index];
+        if (prev[index] == NONE) {
+            heads[slot] = next[index];
+        } else {
+            next[prev[index]] = next[index];
+        }
+        if (next[index] != NONE) {
+            prev[next[index]] = prev[index];
+        }
+    }
+
+    private void release(int index) {
+        slots[index] = NONE;
+        generations[index] = (generations[index] + 1) & GENERATION_MASK;
+        next[index] = free;
+        free = index;
+        size--;
+    }
+
+}
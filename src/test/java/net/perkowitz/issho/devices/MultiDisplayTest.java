@@ -0,0 +1,36 @@
+package net.perkowitz.issho.devices;
+
+import net.perkowitz.issho.devices.launchpadpro.Color;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MultiDisplayTest {
+
+    @Test
+    public void tallyCountsOnlyItsOwnThreadsPads() throws Exception {
+        final MultiDisplay display = new MultiDisplay(new GridDisplay[] { mock(GridDisplay.class) });
+
+        MultiDisplay.Tally tally = MultiDisplay.startTally();
+        try {
+            display.setPad(GridPad.at(0, 0), Color.BRIGHT_RED);
+            display.setButton(GridButton.at(GridButton.Side.Left, 0), Color.BRIGHT_RED);
+            Thread other = new Thread(new Runnable() {
+                public void run() {
+                    display.setPad(GridPad.at(1, 1), Color.BRIGHT_RED);
+                }
+            });
+            other.start();
+            other.join();
+        } finally {
+            MultiDisplay.stopTally();
+        }
+        display.setPad(GridPad.at(2, 2), Color.BRIGHT_RED);
+
+        assertEquals(1, tally.getPads());
+        assertTrue(tally.getNanos() > 0);
+        assertEquals(3, display.getPadCount());
+    }
+
+}
@@ -0,0 +1,80 @@
+package net.perkowitz.issho.devices.launchpad;
+
+import com.google.common.collect.Lists;
+import net.perkowitz.issho.devices.GridButton;
+import net.perkowitz.issho.devices.GridPad;
+import net.perkowitz.issho.devices.launchpadpro.Color;
+import org.junit.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LaunchpadTest {
+
+    @Test
+    public void sendsDirectlyWithoutFrames() throws Exception {
+        Recorder recorder = new Recorder();
+        Launchpad launchpad = new Launchpad(recorder, null);
+        launchpad.setPad(GridPad.at(1, 2), Color.fromIndex(0x30));
+        launchpad.flush();
+        assertEquals(Lists.newArrayList("90 33 48"), recorder.messages);
+    }
+
+    @Test
+    public void drawsFramesIntoHiddenBuffer() throws Exception {
+        Recorder recorder = new Recorder();
+        Launchpad launchpad = new Launchpad(recorder, null);
+        // slow enough that the frame thread won't flush during the test
+        launchpad.startFrames(0.001);
+
+        // reset, show buffer 0 and draw into 1, then the whole frame by rapid update, then flip with copy
+        launchpad.initialize();
+        assertEquals(44, recorder.messages.size());
+        assertEquals(Lists.newArrayList("b0 0 0", "b0 0 36", "b0 1 0", "92 0 0"), recorder.messages.subList(0, 4));
+        assertEquals("b0 0 49", recorder.messages.get(43));
+
+        // a small change is sent as is, then the buffers flip back
+        recorder.messages.clear();
+        launchpad.setPad(GridPad.at(1, 2), Color.fromIndex(0x3F));
+        launchpad.setButton(GridButton.at(GridButton.Side.Top, 0), Color.fromIndex(0x03));
+        launchpad.setPad(GridPad.at(0, 0), Color.OFF);
+        launchpad.flush();
+        assertEquals(Lists.newArrayList("90 33 51", "b0 104 3", "b0 0 52"), recorder.messages);
+
+        // nothing changed, nothing sent
+        recorder.messages.clear();
+        launchpad.flush();
+        assertTrue(recorder.messages.isEmpty());
+
+        // a full-screen redraw takes half as many messages
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                launchpad.setPad(GridPad.at(x, y), Color.fromIndex(0x13));
+            }
+        }
+        launchpad.flush();
+        assertEquals(42, recorder.messages.size());
+        assertEquals("92 19 19", recorder.messages.get(1));
+        assertEquals(3, launchpad.getFramesSent());
+        launchpad.close();
+    }
+
+
+    private static class Recorder implements Receiver {
+
+        private final List<String> messages = Lists.newArrayList();
+
+        public synchronized void send(MidiMessage message, long timeStamp) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            messages.add(String.format("%x %d %d", shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2()));
+        }
+
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package net.perkowitz.issho.devices.launchpadpro;
+
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ColorTest {
+
+    @Test
+    public void sharesIndexedColors() throws Exception {
+        assertSame(Color.BRIGHT_YELLOW, Color.fromIndex(13));
+        assertSame(Color.fromIndex(100), Color.fromIndex(100));
+        assertEquals(200, Color.fromIndex(200).getIndex());
+    }
+
+    @Test
+    public void compilesPalettes() throws Exception {
+        Map<Integer, Color> palette = Maps.newHashMap();
+        palette.put(0, Color.OFF);
+        palette.put(5, Color.BRIGHT_RED);
+        Color[] colors = Color.compile(palette);
+        assertEquals(6, colors.length);
+        assertSame(Color.OFF, colors[0]);
+        assertSame(Color.BRIGHT_RED, colors[5]);
+        assertNull(colors[3]);
+    }
+
+}
@@ -13,8 +13,10 @@ import javax.sound.midi.MidiMessage;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
 
+import static javax.sound.midi.ShortMessage.CHANNEL_PRESSURE;
 import static javax.sound.midi.ShortMessage.CONTROL_CHANGE;
 import static javax.sound.midi.ShortMessage.NOTE_ON;
+import static javax.sound.midi.ShortMessage.POLY_PRESSURE;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -140,6 +142,19 @@ public class LaunchpadProTest {
         }
     }
 
+    @Test
+    public void padPressure() throws Exception {
+        ShortMessage message = new ShortMessage();
+        message.setMessage(POLY_PRESSURE, 0, pad2note(3, 5), 64);
+        launchpadPro.send(message, -1);
+        verify(listener).onPadPressure(eq(GridPad.at(3, 5)), eq(64));
+
+        // channel pressure isn't from any one pad
+        message.setMessage(CHANNEL_PRESSURE, 0, 90, 0);
+        launchpadPro.send(message, -1);
+        verify(listener).onPadPressure(isNull(), eq(90));
+    }
+
 
     @Test
     public void buttonPressed() throws Exception {
@@ -0,0 +1,74 @@
+package net.perkowitz.issho.devices.virtual;
+
+import com.google.common.collect.Sets;
+import net.perkowitz.issho.devices.GridButton;
+import net.perkowitz.issho.devices.GridListener;
+import net.perkowitz.issho.devices.GridPad;
+import net.perkowitz.issho.devices.launchpadpro.Color;
+import net.perkowitz.issho.util.MidiLoopback;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.sound.midi.ShortMessage;
+
+import static javax.sound.midi.ShortMessage.NOTE_ON;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class VirtualGridDeviceTest {
+
+    VirtualGridDevice device;
+    GridListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = mock(GridListener.class);
+        device = new VirtualGridDevice("test");
+        device.setListener(listener);
+    }
+
+    @Test
+    public void initialize() throws Exception {
+        // same message count as a launchpad pro: 64 pads and 32 buttons
+        device.initialize();
+        assertEquals(96, device.getMessagesSent());
+        assertEquals(96 * 3, device.getBytesSent());
+
+        device.resetCounters();
+        device.initialize(false, Sets.newHashSet(GridButton.Side.Top));
+        assertEquals(8, device.getMessagesSent());
+    }
+
+    @Test
+    public void ledState() throws Exception {
+        device.setPad(GridPad.at(2, 5), Color.BRIGHT_RED);
+        device.setButton(GridButton.at(GridButton.Side.Left, 3), Color.BRIGHT_GREEN);
+        assertEquals(Color.BRIGHT_RED.getIndex(), device.getPadColor(2, 5));
+        assertEquals(Color.BRIGHT_GREEN.getIndex(), device.getButtonColor(GridButton.Side.Left, 3));
+        assertEquals(2, device.getMessagesSent());
+
+        device.initialize();
+        assertEquals(Color.OFF.getIndex(), device.getPadColor(2, 5));
+    }
+
+    @Test
+    public void padPressedThroughLoopback() throws Exception {
+        MidiLoopback loopback = new MidiLoopback("grid");
+        loopback.getTransmitter().setReceiver(device);
+
+        ShortMessage message = new ShortMessage();
+        message.setMessage(NOTE_ON, 0, 3 * 8 + 6, 100);
+        loopback.getReceiver().send(message, -1);
+
+        ArgumentCaptor<GridPad> padArgumentCaptor = ArgumentCaptor.forClass(GridPad.class);
+        verify(listener).onPadPressed(padArgumentCaptor.capture(), eq(100));
+        assertEquals(6, padArgumentCaptor.getValue().getX());
+        assertEquals(3, padArgumentCaptor.getValue().getY());
+        assertEquals(1, loopback.getMessageCount());
+        assertEquals(3, loopback.getByteCount());
+        assertEquals(1, device.getMessagesReceived());
+    }
+
+}
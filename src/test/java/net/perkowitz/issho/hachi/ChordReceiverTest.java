@@ -22,11 +22,13 @@ public class ChordReceiverTest {
 
     ChordReceiver chordReceiver;
     Chordable chordable;
+    Chordable steppedChordable;
 
     @Before
     public void setUp() throws Exception {
         chordable = mock(Chordable.class);
-        chordReceiver = new ChordReceiver(Lists.newArrayList(chordable));
+        steppedChordable = mock(Chordable.class);
+        chordReceiver = new ChordReceiver(Lists.newArrayList(chordable, steppedChordable));
         chordReceiver.setChordHold(false);
     }
 
@@ -39,17 +41,17 @@ public class ChordReceiverTest {
     public void testChordSent() throws Exception {
         ShortMessage message = createNoteOnMessage(0, 60, 64);
         chordReceiver.send(message, -1);
-        verify(chordable, times(1)).setChord(any(Chord.class));
+        verify(chordable, times(1)).setChord(any(ChordSnapshot.class));
         reset(chordable);
 
         message = createNoteOnMessage(0, 60, 0);
         chordReceiver.send(message, -1);
-        verify(chordable, times(1)).setChord(any(Chord.class));
+        verify(chordable, times(1)).setChord(any(ChordSnapshot.class));
         reset(chordable);
 
         message = createNoteOffMessage(0, 60, 64);
         chordReceiver.send(message, -1);
-        verify(chordable, times(1)).setChord(any(Chord.class));
+        verify(chordable, times(1)).setChord(any(ChordSnapshot.class));
         reset(chordable);
     }
 
@@ -62,14 +64,14 @@ public class ChordReceiverTest {
 
         // make sure chord includes note
         chordReceiver.send(noteOnMessage, -1);
-        ArgumentCaptor<Chord> chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        ArgumentCaptor<ChordSnapshot> chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note, 1, true);
         reset(chordable);
 
         // make sure chord no longer contains note
         chordReceiver.send(noteOffMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note, 0, false);
         reset(chordable);
@@ -87,35 +89,35 @@ public class ChordReceiverTest {
 
         // make sure chord includes note
         chordReceiver.send(noteOnMessage, -1);
-        ArgumentCaptor<Chord> chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        ArgumentCaptor<ChordSnapshot> chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note, 1, true);
         reset(chordable);
 
         // make sure chord includes note only once
         chordReceiver.send(noteOnMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note, 1, true);
         reset(chordable);
 
         // make sure chord includes note only once
         chordReceiver.send(noteOnMessage2, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note, 1, true);
         reset(chordable);
 
         // make sure chord includes note only once
         chordReceiver.send(noteOnMessage3, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note, 1, true);
         reset(chordable);
 
         // make sure chord no longer contains note
         chordReceiver.send(noteOffMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note, 0, false);
         reset(chordable);
@@ -134,14 +136,14 @@ public class ChordReceiverTest {
 
         // make sure chord includes note1
         chordReceiver.send(note1OnMessage, -1);
-        ArgumentCaptor<Chord> chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        ArgumentCaptor<ChordSnapshot> chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 1, true);
         reset(chordable);
 
         // make sure chord includes note2 (and note1)
         chordReceiver.send(note2OnMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note2, 2, true);
         checkChordForNote(chordCaptor.getValue(), note1, 2, true);
@@ -149,7 +151,7 @@ public class ChordReceiverTest {
 
         // make sure chord no longer contains note1 (but still contains note2)
         chordReceiver.send(note1OffMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 1, false);
         checkChordForNote(chordCaptor.getValue(), note2, 1, true);
@@ -157,7 +159,7 @@ public class ChordReceiverTest {
 
         // make sure chord no longer contains note2 (or note1)
         chordReceiver.send(note2OffMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note2, 0, false);
         checkChordForNote(chordCaptor.getValue(), note1, 0, false);
@@ -182,14 +184,14 @@ public class ChordReceiverTest {
 
         // play first note - chord should contain 1 note
         chordReceiver.send(note1OnMessage, -1);
-        ArgumentCaptor<Chord> chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        ArgumentCaptor<ChordSnapshot> chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 1, true);
         reset(chordable);
 
         // play second note - chord should contain 2 notes
         chordReceiver.send(note2OnMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 2, true);
         checkChordForNote(chordCaptor.getValue(), note2, 2, true);
@@ -197,7 +199,7 @@ public class ChordReceiverTest {
 
         // release first note - chord should still contain 2 notes
         chordReceiver.send(note1OffMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 2, true);
         checkChordForNote(chordCaptor.getValue(), note2, 2, true);
@@ -205,7 +207,7 @@ public class ChordReceiverTest {
 
         // play third note - chord should contain 3 notes
         chordReceiver.send(note3OnMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 3, true);
         checkChordForNote(chordCaptor.getValue(), note2, 3, true);
@@ -215,7 +217,7 @@ public class ChordReceiverTest {
         // release remaining notes - chord should still contain 3 notes
         chordReceiver.send(note2OffMessage, -1);
         chordReceiver.send(note3OffMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(2)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 3, true);
         checkChordForNote(chordCaptor.getValue(), note2, 3, true);
@@ -224,7 +226,7 @@ public class ChordReceiverTest {
 
         // play third note again - should replace chord
         chordReceiver.send(note3OnMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note3, 1, true);
         reset(chordable);
@@ -248,7 +250,7 @@ public class ChordReceiverTest {
         chordReceiver.send(note2OnMessage, -1);
         chordReceiver.send(note1OffMessage, -1);
         chordReceiver.send(note2OffMessage, -1);
-        ArgumentCaptor<Chord> chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        ArgumentCaptor<ChordSnapshot> chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(4)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 2, true);
         checkChordForNote(chordCaptor.getValue(), note2, 2, true);
@@ -257,7 +259,7 @@ public class ChordReceiverTest {
         // send the "hold clear" message
         ShortMessage holdOffCcMessage = createCcMessage(0, 64, 0);
         chordReceiver.send(holdOffCcMessage, -1);
-        chordCaptor = ArgumentCaptor.forClass(Chord.class);
+        chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
         verify(chordable, times(1)).setChord(chordCaptor.capture());
         checkChordForNote(chordCaptor.getValue(), note1, 0, false);
         reset(chordable);
@@ -265,6 +267,43 @@ public class ChordReceiverTest {
 
     }
 
+    @Test
+    public void testSteppedDelivery() throws Exception {
+
+        // while the clock runs, nothing is delivered until the next step
+        chordReceiver.setClockRunning(true);
+        chordReceiver.send(createNoteOnMessage(0, 36, 64), -1);
+        chordReceiver.send(createNoteOnMessage(0, 40, 64), -1);
+        chordReceiver.send(createNoteOnMessage(0, 43, 64), -1);
+        verify(steppedChordable, never()).setChord(any(ChordSnapshot.class));
+
+        // then only the latest chord, once
+        chordReceiver.deliver();
+        ArgumentCaptor<ChordSnapshot> chordCaptor = ArgumentCaptor.forClass(ChordSnapshot.class);
+        verify(steppedChordable, times(1)).setChord(chordCaptor.capture());
+        checkChordForNote(chordCaptor.getValue(), 43, 3, true);
+        assertEquals(2, chordReceiver.getSkippedChords());
+        reset(steppedChordable);
+
+        // and not again if it hasn't changed
+        chordReceiver.deliver();
+        verify(steppedChordable, never()).setChord(any(ChordSnapshot.class));
+        assertEquals(1, chordReceiver.getDeliveredChords());
+    }
+
+    @Test
+    public void testOtherControllersIgnored() throws Exception {
+
+        chordReceiver.send(createNoteOnMessage(0, 36, 64), -1);
+        reset(chordable);
+        long version = chordReceiver.getChordVersion();
+
+        chordReceiver.send(createCcMessage(0, 1, 100), -1);
+        verify(chordable, never()).setChord(any(ChordSnapshot.class));
+        assertEquals(version, chordReceiver.getChordVersion());
+        assertEquals(1, chordReceiver.getFilteredMessages());
+    }
+
 
     /***** helper methods *****************************************/
 
@@ -286,7 +325,7 @@ public class ChordReceiverTest {
         return message;
     }
 
-    private void checkChordForNote(Chord chord, int note, int totalSize, boolean shouldContainNote) {
+    private void checkChordForNote(ChordSnapshot chord, int note, int totalSize, boolean shouldContainNote) {
         assertEquals(totalSize, chord.size());
         List<Integer> baseNotes = chord.getBaseNotes();
         assertEquals(totalSize, baseNotes.size());
@@ -150,6 +150,27 @@ public class ChordTest {
         verifyMapping(chord, new int[] { 0, 4, 7, 0, 4, 7, 0, 4, 7, 0, 4, 7 });
     }
 
+    @Test
+    public void testSnapshot() throws Exception {
+        for (Chord.NoteMapMode mode : Chord.NoteMapMode.values()) {
+            Chord chord = new Chord();
+            chord.setNoteMapMode(mode);
+            chord.add(2);
+            chord.add(5);
+            chord.add(9);
+            ChordSnapshot snapshot = chord.snapshot();
+            for (int note = 0; note < 128; note++) {
+                assertEquals(chord.mapNote(note), snapshot.mapNote(note));
+            }
+            assertEquals(3, snapshot.size());
+
+            // later changes to the chord don't affect the snapshot
+            chord.clear();
+            assertEquals(3, snapshot.size());
+            assertEquals(false, snapshot.isEmpty());
+        }
+    }
+
 
 
 
@@ -0,0 +1,90 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.util.List;
+
+import static javax.sound.midi.ShortMessage.*;
+import static org.junit.Assert.*;
+
+public class ClockOutputTest {
+
+    @Test
+    public void sendsStartThenClockAtPulseDeadlines() throws Exception {
+        Recorder early = new Recorder();
+        Recorder late = new Recorder();
+        ClockOutput output = new ClockOutput("test-clock-out", new Receiver[] { early, late }, new double[] { -5, 0 });
+
+        // 625 bpm is 1 ms per pulse, 4 ms per midi clock
+        PulseClock clock = new PulseClock(new PulseClock.Listener() {
+            public void pulse(long pulse) {
+            }
+        }, "test-clock", 625);
+        clock.start();
+        output.start(clock);
+        output.sendStart(true, 0);
+        long startNanos = System.nanoTime();
+        clock.runInternal(true, output.getLeadNanos());
+        Thread.sleep(100);
+        clock.halt();
+        output.sendStop();
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+        output.close();
+        clock.stop();
+
+        for (Recorder recorder : new Recorder[] { early, late }) {
+            List<Integer> statuses = recorder.statuses();
+            assertEquals(START, (int) statuses.get(0));
+            assertEquals(STOP, (int) statuses.get(statuses.size() - 1));
+            for (int i = 1; i < statuses.size() - 1; i++) {
+                assertEquals(TIMING_CLOCK, (int) statuses.get(i));
+            }
+            assertTrue(statuses.size() - 2 > 15);
+            assertTrue(statuses.size() - 2 <= elapsedMillis / 4 + 3);
+        }
+
+        // the early port's clock goes out 5 ms ahead
+        assertTrue(early.clockNanos.get(0) < late.clockNanos.get(0));
+        assertEquals(early.clockNanos.size(), output.getClocksSent() - late.clockNanos.size());
+    }
+
+    @Test
+    public void continueSendsSongPosition() throws Exception {
+        Recorder recorder = new Recorder();
+        ClockOutput output = new ClockOutput("test-clock-out", new Receiver[] { recorder }, new double[] { 0 });
+        // pulse 200 is midi clock 50, on to the 16th at midi clock 54
+        output.sendStart(false, 200);
+        assertEquals(Lists.newArrayList(SONG_POSITION_POINTER, CONTINUE), recorder.statuses());
+        assertEquals(9, recorder.messages.get(0).getMessage()[1]);
+        assertEquals(0, recorder.messages.get(0).getMessage()[2]);
+    }
+
+
+    private static class Recorder implements Receiver {
+
+        private final List<MidiMessage> messages = Lists.newArrayList();
+        private final List<Long> clockNanos = Lists.newArrayList();
+
+        public synchronized void send(MidiMessage message, long timeStamp) {
+            messages.add(message);
+            if (message.getStatus() == TIMING_CLOCK) {
+                clockNanos.add(System.nanoTime());
+            }
+        }
+
+        public synchronized List<Integer> statuses() {
+            List<Integer> statuses = Lists.newArrayList();
+            for (MidiMessage message : messages) {
+                statuses.add(message.getStatus());
+            }
+            return statuses;
+        }
+
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import net.perkowitz.issho.util.MidiBatch;
+import org.junit.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static javax.sound.midi.ShortMessage.NOTE_ON;
+import static org.junit.Assert.*;
+
+public class ClockPipelineTest {
+
+    @Test
+    public void outputIsInTaskOrder() throws Exception {
+        final Recorder recorder = new Recorder();
+        final Set<String> threads = Collections.synchronizedSet(Sets.<String>newHashSet());
+        ClockPipeline pipeline = new ClockPipeline("test-pipeline", 3, 6, new ClockPipeline.Task() {
+            public void run(int index) {
+                threads.add(Thread.currentThread().getName());
+                try {
+                    // later tasks finish first
+                    Thread.sleep(6 - index);
+                    for (int i = 0; i < 2; i++) {
+                        MidiBatch.current().add(recorder, new ShortMessage(NOTE_ON, index, 60 + i, 100), -1);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        for (int run = 0; run < 3; run++) {
+            recorder.notes.clear();
+            pipeline.run();
+            List<String> expected = Lists.newArrayList();
+            for (int index = 0; index < 6; index++) {
+                expected.add(index + ":60");
+                expected.add(index + ":61");
+            }
+            assertEquals(expected, recorder.notes);
+        }
+        pipeline.close();
+        assertTrue(threads.size() > 1);
+    }
+
+    @Test
+    public void oneThreadSendsDirectly() throws Exception {
+        final List<Integer> ran = Lists.newArrayList();
+        ClockPipeline pipeline = new ClockPipeline("test-pipeline", 1, 3, new ClockPipeline.Task() {
+            public void run(int index) {
+                assertNull(MidiBatch.current());
+                ran.add(index);
+            }
+        });
+        pipeline.run();
+        assertEquals(Lists.newArrayList(0, 1, 2), ran);
+        assertEquals(1, pipeline.getThreads());
+    }
+
+
+    private static class Recorder implements Receiver {
+
+        private final List<String> notes = Lists.newArrayList();
+
+        public void send(MidiMessage message, long timeStamp) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            notes.add(shortMessage.getChannel() + ":" + shortMessage.getData1());
+        }
+
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import net.perkowitz.issho.devices.GridDevice;
+import net.perkowitz.issho.hachi.modules.ChordModule;
+import net.perkowitz.issho.hachi.modules.Module;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static javax.sound.midi.ShortMessage.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class HachiControllerTest {
+
+    @Test
+    public void playContinuesFromSongPosition() throws Exception {
+        Recorder recorder = new Recorder();
+        HachiController controller = new HachiController(new Module[0], new GridDevice[0], new CountDownLatch(1), mock(Receiver.class));
+        controller.setClockOutput(new ClockOutput("test-clock-out", new Receiver[] { recorder }, new double[] { 0 }));
+        controller.startTimer();
+
+        // song position 4 (16ths) while stopped, then play
+        controller.send(new ShortMessage(SONG_POSITION_POINTER, 4, 0), -1);
+        controller.pressPlay();
+        assertEquals(Lists.newArrayList("f2 4", "fb"), recorder.messages());
+
+        // song position 8 while playing
+        recorder.clear();
+        controller.send(new ShortMessage(SONG_POSITION_POINTER, 8, 0), -1);
+        assertEquals(Lists.newArrayList("fc", "f2 8", "fb"), recorder.messages());
+
+        // stopped without a new position, play starts from the top
+        controller.pressPlay();
+        recorder.clear();
+        controller.pressPlay();
+        assertEquals(Lists.newArrayList("fa"), recorder.messages());
+        controller.pressExit();
+    }
+
+    @Test
+    public void chordPlayedWhileStoppedReachesChordModules() throws Exception {
+        ChordModule module = mock(ChordModule.class);
+        HachiController controller = new HachiController(new Module[] { module }, new GridDevice[0], new CountDownLatch(1), mock(Receiver.class));
+
+        controller.getChordReceiver().send(new ShortMessage(NOTE_ON, 0, 62, 100), -1);
+        ArgumentCaptor<ChordSnapshot> chord = ArgumentCaptor.forClass(ChordSnapshot.class);
+        verify(module).setChord(chord.capture());
+        assertEquals(Lists.newArrayList(2), chord.getValue().getBaseNotes());
+    }
+
+
+    private static class Recorder implements Receiver {
+
+        private final List<String> messages = Lists.newArrayList();
+
+        public synchronized void send(MidiMessage message, long timeStamp) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            if (shortMessage.getStatus() == TIMING_CLOCK) {
+                return;
+            }
+            if (shortMessage.getStatus() == SONG_POSITION_POINTER) {
+                messages.add(String.format("%x %d", shortMessage.getStatus(), shortMessage.getData1()));
+            } else {
+                messages.add(String.format("%x", shortMessage.getStatus()));
+            }
+        }
+
+        public synchronized List<String> messages() {
+            return Lists.newArrayList(messages);
+        }
+
+        public synchronized void clear() {
+            messages.clear();
+        }
+
+        public void close() {
+        }
+    }
+
+}
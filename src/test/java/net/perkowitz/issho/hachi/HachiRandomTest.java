@@ -0,0 +1,70 @@
+package net.perkowitz.issho.hachi;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HachiRandomTest {
+
+    @Test
+    public void inputDrawsDontShiftTheClockStream() throws Exception {
+        HachiRandom quiet = new HachiRandom(7);
+        HachiRandom busy = new HachiRandom(7);
+
+        boolean input = HachiRandom.enterInput();
+        try {
+            for (int i = 0; i < 5; i++) {
+                busy.nextDouble();
+            }
+        } finally {
+            HachiRandom.exitInput(input);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(quiet.nextLong(), busy.nextLong());
+        }
+    }
+
+    @Test
+    public void rewindRestartsBothStreams() throws Exception {
+        HachiRandom random = new HachiRandom(7);
+        long clock = random.nextLong();
+        boolean input = HachiRandom.enterInput();
+        long fromInput;
+        try {
+            fromInput = random.nextLong();
+            assertNotEquals(clock, fromInput);
+            random.rewind();
+            assertEquals(fromInput, random.nextLong());
+        } finally {
+            HachiRandom.exitInput(input);
+        }
+        assertEquals(clock, random.nextLong());
+    }
+
+    @Test
+    public void restartRewindsOnlyItsOwnRig() throws Exception {
+        HachiRandom.Rig rig = new HachiRandom.Rig(42L, true);
+        HachiRandom.Rig otherRig = new HachiRandom.Rig(42L, true);
+        HachiRandom mine = created(rig, 0);
+        HachiRandom theirs = created(otherRig, 0);
+        long first = mine.nextLong();
+        assertEquals(first, theirs.nextLong());
+        mine.nextLong();
+        theirs.nextLong();
+
+        rig.restart();
+        assertEquals(first, mine.nextLong());
+        assertNotEquals(first, theirs.nextLong());
+    }
+
+    private HachiRandom created(HachiRandom.Rig rig, int index) {
+        HachiRandom.beginModule(rig, index);
+        try {
+            return HachiRandom.create();
+        } finally {
+            HachiRandom.endModule();
+        }
+    }
+
+}
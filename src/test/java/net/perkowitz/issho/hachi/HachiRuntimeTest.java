@@ -0,0 +1,69 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.perkowitz.issho.hachi.modules.BasicModule;
+import net.perkowitz.issho.hachi.modules.Module;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HachiRuntimeTest {
+
+    @Test
+    public void modulesGetTheSameRandomsWithTheSameSeed() throws Exception {
+        long[] serial = moduleRandoms(1);
+        long[] concurrent = moduleRandoms(4);
+        assertArrayEquals(serial, concurrent);
+        assertArrayEquals(serial, moduleRandoms(4));
+        for (int i = 1; i < serial.length; i++) {
+            assertNotEquals(serial[0], serial[i]);
+        }
+    }
+
+    @Test
+    public void timesEachModulesCreation() throws Exception {
+        HachiRuntime runtime = runtime(2);
+        Module[] modules = runtime.createModules();
+        for (Module module : modules) {
+            assertEquals(1, runtime.getCreateMeter(module).getCount());
+        }
+    }
+
+    // builds the modules with a fixed seed and returns the first value from each module's generator
+    private long[] moduleRandoms(int threads) {
+        HachiRuntime runtime = runtime(threads);
+        Module[] modules = runtime.createModules();
+
+        long[] randoms = new long[modules.length];
+        for (int i = 0; i < modules.length; i++) {
+            randoms[i] = ((BasicModule) modules[i]).getRandom().nextLong();
+        }
+        return randoms;
+    }
+
+    // a runtime for 8 modules with a fixed seed, ready to create them
+    private HachiRuntime runtime(int threads) {
+        List<Map<Object,Object>> moduleSettings = Lists.newArrayList();
+        for (int i = 0; i < 8; i++) {
+            Map<Object,Object> module = Maps.newHashMap();
+            module.put("class", i % 2 == 0 ? "PaletteModule" : "LogoModule");
+            moduleSettings.add(module);
+        }
+        Map<Object,Object> devices = Maps.newHashMap();
+        devices.put("midiOutputs", Lists.newArrayList());
+        Map<Object,Object> settings = Maps.newHashMap();
+        settings.put("devices", devices);
+        settings.put("modules", moduleSettings);
+        settings.put("moduleLoadThreads", threads);
+        settings.put("randomSeed", 42);
+
+        HachiRuntime runtime = new HachiRuntime(settings, null);
+        runtime.getMidiOutputs();
+        return runtime;
+    }
+
+}
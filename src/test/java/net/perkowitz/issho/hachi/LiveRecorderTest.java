@@ -0,0 +1,113 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import net.perkowitz.issho.util.PortMeter;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LiveRecorderTest {
+
+    private static final long MILLIS = 1000000;
+
+    @Test
+    public void notesGoToNearestStep() throws Exception {
+        LiveRecorder recorder = new LiveRecorder(16);
+        Recorded recorded = new Recorded();
+
+        // 1 ms pulses; step 3 plays on the pulse at 0 ms, and it's now 5 ms later
+        recorder.setRecording(true);
+        playStep(recorder, 3, 5);
+        recorder.offer(LiveRecorder.PADS, 1, 100, 5 * MILLIS + MILLIS / 2);
+        recorder.offer(LiveRecorder.KEYBOARD, 36, 90, 20 * MILLIS);
+        assertEquals(2, recorder.drain(recorded));
+        // 5.5 pulses late for step 3; 4 pulses early for step 4
+        assertEquals(Lists.newArrayList("0:1:100 @3+6", "1:36:90 @4+0"), recorded.notes);
+
+        // the late note was really played before the step, after 10 ms of input latency
+        recorded.notes.clear();
+        recorder.setLatencyMillis(10);
+        recorder.offer(LiveRecorder.PADS, 1, 100, 5 * MILLIS + MILLIS / 2);
+        recorder.drain(recorded);
+        assertEquals(Lists.newArrayList("0:1:100 @3+0"), recorded.notes);
+
+        // wraps around the pattern, and drops the timing when microtiming is off
+        recorded.notes.clear();
+        recorder.setLatencyMillis(0);
+        recorder.setMicrotiming(false);
+        playStep(recorder, 15, 5);
+        recorder.offer(LiveRecorder.PADS, 2, 100, 18 * MILLIS);
+        recorder.offer(LiveRecorder.PADS, 2, 100, 7 * MILLIS);
+        recorder.drain(recorded);
+        assertEquals(Lists.newArrayList("0:2:100 @0+0", "0:2:100 @15+0"), recorded.notes);
+    }
+
+    @Test
+    public void allowsForTheLatencyOfEachInput() throws Exception {
+        LiveRecorder recorder = new LiveRecorder(16);
+        Recorded recorded = new Recorded();
+        PortMeter grid = new PortMeter();
+        grid.recordLatency(2000);
+        PortMeter keyboard = new PortMeter();
+        keyboard.recordLatency(4000);
+        recorder.setKeyboardMeter(keyboard);
+        recorder.setRecording(true);
+        playStep(recorder, 3, 5);
+
+        // a pad on a metered grid, a pad on a grid with no meter (e.g. virtual), and a key
+        PortMeter was = LiveRecorder.enterPads(grid);
+        try {
+            recorder.offer(LiveRecorder.PADS, 1, 100, 5 * MILLIS);
+        } finally {
+            LiveRecorder.exitPads(was);
+        }
+        recorder.offer(LiveRecorder.PADS, 2, 100, 5 * MILLIS);
+        recorder.offer(LiveRecorder.KEYBOARD, 36, 90, 5 * MILLIS);
+        recorder.drain(recorded);
+        assertEquals(Lists.newArrayList("0:1:100 @3+3", "0:2:100 @3+5", "1:36:90 @3+1"), recorded.notes);
+    }
+
+    @Test
+    public void onlyRecordsWhilePlaying() throws Exception {
+        LiveRecorder recorder = new LiveRecorder(16);
+        Recorded recorded = new Recorded();
+
+        assertFalse(recorder.offer(LiveRecorder.PADS, 1, 100, 0));
+        recorder.setRecording(true);
+        assertTrue(recorder.offer(LiveRecorder.PADS, 1, 100, 0));
+        // nothing has played yet, so there's no step to put it on
+        assertEquals(1, recorder.drain(recorded));
+        assertTrue(recorded.notes.isEmpty());
+
+        playStep(recorder, 0, 2);
+        recorder.offer(LiveRecorder.PADS, 1, 100, 2 * MILLIS);
+        recorder.reset();
+        assertEquals(0, recorder.drain(recorded));
+        assertTrue(recorded.notes.isEmpty());
+    }
+
+
+    /**
+     * playStep plays a step on a pulse at 0 ms and then the given number of pulses, 1 ms apart.
+     */
+    private static void playStep(LiveRecorder recorder, int step, int pulses) {
+        recorder.reset();
+        recorder.pulse(0);
+        recorder.step(step);
+        for (int i = 1; i <= pulses; i++) {
+            recorder.pulse(i * MILLIS);
+        }
+    }
+
+    private static class Recorded implements LiveRecorder.Target {
+
+        private final List<String> notes = Lists.newArrayList();
+
+        public void record(int source, int note, int velocity, int step, int microtiming) {
+            notes.add(source + ":" + note + ":" + velocity + " @" + step + "+" + microtiming);
+        }
+    }
+
+}
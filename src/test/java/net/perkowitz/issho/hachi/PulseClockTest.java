@@ -0,0 +1,156 @@
+package net.perkowitz.issho.hachi;
+
+import com.google.common.collect.Lists;
+import net.perkowitz.issho.util.Histogram;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class PulseClockTest {
+
+    @Test
+    public void internalClockKeepsTime() throws Exception {
+        Recorder recorder = new Recorder();
+        // 625 bpm is 1 ms per pulse
+        PulseClock clock = new PulseClock(recorder, "test-clock", 625);
+        clock.start();
+        long start = System.nanoTime();
+        clock.runInternal(true);
+        Thread.sleep(200);
+        clock.halt();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        clock.stop();
+
+        List<Long> pulses = recorder.pulses();
+        assertTrue(pulses.size() > 100);
+        assertTrue(pulses.size() <= elapsedMillis + 2);
+        for (int i = 0; i < pulses.size(); i++) {
+            assertEquals(i, (long) pulses.get(i));
+        }
+    }
+
+    @Test
+    public void recordsTheLatenessOfEachPulse() throws Exception {
+        Recorder recorder = new Recorder();
+        Histogram lateness = new Histogram();
+        PulseClock clock = new PulseClock(recorder, "test-clock", 625, lateness);
+        clock.start();
+        clock.runInternal(true);
+        Thread.sleep(100);
+        clock.halt();
+        clock.stop();
+        assertEquals(recorder.pulses().size(), lateness.getCount());
+
+        // a pulse on a midi clock is due when the clock arrived
+        clock.follow(true);
+        long lateNanos = 5000000;
+        clock.midiClock(System.nanoTime() - lateNanos);
+        assertEquals(recorder.pulses().size(), lateness.getCount());
+        assertTrue(lateness.getMax() >= lateNanos / 1000);
+    }
+
+    @Test
+    public void followingFillsInBetweenMidiClocks() throws Exception {
+        Recorder recorder = new Recorder();
+        PulseClock clock = new PulseClock(recorder, "test-clock", 120);
+        // no clock thread, so nothing is interpolated and the midi clocks deliver everything
+        clock.follow(true);
+        long nanos = 1000000000L;
+        clock.midiClock(nanos);
+        assertEquals(Lists.newArrayList(0L), recorder.pulses());
+
+        for (int i = 1; i <= 3; i++) {
+            clock.midiClock(nanos + i * 20000000L);
+        }
+        List<Long> pulses = recorder.pulses();
+        assertEquals(3 * PulseClock.SUBDIVISION + 1, pulses.size());
+        for (int i = 0; i < pulses.size(); i++) {
+            assertEquals(i, (long) pulses.get(i));
+        }
+
+        // stopped, midi clock is ignored
+        clock.halt();
+        clock.midiClock(nanos + 100000000L);
+        assertEquals(pulses.size(), recorder.pulses().size());
+    }
+
+    @Test
+    public void followingInterpolates() throws Exception {
+        Recorder recorder = new Recorder();
+        PulseClock clock = new PulseClock(recorder, "test-clock", 120);
+        clock.start();
+        clock.follow(true);
+        long interval = 20000000L;
+        clock.midiClock(System.nanoTime() - interval);
+        clock.midiClock(System.nanoTime());
+        Thread.sleep(interval / 1000000 * 2);
+        clock.stop();
+
+        // everything up to the pulse before the next midi clock, and no further
+        assertEquals(2 * PulseClock.SUBDIVISION, recorder.pulses().size());
+    }
+
+    @Test
+    public void seekThenContinue() throws Exception {
+        Recorder recorder = new Recorder();
+        PulseClock clock = new PulseClock(recorder, "test-clock", 120);
+        // song position 10 (16ths) while stopped, then continue
+        long pulse = 10 * Clockable.PULSES_PER_STEP;
+        clock.seek(pulse);
+        clock.follow(false);
+        clock.midiClock(1000000000L);
+        assertEquals(Lists.newArrayList(pulse), recorder.pulses());
+    }
+
+    @Test(timeout = 5000)
+    public void controlDoesntWaitForAPulse() throws Exception {
+        final CountDownLatch inPulse = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final PulseClock clock = new PulseClock(new PulseClock.Listener() {
+            public void pulse(long pulse) {
+                inPulse.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "test-clock", 120);
+        clock.follow(true);
+        Thread midiInput = new Thread(new Runnable() {
+            public void run() {
+                clock.midiClock(1000000000L);
+            }
+        });
+        midiInput.start();
+        inPulse.await();
+
+        // while the listener is busy with pulse 0 on the midi input thread
+        assertEquals(1, clock.getPulse());
+        clock.seek(48);
+        clock.halt();
+        clock.runInternal(true);
+        assertEquals(0, clock.getPulse());
+
+        release.countDown();
+        midiInput.join();
+    }
+
+
+    private static class Recorder implements PulseClock.Listener {
+
+        private final List<Long> pulses = Lists.newArrayList();
+
+        public synchronized void pulse(long pulse) {
+            pulses.add(pulse);
+        }
+
+        public synchronized List<Long> pulses() {
+            return Lists.newArrayList(pulses);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package net.perkowitz.issho.hachi;
+
+import net.perkowitz.issho.devices.GridColor;
+import net.perkowitz.issho.devices.GridDisplay;
+import net.perkowitz.issho.devices.GridPad;
+import net.perkowitz.issho.devices.MultiDisplay;
+import net.perkowitz.issho.devices.launchpadpro.Color;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class TickBudgetTest {
+
+    private static final long PERIOD = 1000000;
+    private static final long ON_TIME_PERIOD = 1000000000;   // generous, so a pause in the test isn't late
+
+    @Test
+    public void shedsInOrderAndRecovers() throws Exception {
+        GridDisplay grid = mock(GridDisplay.class);
+        MultiDisplay display = new MultiDisplay(new GridDisplay[] { grid });
+        TickBudget budget = new TickBudget(new MultiDisplay[] { display });
+
+        // on time
+        assertFalse(budget.pulseDone(System.nanoTime(), ON_TIME_PERIOD, "seq"));
+        assertEquals(TickBudget.Shed.NONE, budget.getShed());
+
+        // each late pulse sheds one more
+        long late = System.nanoTime() - 2 * PERIOD;
+        assertTrue(budget.pulseDone(late, PERIOD, "seq"));
+        assertEquals(TickBudget.Shed.LEDS, budget.getShed());
+        boolean clockWork = MultiDisplay.enterClockWork();
+        try {
+            display.setPad(GridPad.at(0, 0), Color.BRIGHT_RED);
+        } finally {
+            MultiDisplay.exitClockWork(clockWork);
+        }
+        verify(grid, never()).setPad(any(GridPad.class), any(GridColor.class));
+        assertEquals(1, budget.getShedPadUpdates());
+
+        // pad presses still light up
+        display.setPad(GridPad.at(1, 1), Color.BRIGHT_RED);
+        verify(grid).setPad(GridPad.at(1, 1), Color.BRIGHT_RED);
+        assertEquals(1, budget.getShedPadUpdates());
+
+        budget.pulseDone(late, PERIOD, "para");
+        budget.pulseDone(late, PERIOD, "para");
+        assertFalse(budget.pulseDone(late, PERIOD, "para"));
+        assertEquals(TickBudget.Shed.CCS, budget.getShed());
+        assertTrue(budget.isShedding(TickBudget.Shed.TEXT));
+        assertEquals(4, budget.getLatePulses());
+        assertEquals("para", budget.getLastLateClockable());
+
+        // a beat on time brings back one level
+        for (int i = 0; i < Clockable.PULSES_PER_BEAT; i++) {
+            budget.pulseDone(System.nanoTime(), ON_TIME_PERIOD, "seq");
+        }
+        assertEquals(TickBudget.Shed.TEXT, budget.getShed());
+
+        budget.recover();
+        assertEquals(TickBudget.Shed.NONE, budget.getShed());
+        assertTrue(budget.stale());
+        assertFalse(budget.stale());
+        display.setPad(GridPad.at(0, 0), Color.BRIGHT_RED);
+        verify(grid).setPad(GridPad.at(0, 0), Color.BRIGHT_RED);
+    }
+
+    @Test
+    public void onlyCountsWhenNotShedding() throws Exception {
+        TickBudget budget = new TickBudget(new MultiDisplay[0]);
+        budget.setShedding(false);
+        assertFalse(budget.pulseDone(System.nanoTime() - 2 * PERIOD, PERIOD, "seq"));
+        assertEquals(TickBudget.Shed.NONE, budget.getShed());
+        assertEquals(1, budget.getLatePulses());
+    }
+
+}
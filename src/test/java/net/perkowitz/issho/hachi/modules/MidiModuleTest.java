@@ -0,0 +1,84 @@
+package net.perkowitz.issho.hachi.modules;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class MidiModuleTest {
+
+    @Test
+    public void sendsLatestPressure() throws Exception {
+        Recorder recorder = new Recorder();
+        MidiModule module = new MidiModule(mock(Transmitter.class), recorder);
+
+        // off by default
+        module.sendPressure(2, 36, 50);
+        assertNull(module.getPressureCoalescer());
+
+        // slow enough that the flusher won't run during the test
+        module.setPressure(MidiModule.PressureOutput.POLY, 1, 0.001);
+        module.sendPressure(2, 36, 50);
+        module.sendPressure(2, 36, 70);
+        module.sendPressure(2, 38, 20);
+        module.sendPressure(2, -1, 90);
+        assertTrue(recorder.messages.isEmpty());
+        module.getPressureCoalescer().flush();
+        assertEquals(Lists.newArrayList("a2 36 70", "a2 38 20", "d2 90 0"), recorder.messages);
+
+        // every pad drives the one controller
+        recorder.messages.clear();
+        module.setPressure(MidiModule.PressureOutput.CC, 74, 0.001);
+        module.sendPressure(2, 36, 10);
+        module.sendPressure(2, 38, 30);
+        module.close();
+        assertEquals(Lists.newArrayList("b2 74 30"), recorder.messages);
+    }
+
+
+    @Test
+    public void gateEndsTheMappedNote() throws Exception {
+        Recorder recorder = new Recorder();
+        MidiModule module = new MidiModule(mock(Transmitter.class), recorder) {
+            {
+                velocityVariability = 0;
+            }
+            @Override
+            protected void sendMidiNote(int channel, int noteNumber, int velocity, int gatePulses) {
+                super.sendMidiNote(channel, noteNumber + 12, velocity, gatePulses);
+            }
+        };
+
+        module.sendMidiNote(1, 60, 100, 2);
+        module.sendMidiNote(1, 62, 100);
+        module.advanceGates(1);
+        assertEquals(Lists.newArrayList("91 72 100", "91 74 100"), recorder.messages);
+        module.advanceGates(1);
+        assertEquals(Lists.newArrayList("91 72 100", "91 74 100", "91 72 0"), recorder.messages);
+
+        // its gate already ended it
+        module.sendMidiNote(1, 60, 0);
+        assertEquals(3, recorder.messages.size());
+    }
+
+    private static class Recorder implements Receiver {
+
+        private final List<String> messages = Lists.newArrayList();
+
+        public synchronized void send(MidiMessage message, long timeStamp) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            messages.add(String.format("%x %d %d", shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2()));
+        }
+
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package net.perkowitz.issho.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.io.File;
+
+import static javax.sound.midi.ShortMessage.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MidiCaptureTest {
+
+    File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("capture", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void captureAndRead() throws Exception {
+        MidiCapture capture = new MidiCapture(16);
+        Receiver receiver = mock(Receiver.class);
+        CaptureReceiver input = new CaptureReceiver(receiver, capture, "clock in", MidiCapture.IN);
+        CaptureReceiver output = new CaptureReceiver(receiver, capture, "synth out", MidiCapture.OUT);
+
+        ShortMessage ignored = new ShortMessage(TIMING_CLOCK);
+        input.send(ignored, -1);
+
+        capture.start(file.getPath());
+        ShortMessage clock = new ShortMessage(TIMING_CLOCK);
+        ShortMessage note = new ShortMessage(NOTE_ON, 3, 60, 100);
+        input.send(clock, -1);
+        output.send(note, -1);
+        capture.stop();
+
+        // messages are passed on whether or not capture is on
+        verify(receiver).send(ignored, -1);
+        verify(receiver).send(clock, -1);
+        verify(receiver).send(note, -1);
+
+        MidiCaptureReader reader = new MidiCaptureReader(file.getPath());
+        MidiCaptureReader.Record record = reader.next();
+        assertEquals("clock in", reader.portName(record.getPort()));
+        assertTrue(record.isInbound());
+        assertEquals(TIMING_CLOCK, record.getStatus());
+        assertEquals(1, record.getLength());
+
+        MidiCaptureReader.Record noteRecord = reader.next();
+        assertEquals("synth out", reader.portName(noteRecord.getPort()));
+        assertFalse(noteRecord.isInbound());
+        assertEquals(NOTE_ON, noteRecord.getCommand());
+        assertEquals(3, noteRecord.getChannel());
+        assertEquals(60, noteRecord.getData1());
+        assertEquals(100, noteRecord.getData2());
+        assertTrue(noteRecord.getNanos() >= record.getNanos());
+        ShortMessage rebuilt = noteRecord.toShortMessage();
+        assertArrayEquals(note.getMessage(), rebuilt.getMessage());
+
+        assertNull(reader.next());
+        reader.close();
+        assertEquals(2, capture.getCaptured());
+    }
+
+    @Test
+    public void dropsWhenFull() throws Exception {
+        MidiCapture capture = new MidiCapture(4);
+        capture.start(file.getPath());
+        for (int i = 0; i < 100; i++) {
+            capture.record(0, MidiCapture.OUT, new ShortMessage(NOTE_ON, 0, i, 100));
+        }
+        capture.stop();
+        assertEquals(100, capture.getCaptured() + capture.getDropped());
+    }
+
+}
@@ -0,0 +1,112 @@
+package net.perkowitz.issho.util;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.List;
+
+import static javax.sound.midi.ShortMessage.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MidiCoalescerTest {
+
+    @Test
+    public void keepsLatestValue() throws Exception {
+        Receiver receiver = mock(Receiver.class);
+        MidiCoalescer coalescer = new MidiCoalescer(receiver, "test", 100, 0);
+
+        for (int value = 0; value <= 100; value++) {
+            coalescer.send(new ShortMessage(CONTROL_CHANGE, 2, 74, value), -1);
+        }
+        coalescer.send(new ShortMessage(CONTROL_CHANGE, 2, 75, 5), -1);
+        verify(receiver, never()).send(any(MidiMessage.class), anyLong());
+
+        coalescer.flush();
+        List<ShortMessage> sent = sent(receiver, 2);
+        assertMessage(sent.get(0), CONTROL_CHANGE, 2, 74, 100);
+        assertMessage(sent.get(1), CONTROL_CHANGE, 2, 75, 5);
+        assertEquals(102, coalescer.getReceived());
+        assertEquals(100, coalescer.getCoalesced());
+        assertEquals(2, coalescer.getSent());
+
+        // nothing changed, nothing sent
+        coalescer.flush();
+        verify(receiver, times(2)).send(any(MidiMessage.class), anyLong());
+    }
+
+    @Test
+    public void passesOtherMessages() throws Exception {
+        Receiver receiver = mock(Receiver.class);
+        MidiCoalescer coalescer = new MidiCoalescer(receiver, "test", 100, 0);
+
+        ShortMessage note = new ShortMessage(NOTE_ON, 0, 60, 100);
+        ShortMessage dataEntry = new ShortMessage(CONTROL_CHANGE, 0, 6, 64);
+        coalescer.send(note, -1);
+        coalescer.send(dataEntry, -1);
+        verify(receiver).send(note, -1);
+        verify(receiver).send(dataEntry, -1);
+        assertEquals(2, coalescer.getPassedThrough());
+    }
+
+    @Test
+    public void pitchBendAndPressure() throws Exception {
+        Receiver receiver = mock(Receiver.class);
+        MidiCoalescer coalescer = new MidiCoalescer(receiver, "test", 100, 0);
+
+        assertTrue(coalescer.offer(PITCH_BEND | 1, 0, 64));
+        assertTrue(coalescer.offer(PITCH_BEND | 1, 3, 70));
+        assertTrue(coalescer.offer(CHANNEL_PRESSURE | 1, 40, 0));
+        assertTrue(coalescer.offer(POLY_PRESSURE | 1, 60, 90));
+        assertFalse(coalescer.offer(NOTE_ON | 1, 60, 90));
+
+        coalescer.flush();
+        List<ShortMessage> sent = sent(receiver, 3);
+        assertMessage(sent.get(0), POLY_PRESSURE, 1, 60, 90);
+        assertMessage(sent.get(1), CHANNEL_PRESSURE, 1, 40, 0);
+        assertMessage(sent.get(2), PITCH_BEND, 1, 3, 70);
+    }
+
+    @Test
+    public void smoothingEndsOnFinalValue() throws Exception {
+        Receiver receiver = mock(Receiver.class);
+        MidiCoalescer coalescer = new MidiCoalescer(receiver, "test", 100, 0.5);
+
+        coalescer.send(new ShortMessage(CONTROL_CHANGE, 0, 1, 0), -1);
+        coalescer.flush();
+        coalescer.send(new ShortMessage(CONTROL_CHANGE, 0, 1, 127), -1);
+        for (int i = 0; i < 20; i++) {
+            coalescer.flush();
+        }
+
+        ArgumentCaptor<MidiMessage> captor = ArgumentCaptor.forClass(MidiMessage.class);
+        verify(receiver, atLeast(3)).send(captor.capture(), anyLong());
+        List<MidiMessage> messages = captor.getAllValues();
+        int last = -1;
+        for (MidiMessage message : messages) {
+            int value = ((ShortMessage) message).getData2();
+            assertTrue(value > last);
+            last = value;
+        }
+        assertEquals(64, ((ShortMessage) messages.get(1)).getData2());
+        assertEquals(127, last);
+    }
+
+
+    private List<ShortMessage> sent(Receiver receiver, int count) {
+        ArgumentCaptor<ShortMessage> captor = ArgumentCaptor.forClass(ShortMessage.class);
+        verify(receiver, times(count)).send(captor.capture(), anyLong());
+        return captor.getAllValues();
+    }
+
+    private void assertMessage(ShortMessage message, int command, int channel, int data1, int data2) {
+        assertEquals(command, message.getCommand());
+        assertEquals(channel, message.getChannel());
+        assertEquals(data1, message.getData1());
+        assertEquals(data2, message.getData2());
+    }
+
+}
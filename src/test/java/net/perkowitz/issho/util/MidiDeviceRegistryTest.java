@@ -0,0 +1,40 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import javax.sound.midi.MidiDevice;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class MidiDeviceRegistryTest {
+
+    @Test
+    public void sameNamedDevicesAreAllKept() throws Exception {
+        Set<String> keys = Sets.newHashSet();
+        assertEquals("Launchpad|desc|vendor:rt", MidiDeviceRegistry.uniqueKey("Launchpad|desc|vendor:rt", keys));
+        assertEquals("Launchpad|desc|vendor:rt#2", MidiDeviceRegistry.uniqueKey("Launchpad|desc|vendor:rt", keys));
+        assertEquals("Launchpad|desc|vendor:rt#3", MidiDeviceRegistry.uniqueKey("Launchpad|desc|vendor:rt", keys));
+        assertEquals(3, keys.size());
+    }
+
+    @Test
+    public void matchesIgnoringCaseOnly() throws Exception {
+        MidiDeviceRegistry.Entry entry = new MidiDeviceRegistry.Entry("key", new Info("Launchpad Pro", "MIDI 1 "),
+                mock(MidiDevice.class), true, false);
+        assertTrue(entry.matches(new String[] { "launchpad", "pro" }, true, false));
+        assertTrue(entry.matches(new String[] { "midi 1 " }, true, false));
+        assertFalse(entry.matches(new String[] { "launchpad" }, false, true));
+        assertFalse(entry.matches(new String[] { " launchpad" }, true, false));
+    }
+
+
+    private static class Info extends MidiDevice.Info {
+        public Info(String name, String description) {
+            super(name, "vendor", description, "1");
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Map;
+
+import static javax.sound.midi.ShortMessage.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MidiRouterTest {
+
+    @Test
+    public void routeByModuleAndChannel() throws Exception {
+        Receiver synth = mock(Receiver.class);
+        Receiver drums = mock(Receiver.class);
+        Receiver other = mock(Receiver.class);
+        MidiRouter router = new MidiRouter(false);
+        router.addPort("synth", synth);
+        router.addPort("drums", drums);
+        router.addPort("other", other);
+
+        Map<Object,Object> config = Maps.newHashMap();
+        config.put("outputs", Lists.newArrayList("synth"));
+        Map<Object,Object> channelOutputs = Maps.newHashMap();
+        channelOutputs.put("9", Lists.newArrayList("drums", "other"));
+        config.put("channelOutputs", channelOutputs);
+        Receiver route = router.route(config);
+
+        ShortMessage note = new ShortMessage(NOTE_ON, 0, 60, 100);
+        ShortMessage drum = new ShortMessage(NOTE_ON, 9, 36, 100);
+        ShortMessage clock = new ShortMessage(TIMING_CLOCK);
+        route.send(note, -1);
+        route.send(drum, -1);
+        route.send(clock, -1);
+
+        verify(synth).send(note, -1);
+        verify(synth, never()).send(drum, -1);
+        verify(drums).send(drum, -1);
+        verify(other).send(drum, -1);
+        verify(synth).send(clock, -1);
+        verify(drums).send(clock, -1);
+        verify(other).send(clock, -1);
+        verify(drums, never()).send(note, -1);
+    }
+
+    @Test
+    public void unroutedGoesEverywhere() throws Exception {
+        Receiver first = mock(Receiver.class);
+        Receiver second = mock(Receiver.class);
+        MidiRouter router = new MidiRouter(false);
+        router.addPort("first", first);
+        router.addPort("second", second);
+
+        Map<Object,Object> config = Maps.newHashMap();
+        config.put("outputs", Lists.newArrayList("missing"));
+        ShortMessage note = new ShortMessage(NOTE_ON, 3, 60, 100);
+        router.route(null).send(note, -1);
+        router.route(config).send(note, -1);
+
+        verify(first, times(2)).send(note, -1);
+        verify(second, times(2)).send(note, -1);
+    }
+
+    @Test
+    public void threadedPortsKeepOrder() throws Exception {
+        Receiver port = mock(Receiver.class);
+        MidiRouter router = new MidiRouter(true);
+        router.addPort("port", port);
+        Receiver route = router.route(null);
+
+        // fewer than the writer's ring holds, so the sender never waits
+        ShortMessage[] messages = new ShortMessage[500];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new ShortMessage(CONTROL_CHANGE, 0, 1, i % 128);
+            route.send(messages[i], i);
+        }
+        router.drain();
+
+        PortWriter writer = (PortWriter) router.getPorts().get("port");
+        assertEquals(messages.length, writer.getWritten());
+        assertEquals(0, writer.getOverflowed());
+        InOrder inOrder = inOrder(port);
+        for (int i = 0; i < messages.length; i++) {
+            inOrder.verify(port).send(messages[i], i);
+        }
+    }
+
+    @Test
+    public void sharedPortRunsUntilLastRouterDrains() throws Exception {
+        Receiver port = mock(Receiver.class);
+        MidiRouter first = new MidiRouter(true);
+        Receiver writer = first.addPort("port", port);
+        first.addSharedPort("port", writer);
+        MidiRouter second = new MidiRouter(true);
+        second.addSharedPort("port", writer);
+
+        // the first runtime shuts down; the second still sends through the writer thread
+        first.drain();
+        first.drain();
+        ShortMessage note = new ShortMessage(NOTE_ON, 0, 60, 100);
+        second.route(null).send(note, -1);
+        second.drain();
+
+        assertEquals(1, ((PortWriter) writer).getWritten());
+        verify(port).send(note, -1);
+    }
+
+}
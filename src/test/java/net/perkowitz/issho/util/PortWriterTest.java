@@ -0,0 +1,68 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static javax.sound.midi.ShortMessage.*;
+import static org.junit.Assert.*;
+
+public class PortWriterTest {
+
+    @Test
+    public void overflowKeepsOrder() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> received = Collections.synchronizedList(Lists.<Long>newArrayList());
+        Receiver port = new Receiver() {
+            public void send(MidiMessage message, long timeStamp) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(timeStamp);
+            }
+            public void close() {}
+        };
+
+        // the writer holds the first message until released, so the sender fills the 4-slot ring
+        final PortWriter writer = new PortWriter(port, "test", 4);
+        writer.start();
+        final int count = 40;
+        Thread sender = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        writer.send(new ShortMessage(i % 2 == 0 ? NOTE_ON : NOTE_OFF, 0, 60, i % 2 == 0 ? 100 : 0), i);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        sender.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getOverflowed() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(writer.getOverflowed() > 0);
+        assertTrue(received.isEmpty());
+
+        release.countDown();
+        sender.join(5000);
+        writer.stop();
+
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (long) received.get(i));
+        }
+        assertEquals(count, writer.getWritten());
+    }
+
+}
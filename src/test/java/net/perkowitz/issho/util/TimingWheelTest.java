@@ -0,0 +1,74 @@
+package net.perkowitz.issho.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static javax.sound.midi.ShortMessage.*;
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void firesWhenDue() throws Exception {
+        Recorder recorder = new Recorder();
+        TimingWheel wheel = new TimingWheel(8, 16, recorder);
+        recorder.wheel = wheel;
+
+        wheel.schedule(3, NOTE_ON | 1, 60, 0);
+        wheel.schedule(1, CONTROL_CHANGE | 2, 74, 100);
+        // more than one turn of the wheel
+        wheel.schedule(20, NOTE_ON | 1, 64, 0);
+        assertEquals(3, wheel.size());
+
+        wheel.advance();
+        assertEquals(Lists.newArrayList("1:" + (CONTROL_CHANGE | 2) + ":74:100"), recorder.fired);
+        wheel.advance();
+        wheel.advance();
+        assertEquals("3:" + (NOTE_ON | 1) + ":60:0", recorder.fired.get(1));
+        for (int i = 3; i < 19; i++) {
+            wheel.advance();
+        }
+        assertEquals(2, recorder.fired.size());
+        wheel.advance();
+        assertEquals("20:" + (NOTE_ON | 1) + ":64:0", recorder.fired.get(2));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelAndReuse() throws Exception {
+        Recorder recorder = new Recorder();
+        TimingWheel wheel = new TimingWheel(8, 2, recorder);
+        recorder.wheel = wheel;
+
+        int first = wheel.schedule(2, NOTE_ON, 60, 0);
+        int second = wheel.schedule(2, NOTE_ON, 61, 0);
+        assertEquals(TimingWheel.NONE, wheel.schedule(2, NOTE_ON, 62, 0));
+
+        assertTrue(wheel.cancel(first));
+        assertFalse(wheel.cancel(first));
+
+        // the cancelled entry is reused, and the old handle doesn't cancel the new one
+        int third = wheel.schedule(4, NOTE_ON, 62, 0);
+        assertNotEquals(TimingWheel.NONE, third);
+        assertFalse(wheel.cancel(first));
+
+        wheel.fireAll();
+        assertEquals(Lists.newArrayList("2:144:61:0", "4:144:62:0"), recorder.fired);
+        assertFalse(wheel.cancel(second));
+        assertFalse(wheel.cancel(third));
+    }
+
+
+    private static class Recorder implements TimingWheel.Handler {
+
+        private TimingWheel wheel;
+        private List<String> fired = Lists.newArrayList();
+
+        public void fire(int status, int data1, int data2) {
+            fired.add(String.format("%d:%d:%d:%d", wheel.getTick(), status, data1, data2));
+        }
+    }
+
+}